@@ -279,6 +279,8 @@ public final class RifLayout {
 
     NUM,
 
-    TIMESTAMP;
+    TIMESTAMP,
+
+    BOOLEAN;
   }
 }
@@ -185,7 +185,7 @@ public final class RifLayoutsProcessor extends AbstractProcessor {
               .setHeaderEntityIdField("beneficiaryId")
               .setHeaderEntityAdditionalDatabaseFields(
                   createDetailsForAdditionalDatabaseFields(
-                      Arrays.asList("hicnUnhashed", "mbiHash")))
+                      Arrays.asList("hicnUnhashed", "mbiHash", "lastUpdated")))
               .setInnerJoinRelationship(
                   Arrays.asList(
                       new InnerJoinRelationship(
@@ -243,6 +243,9 @@ public final class RifLayoutsProcessor extends AbstractProcessor {
               .setHeaderEntity("PartDEvent")
               .setHeaderTable("PartDEvents")
               .setHeaderEntityIdField("eventId")
+              .setHeaderEntityAdditionalDatabaseFields(
+                  createDetailsForAdditionalDatabaseFields(
+                      Arrays.asList("lastUpdated", "samhsa")))
               .setHasLines(false));
       mappingSpecs.add(
           new MappingSpec(annotatedPackage.getQualifiedName().toString())
@@ -250,6 +253,9 @@ public final class RifLayoutsProcessor extends AbstractProcessor {
               .setHeaderEntity("CarrierClaim")
               .setHeaderTable("CarrierClaims")
               .setHeaderEntityIdField("claimId")
+              .setHeaderEntityAdditionalDatabaseFields(
+                  createDetailsForAdditionalDatabaseFields(
+                      Arrays.asList("lastUpdated", "samhsa")))
               .setHasLines(true)
               .setLineTable("CarrierClaimLines"));
       mappingSpecs.add(
@@ -258,6 +264,9 @@ public final class RifLayoutsProcessor extends AbstractProcessor {
               .setHeaderEntity("InpatientClaim")
               .setHeaderTable("InpatientClaims")
               .setHeaderEntityIdField("claimId")
+              .setHeaderEntityAdditionalDatabaseFields(
+                  createDetailsForAdditionalDatabaseFields(
+                      Arrays.asList("lastUpdated", "samhsa")))
               .setHasLines(true)
               .setLineTable("InpatientClaimLines"));
       mappingSpecs.add(
@@ -266,6 +275,9 @@ public final class RifLayoutsProcessor extends AbstractProcessor {
               .setHeaderEntity("OutpatientClaim")
               .setHeaderTable("OutpatientClaims")
               .setHeaderEntityIdField("claimId")
+              .setHeaderEntityAdditionalDatabaseFields(
+                  createDetailsForAdditionalDatabaseFields(
+                      Arrays.asList("lastUpdated", "samhsa")))
               .setHasLines(true)
               .setLineTable("OutpatientClaimLines"));
       mappingSpecs.add(
@@ -274,6 +286,9 @@ public final class RifLayoutsProcessor extends AbstractProcessor {
               .setHeaderEntity("HHAClaim")
               .setHeaderTable("HHAClaims")
               .setHeaderEntityIdField("claimId")
+              .setHeaderEntityAdditionalDatabaseFields(
+                  createDetailsForAdditionalDatabaseFields(
+                      Arrays.asList("lastUpdated", "samhsa")))
               .setHasLines(true)
               .setLineTable("HHAClaimLines"));
       mappingSpecs.add(
@@ -282,6 +297,9 @@ public final class RifLayoutsProcessor extends AbstractProcessor {
               .setHeaderEntity("DMEClaim")
               .setHeaderTable("DMEClaims")
               .setHeaderEntityIdField("claimId")
+              .setHeaderEntityAdditionalDatabaseFields(
+                  createDetailsForAdditionalDatabaseFields(
+                      Arrays.asList("lastUpdated", "samhsa")))
               .setHasLines(true)
               .setLineTable("DMEClaimLines"));
       mappingSpecs.add(
@@ -290,6 +308,9 @@ public final class RifLayoutsProcessor extends AbstractProcessor {
               .setHeaderEntity("HospiceClaim")
               .setHeaderTable("HospiceClaims")
               .setHeaderEntityIdField("claimId")
+              .setHeaderEntityAdditionalDatabaseFields(
+                  createDetailsForAdditionalDatabaseFields(
+                      Arrays.asList("lastUpdated", "samhsa")))
               .setHasLines(true)
               .setLineTable("HospiceClaimLines"));
       mappingSpecs.add(
@@ -298,6 +319,9 @@ public final class RifLayoutsProcessor extends AbstractProcessor {
               .setHeaderEntity("SNFClaim")
               .setHeaderTable("SNFClaims")
               .setHeaderEntityIdField("claimId")
+              .setHeaderEntityAdditionalDatabaseFields(
+                  createDetailsForAdditionalDatabaseFields(
+                      Arrays.asList("lastUpdated", "samhsa")))
               .setHasLines(true)
               .setLineTable("SNFClaimLines"));
     } finally {
@@ -1077,7 +1101,9 @@ public final class RifLayoutsProcessor extends AbstractProcessor {
     code.append(".");
 
     Optional<RifField> rifField =
-        mappingSpec.getRifLayout().getRifFields().stream()
+        Stream.concat(
+                mappingSpec.getRifLayout().getRifFields().stream(),
+                mappingSpec.getHeaderEntityAdditionalDatabaseFields().stream())
             .filter(f -> field.name.equals(f.getJavaFieldName()))
             .findAny();
     if (field == parentField) {
@@ -1168,6 +1194,10 @@ public final class RifLayoutsProcessor extends AbstractProcessor {
         && rifField.getRifColumnLength().orElse(0) == 8) return ClassName.get(LocalDate.class);
     else if (rifField.getRifColumnType() == RifColumnType.TIMESTAMP
         && rifField.getRifColumnLength().orElse(0) == 20) return ClassName.get(Instant.class);
+    else if (rifField.getRifColumnType() == RifColumnType.BOOLEAN
+        && !rifField.isRifColumnOptional()) return TypeName.BOOLEAN;
+    else if (rifField.getRifColumnType() == RifColumnType.BOOLEAN
+        && rifField.isRifColumnOptional()) return ClassName.get(Boolean.class);
     else if (rifField.getRifColumnType() == RifColumnType.NUM
         && rifField.getRifColumnScale().orElse(Integer.MAX_VALUE) > 0)
       return ClassName.get(BigDecimal.class);
@@ -1306,6 +1336,34 @@ public final class RifLayoutsProcessor extends AbstractProcessor {
         addlDatabaseFields.add(mbiHash);
         continue;
       }
+      if (additionalDatabaseField.contentEquals("lastUpdated")) {
+        RifField lastUpdated =
+            new RifField(
+                "LAST_UPDATED",
+                RifColumnType.TIMESTAMP,
+                Optional.of(20),
+                Optional.of(0),
+                Boolean.TRUE,
+                new URL(DATA_DICTIONARY_LINK + "lastUpdated"),
+                "LAST_UPDATED",
+                "lastUpdated");
+        addlDatabaseFields.add(lastUpdated);
+        continue;
+      }
+      if (additionalDatabaseField.contentEquals("samhsa")) {
+        RifField samhsa =
+            new RifField(
+                "SAMHSA",
+                RifColumnType.BOOLEAN,
+                Optional.empty(),
+                Optional.empty(),
+                Boolean.TRUE,
+                new URL(DATA_DICTIONARY_LINK + "samhsa"),
+                "SAMHSA",
+                "samhsa");
+        addlDatabaseFields.add(samhsa);
+        continue;
+      }
     }
     return addlDatabaseFields;
   }
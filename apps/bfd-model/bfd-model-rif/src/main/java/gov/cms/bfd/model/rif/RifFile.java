@@ -2,6 +2,7 @@ package gov.cms.bfd.model.rif;
 
 import java.io.InputStream;
 import java.nio.charset.Charset;
+import java.util.Optional;
 
 /** Represents a RIF file that can be read and deleted. */
 public interface RifFile {
@@ -21,4 +22,12 @@ public interface RifFile {
 
   /** @return a new {@link InputStream} to the RIF file's contents */
   InputStream open();
+
+  /**
+   * @return the number of bytes that {@link #open()} will provide, if known (e.g. it won't be for
+   *     compressed files), which can be used to track progress through the file
+   */
+  default Optional<Long> getSize() {
+    return Optional.empty();
+  }
 }
@@ -0,0 +1,147 @@
+package gov.cms.bfd.model.rif;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tracks how far the processing of a {@link RifFile} has got: how many of its bytes and records
+ * have been consumed, how fast, and (if {@link RifFile#getSize()} is known) how long the rest of
+ * it should take.
+ *
+ * <p>This class is thread-safe.
+ */
+public final class RifFileProgress {
+  private final RifFile file;
+  private final long startNanos;
+  private final AtomicLong bytesConsumed;
+  private final AtomicLong recordsConsumed;
+
+  /**
+   * Constructs a new {@link RifFileProgress} instance, for a {@link RifFile} whose processing is
+   * just starting.
+   *
+   * @param file the value to use for {@link #getFile()}
+   */
+  public RifFileProgress(RifFile file) {
+    this.file = file;
+    this.startNanos = System.nanoTime();
+    this.bytesConsumed = new AtomicLong(0L);
+    this.recordsConsumed = new AtomicLong(0L);
+  }
+
+  /** @return the {@link RifFile} whose progress is being tracked */
+  public RifFile getFile() {
+    return file;
+  }
+
+  /** @param count the number of additional bytes of the {@link RifFile} that have been consumed */
+  public void bytesConsumed(long count) {
+    bytesConsumed.addAndGet(count);
+  }
+
+  /** Records that another record has been consumed from the {@link RifFile}. */
+  public void recordConsumed() {
+    recordsConsumed.incrementAndGet();
+  }
+
+  /** @return the number of bytes of the {@link RifFile} that have been consumed so far */
+  public long getBytesConsumed() {
+    return bytesConsumed.get();
+  }
+
+  /** @return the number of records that have been consumed from the {@link RifFile} so far */
+  public long getRecordsConsumed() {
+    return recordsConsumed.get();
+  }
+
+  /** @return the {@link RifFile#getSize()} of the {@link RifFile}, if known */
+  public Optional<Long> getTotalBytes() {
+    return file.getSize();
+  }
+
+  /** @return how long the {@link RifFile} has been processing for */
+  public Duration getElapsed() {
+    return Duration.ofNanos(System.nanoTime() - startNanos);
+  }
+
+  /**
+   * @return the fraction (from <code>0.0</code> to <code>1.0</code>) of the {@link RifFile} that
+   *     has been consumed, if its size is known
+   */
+  public Optional<Double> getFractionComplete() {
+    return computeFraction(getBytesConsumed(), getTotalBytes());
+  }
+
+  /** @return the average number of bytes consumed per second, so far */
+  public double getBytesPerSecond() {
+    return computeRate(getBytesConsumed(), getElapsed());
+  }
+
+  /** @return the average number of records consumed per second, so far */
+  public double getRecordsPerSecond() {
+    return computeRate(getRecordsConsumed(), getElapsed());
+  }
+
+  /**
+   * @return the estimated time until the {@link RifFile} has been completely consumed (assuming
+   *     that the average throughput so far holds), if its size is known and it's under way
+   */
+  public Optional<Duration> getEstimatedTimeRemaining() {
+    return computeTimeRemaining(getBytesConsumed(), getTotalBytes(), getBytesPerSecond());
+  }
+
+  /**
+   * @param bytesConsumed the number of bytes consumed so far
+   * @param totalBytes the total number of bytes to consume, if known
+   * @return the fraction of the total bytes that have been consumed, if known
+   */
+  public static Optional<Double> computeFraction(long bytesConsumed, Optional<Long> totalBytes) {
+    if (!totalBytes.isPresent()) return Optional.empty();
+    if (totalBytes.get() <= 0L) return Optional.of(1.0);
+    return Optional.of(Math.min(1.0, (double) bytesConsumed / totalBytes.get()));
+  }
+
+  /**
+   * @param count the number of things done so far
+   * @param elapsed how long it's taken to do them
+   * @return the average number of things done per second
+   */
+  public static double computeRate(long count, Duration elapsed) {
+    long elapsedNanos = elapsed.toNanos();
+    if (elapsedNanos <= 0L) return 0.0;
+    return count * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+  }
+
+  /**
+   * @param bytesConsumed the number of bytes consumed so far
+   * @param totalBytes the total number of bytes to consume, if known
+   * @param bytesPerSecond the rate at which bytes are being consumed
+   * @return the estimated time until the rest of the bytes have been consumed, if it can be
+   *     estimated
+   */
+  public static Optional<Duration> computeTimeRemaining(
+      long bytesConsumed, Optional<Long> totalBytes, double bytesPerSecond) {
+    if (!totalBytes.isPresent() || bytesPerSecond <= 0.0) return Optional.empty();
+
+    long bytesRemaining = Math.max(0L, totalBytes.get() - bytesConsumed);
+    return Optional.of(Duration.ofMillis((long) (bytesRemaining * 1000.0 / bytesPerSecond)));
+  }
+
+  /** @see java.lang.Object#toString() */
+  @Override
+  public String toString() {
+    StringBuilder builder = new StringBuilder();
+    builder.append("RifFileProgress [file=");
+    builder.append(file.getDisplayName());
+    builder.append(", bytesConsumed=");
+    builder.append(getBytesConsumed());
+    builder.append(", totalBytes=");
+    builder.append(getTotalBytes().map(String::valueOf).orElse("unknown"));
+    builder.append(", recordsConsumed=");
+    builder.append(getRecordsConsumed());
+    builder.append("]");
+    return builder.toString();
+  }
+}
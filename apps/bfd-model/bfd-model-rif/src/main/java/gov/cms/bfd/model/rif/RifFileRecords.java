@@ -10,19 +10,35 @@ import java.util.stream.Stream;
 public final class RifFileRecords {
   private final RifFileEvent sourceEvent;
   private final Stream<RifRecordEvent<?>> records;
+  private final RifFileProgress progress;
 
   /**
    * Constructs a new {@link RifFileRecords} instance.
    *
    * @param sourceEvent the value to use for {@link #getSourceEvent()}
    * @param records the value to use for {@link #getRecords()}
+   * @param progress the value to use for {@link #getProgress()}
    */
-  public RifFileRecords(RifFileEvent sourceEvent, Stream<RifRecordEvent<?>> records) {
+  public RifFileRecords(
+      RifFileEvent sourceEvent, Stream<RifRecordEvent<?>> records, RifFileProgress progress) {
     Objects.requireNonNull(sourceEvent);
     Objects.requireNonNull(records);
+    Objects.requireNonNull(progress);
 
     this.sourceEvent = sourceEvent;
     this.records = records;
+    this.progress = progress;
+  }
+
+  /**
+   * Constructs a new {@link RifFileRecords} instance, whose {@link #getProgress()} won't be
+   * tracked.
+   *
+   * @param sourceEvent the value to use for {@link #getSourceEvent()}
+   * @param records the value to use for {@link #getRecords()}
+   */
+  public RifFileRecords(RifFileEvent sourceEvent, Stream<RifRecordEvent<?>> records) {
+    this(sourceEvent, records, new RifFileProgress(sourceEvent.getFile()));
   }
 
   /**
@@ -41,6 +57,14 @@ public final class RifFileRecords {
     return records;
   }
 
+  /**
+   * @return the {@link RifFileProgress} that tracks how much of the {@link RifFile} has been
+   *     consumed by the {@link #getRecords()} {@link Stream}
+   */
+  public RifFileProgress getProgress() {
+    return progress;
+  }
+
   /** @see java.lang.Object#toString() */
   @Override
   public String toString() {
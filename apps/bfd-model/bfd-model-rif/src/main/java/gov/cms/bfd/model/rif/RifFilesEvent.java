@@ -7,6 +7,7 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
+import java.util.function.BooleanSupplier;
 
 /**
  * Models a RIF file event, in which a new set of RIF files have been made available for processing.
@@ -14,24 +15,38 @@ import java.util.List;
 public final class RifFilesEvent {
   private final Instant timestamp;
   private final List<RifFileEvent> fileEvents;
+  private final BooleanSupplier cancellationCheck;
 
   /**
    * Constructs a new {@link RifFilesEvent} instance.
    *
    * @param timestamp the value to use for {@link #getTimestamp()}
    * @param files the value to use for {@link #getFileEvents()}
+   * @param cancellationCheck the {@link BooleanSupplier} to use for {@link #isCancelled()}
    */
-  public RifFilesEvent(Instant timestamp, List<RifFile> files) {
+  public RifFilesEvent(Instant timestamp, List<RifFile> files, BooleanSupplier cancellationCheck) {
     if (timestamp == null) throw new IllegalArgumentException();
     if (files == null) throw new IllegalArgumentException();
     if (files.isEmpty()) throw new IllegalArgumentException();
     for (RifFile file : files) if (file == null) throw new IllegalArgumentException();
+    if (cancellationCheck == null) throw new IllegalArgumentException();
 
     this.timestamp = timestamp;
+    this.cancellationCheck = cancellationCheck;
 
     this.fileEvents = buildFileEvents(files);
   }
 
+  /**
+   * Constructs a new {@link RifFilesEvent} instance, which will never be cancelled.
+   *
+   * @param timestamp the value to use for {@link #getTimestamp()}
+   * @param files the value to use for {@link #getFileEvents()}
+   */
+  public RifFilesEvent(Instant timestamp, List<RifFile> files) {
+    this(timestamp, files, () -> false);
+  }
+
   /**
    * Produces the properly-sorted-for-safe-processing {@link List} of {@link RifFileEvent}s for this
    * {@link RifFilesEvent}. The ordering constraint is that {@link RifFileType#BENEFICIARY} files
@@ -84,6 +99,15 @@ public final class RifFilesEvent {
     return fileEvents;
   }
 
+  /**
+   * @return <code>true</code> if the processing of this {@link RifFilesEvent} should be abandoned
+   *     as soon as possible (e.g. because another ETL pipeline node has taken over its files),
+   *     <code>false</code> if not
+   */
+  public boolean isCancelled() {
+    return cancellationCheck.getAsBoolean();
+  }
+
   /** @see java.lang.Object#toString() */
   @Override
   public String toString() {
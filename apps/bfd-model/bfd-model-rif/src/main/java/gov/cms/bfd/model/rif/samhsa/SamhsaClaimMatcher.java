@@ -0,0 +1,374 @@
+package gov.cms.bfd.model.rif.samhsa;
+
+import com.justdavis.karl.misc.exceptions.BadCodeMonkeyException;
+import com.justdavis.karl.misc.exceptions.unchecked.UncheckedIoException;
+import gov.cms.bfd.model.rif.CarrierClaim;
+import gov.cms.bfd.model.rif.DMEClaim;
+import gov.cms.bfd.model.rif.HHAClaim;
+import gov.cms.bfd.model.rif.HospiceClaim;
+import gov.cms.bfd.model.rif.InpatientClaim;
+import gov.cms.bfd.model.rif.OutpatientClaim;
+import gov.cms.bfd.model.rif.PartDEvent;
+import gov.cms.bfd.model.rif.SNFClaim;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+
+/**
+ * A {@link Predicate} that, when <code>true</code>, indicates that a claim's RIF entity (e.g. a
+ * {@link CarrierClaim}) is SAMHSA-related.
+ *
+ * <p>This applies the same checks as the server's <code>SamhsaMatcher</code> does to the
+ * <code>ExplanationOfBenefit</code>s that claims are transformed into, but against the raw claim
+ * fields, so that the ETL pipeline can flag each claim as it's loaded. See <code>
+ * /bfd-server/dev/design-samhsa-filtering.md</code> for details on the design of this feature.
+ *
+ * <p>This class is designed to be thread-safe, as it's expensive to construct and so should be used
+ * as a singleton.
+ */
+public final class SamhsaClaimMatcher implements Predicate<Object> {
+  /** The {@link CSVFormat} used to parse the SAMHSA-related code CSV files. */
+  private static final CSVFormat CSV_FORMAT = CSVFormat.EXCEL.withHeader();
+
+  /** The claim entity types that this {@link SamhsaClaimMatcher} supports. */
+  private static final List<Class<?>> CLAIM_TYPES =
+      Arrays.asList(
+          CarrierClaim.class,
+          DMEClaim.class,
+          HHAClaim.class,
+          HospiceClaim.class,
+          InpatientClaim.class,
+          OutpatientClaim.class,
+          PartDEvent.class,
+          SNFClaim.class);
+
+  /**
+   * Matches the getters for the ICD diagnosis code fields of claims and claim lines, e.g. <code>
+   * getDiagnosisPrincipalCode</code>, <code>getDiagnosis1Code</code>, or (on lines) <code>
+   * getDiagnosisCode</code>, but not <code>getDiagnosis1PresentOnAdmissionCode</code>.
+   */
+  private static final Pattern DIAGNOSIS_CODE_GETTER =
+      Pattern.compile(
+          "getDiagnosis(Principal|Admitting|ExternalFirst|External\\d+|Admission\\d+|\\d+)?Code");
+
+  /**
+   * Matches the getters for the ICD procedure code fields of claims, e.g. <code>getProcedure1Code
+   * </code>.
+   */
+  private static final Pattern PROCEDURE_CODE_GETTER = Pattern.compile("getProcedure\\d+Code");
+
+  private final Set<String> drgCodes;
+  private final Set<String> cptCodes;
+  private final Set<String> icd9ProcedureCodes;
+  private final Set<String> icd9DiagnosisCodes;
+  private final Set<String> icd10ProcedureCodes;
+  private final Set<String> icd10DiagnosisCodes;
+
+  /** The {@link CodeGetters} for each of the claim and claim line classes seen so far. */
+  private final ConcurrentMap<Class<?>, CodeGetters> codeGettersByClass;
+
+  /**
+   * Constructs a new {@link SamhsaClaimMatcher}, loading the lists of SAMHSA-related codes from the
+   * classpath.
+   */
+  public SamhsaClaimMatcher() {
+    this.drgCodes =
+        resourceCsvColumnToSet(
+            "samhsa-related-codes/codes-drg.csv", "MS-DRGs", SamhsaClaimMatcher::normalizeDrgCode);
+    this.cptCodes =
+        resourceCsvColumnToSet(
+            "samhsa-related-codes/codes-cpt.csv",
+            "CPT Code",
+            SamhsaClaimMatcher::normalizeHcpcsCode);
+    this.icd9ProcedureCodes =
+        resourceCsvColumnToSet(
+            "samhsa-related-codes/codes-icd-9-procedure.csv",
+            "ICD-9-CM",
+            SamhsaClaimMatcher::normalizeIcdCode);
+    this.icd9DiagnosisCodes =
+        resourceCsvColumnToSet(
+            "samhsa-related-codes/codes-icd-9-diagnosis.csv",
+            "ICD-9-CM Diagnosis Code",
+            SamhsaClaimMatcher::normalizeIcdCode);
+    this.icd10ProcedureCodes =
+        resourceCsvColumnToSet(
+            "samhsa-related-codes/codes-icd-10-procedure.csv",
+            "ICD-10-PCS Code",
+            SamhsaClaimMatcher::normalizeIcdCode);
+    this.icd10DiagnosisCodes =
+        resourceCsvColumnToSet(
+            "samhsa-related-codes/codes-icd-10-diagnosis.csv",
+            "ICD-10-CM Diagnosis Code",
+            SamhsaClaimMatcher::normalizeIcdCode);
+    this.codeGettersByClass = new ConcurrentHashMap<>();
+  }
+
+  /**
+   * @param csvResourceName the classpath resource name of the CSV file to parse
+   * @param columnToReturn the name of the column to return from the CSV file
+   * @param normalizer the {@link Function} to normalize each of the column's values with
+   * @return an unmodifiable {@link Set} of the normalized values from the specified column of the
+   *     specified CSV file
+   */
+  private static Set<String> resourceCsvColumnToSet(
+      String csvResourceName, String columnToReturn, Function<String, String> normalizer) {
+    try (InputStream csvStream =
+            Thread.currentThread().getContextClassLoader().getResourceAsStream(csvResourceName);
+        InputStreamReader csvReader = new InputStreamReader(csvStream, StandardCharsets.UTF_8);
+        CSVParser csvParser = new CSVParser(csvReader, CSV_FORMAT); ) {
+      Set<String> columnValues = new HashSet<>();
+      csvParser.forEach(record -> columnValues.add(normalizer.apply(record.get(columnToReturn))));
+      return Collections.unmodifiableSet(columnValues);
+    } catch (IOException e) {
+      throw new UncheckedIoException(e);
+    }
+  }
+
+  /**
+   * @param claim the claim entity to check, which must be an instance of one of the RIF claim
+   *     types, e.g. {@link CarrierClaim}
+   * @return <code>true</code> if the specified claim contains any known-SAMHSA-related codes (or
+   *     any codes whose version isn't known, to be safe), <code>false</code> if it does not
+   * @see java.util.function.Predicate#test(java.lang.Object)
+   */
+  @Override
+  public boolean test(Object claim) {
+    if (CLAIM_TYPES.stream().noneMatch(t -> t.isInstance(claim)))
+      throw new IllegalArgumentException("Unsupported claim type: " + claim.getClass());
+
+    // There are no SAMHSA fields in PDE claims.
+    if (claim instanceof PartDEvent) return false;
+
+    if (containsSamhsaCode(claim)) return true;
+    for (Object claimLine : getCodeGetters(claim).getLines(claim)) {
+      if (containsSamhsaCode(claimLine)) return true;
+    }
+
+    // No blacklisted codes found: this claim isn't SAMHSA-related.
+    return false;
+  }
+
+  /**
+   * @param claimOrLine the claim or claim line entity to check
+   * @return <code>true</code> if any of the specified entity's own code fields (i.e. not those of
+   *     its lines) are SAMHSA-related, <code>false</code> if they all are not
+   */
+  private boolean containsSamhsaCode(Object claimOrLine) {
+    CodeGetters codeGetters = getCodeGetters(claimOrLine);
+
+    for (Method[] diagnosisGetters : codeGetters.diagnosisGetters) {
+      Optional<String> code = invokeOptionalGetter(diagnosisGetters[0], claimOrLine);
+      Optional<Character> version = invokeOptionalGetter(diagnosisGetters[1], claimOrLine);
+      if (code.isPresent() && isSamhsaIcdCode(code.get(), version, false)) return true;
+    }
+
+    for (Method[] procedureGetters : codeGetters.procedureGetters) {
+      Optional<String> code = invokeOptionalGetter(procedureGetters[0], claimOrLine);
+      Optional<Character> version = invokeOptionalGetter(procedureGetters[1], claimOrLine);
+      if (code.isPresent() && isSamhsaIcdCode(code.get(), version, true)) return true;
+    }
+
+    if (codeGetters.drgGetter.isPresent()) {
+      // Per the CCW Codebook DRG codes in the CCW are already normalized to the 3 digit code.
+      Optional<String> drgCode = invokeOptionalGetter(codeGetters.drgGetter.get(), claimOrLine);
+      if (drgCode.isPresent() && drgCodes.contains(drgCode.get())) return true;
+    }
+
+    if (codeGetters.hcpcsGetter.isPresent()) {
+      /*
+       * Note: CPT codes represent a subset of possible HCPCS codes (but are the only
+       * subset that we blacklist from).
+       */
+      Optional<String> hcpcsCode = invokeOptionalGetter(codeGetters.hcpcsGetter.get(), claimOrLine);
+      if (hcpcsCode.isPresent() && cptCodes.contains(normalizeHcpcsCode(hcpcsCode.get())))
+        return true;
+    }
+
+    return false;
+  }
+
+  /**
+   * @param code the ICD code to check
+   * @param version the ICD version code for the specified code: empty or <code>9</code> for
+   *     ICD-9, or <code>0</code> for ICD-10
+   * @param procedure <code>true</code> if the code is a procedure code, <code>false</code> if it's
+   *     a diagnosis code
+   * @return <code>true</code> if the specified code matches one of the SAMHSA-related codes for its
+   *     ICD version, or if its ICD version isn't known, <code>false</code> if it does not
+   */
+  private boolean isSamhsaIcdCode(String code, Optional<Character> version, boolean procedure) {
+    if (!version.isPresent() || version.get() == '9')
+      return (procedure ? icd9ProcedureCodes : icd9DiagnosisCodes).contains(normalizeIcdCode(code));
+    else if (version.get() == '0')
+      return (procedure ? icd10ProcedureCodes : icd10DiagnosisCodes)
+          .contains(normalizeIcdCode(code));
+
+    // Fail safe: if we don't know the ICD version, assume the code is SAMHSA.
+    return true;
+  }
+
+  /**
+   * @param claimOrLine the claim or claim line entity to get the {@link CodeGetters} for
+   * @return the {@link CodeGetters} for the specified entity's class
+   */
+  private CodeGetters getCodeGetters(Object claimOrLine) {
+    return codeGettersByClass.computeIfAbsent(claimOrLine.getClass(), CodeGetters::new);
+  }
+
+  /**
+   * @param getter the getter {@link Method} to invoke
+   * @param entity the entity to invoke the getter on
+   * @return the value returned by the getter
+   */
+  @SuppressWarnings("unchecked")
+  private static <T> T invokeGetter(Method getter, Object entity) {
+    try {
+      return (T) getter.invoke(entity);
+    } catch (IllegalAccessException | InvocationTargetException e) {
+      // The generated entity getters are all public and don't throw anything.
+      throw new BadCodeMonkeyException(e);
+    }
+  }
+
+  /**
+   * @param getter the getter {@link Method} to invoke, which may return either an optional field's
+   *     {@link Optional} or a required field's (possibly <code>null</code>) value
+   * @param entity the entity to invoke the getter on
+   * @return the value returned by the getter, as an {@link Optional}
+   */
+  @SuppressWarnings("unchecked")
+  private static <T> Optional<T> invokeOptionalGetter(Method getter, Object entity) {
+    Object value = invokeGetter(getter, entity);
+    if (value instanceof Optional) return (Optional<T>) value;
+    return Optional.ofNullable((T) value);
+  }
+
+  /**
+   * @param icdCode the ICD-9 or ICD-10 code to normalize
+   * @return the specified ICD code, but with whitespace trimmed, the first (if any) decimal point
+   *     removed, and converted to all-caps
+   */
+  private static String normalizeIcdCode(String icdCode) {
+    icdCode = icdCode.trim();
+    icdCode = icdCode.replaceFirst("\\.", "");
+    icdCode = icdCode.toUpperCase();
+
+    return icdCode;
+  }
+
+  /**
+   * Example input: MS-DRG 522 Example output: 522
+   *
+   * @param code the DRG code to normalize
+   * @return the specified DRG code, but with the "MS-DRG" prefix and space removed.
+   */
+  private static String normalizeDrgCode(String code) {
+    code = code.trim();
+    code = code.replace("MS-DRG ", "");
+    return code;
+  }
+
+  /**
+   * @param hcpcsCode the HCPCS code to normalize
+   * @return the specified HCPCS code, but with whitespace trimmed and converted to all-caps
+   */
+  private static String normalizeHcpcsCode(String hcpcsCode) {
+    hcpcsCode = hcpcsCode.trim();
+    hcpcsCode = hcpcsCode.toUpperCase();
+
+    return hcpcsCode;
+  }
+
+  /**
+   * The getters for the SAMHSA-relevant code fields of a single claim or claim line class, which
+   * are found reflectively (once per class), as there are dozens of them on each claim type.
+   */
+  private static final class CodeGetters {
+    /** The code and code version getters for each diagnosis. */
+    private final List<Method[]> diagnosisGetters;
+
+    /** The code and code version getters for each procedure. */
+    private final List<Method[]> procedureGetters;
+
+    /** The <code>getDiagnosisRelatedGroupCd</code> getter, if any. */
+    private final Optional<Method> drgGetter;
+
+    /** The <code>getHcpcsCode</code> getter, if any. */
+    private final Optional<Method> hcpcsGetter;
+
+    /** The <code>getLines</code> getter, if any. */
+    private final Optional<Method> linesGetter;
+
+    /**
+     * Constructs a new {@link CodeGetters}.
+     *
+     * @param entityClass the claim or claim line class to find the getters of
+     */
+    CodeGetters(Class<?> entityClass) {
+      this.diagnosisGetters = findCodeAndVersionGetters(entityClass, DIAGNOSIS_CODE_GETTER);
+      this.procedureGetters = findCodeAndVersionGetters(entityClass, PROCEDURE_CODE_GETTER);
+      this.drgGetter = findGetter(entityClass, "getDiagnosisRelatedGroupCd");
+      this.hcpcsGetter = findGetter(entityClass, "getHcpcsCode");
+      this.linesGetter = findGetter(entityClass, "getLines");
+    }
+
+    /**
+     * @param claim the claim to get the lines of
+     * @return the specified claim's lines, or an empty {@link List} if its type doesn't have any
+     */
+    List<?> getLines(Object claim) {
+      if (!linesGetter.isPresent()) return Collections.emptyList();
+      return invokeGetter(linesGetter.get(), claim);
+    }
+
+    /**
+     * @param entityClass the class to search
+     * @param codeGetterPattern the {@link Pattern} that the code getters' names must match
+     * @return the code getters that match the specified {@link Pattern}, each paired with its
+     *     corresponding version getter
+     */
+    private static List<Method[]> findCodeAndVersionGetters(
+        Class<?> entityClass, Pattern codeGetterPattern) {
+      List<Method[]> getters = new ArrayList<>();
+      for (Method codeGetter : entityClass.getMethods()) {
+        if (!codeGetterPattern.matcher(codeGetter.getName()).matches()) continue;
+
+        Method versionGetter =
+            findGetter(entityClass, codeGetter.getName() + "Version")
+                .orElseThrow(() -> new BadCodeMonkeyException("No version for: " + codeGetter));
+        getters.add(new Method[] {codeGetter, versionGetter});
+      }
+      return getters;
+    }
+
+    /**
+     * @param entityClass the class to search
+     * @param getterName the name of the getter to find
+     * @return the (public, no-argument) getter {@link Method} with the specified name, if any
+     */
+    private static Optional<Method> findGetter(Class<?> entityClass, String getterName) {
+      try {
+        return Optional.of(entityClass.getMethod(getterName));
+      } catch (NoSuchMethodException e) {
+        return Optional.empty();
+      }
+    }
+  }
+}
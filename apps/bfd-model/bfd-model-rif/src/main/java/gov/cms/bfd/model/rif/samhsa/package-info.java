@@ -0,0 +1,2 @@
+/** Contains the logic for identifying SAMHSA-related claims in the RIF data. */
+package gov.cms.bfd.model.rif.samhsa;
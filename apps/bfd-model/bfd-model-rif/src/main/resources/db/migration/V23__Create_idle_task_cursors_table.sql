@@ -0,0 +1,12 @@
+/*
+ * Tracks the progress of the ETL pipeline's resumable idle (background) tasks, such that they can
+ * pick up where they left off, across time slices and application restarts.
+ */
+
+create table "IdleTaskCursors" (
+  "taskId" varchar(128) not null,
+  "cursor" varchar(1024),
+  "completed" boolean not null,
+  "updated" timestamp not null,
+  constraint "IdleTaskCursors_pkey" primary key ("taskId")
+);
@@ -0,0 +1,30 @@
+/*
+ * Coordinates the processing of data sets across multiple ETL pipeline nodes: each data set's
+ * files are work units that the nodes lease (with heartbeats and expiry-based takeover), and each
+ * data set is finalized (i.e. moved to "Done") by exactly one node, once all of its units have
+ * been committed.
+ */
+
+create table "CoordinatedDataSets" (
+  "dataSetId" varchar(128) not null,
+  "finalized" boolean not null,
+  "finalizedBy" varchar(128),
+  "updated" timestamp not null,
+  constraint "CoordinatedDataSets_pkey" primary key ("dataSetId")
+);
+
+create table "CoordinatedWorkUnits" (
+  "dataSetId" varchar(128) not null,
+  "unitIndex" integer not null,
+  "stage" integer not null,
+  "fileName" varchar(1024) not null,
+  "leaseOwner" varchar(128),
+  "leaseGeneration" bigint not null,
+  "leaseExpires" timestamp,
+  "completed" boolean not null,
+  "completedBy" varchar(128),
+  "updated" timestamp not null,
+  constraint "CoordinatedWorkUnits_pkey" primary key ("dataSetId", "unitIndex"),
+  constraint "CoordinatedWorkUnits_dataSetId_to_CoordinatedDataSets" foreign key ("dataSetId")
+    references "CoordinatedDataSets"
+);
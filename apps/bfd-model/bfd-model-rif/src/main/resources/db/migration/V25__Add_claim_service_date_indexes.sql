@@ -0,0 +1,31 @@
+/*
+ * Adds an index to each claim table to support searching a beneficiary's claims
+ * by service date, e.g. "all claims with services in the last 90 days", without
+ * reading all of the beneficiary's other claims. The claims are indexed by the
+ * end of their service period (i.e. their billable period), as that's what the
+ * lower bound of such a search applies to.
+ */
+
+create index ${logic.index-create-concurrently} "CarrierClaims_beneficiaryId_dateThrough_idx"
+    on "CarrierClaims" ("beneficiaryId", "dateThrough");
+
+create index ${logic.index-create-concurrently} "DMEClaims_beneficiaryId_dateThrough_idx"
+    on "DMEClaims" ("beneficiaryId", "dateThrough");
+
+create index ${logic.index-create-concurrently} "HHAClaims_beneficiaryId_dateThrough_idx"
+    on "HHAClaims" ("beneficiaryId", "dateThrough");
+
+create index ${logic.index-create-concurrently} "HospiceClaims_beneficiaryId_dateThrough_idx"
+    on "HospiceClaims" ("beneficiaryId", "dateThrough");
+
+create index ${logic.index-create-concurrently} "InpatientClaims_beneficiaryId_dateThrough_idx"
+    on "InpatientClaims" ("beneficiaryId", "dateThrough");
+
+create index ${logic.index-create-concurrently} "OutpatientClaims_beneficiaryId_dateThrough_idx"
+    on "OutpatientClaims" ("beneficiaryId", "dateThrough");
+
+create index ${logic.index-create-concurrently} "PartDEvents_beneficiaryId_prescriptionFillDate_idx"
+    on "PartDEvents" ("beneficiaryId", "prescriptionFillDate");
+
+create index ${logic.index-create-concurrently} "SNFClaims_beneficiaryId_dateThrough_idx"
+    on "SNFClaims" ("beneficiaryId", "dateThrough");
@@ -0,0 +1,25 @@
+/*
+ * Adds a "lastUpdated" column to the beneficiary and claim tables, which the ETL
+ * pipeline stamps whenever it inserts or updates a row. This allows clients to
+ * poll for just the records that have changed since they last checked (e.g. via
+ * FHIR's "_lastUpdated" search parameter). Rows loaded before this column was
+ * added will have a null value.
+ */
+
+alter table "Beneficiaries" add column "lastUpdated" timestamp;
+
+alter table "CarrierClaims" add column "lastUpdated" timestamp;
+
+alter table "DMEClaims" add column "lastUpdated" timestamp;
+
+alter table "HHAClaims" add column "lastUpdated" timestamp;
+
+alter table "HospiceClaims" add column "lastUpdated" timestamp;
+
+alter table "InpatientClaims" add column "lastUpdated" timestamp;
+
+alter table "OutpatientClaims" add column "lastUpdated" timestamp;
+
+alter table "PartDEvents" add column "lastUpdated" timestamp;
+
+alter table "SNFClaims" add column "lastUpdated" timestamp;
@@ -0,0 +1,32 @@
+/*
+ * Adds the indexes needed to efficiently search for beneficiary and claim records
+ * by their "lastUpdated" timestamp. The claims are always searched for by their
+ * beneficiary, so those indexes also include it.
+ */
+
+create index ${logic.index-create-concurrently} "Beneficiaries_lastUpdated_idx"
+    on "Beneficiaries" ("lastUpdated");
+
+create index ${logic.index-create-concurrently} "CarrierClaims_beneficiaryId_lastUpdated_idx"
+    on "CarrierClaims" ("beneficiaryId", "lastUpdated");
+
+create index ${logic.index-create-concurrently} "DMEClaims_beneficiaryId_lastUpdated_idx"
+    on "DMEClaims" ("beneficiaryId", "lastUpdated");
+
+create index ${logic.index-create-concurrently} "HHAClaims_beneficiaryId_lastUpdated_idx"
+    on "HHAClaims" ("beneficiaryId", "lastUpdated");
+
+create index ${logic.index-create-concurrently} "HospiceClaims_beneficiaryId_lastUpdated_idx"
+    on "HospiceClaims" ("beneficiaryId", "lastUpdated");
+
+create index ${logic.index-create-concurrently} "InpatientClaims_beneficiaryId_lastUpdated_idx"
+    on "InpatientClaims" ("beneficiaryId", "lastUpdated");
+
+create index ${logic.index-create-concurrently} "OutpatientClaims_beneficiaryId_lastUpdated_idx"
+    on "OutpatientClaims" ("beneficiaryId", "lastUpdated");
+
+create index ${logic.index-create-concurrently} "PartDEvents_beneficiaryId_lastUpdated_idx"
+    on "PartDEvents" ("beneficiaryId", "lastUpdated");
+
+create index ${logic.index-create-concurrently} "SNFClaims_beneficiaryId_lastUpdated_idx"
+    on "SNFClaims" ("beneficiaryId", "lastUpdated");
@@ -0,0 +1,12 @@
+/*
+ * Records each data set that the ETL pipeline has finished loading, as a new (ever-increasing)
+ * "generation". The server polls the latest generation to know when the data it has cached may
+ * have gone stale.
+ */
+
+create table "LoadGenerations" (
+  "generation" bigint not null,
+  "dataSetTimestamp" timestamp not null,
+  "completed" timestamp not null,
+  constraint "LoadGenerations_pkey" primary key ("generation")
+);
@@ -0,0 +1,24 @@
+/*
+ * Adds a "samhsa" flag column to the claim tables, which the ETL pipeline sets
+ * as it loads each claim: true if the claim contains any SAMHSA-related codes,
+ * false if it doesn't. This allows the server to filter out SAMHSA-related
+ * claims in its queries, rather than after transforming them. Rows loaded before
+ * this column was added will have a null value, until they're backfilled by the
+ * pipeline's "samhsaBackfill" idle task.
+ */
+
+alter table "CarrierClaims" add column "samhsa" boolean;
+
+alter table "DMEClaims" add column "samhsa" boolean;
+
+alter table "HHAClaims" add column "samhsa" boolean;
+
+alter table "HospiceClaims" add column "samhsa" boolean;
+
+alter table "InpatientClaims" add column "samhsa" boolean;
+
+alter table "OutpatientClaims" add column "samhsa" boolean;
+
+alter table "PartDEvents" add column "samhsa" boolean;
+
+alter table "SNFClaims" add column "samhsa" boolean;
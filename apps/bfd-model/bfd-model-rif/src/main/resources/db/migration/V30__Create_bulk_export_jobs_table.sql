@@ -0,0 +1,18 @@
+/*
+ * Tracks the server's bulk exports, so that any of its nodes can report on (or delete) an export,
+ * no matter which node is running it. The exports' files are written to storage that's shared by
+ * all of the nodes.
+ */
+
+create table "BulkExportJobs" (
+  "jobId" varchar(64) not null,
+  "requestUrl" varchar(65536) not null,
+  "transactionTime" timestamp not null,
+  "beneficiaryIds" varchar(65536),
+  "status" varchar(32) not null,
+  "outputs" varchar(1024) not null,
+  "error" varchar(4096),
+  "finishTime" timestamp,
+  "updated" timestamp not null,
+  constraint "BulkExportJobs_pkey" primary key ("jobId")
+);
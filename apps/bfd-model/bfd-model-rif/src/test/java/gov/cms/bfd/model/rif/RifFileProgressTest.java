@@ -0,0 +1,40 @@
+package gov.cms.bfd.model.rif;
+
+import java.time.Duration;
+import java.util.Optional;
+import org.junit.Assert;
+import org.junit.Test;
+
+/** Unit tests for {@link RifFileProgress}. */
+public final class RifFileProgressTest {
+  /** Verifies that {@link RifFileProgress#computeFraction(long, Optional)} works as expected. */
+  @Test
+  public void computeFraction() {
+    Assert.assertEquals(Optional.empty(), RifFileProgress.computeFraction(5L, Optional.empty()));
+    Assert.assertEquals(Optional.of(0.25), RifFileProgress.computeFraction(5L, Optional.of(20L)));
+    Assert.assertEquals(Optional.of(1.0), RifFileProgress.computeFraction(25L, Optional.of(20L)));
+    Assert.assertEquals(Optional.of(1.0), RifFileProgress.computeFraction(0L, Optional.of(0L)));
+  }
+
+  /** Verifies that {@link RifFileProgress#computeRate(long, Duration)} works as expected. */
+  @Test
+  public void computeRate() {
+    Assert.assertEquals(5.0, RifFileProgress.computeRate(10L, Duration.ofSeconds(2)), 0.0001);
+    Assert.assertEquals(0.0, RifFileProgress.computeRate(10L, Duration.ZERO), 0.0001);
+  }
+
+  /**
+   * Verifies that {@link RifFileProgress#computeTimeRemaining(long, Optional, double)} works as
+   * expected.
+   */
+  @Test
+  public void computeTimeRemaining() {
+    Assert.assertEquals(
+        Optional.of(Duration.ofSeconds(3)),
+        RifFileProgress.computeTimeRemaining(40L, Optional.of(100L), 20.0));
+    Assert.assertEquals(
+        Optional.empty(), RifFileProgress.computeTimeRemaining(40L, Optional.empty(), 20.0));
+    Assert.assertEquals(
+        Optional.empty(), RifFileProgress.computeTimeRemaining(0L, Optional.of(100L), 0.0));
+  }
+}
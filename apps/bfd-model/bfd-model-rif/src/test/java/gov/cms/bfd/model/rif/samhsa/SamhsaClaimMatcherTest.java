@@ -0,0 +1,97 @@
+package gov.cms.bfd.model.rif.samhsa;
+
+import gov.cms.bfd.model.rif.Beneficiary;
+import gov.cms.bfd.model.rif.CarrierClaim;
+import gov.cms.bfd.model.rif.CarrierClaimLine;
+import gov.cms.bfd.model.rif.InpatientClaim;
+import gov.cms.bfd.model.rif.PartDEvent;
+import java.util.Optional;
+import org.junit.Assert;
+import org.junit.Test;
+
+/** Unit tests for {@link SamhsaClaimMatcher}. */
+public final class SamhsaClaimMatcherTest {
+  private static final String SAMPLE_SAMHSA_CPT_CODE = "4320F";
+  private static final String SAMPLE_SAMHSA_ICD_9_DIAGNOSIS_CODE = "29189";
+  private static final String SAMPLE_SAMHSA_ICD_10_DIAGNOSIS_CODE = "F10.10";
+
+  /**
+   * Verifies that {@link SamhsaClaimMatcher#test(Object)} returns <code>false</code> for claims
+   * that have no SAMHSA-related codes.
+   */
+  @Test
+  public void nonSamhsaRelatedClaims() {
+    SamhsaClaimMatcher matcher = new SamhsaClaimMatcher();
+
+    CarrierClaim carrierClaim = new CarrierClaim();
+    carrierClaim.setDiagnosis2Code(Optional.of("J449"));
+    carrierClaim.setDiagnosis2CodeVersion(Optional.of('0'));
+    CarrierClaimLine carrierClaimLine = new CarrierClaimLine();
+    carrierClaimLine.setHcpcsCode(Optional.of("99213"));
+    carrierClaim.getLines().add(carrierClaimLine);
+    Assert.assertFalse(matcher.test(carrierClaim));
+
+    Assert.assertFalse(matcher.test(new InpatientClaim()));
+    Assert.assertFalse(matcher.test(new PartDEvent()));
+  }
+
+  /**
+   * Verifies that {@link SamhsaClaimMatcher#test(Object)} returns <code>true</code> for claims with
+   * SAMHSA-related ICD-9 and ICD-10 diagnosis codes, regardless of their formatting.
+   */
+  @Test
+  public void samhsaRelatedDiagnosisCodes() {
+    SamhsaClaimMatcher matcher = new SamhsaClaimMatcher();
+
+    CarrierClaim icd9Claim = new CarrierClaim();
+    icd9Claim.setDiagnosis2Code(Optional.of(SAMPLE_SAMHSA_ICD_9_DIAGNOSIS_CODE));
+    icd9Claim.setDiagnosis2CodeVersion(Optional.of('9'));
+    Assert.assertTrue(matcher.test(icd9Claim));
+
+    InpatientClaim icd10Claim = new InpatientClaim();
+    icd10Claim.setDiagnosis2Code(Optional.of(SAMPLE_SAMHSA_ICD_10_DIAGNOSIS_CODE.toLowerCase()));
+    icd10Claim.setDiagnosis2CodeVersion(Optional.of('0'));
+    Assert.assertTrue(matcher.test(icd10Claim));
+
+    // The same code, but under the other ICD version, isn't SAMHSA-related.
+    InpatientClaim wrongVersionClaim = new InpatientClaim();
+    wrongVersionClaim.setDiagnosis2Code(Optional.of(SAMPLE_SAMHSA_ICD_10_DIAGNOSIS_CODE));
+    wrongVersionClaim.setDiagnosis2CodeVersion(Optional.of('9'));
+    Assert.assertFalse(matcher.test(wrongVersionClaim));
+  }
+
+  /**
+   * Verifies that {@link SamhsaClaimMatcher#test(Object)} returns <code>true</code> for claims
+   * whose ICD codes have an unknown version, to be safe.
+   */
+  @Test
+  public void unknownIcdVersion() {
+    SamhsaClaimMatcher matcher = new SamhsaClaimMatcher();
+
+    CarrierClaim claim = new CarrierClaim();
+    claim.setDiagnosis2Code(Optional.of("J449"));
+    claim.setDiagnosis2CodeVersion(Optional.of('U'));
+    Assert.assertTrue(matcher.test(claim));
+  }
+
+  /**
+   * Verifies that {@link SamhsaClaimMatcher#test(Object)} returns <code>true</code> for claims with
+   * a SAMHSA-related CPT code on one of their lines.
+   */
+  @Test
+  public void samhsaRelatedLineCptCode() {
+    SamhsaClaimMatcher matcher = new SamhsaClaimMatcher();
+
+    CarrierClaim claim = new CarrierClaim();
+    CarrierClaimLine claimLine = new CarrierClaimLine();
+    claimLine.setHcpcsCode(Optional.of(SAMPLE_SAMHSA_CPT_CODE));
+    claim.getLines().add(claimLine);
+    Assert.assertTrue(matcher.test(claim));
+  }
+
+  /** Verifies that {@link SamhsaClaimMatcher#test(Object)} rejects entities that aren't claims. */
+  @Test(expected = IllegalArgumentException.class)
+  public void unsupportedType() {
+    new SamhsaClaimMatcher().test(new Beneficiary());
+  }
+}
@@ -6,8 +6,10 @@ import gov.cms.bfd.model.rif.RifFileType;
 import gov.cms.bfd.pipeline.rif.extract.ExtractionOptions;
 import gov.cms.bfd.pipeline.rif.extract.s3.DataSetManifest;
 import gov.cms.bfd.pipeline.rif.load.LoadAppOptions;
-import gov.cms.bfd.pipeline.rif.load.RifLoaderIdleTasks;
 import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.Optional;
 import org.apache.commons.codec.DecoderException;
 import org.apache.commons.codec.binary.Hex;
@@ -40,6 +42,35 @@ public final class AppConfiguration implements Serializable {
    */
   public static final String ENV_VAR_KEY_ALLOWED_RIF_TYPE = "DATA_SET_TYPE_ALLOWED";
 
+  /**
+   * The name of the environment variable that should be used to provide the {@link
+   * #getExtractionOptions()} {@link ExtractionOptions#isStreamingDownloadsEnabled()} value. This
+   * is optional and defaults to <code>false</code>.
+   */
+  public static final String ENV_VAR_KEY_STREAMING_DOWNLOADS = "S3_STREAMING_DOWNLOADS";
+
+  /**
+   * The name of the environment variable that should be used to provide the {@link
+   * #getExtractionOptions()} {@link ExtractionOptions#getDownloadThreads()} value. This is optional
+   * and defaults to {@link ExtractionOptions#DEFAULT_DOWNLOAD_THREADS}.
+   */
+  public static final String ENV_VAR_KEY_DOWNLOAD_THREADS = "S3_DOWNLOAD_THREADS";
+
+  /**
+   * The name of the environment variable that should be used to provide the {@link
+   * #getExtractionOptions()} {@link ExtractionOptions#getPrefetchDepth()} value. This is optional
+   * and defaults to {@link ExtractionOptions#DEFAULT_PREFETCH_DEPTH}.
+   */
+  public static final String ENV_VAR_KEY_PREFETCH_DEPTH = "S3_PREFETCH_DEPTH";
+
+  /**
+   * The name of the environment variable that should be used to provide the {@link
+   * #getExtractionOptions()} {@link ExtractionOptions#getLocalDataSetsDirectory()} value. This is
+   * optional: when it's specified, data sets will be read from that local directory instead of S3,
+   * and the {@link #ENV_VAR_KEY_BUCKET} value and AWS credentials will not be required.
+   */
+  public static final String ENV_VAR_KEY_LOCAL_DATA_SETS_DIR = "LOCAL_DATA_SETS_DIR";
+
   /**
    * The name of the environment variable that should be used to provide the {@link
    * #getLoadOptions()} {@link LoadAppOptions#getHicnHashIterations()} value.
@@ -95,18 +126,67 @@ public final class AppConfiguration implements Serializable {
    */
   public static final String ENV_VAR_KEY_FIXUP_THREADS = "FIXUP_THREADS";
 
+  /**
+   * The name of the environment variable that should be used to provide the {@link
+   * #getMetricsPort()} value. This is optional: when it's not specified, metrics will not be served.
+   */
+  public static final String ENV_VAR_KEY_METRICS_PORT = "METRICS_PORT";
+
+  /**
+   * The name of the environment variable that should be used to provide the {@link
+   * #getCoordinationNodeId()} value. This is optional: when it's not specified, this node will
+   * process each data set on its own.
+   */
+  public static final String ENV_VAR_KEY_COORDINATION_NODE_ID = "COORDINATION_NODE_ID";
+
   private final ExtractionOptions extractionOptions;
   private final LoadAppOptions loadOptions;
+  private final Integer metricsPort;
+  private final String coordinationNodeId;
 
   /**
    * Constructs a new {@link AppConfiguration} instance.
    *
    * @param extractionOptions the value to use for {@link #getExtractionOptions()}
    * @param loadOptions the value to use for {@link #getLoadOptions()}
+   * @param metricsPort the value to use for {@link #getMetricsPort()}, or <code>null</code> if
+   *     metrics should not be served
+   * @param coordinationNodeId the value to use for {@link #getCoordinationNodeId()}, or <code>null
+   *     </code> if this node should process each data set on its own
    */
-  public AppConfiguration(ExtractionOptions extractionOptions, LoadAppOptions loadOptions) {
+  public AppConfiguration(
+      ExtractionOptions extractionOptions,
+      LoadAppOptions loadOptions,
+      Integer metricsPort,
+      String coordinationNodeId) {
     this.extractionOptions = extractionOptions;
     this.loadOptions = loadOptions;
+    this.metricsPort = metricsPort;
+    this.coordinationNodeId = coordinationNodeId;
+  }
+
+  /**
+   * Constructs a new {@link AppConfiguration} instance, which will process each data set on its
+   * own.
+   *
+   * @param extractionOptions the value to use for {@link #getExtractionOptions()}
+   * @param loadOptions the value to use for {@link #getLoadOptions()}
+   * @param metricsPort the value to use for {@link #getMetricsPort()}, or <code>null</code> if
+   *     metrics should not be served
+   */
+  public AppConfiguration(
+      ExtractionOptions extractionOptions, LoadAppOptions loadOptions, Integer metricsPort) {
+    this(extractionOptions, loadOptions, metricsPort, null);
+  }
+
+  /**
+   * Constructs a new {@link AppConfiguration} instance, which will not serve metrics.
+   *
+   * @param extractionOptions the value to use for {@link #getExtractionOptions()}
+   * @param loadOptions the value to use for {@link #getLoadOptions()}
+   */
+  public AppConfiguration(ExtractionOptions extractionOptions, LoadAppOptions loadOptions) {
+    this(extractionOptions, loadOptions, null);
   }
 
   /** @return the {@link ExtractionOptions} that the application will use */
@@ -119,6 +199,22 @@ public final class AppConfiguration implements Serializable {
     return loadOptions;
   }
 
+  /**
+   * @return the TCP port that the application's metrics should be served on (in the Prometheus
+   *     text format, by {@link PrometheusMetricsServer}), if any
+   */
+  public Optional<Integer> getMetricsPort() {
+    return Optional.ofNullable(metricsPort);
+  }
+
+  /**
+   * @return the unique ID of this ETL pipeline node, if it should share the processing of each data
+   *     set with the other nodes (via a <code>DatabaseDataSetCoordinator</code>)
+   */
+  public Optional<String> getCoordinationNodeId() {
+    return Optional.ofNullable(coordinationNodeId);
+  }
+
   /** @see java.lang.Object#toString() */
   @Override
   public String toString() {
@@ -127,6 +223,10 @@ public final class AppConfiguration implements Serializable {
     builder.append(extractionOptions);
     builder.append(", loadOptions=");
     builder.append(loadOptions);
+    builder.append(", metricsPort=");
+    builder.append(metricsPort);
+    builder.append(", coordinationNodeId=");
+    builder.append(coordinationNodeId);
     builder.append("]");
     return builder.toString();
   }
@@ -146,8 +246,19 @@ public final class AppConfiguration implements Serializable {
    *     configuration passed to the application are incomplete or incorrect.
    */
   static AppConfiguration readConfigFromEnvironmentVariables() {
+    String localDataSetsDirText = System.getenv(ENV_VAR_KEY_LOCAL_DATA_SETS_DIR);
+    Path localDataSetsDir = null;
+    if (localDataSetsDirText != null && !localDataSetsDirText.isEmpty()) {
+      localDataSetsDir = Paths.get(localDataSetsDirText);
+      if (!Files.isDirectory(localDataSetsDir))
+        throw new AppConfigurationException(
+            String.format(
+                "Invalid value for configuration environment variable '%s': '%s'",
+                ENV_VAR_KEY_LOCAL_DATA_SETS_DIR, localDataSetsDirText));
+    }
+
     String s3BucketName = System.getenv(ENV_VAR_KEY_BUCKET);
-    if (s3BucketName == null || s3BucketName.isEmpty())
+    if (localDataSetsDir == null && (s3BucketName == null || s3BucketName.isEmpty()))
       throw new AppConfigurationException(
           String.format(
               "Missing value for configuration environment variable '%s'.", ENV_VAR_KEY_BUCKET));
@@ -168,6 +279,48 @@ public final class AppConfiguration implements Serializable {
       allowedRifFileType = null;
     }
 
+    String streamingDownloadsText = System.getenv(ENV_VAR_KEY_STREAMING_DOWNLOADS);
+    boolean streamingDownloadsEnabled = false;
+    if (streamingDownloadsText != null && !streamingDownloadsText.isEmpty()) {
+      Optional<Boolean> streamingDownloads = parseBoolean(streamingDownloadsText);
+      if (!streamingDownloads.isPresent())
+        throw new AppConfigurationException(
+            String.format(
+                "Invalid value for configuration environment variable '%s': '%s'",
+                ENV_VAR_KEY_STREAMING_DOWNLOADS, streamingDownloadsText));
+      streamingDownloadsEnabled = streamingDownloads.get();
+    }
+
+    String downloadThreadsText = System.getenv(ENV_VAR_KEY_DOWNLOAD_THREADS);
+    int downloadThreads = ExtractionOptions.DEFAULT_DOWNLOAD_THREADS;
+    if (downloadThreadsText != null && !downloadThreadsText.isEmpty()) {
+      try {
+        downloadThreads = Integer.parseInt(downloadThreadsText);
+      } catch (NumberFormatException e) {
+        downloadThreads = -1;
+      }
+      if (downloadThreads < 1)
+        throw new AppConfigurationException(
+            String.format(
+                "Invalid value for configuration environment variable '%s': '%s'",
+                ENV_VAR_KEY_DOWNLOAD_THREADS, downloadThreadsText));
+    }
+
+    String prefetchDepthText = System.getenv(ENV_VAR_KEY_PREFETCH_DEPTH);
+    int prefetchDepth = ExtractionOptions.DEFAULT_PREFETCH_DEPTH;
+    if (prefetchDepthText != null && !prefetchDepthText.isEmpty()) {
+      try {
+        prefetchDepth = Integer.parseInt(prefetchDepthText);
+      } catch (NumberFormatException e) {
+        prefetchDepth = -1;
+      }
+      if (prefetchDepth < 0)
+        throw new AppConfigurationException(
+            String.format(
+                "Invalid value for configuration environment variable '%s': '%s'",
+                ENV_VAR_KEY_PREFETCH_DEPTH, prefetchDepthText));
+    }
+
     String hicnHashIterationsText = System.getenv(ENV_VAR_KEY_HICN_HASH_ITERATIONS);
     if (hicnHashIterationsText == null || hicnHashIterationsText.isEmpty())
       throw new AppConfigurationException(
@@ -263,33 +416,74 @@ public final class AppConfiguration implements Serializable {
     }
 
     String fixupThreadsText = System.getenv(ENV_VAR_KEY_FIXUP_THREADS);
-    int fixupThreads = RifLoaderIdleTasks.DEFAULT_PARTITION_COUNT;
+    int fixupThreads = LoadAppOptions.DEFAULT_FIXUP_THREADS;
     if (fixupThreadsText != null && !fixupThreadsText.isEmpty()) {
       fixupThreads = Integer.parseInt(fixupThreadsText);
     }
 
-    /*
-     * Just for convenience: make sure DefaultAWSCredentialsProviderChain
-     * has whatever it needs.
-     */
-    try {
-      DefaultAWSCredentialsProviderChain awsCredentialsProvider =
-          new DefaultAWSCredentialsProviderChain();
-      awsCredentialsProvider.getCredentials();
-    } catch (AmazonClientException e) {
+    String metricsPortText = System.getenv(ENV_VAR_KEY_METRICS_PORT);
+    Integer metricsPort = null;
+    if (metricsPortText != null && !metricsPortText.isEmpty()) {
+      try {
+        metricsPort = Integer.parseInt(metricsPortText);
+      } catch (NumberFormatException e) {
+        metricsPort = -1;
+      }
+      if (metricsPort < 0 || metricsPort > 65535)
+        throw new AppConfigurationException(
+            String.format(
+                "Invalid value for configuration environment variable '%s': '%s'",
+                ENV_VAR_KEY_METRICS_PORT, metricsPortText));
+    }
+
+    String coordinationNodeId = System.getenv(ENV_VAR_KEY_COORDINATION_NODE_ID);
+    if (coordinationNodeId != null && coordinationNodeId.isEmpty()) coordinationNodeId = null;
+    if (coordinationNodeId != null && localDataSetsDir != null)
+      throw new AppConfigurationException(
+          String.format(
+              "Configuration environment variable '%s' is not supported with '%s'.",
+              ENV_VAR_KEY_COORDINATION_NODE_ID, ENV_VAR_KEY_LOCAL_DATA_SETS_DIR));
+    if (coordinationNodeId != null && !idempotencyRequired.get())
       /*
-       * The credentials provider should throw this if it can't find what
-       * it needs.
+       * A node may have to take over (and so reload) a file that a failed node had partially
+       * loaded, which only works if loads are idempotent.
        */
       throw new AppConfigurationException(
           String.format(
-              "Missing configuration for AWS credentials (for %s).",
-              DefaultAWSCredentialsProviderChain.class.getName()),
-          e);
+              "Configuration environment variable '%s' requires '%s' to be 'true'.",
+              ENV_VAR_KEY_COORDINATION_NODE_ID, ENV_VAR_KEY_IDEMPOTENCY_REQUIRED));
+
+    /*
+     * Just for convenience: make sure DefaultAWSCredentialsProviderChain
+     * has whatever it needs (if S3 is going to be used).
+     */
+    if (localDataSetsDir == null) {
+      try {
+        DefaultAWSCredentialsProviderChain awsCredentialsProvider =
+            new DefaultAWSCredentialsProviderChain();
+        awsCredentialsProvider.getCredentials();
+      } catch (AmazonClientException e) {
+        /*
+         * The credentials provider should throw this if it can't find what
+         * it needs.
+         */
+        throw new AppConfigurationException(
+            String.format(
+                "Missing configuration for AWS credentials (for %s).",
+                DefaultAWSCredentialsProviderChain.class.getName()),
+            e);
+      }
     }
 
     return new AppConfiguration(
-        new ExtractionOptions(s3BucketName, allowedRifFileType),
+        new ExtractionOptions(
+            s3BucketName,
+            allowedRifFileType,
+            null,
+            streamingDownloadsEnabled,
+            downloadThreads,
+            prefetchDepth,
+            localDataSetsDir),
         new LoadAppOptions(
             hicnHashIterations,
             hicnHashPepper,
@@ -299,7 +493,9 @@ public final class AppConfiguration implements Serializable {
             loaderThreads,
             idempotencyRequired.get().booleanValue(),
             fixupsEnabled,
-            fixupThreads));
+            fixupThreads),
+        metricsPort,
+        coordinationNodeId);
   }
 
   /**
@@ -0,0 +1,217 @@
+package gov.cms.bfd.pipeline.app;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import gov.cms.bfd.model.rif.RifFileEvent;
+import gov.cms.bfd.model.rif.RifFileProgress;
+import gov.cms.bfd.model.rif.RifFilesEvent;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reports on how far the processing of a data set (i.e. a {@link RifFilesEvent}) has got, both
+ * overall and for its current file: the fraction complete, throughput (in MB/s and records/s), and
+ * an ETA. These are available as {@link Gauge}s in the application's {@link MetricRegistry} while
+ * the data set is being processed, and are also logged periodically.
+ *
+ * <p>The overall fraction complete and ETA are only available once the sizes of all of the data
+ * set's files are known (see {@link gov.cms.bfd.model.rif.RifFile#getSize()}).
+ */
+final class DataSetProgressReporter implements AutoCloseable {
+  private static final Logger LOGGER = LoggerFactory.getLogger(DataSetProgressReporter.class);
+
+  /** How often progress will be logged. */
+  private static final Duration LOG_INTERVAL = Duration.ofMinutes(1);
+
+  private static final double BYTES_PER_MB = 1024.0 * 1024.0;
+
+  /** The prefix for the names of all of the data set progress metrics. */
+  private static final String METRICS_PREFIX =
+      MetricRegistry.name(S3ToDatabaseLoadApp.class.getSimpleName(), "dataSet", "progress");
+
+  private final MetricRegistry appMetrics;
+  private final RifFilesEvent rifFilesEvent;
+  private final long startNanos;
+  private final List<RifFileProgress> finishedFiles;
+  private final ScheduledExecutorService logExecutor;
+  private volatile RifFileProgress currentFile;
+
+  /**
+   * Constructs a new {@link DataSetProgressReporter}, for a data set whose processing is just
+   * starting. It must be {@link #close()}d once the data set has been processed.
+   *
+   * @param appMetrics the {@link MetricRegistry} for the overall application
+   * @param rifFilesEvent the {@link RifFilesEvent} for the data set to report on
+   */
+  DataSetProgressReporter(MetricRegistry appMetrics, RifFilesEvent rifFilesEvent) {
+    this.appMetrics = appMetrics;
+    this.rifFilesEvent = rifFilesEvent;
+    this.startNanos = System.nanoTime();
+    this.finishedFiles = new CopyOnWriteArrayList<>();
+    this.currentFile = null;
+
+    appMetrics.register(
+        metricName("fractionComplete"),
+        (Gauge<Double>) () -> getFractionComplete().orElse(-1.0));
+    appMetrics.register(metricName("bytesPerSecond"), (Gauge<Double>) this::getBytesPerSecond);
+    appMetrics.register(metricName("recordsPerSecond"), (Gauge<Double>) this::getRecordsPerSecond);
+    appMetrics.register(
+        metricName("etaSeconds"),
+        (Gauge<Long>) () -> getEstimatedTimeRemaining().map(Duration::getSeconds).orElse(-1L));
+
+    this.logExecutor =
+        Executors.newSingleThreadScheduledExecutor(
+            r -> {
+              Thread thread = new Thread(r, getClass().getSimpleName());
+              thread.setDaemon(true);
+              return thread;
+            });
+    logExecutor.scheduleAtFixedRate(
+        this::logProgress,
+        LOG_INTERVAL.toMillis(),
+        LOG_INTERVAL.toMillis(),
+        TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * @param name the short name of a data set progress metric
+   * @return the full name to register that metric under
+   */
+  private static String metricName(String name) {
+    return MetricRegistry.name(METRICS_PREFIX, name);
+  }
+
+  /** @param fileProgress the {@link RifFileProgress} of the data set file now being processed */
+  void fileStarted(RifFileProgress fileProgress) {
+    currentFile = fileProgress;
+  }
+
+  /** Records that the data set file that was being processed has finished. */
+  void fileFinished() {
+    if (currentFile == null) throw new IllegalStateException();
+
+    finishedFiles.add(currentFile);
+    currentFile = null;
+  }
+
+  /** @return the number of the data set's bytes that have been consumed so far */
+  private long getBytesConsumed() {
+    RifFileProgress file = currentFile;
+    long bytesConsumed = file != null ? file.getBytesConsumed() : 0L;
+    for (RifFileProgress finishedFile : finishedFiles)
+      bytesConsumed += finishedFile.getBytesConsumed();
+    return bytesConsumed;
+  }
+
+  /** @return the number of the data set's records that have been consumed so far */
+  private long getRecordsConsumed() {
+    RifFileProgress file = currentFile;
+    long recordsConsumed = file != null ? file.getRecordsConsumed() : 0L;
+    for (RifFileProgress finishedFile : finishedFiles)
+      recordsConsumed += finishedFile.getRecordsConsumed();
+    return recordsConsumed;
+  }
+
+  /** @return the total size of the data set's files, if all of their sizes are known */
+  private Optional<Long> getTotalBytes() {
+    long totalBytes = 0L;
+    for (RifFileEvent fileEvent : rifFilesEvent.getFileEvents()) {
+      Optional<Long> fileSize = fileEvent.getFile().getSize();
+      if (!fileSize.isPresent()) return Optional.empty();
+      totalBytes += fileSize.get();
+    }
+    return Optional.of(totalBytes);
+  }
+
+  /** @return how long the data set has been processing for */
+  private Duration getElapsed() {
+    return Duration.ofNanos(System.nanoTime() - startNanos);
+  }
+
+  /** @return the fraction of the data set that has been consumed, if known */
+  private Optional<Double> getFractionComplete() {
+    return RifFileProgress.computeFraction(getBytesConsumed(), getTotalBytes());
+  }
+
+  /** @return the average number of the data set's bytes consumed per second, so far */
+  private double getBytesPerSecond() {
+    return RifFileProgress.computeRate(getBytesConsumed(), getElapsed());
+  }
+
+  /** @return the average number of the data set's records consumed per second, so far */
+  private double getRecordsPerSecond() {
+    return RifFileProgress.computeRate(getRecordsConsumed(), getElapsed());
+  }
+
+  /** @return the estimated time until the data set has been completely consumed, if known */
+  private Optional<Duration> getEstimatedTimeRemaining() {
+    return RifFileProgress.computeTimeRemaining(
+        getBytesConsumed(), getTotalBytes(), getBytesPerSecond());
+  }
+
+  /** Logs the current progress of the data set and its current file. */
+  void logProgress() {
+    try {
+      StringBuilder message = new StringBuilder();
+      message.append(
+          String.format(
+              "Data set progress: %s complete, %.2f MB/s, %.1f records/s, ETA %s (%d of %d files"
+                  + " done).",
+              formatFraction(getFractionComplete()),
+              getBytesPerSecond() / BYTES_PER_MB,
+              getRecordsPerSecond(),
+              formatDuration(getEstimatedTimeRemaining()),
+              finishedFiles.size(),
+              rifFilesEvent.getFileEvents().size()));
+
+      RifFileProgress file = currentFile;
+      if (file != null)
+        message.append(
+            String.format(
+                " Current file '%s': %s complete, %.2f MB/s, %.1f records/s, ETA %s.",
+                file.getFile().getDisplayName(),
+                formatFraction(file.getFractionComplete()),
+                file.getBytesPerSecond() / BYTES_PER_MB,
+                file.getRecordsPerSecond(),
+                formatDuration(file.getEstimatedTimeRemaining())));
+      LOGGER.info(message.toString());
+    } catch (RuntimeException e) {
+      // Don't let a reporting problem stop the periodic logging (or the data set processing).
+      LOGGER.warn("Unable to log data set progress.", e);
+    }
+  }
+
+  /**
+   * @param fraction the fraction to format, if known
+   * @return the specified fraction, formatted as a percentage
+   */
+  private static String formatFraction(Optional<Double> fraction) {
+    return fraction.map(f -> String.format("%.1f%%", f * 100)).orElse("(unknown)");
+  }
+
+  /**
+   * @param duration the {@link Duration} to format, if known
+   * @return the specified {@link Duration}, formatted as <code>h:mm:ss</code>
+   */
+  private static String formatDuration(Optional<Duration> duration) {
+    if (!duration.isPresent()) return "(unknown)";
+
+    long seconds = duration.get().getSeconds();
+    return String.format("%d:%02d:%02d", seconds / 3600, (seconds % 3600) / 60, seconds % 60);
+  }
+
+  /** @see java.lang.AutoCloseable#close() */
+  @Override
+  public void close() {
+    logExecutor.shutdownNow();
+    logProgress();
+    appMetrics.removeMatching((name, metric) -> name.startsWith(METRICS_PREFIX + "."));
+  }
+}
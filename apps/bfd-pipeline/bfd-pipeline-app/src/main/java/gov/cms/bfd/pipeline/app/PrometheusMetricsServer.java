@@ -0,0 +1,331 @@
+package gov.cms.bfd.pipeline.app;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Snapshot;
+import com.codahale.metrics.Timer;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An embedded HTTP server that exports the application's metrics in the <a
+ * href="https://prometheus.io/docs/instrumenting/exposition_formats/">Prometheus text format</a>,
+ * so that they can be scraped and charted live. It exports the application's {@link
+ * MetricRegistry}, along with any others (e.g. each in-progress RIF file's metrics) that have been
+ * added via {@link #addRegistry(MetricRegistry, String, String)}.
+ *
+ * <p>Metrics are mapped to Prometheus types as follows:
+ *
+ * <ul>
+ *   <li>{@link Gauge}s with numeric (or boolean) values are exported as <code>gauge</code>s. Others
+ *       are skipped.
+ *   <li>{@link Counter}s are exported as <code>gauge</code>s, as they can be decremented.
+ *   <li>{@link Meter}s are exported as <code>counter</code>s (with a <code>_total</code> suffix),
+ *       plus a <code>_rate_1m</code> <code>gauge</code>.
+ *   <li>{@link Histogram}s are exported as <code>summary</code>s, with their percentiles as <code>
+ *       quantile</code>s.
+ *   <li>{@link Timer}s are exported as <code>summary</code>s in seconds (with a <code>_seconds
+ *       </code> suffix), with their percentiles as <code>quantile</code>s.
+ * </ul>
+ *
+ * <p>Each <code>summary</code>'s <code>_sum</code> is estimated as its mean times its count, as
+ * Dropwizard doesn't track the actual sum of the recorded values.
+ */
+public final class PrometheusMetricsServer {
+  private static final Logger LOGGER = LoggerFactory.getLogger(PrometheusMetricsServer.class);
+
+  /** The path that metrics will be served at. */
+  static final String METRICS_PATH = "/metrics";
+
+  /** The content type of the Prometheus text format. */
+  private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+  /** The percentiles that will be exported for each {@link Histogram} and {@link Timer}. */
+  private static final double[] QUANTILES = {0.5, 0.75, 0.95, 0.98, 0.99, 0.999};
+
+  private static final double NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+  private final MetricRegistry appMetrics;
+
+  /** The additional {@link MetricRegistry}s to export, mapped to the label text for each. */
+  private final Map<MetricRegistry, String> labeledRegistries;
+
+  private HttpServer server;
+
+  /**
+   * Constructs a new {@link PrometheusMetricsServer}. It won't serve anything until {@link
+   * #start(int)} is called.
+   *
+   * @param appMetrics the {@link MetricRegistry} for the overall application
+   */
+  public PrometheusMetricsServer(MetricRegistry appMetrics) {
+    this.appMetrics = appMetrics;
+    this.labeledRegistries = new ConcurrentHashMap<>();
+    this.server = null;
+  }
+
+  /**
+   * Starts serving metrics at {@link #METRICS_PATH} on the specified port.
+   *
+   * @param port the TCP port to listen on, or <code>0</code> to use any free port
+   */
+  public synchronized void start(int port) {
+    if (server != null) throw new IllegalStateException();
+
+    try {
+      server = HttpServer.create(new InetSocketAddress(port), 0);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    server.createContext(METRICS_PATH, this::handleMetricsRequest);
+    server.setExecutor(
+        Executors.newSingleThreadExecutor(
+            r -> {
+              Thread thread = new Thread(r, getClass().getSimpleName());
+              thread.setDaemon(true);
+              return thread;
+            }));
+    server.start();
+    LOGGER.info("Serving metrics at: 'http://localhost:{}{}'.", getPort(), METRICS_PATH);
+  }
+
+  /** @return the TCP port that metrics are being served on, once {@link #start(int)} is called */
+  public synchronized int getPort() {
+    if (server == null) throw new IllegalStateException();
+    return server.getAddress().getPort();
+  }
+
+  /** Stops serving metrics, if {@link #start(int)} was called. */
+  public synchronized void stop() {
+    if (server == null) return;
+
+    server.stop(0);
+    server = null;
+  }
+
+  /**
+   * Adds the specified {@link MetricRegistry} to those being exported, until it's removed via
+   * {@link #removeRegistry(MetricRegistry)}. Its metrics will be labeled, so that they can be told
+   * apart from any other registry's metrics of the same names.
+   *
+   * @param registry the {@link MetricRegistry} to export
+   * @param labelName the name of the label to apply to the registry's metrics
+   * @param labelValue the value of the label to apply to the registry's metrics
+   */
+  public void addRegistry(MetricRegistry registry, String labelName, String labelValue) {
+    labeledRegistries.put(
+        registry, String.format("%s=\"%s\"", sanitizeName(labelName), escapeLabel(labelValue)));
+  }
+
+  /**
+   * @param registry a {@link MetricRegistry} that was previously added via {@link
+   *     #addRegistry(MetricRegistry, String, String)}, which should no longer be exported
+   */
+  public void removeRegistry(MetricRegistry registry) {
+    labeledRegistries.remove(registry);
+  }
+
+  /**
+   * Serves a request for the metrics.
+   *
+   * @param exchange the {@link HttpExchange} for the request
+   * @throws IOException (indicates a problem writing the response)
+   */
+  private void handleMetricsRequest(HttpExchange exchange) throws IOException {
+    try {
+      byte[] body = formatMetrics().getBytes(StandardCharsets.UTF_8);
+      exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+      exchange.sendResponseHeaders(200, body.length);
+      try (OutputStream responseStream = exchange.getResponseBody()) {
+        responseStream.write(body);
+      }
+    } catch (RuntimeException e) {
+      LOGGER.warn("Unable to serve metrics.", e);
+      exchange.sendResponseHeaders(500, -1);
+    } finally {
+      exchange.close();
+    }
+  }
+
+  /** @return all of the exported metrics, in the Prometheus text format */
+  String formatMetrics() {
+    // Samples must be grouped by metric family, across all of the registries.
+    SortedMap<String, MetricFamily> families = new TreeMap<>();
+    collect(families, appMetrics, "");
+    for (Entry<MetricRegistry, String> labeledRegistry : labeledRegistries.entrySet())
+      collect(families, labeledRegistry.getKey(), labeledRegistry.getValue());
+
+    StringBuilder text = new StringBuilder();
+    for (Entry<String, MetricFamily> family : families.entrySet()) {
+      text.append(String.format("# TYPE %s %s\n", family.getKey(), family.getValue().type));
+      for (String sample : family.getValue().samples) text.append(sample).append('\n');
+    }
+    return text.toString();
+  }
+
+  /**
+   * Adds the samples for all of the metrics in the specified {@link MetricRegistry} to the
+   * specified {@link MetricFamily}s.
+   *
+   * @param families the {@link MetricFamily}s to add to, keyed by name
+   * @param registry the {@link MetricRegistry} to collect the metrics of
+   * @param labels the label text to apply to each of the registry's samples, if any
+   */
+  private static void collect(
+      SortedMap<String, MetricFamily> families, MetricRegistry registry, String labels) {
+    for (Entry<String, Gauge> gauge : registry.getGauges().entrySet()) {
+      Object value;
+      try {
+        value = gauge.getValue().getValue();
+      } catch (RuntimeException e) {
+        // A broken gauge shouldn't take out the rest of the metrics.
+        LOGGER.debug("Unable to read gauge: '{}'.", gauge.getKey(), e);
+        continue;
+      }
+
+      double number;
+      if (value instanceof Number) number = ((Number) value).doubleValue();
+      else if (value instanceof Boolean) number = ((Boolean) value) ? 1 : 0;
+      else continue;
+      family(families, sanitizeName(gauge.getKey()), "gauge")
+          .add(sanitizeName(gauge.getKey()), labels, number);
+    }
+
+    for (Entry<String, Counter> counter : registry.getCounters().entrySet()) {
+      String name = sanitizeName(counter.getKey());
+      family(families, name, "gauge").add(name, labels, counter.getValue().getCount());
+    }
+
+    for (Entry<String, Meter> meter : registry.getMeters().entrySet()) {
+      String name = sanitizeName(meter.getKey());
+      family(families, name + "_total", "counter")
+          .add(name + "_total", labels, meter.getValue().getCount());
+      family(families, name + "_rate_1m", "gauge")
+          .add(name + "_rate_1m", labels, meter.getValue().getOneMinuteRate());
+    }
+
+    for (Entry<String, Histogram> histogram : registry.getHistograms().entrySet()) {
+      String name = sanitizeName(histogram.getKey());
+      family(families, name, "summary")
+          .addSummary(
+              name, labels, histogram.getValue().getSnapshot(), histogram.getValue().getCount(), 1);
+    }
+
+    for (Entry<String, Timer> timer : registry.getTimers().entrySet()) {
+      String name = sanitizeName(timer.getKey()) + "_seconds";
+      family(families, name, "summary")
+          .addSummary(
+              name,
+              labels,
+              timer.getValue().getSnapshot(),
+              timer.getValue().getCount(),
+              NANOS_PER_SECOND);
+    }
+  }
+
+  /**
+   * @param families the {@link MetricFamily}s, keyed by name
+   * @param name the name of the {@link MetricFamily} to get
+   * @param type the Prometheus type of the {@link MetricFamily} to get
+   * @return the existing {@link MetricFamily} with the specified name, or a new one if there isn't
+   *     one yet
+   */
+  private static MetricFamily family(
+      SortedMap<String, MetricFamily> families, String name, String type) {
+    return families.computeIfAbsent(name, n -> new MetricFamily(type));
+  }
+
+  /**
+   * @param metricName a Dropwizard metric name
+   * @return the specified name, with any characters that aren't allowed in Prometheus metric names
+   *     replaced by underscores (and prefixed by one if it's empty or starts with a digit)
+   */
+  static String sanitizeName(String metricName) {
+    String name = metricName.replaceAll("[^a-zA-Z0-9_:]", "_");
+    return name.isEmpty() || Character.isDigit(name.charAt(0)) ? "_" + name : name;
+  }
+
+  /**
+   * @param labelValue a label value
+   * @return the specified label value, escaped for the Prometheus text format
+   */
+  private static String escapeLabel(String labelValue) {
+    return labelValue.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+  }
+
+  /** Collects the type and samples for a metric family (i.e. all of the metrics of one name). */
+  private static final class MetricFamily {
+    private final String type;
+    private final List<String> samples;
+
+    /** @param type the Prometheus type of this metric family */
+    MetricFamily(String type) {
+      this.type = type;
+      this.samples = new ArrayList<>();
+    }
+
+    /**
+     * @param name the name of the sample
+     * @param labels the sample's label text, if any
+     * @param value the sample's value
+     */
+    void add(String name, String labels, double value) {
+      samples.add(
+          String.format(
+              "%s%s %s", name, labels.isEmpty() ? "" : "{" + labels + "}", formatValue(value)));
+    }
+
+    /**
+     * @param name the name of the summary
+     * @param labels the summary's label text, if any
+     * @param snapshot the {@link Snapshot} of the summary's values
+     * @param count the number of values that have been recorded
+     * @param divisor the number to divide the {@link Snapshot}'s values by, to convert their units
+     *     (which is also applied to the summary's sum)
+     */
+    void addSummary(String name, String labels, Snapshot snapshot, long count, double divisor) {
+      String labelsPrefix = labels.isEmpty() ? "" : labels + ",";
+      for (double quantile : QUANTILES)
+        add(
+            name,
+            String.format("%squantile=\"%s\"", labelsPrefix, quantile),
+            snapshot.getValue(quantile) / divisor);
+      /*
+       * Dropwizard doesn't track the sum of all recorded values, so it's estimated from the
+       * snapshot's (sampled) mean, which is as close as its reservoirs allow.
+       */
+      add(name + "_sum", labels, snapshot.getMean() * count / divisor);
+      add(name + "_count", labels, count);
+    }
+
+    /**
+     * @param value a sample value
+     * @return the specified value, formatted for the Prometheus text format
+     */
+    private static String formatValue(double value) {
+      if (Double.isNaN(value)) return "NaN";
+      if (Double.isInfinite(value)) return value > 0 ? "+Inf" : "-Inf";
+      if (value == Math.rint(value) && Math.abs(value) < 1e15) return Long.toString((long) value);
+      return Double.toString(value);
+    }
+  }
+}
@@ -10,12 +10,15 @@ import gov.cms.bfd.model.rif.RifFileEvent;
 import gov.cms.bfd.model.rif.RifFileRecords;
 import gov.cms.bfd.model.rif.RifFilesEvent;
 import gov.cms.bfd.pipeline.rif.extract.RifFilesProcessor;
+import gov.cms.bfd.pipeline.rif.extract.s3.DataSetCoordinator;
 import gov.cms.bfd.pipeline.rif.extract.s3.DataSetMonitor;
 import gov.cms.bfd.pipeline.rif.extract.s3.DataSetMonitorListener;
+import gov.cms.bfd.pipeline.rif.load.DatabaseDataSetCoordinator;
 import gov.cms.bfd.pipeline.rif.load.RifLoader;
 import gov.cms.bfd.pipeline.rif.load.RifRecordLoadResult;
 import java.lang.Thread.UncaughtExceptionHandler;
 import java.time.Duration;
+import java.time.Instant;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 import org.slf4j.Logger;
@@ -72,6 +75,11 @@ public final class S3ToDatabaseLoadApp {
         Slf4jReporter.forRegistry(appMetrics).outputTo(LOGGER).build();
     appMetricsReporter.start(1, TimeUnit.HOURS);
 
+    // If configured, also serve the metrics live, so that they can be scraped and charted.
+    PrometheusMetricsServer metricsServer = new PrometheusMetricsServer(appMetrics);
+    if (appConfig.getMetricsPort().isPresent())
+      metricsServer.start(appConfig.getMetricsPort().get());
+
     /*
      * Create the services that will be used to handle each stage in the
      * extract, transform, and load process.
@@ -121,20 +129,47 @@ public final class S3ToDatabaseLoadApp {
              * Each ETL stage produces a stream that will be handed off to
              * and processed by the next stage.
              */
-            for (RifFileEvent rifFileEvent : rifFilesEvent.getFileEvents()) {
-              Slf4jReporter dataSetFileMetricsReporter =
-                  Slf4jReporter.forRegistry(rifFileEvent.getEventMetrics())
-                      .outputTo(LOGGER)
-                      .build();
-              dataSetFileMetricsReporter.start(2, TimeUnit.MINUTES);
-
-              RifFileRecords rifFileRecords = rifProcessor.produceRecords(rifFileEvent);
-              rifLoader.process(rifFileRecords, errorHandler, resultHandler);
+            DataSetProgressReporter dataSetProgress =
+                new DataSetProgressReporter(appMetrics, rifFilesEvent);
+            try {
+              for (RifFileEvent rifFileEvent : rifFilesEvent.getFileEvents()) {
+                Slf4jReporter dataSetFileMetricsReporter =
+                    Slf4jReporter.forRegistry(rifFileEvent.getEventMetrics())
+                        .outputTo(LOGGER)
+                        .build();
+                dataSetFileMetricsReporter.start(2, TimeUnit.MINUTES);
+                metricsServer.addRegistry(
+                    rifFileEvent.getEventMetrics(),
+                    "rif_file_type",
+                    rifFileEvent.getFile().getFileType().name());
 
-              dataSetFileMetricsReporter.stop();
-              dataSetFileMetricsReporter.report();
+                try {
+                  RifFileRecords rifFileRecords = rifProcessor.produceRecords(rifFileEvent);
+                  dataSetProgress.fileStarted(rifFileRecords.getProgress());
+                  rifLoader.process(rifFileRecords, errorHandler, resultHandler);
+                  dataSetProgress.fileFinished();
+                } finally {
+                  // Don't leave a failed file's metrics behind in the exported ones.
+                  metricsServer.removeRegistry(rifFileEvent.getEventMetrics());
+                  dataSetFileMetricsReporter.stop();
+                  dataSetFileMetricsReporter.report();
+                }
+              }
+            } finally {
+              // Processing may have failed or been cancelled (see RifFilesEvent#isCancelled()).
+              dataSetProgress.close();
+              timerDataSet.stop();
             }
-            timerDataSet.stop();
+          }
+
+          /**
+           * @see
+           *     gov.cms.bfd.pipeline.rif.extract.s3.DataSetMonitorListener#dataSetComplete(java.time.Instant)
+           */
+          @Override
+          public void dataSetComplete(Instant dataSetTimestamp) {
+            // Let the servers know that their cached responses may now be stale.
+            rifLoader.recordLoadGeneration(dataSetTimestamp);
           }
 
           /**
@@ -154,6 +189,17 @@ public final class S3ToDatabaseLoadApp {
           }
         };
 
+    // If configured, share the processing of each data set with the other pipeline nodes.
+    DataSetCoordinator coordinator = null;
+    if (appConfig.getCoordinationNodeId().isPresent()) {
+      coordinator =
+          new DatabaseDataSetCoordinator(
+              appMetrics, rifLoader.getDataSource(), appConfig.getCoordinationNodeId().get());
+      LOGGER.info(
+          "Coordinating data set processing with other nodes, as node '{}'.",
+          appConfig.getCoordinationNodeId().get());
+    }
+
     /*
      * Create and start the DataSetMonitor that will find data sets as
      * they're pushed into S3. As each data set is found, it will be handed
@@ -164,8 +210,9 @@ public final class S3ToDatabaseLoadApp {
             appMetrics,
             appConfig.getExtractionOptions(),
             (int) S3_SCAN_INTERVAL.toMillis(),
-            dataSetMonitorListener);
-    registerShutdownHook(appMetrics, s3Monitor);
+            dataSetMonitorListener,
+            coordinator);
+    registerShutdownHook(appMetrics, s3Monitor, metricsServer);
     s3Monitor.start();
     LOGGER.info("Monitoring S3 for new data sets to process...");
 
@@ -206,8 +253,10 @@ public final class S3ToDatabaseLoadApp {
    * @param metrics the {@link MetricRegistry} to log out before the application exits
    * @param s3Monitor the {@link DataSetMonitor} to be gracefully shut down before the application
    *     exits
+   * @param metricsServer the {@link PrometheusMetricsServer} to stop before the application exits
    */
-  private static void registerShutdownHook(MetricRegistry metrics, DataSetMonitor s3Monitor) {
+  private static void registerShutdownHook(
+      MetricRegistry metrics, DataSetMonitor s3Monitor, PrometheusMetricsServer metricsServer) {
     Runtime.getRuntime()
         .addShutdownHook(
             new Thread(
@@ -225,6 +274,7 @@ public final class S3ToDatabaseLoadApp {
 
                     // Ensure that the final metrics get logged.
                     Slf4jReporter.forRegistry(metrics).outputTo(LOGGER).build().report();
+                    metricsServer.stop();
 
                     LOGGER.info("Application has finished shutting down.");
 
@@ -0,0 +1,98 @@
+package gov.cms.bfd.pipeline.app;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Scanner;
+import java.util.concurrent.TimeUnit;
+import org.junit.Assert;
+import org.junit.Test;
+
+/** Unit tests for {@link PrometheusMetricsServer}. */
+public final class PrometheusMetricsServerTest {
+  /**
+   * Verifies that {@link PrometheusMetricsServer#formatMetrics()} exports each type of metric, and
+   * labels the metrics of added registries.
+   */
+  @Test
+  public void formatMetrics() {
+    MetricRegistry appMetrics = new MetricRegistry();
+    appMetrics.register("app.gauge", (Gauge<Integer>) () -> 42);
+    appMetrics.meter("app.meter").mark(3);
+    appMetrics.timer("app.timer").update(2, TimeUnit.SECONDS);
+    MetricRegistry fileMetrics = new MetricRegistry();
+    fileMetrics.timer("app.timer").update(4, TimeUnit.SECONDS);
+
+    PrometheusMetricsServer metricsServer = new PrometheusMetricsServer(appMetrics);
+    metricsServer.addRegistry(fileMetrics, "rif_file_type", "CARRIER");
+    String metrics = metricsServer.formatMetrics();
+
+    Assert.assertTrue(metrics.contains("# TYPE app_gauge gauge\napp_gauge 42\n"));
+    Assert.assertTrue(metrics.contains("# TYPE app_meter_total counter\napp_meter_total 3\n"));
+    Assert.assertEquals(1, countOccurrences(metrics, "# TYPE app_timer_seconds summary\n"));
+    Assert.assertTrue(metrics.contains("app_timer_seconds{quantile=\"0.99\"} 2\n"));
+    Assert.assertTrue(metrics.contains("app_timer_seconds_sum 2\n"));
+    Assert.assertTrue(metrics.contains("app_timer_seconds_count 1\n"));
+    Assert.assertTrue(
+        metrics.contains("app_timer_seconds{rif_file_type=\"CARRIER\",quantile=\"0.99\"} 4\n"));
+
+    metricsServer.removeRegistry(fileMetrics);
+    Assert.assertFalse(metricsServer.formatMetrics().contains("CARRIER"));
+  }
+
+  /**
+   * Verifies that {@link PrometheusMetricsServer#sanitizeName(String)} always produces a valid
+   * Prometheus metric name, even for empty names.
+   */
+  @Test
+  public void sanitizeName() {
+    Assert.assertEquals("app_meter", PrometheusMetricsServer.sanitizeName("app.meter"));
+    Assert.assertEquals("_1_meter", PrometheusMetricsServer.sanitizeName("1-meter"));
+    Assert.assertEquals("_", PrometheusMetricsServer.sanitizeName(""));
+  }
+
+  /**
+   * Verifies that {@link PrometheusMetricsServer} serves the metrics over HTTP.
+   *
+   * @throws Exception (indicates a test error)
+   */
+  @Test
+  public void serveMetrics() throws Exception {
+    MetricRegistry appMetrics = new MetricRegistry();
+    appMetrics.counter("app.counter").inc();
+
+    PrometheusMetricsServer metricsServer = new PrometheusMetricsServer(appMetrics);
+    metricsServer.start(0);
+    try {
+      URL metricsUrl =
+          new URL(
+              String.format(
+                  "http://localhost:%d%s",
+                  metricsServer.getPort(), PrometheusMetricsServer.METRICS_PATH));
+      HttpURLConnection connection = (HttpURLConnection) metricsUrl.openConnection();
+      Assert.assertEquals(200, connection.getResponseCode());
+      Assert.assertTrue(connection.getContentType().startsWith("text/plain; version=0.0.4"));
+      try (InputStream responseStream = connection.getInputStream();
+          Scanner responseScanner =
+              new Scanner(responseStream, StandardCharsets.UTF_8.name()).useDelimiter("\\A")) {
+        Assert.assertTrue(responseScanner.next().contains("app_counter 1\n"));
+      }
+    } finally {
+      metricsServer.stop();
+    }
+  }
+
+  /**
+   * @param text the text to search
+   * @param substring the substring to search for
+   * @return the number of times that the specified substring occurs in the specified text
+   */
+  private static int countOccurrences(String text, String substring) {
+    int count = 0;
+    for (int i = text.indexOf(substring); i >= 0; i = text.indexOf(substring, i + 1)) count++;
+    return count;
+  }
+}
@@ -6,6 +6,8 @@ import gov.cms.bfd.model.rif.RifFileType;
 import gov.cms.bfd.pipeline.rif.extract.s3.DataSetManifest;
 import gov.cms.bfd.pipeline.rif.extract.s3.S3Utilities;
 import java.io.Serializable;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.Optional;
 import java.util.function.Predicate;
 
@@ -13,9 +15,19 @@ import java.util.function.Predicate;
 public final class ExtractionOptions implements Serializable {
   private static final long serialVersionUID = 1L;
 
+  /** The default value for {@link #getDownloadThreads()}. */
+  public static final int DEFAULT_DOWNLOAD_THREADS = 1;
+
+  /** The default value for {@link #getPrefetchDepth()}. */
+  public static final int DEFAULT_PREFETCH_DEPTH = 1;
+
   private final String s3BucketName;
   private final RifFileType allowedRifFileType;
   private final Integer s3ListMaxKeys;
+  private final boolean streamingDownloadsEnabled;
+  private final int downloadThreads;
+  private final int prefetchDepth;
+  private final String localDataSetsDirectory;
 
   /**
    * Constructs a new {@link ExtractionOptions} instance.
@@ -36,9 +48,106 @@ public final class ExtractionOptions implements Serializable {
    */
   public ExtractionOptions(
       String s3BucketName, RifFileType allowedRifFileType, Integer s3ListMaxKeys) {
+    this(s3BucketName, allowedRifFileType, s3ListMaxKeys, false);
+  }
+
+  /**
+   * Constructs a new {@link ExtractionOptions} instance.
+   *
+   * @param s3BucketName the value to use for {@link #getS3BucketName()}
+   * @param allowedRifFileType the value to use for {@link #getDataSetFilter()}
+   * @param s3ListMaxKeys the value to use for {@link #getS3ListMaxKeys()}
+   * @param streamingDownloadsEnabled the value to use for {@link #isStreamingDownloadsEnabled()}
+   */
+  public ExtractionOptions(
+      String s3BucketName,
+      RifFileType allowedRifFileType,
+      Integer s3ListMaxKeys,
+      boolean streamingDownloadsEnabled) {
+    this(
+        s3BucketName,
+        allowedRifFileType,
+        s3ListMaxKeys,
+        streamingDownloadsEnabled,
+        DEFAULT_DOWNLOAD_THREADS,
+        DEFAULT_PREFETCH_DEPTH);
+  }
+
+  /**
+   * Constructs a new {@link ExtractionOptions} instance.
+   *
+   * @param s3BucketName the value to use for {@link #getS3BucketName()}
+   * @param allowedRifFileType the value to use for {@link #getDataSetFilter()}
+   * @param s3ListMaxKeys the value to use for {@link #getS3ListMaxKeys()}
+   * @param streamingDownloadsEnabled the value to use for {@link #isStreamingDownloadsEnabled()}
+   * @param downloadThreads the value to use for {@link #getDownloadThreads()}
+   * @param prefetchDepth the value to use for {@link #getPrefetchDepth()}
+   */
+  public ExtractionOptions(
+      String s3BucketName,
+      RifFileType allowedRifFileType,
+      Integer s3ListMaxKeys,
+      boolean streamingDownloadsEnabled,
+      int downloadThreads,
+      int prefetchDepth) {
+    this(
+        s3BucketName,
+        allowedRifFileType,
+        s3ListMaxKeys,
+        streamingDownloadsEnabled,
+        downloadThreads,
+        prefetchDepth,
+        null);
+  }
+
+  /**
+   * Constructs a new {@link ExtractionOptions} instance.
+   *
+   * @param s3BucketName the value to use for {@link #getS3BucketName()}
+   * @param allowedRifFileType the value to use for {@link #getDataSetFilter()}
+   * @param s3ListMaxKeys the value to use for {@link #getS3ListMaxKeys()}
+   * @param streamingDownloadsEnabled the value to use for {@link #isStreamingDownloadsEnabled()}
+   * @param downloadThreads the value to use for {@link #getDownloadThreads()}
+   * @param prefetchDepth the value to use for {@link #getPrefetchDepth()}
+   * @param localDataSetsDirectory the value to use for {@link #getLocalDataSetsDirectory()}
+   */
+  public ExtractionOptions(
+      String s3BucketName,
+      RifFileType allowedRifFileType,
+      Integer s3ListMaxKeys,
+      boolean streamingDownloadsEnabled,
+      int downloadThreads,
+      int prefetchDepth,
+      Path localDataSetsDirectory) {
+    if (downloadThreads < 1) throw new IllegalArgumentException();
+    if (prefetchDepth < 0) throw new IllegalArgumentException();
+
     this.s3BucketName = s3BucketName;
     this.allowedRifFileType = allowedRifFileType;
     this.s3ListMaxKeys = s3ListMaxKeys;
+    this.streamingDownloadsEnabled = streamingDownloadsEnabled;
+    this.downloadThreads = downloadThreads;
+    this.prefetchDepth = prefetchDepth;
+    this.localDataSetsDirectory =
+        localDataSetsDirectory != null ? localDataSetsDirectory.toAbsolutePath().toString() : null;
+  }
+
+  /**
+   * Constructs a new {@link ExtractionOptions} instance, for reading data sets from a local
+   * directory, rather than S3.
+   *
+   * @param localDataSetsDirectory the value to use for {@link #getLocalDataSetsDirectory()}
+   * @param allowedRifFileType the value to use for {@link #getDataSetFilter()}
+   */
+  public ExtractionOptions(Path localDataSetsDirectory, RifFileType allowedRifFileType) {
+    this(
+        null,
+        allowedRifFileType,
+        null,
+        false,
+        DEFAULT_DOWNLOAD_THREADS,
+        DEFAULT_PREFETCH_DEPTH,
+        localDataSetsDirectory);
   }
 
   /**
@@ -100,6 +209,46 @@ public final class ExtractionOptions implements Serializable {
     return Optional.ofNullable(s3ListMaxKeys);
   }
 
+  /**
+   * @return <code>true</code> if RIF files should be downloaded via a series of ranged <code>GET
+   *     </code>s and fed to the parser as their bytes arrive (with checksum verification deferred
+   *     until the end of each file), <code>false</code> if each RIF file should be fully downloaded
+   *     and verified before any of it is parsed
+   */
+  public boolean isStreamingDownloadsEnabled() {
+    return streamingDownloadsEnabled;
+  }
+
+  /**
+   * @return the maximum number of RIF files that will be downloaded from S3 at once (large files
+   *     will additionally be split into ranges that are downloaded in parallel)
+   */
+  public int getDownloadThreads() {
+    return downloadThreads;
+  }
+
+  /**
+   * @return the maximum number of data sets beyond the one currently being processed that will be
+   *     downloaded ahead of time, disk space permitting, or <code>0</code> to disable prefetching
+   */
+  public int getPrefetchDepth() {
+    return prefetchDepth;
+  }
+
+  /**
+   * Note: This is primarily intended for load testing and benchmarking, as it allows the pipeline
+   * to be run against locally staged data sets, without S3 in the loop.
+   *
+   * @return the local directory to read data sets from (laid out just like the S3 bucket would be,
+   *     with <code>Incoming</code> and <code>Done</code> subdirectories), instead of {@link
+   *     #getS3BucketName()}, or {@link Optional#empty()} if data sets should be read from S3
+   */
+  public Optional<Path> getLocalDataSetsDirectory() {
+    return localDataSetsDirectory != null
+        ? Optional.of(Paths.get(localDataSetsDirectory))
+        : Optional.empty();
+  }
+
   /** @see java.lang.Object#toString() */
   @Override
   public String toString() {
@@ -108,6 +257,14 @@ public final class ExtractionOptions implements Serializable {
     builder.append(s3BucketName);
     builder.append(", allowedRifFileType=");
     builder.append(allowedRifFileType);
+    builder.append(", streamingDownloadsEnabled=");
+    builder.append(streamingDownloadsEnabled);
+    builder.append(", downloadThreads=");
+    builder.append(downloadThreads);
+    builder.append(", prefetchDepth=");
+    builder.append(prefetchDepth);
+    builder.append(", localDataSetsDirectory=");
+    builder.append(localDataSetsDirectory);
     builder.append("]");
     return builder.toString();
   }
@@ -1,5 +1,6 @@
 package gov.cms.bfd.pipeline.rif.extract;
 
+import com.codahale.metrics.Gauge;
 import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.Timer;
 import com.justdavis.karl.misc.exceptions.BadCodeMonkeyException;
@@ -26,6 +27,7 @@ import gov.cms.bfd.model.rif.PartDEventParser;
 import gov.cms.bfd.model.rif.RecordAction;
 import gov.cms.bfd.model.rif.RifFile;
 import gov.cms.bfd.model.rif.RifFileEvent;
+import gov.cms.bfd.model.rif.RifFileProgress;
 import gov.cms.bfd.model.rif.RifFileRecords;
 import gov.cms.bfd.model.rif.RifFileType;
 import gov.cms.bfd.model.rif.RifFilesEvent;
@@ -38,15 +40,19 @@ import gov.cms.bfd.pipeline.rif.extract.CsvRecordGroupingIterator.ColumnValueCsv
 import gov.cms.bfd.pipeline.rif.extract.CsvRecordGroupingIterator.CsvRecordGrouper;
 import gov.cms.bfd.pipeline.rif.extract.exceptions.UnsupportedRifFileTypeException;
 import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Spliterator;
 import java.util.Spliterators;
+import java.util.function.BiConsumer;
 import java.util.function.BiFunction;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 import org.apache.commons.csv.CSVParser;
 import org.apache.commons.csv.CSVRecord;
+import org.apache.commons.io.input.ProxyInputStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -68,7 +74,19 @@ public final class RifFilesProcessor {
      * https://rumianom.pl/rumianom/entry/apache-commons-csv-with-java.
      */
 
-    CSVParser parser = RifParsingUtils.createCsvParser(file);
+    // Count bytes as the parser consumes them, so that progress through the file can be tracked.
+    RifFileProgress progress = new RifFileProgress(file);
+    registerProgressMetrics(rifFileEvent.getEventMetrics(), progress);
+    InputStream fileStream =
+        new ProxyInputStream(file.open()) {
+          /** @see org.apache.commons.io.input.ProxyInputStream#afterRead(int) */
+          @Override
+          protected void afterRead(int n) {
+            if (n > 0) progress.bytesConsumed(n);
+          }
+        };
+    CSVParser parser =
+        RifParsingUtils.createCsvParser(RifParsingUtils.CSV_FORMAT, fileStream, file.getCharset());
 
     boolean isGrouped;
     BiFunction<RifFileEvent, List<CSVRecord>, RifRecordEvent<?>> recordParser;
@@ -145,6 +163,7 @@ public final class RifFilesProcessor {
                         .time();
                 RifRecordEvent<?> recordEvent = recordParser.apply(rifFileEvent, csvRecordGroup);
                 parsingTimer.close();
+                progress.recordConsumed();
 
                 return recordEvent;
               } catch (InvalidRifValueException e) {
@@ -155,7 +174,34 @@ public final class RifFilesProcessor {
               }
             });
 
-    return new RifFileRecords(rifFileEvent, rifRecordStream);
+    return new RifFileRecords(rifFileEvent, rifRecordStream, progress);
+  }
+
+  /**
+   * Registers {@link Gauge}s that report on the specified {@link RifFileProgress}, replacing any
+   * from a previous run over the same {@link RifFileEvent}.
+   *
+   * @param fileEventMetrics the {@link RifFileEvent#getEventMetrics()} to register the {@link
+   *     Gauge}s with
+   * @param progress the {@link RifFileProgress} to report on
+   */
+  private void registerProgressMetrics(MetricRegistry fileEventMetrics, RifFileProgress progress) {
+    BiConsumer<String, Gauge<?>> register =
+        (name, gauge) -> {
+          String fullName = MetricRegistry.name(getClass().getSimpleName(), "progress", name);
+          fileEventMetrics.remove(fullName);
+          fileEventMetrics.register(fullName, gauge);
+        };
+    register.accept("bytesConsumed", (Gauge<Long>) progress::getBytesConsumed);
+    register.accept("bytesTotal", (Gauge<Long>) () -> progress.getTotalBytes().orElse(-1L));
+    register.accept(
+        "fractionComplete", (Gauge<Double>) () -> progress.getFractionComplete().orElse(-1.0));
+    register.accept("bytesPerSecond", (Gauge<Double>) progress::getBytesPerSecond);
+    register.accept("recordsPerSecond", (Gauge<Double>) progress::getRecordsPerSecond);
+    register.accept(
+        "etaSeconds",
+        (Gauge<Long>)
+            () -> progress.getEstimatedTimeRemaining().map(Duration::getSeconds).orElse(-1L));
   }
 
   /**
@@ -0,0 +1,236 @@
+package gov.cms.bfd.pipeline.rif.extract.local;
+
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import gov.cms.bfd.model.rif.RifFile;
+import gov.cms.bfd.model.rif.RifFilesEvent;
+import gov.cms.bfd.pipeline.rif.extract.ExtractionOptions;
+import gov.cms.bfd.pipeline.rif.extract.s3.DataSetManifest;
+import gov.cms.bfd.pipeline.rif.extract.s3.DataSetManifest.DataSetManifestEntry;
+import gov.cms.bfd.pipeline.rif.extract.s3.DataSetManifest.DataSetManifestId;
+import gov.cms.bfd.pipeline.rif.extract.s3.DataSetMonitor;
+import gov.cms.bfd.pipeline.rif.extract.s3.DataSetMonitorListener;
+import gov.cms.bfd.pipeline.rif.extract.s3.DataSetMonitorWorker;
+import gov.cms.bfd.pipeline.rif.extract.s3.DataSetQueue;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ScheduledExecutorService;
+import javax.xml.bind.JAXBException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Acts as a worker {@link Runnable} for {@link DataSetMonitor}, when it's configured to read data
+ * sets from a local directory (per {@link ExtractionOptions#getLocalDataSetsDirectory()}), rather
+ * than from S3. It is expected that this will be run on a repeating basis, via a {@link
+ * ScheduledExecutorService}.
+ *
+ * <p>The local directory is expected to be laid out just like the S3 bucket that {@link
+ * DataSetMonitorWorker} reads from: data sets are found in <code>Incoming/&lt;timestamp&gt;/
+ * </code> directories, each with a <code>&lt;sequenceId&gt;_manifest.xml</code> file and the RIF
+ * files that it references. When executed via {@link #run()}, the {@link LocalDataSetMonitorWorker}
+ * will select the oldest of those data sets that's complete, process it in place (the RIF files are
+ * read directly from the directory, with no copying), and then move it to the corresponding <code>
+ * Done/&lt;timestamp&gt;/</code> directory.
+ */
+public final class LocalDataSetMonitorWorker implements Runnable {
+  private static final Logger LOGGER = LoggerFactory.getLogger(LocalDataSetMonitorWorker.class);
+
+  private final MetricRegistry appMetrics;
+  private final ExtractionOptions options;
+  private final Path dataSetsDirectory;
+  private final DataSetMonitorListener listener;
+
+  /**
+   * Constructs a new {@link LocalDataSetMonitorWorker} instance.
+   *
+   * @param appMetrics the {@link MetricRegistry} for the overall application
+   * @param options the {@link ExtractionOptions} to use, which must specify a {@link
+   *     ExtractionOptions#getLocalDataSetsDirectory()}
+   * @param listener the {@link DataSetMonitorListener} to send events to
+   */
+  public LocalDataSetMonitorWorker(
+      MetricRegistry appMetrics, ExtractionOptions options, DataSetMonitorListener listener) {
+    if (!options.getLocalDataSetsDirectory().isPresent()) throw new IllegalArgumentException();
+
+    this.appMetrics = appMetrics;
+    this.options = options;
+    this.dataSetsDirectory = options.getLocalDataSetsDirectory().get();
+    this.listener = listener;
+  }
+
+  /** @see java.lang.Runnable#run() */
+  @Override
+  public void run() {
+    LOGGER.debug("Scanning for data sets to process...");
+
+    Optional<DataSetManifest> manifestToProcess = findNextDataSetToProcess();
+    if (!manifestToProcess.isPresent()) {
+      LOGGER.debug(DataSetMonitorWorker.LOG_MESSAGE_NO_DATA_SETS);
+      listener.noDataAvailable();
+      return;
+    }
+    DataSetManifest manifest = manifestToProcess.get();
+    LOGGER.info("Found data set to process: '{}'.", manifest);
+
+    /*
+     * Data sets have to be processed in order, so if the oldest one isn't all there yet, we just
+     * have to wait and check again next time.
+     */
+    Path dataSetDirectory = computeDataSetDirectory(manifest, false);
+    for (DataSetManifestEntry manifestEntry : manifest.getEntries()) {
+      if (!Files.isRegularFile(dataSetDirectory.resolve(manifestEntry.getName()))) {
+        LOGGER.info(
+            "Data set not ready: waiting for file '{}' to be staged.", manifestEntry.getName());
+        return;
+      }
+    }
+
+    LOGGER.info(DataSetMonitorWorker.LOG_MESSAGE_DATA_SET_READY);
+    List<RifFile> rifFiles = new ArrayList<>();
+    for (DataSetManifestEntry manifestEntry : manifest.getEntries()) {
+      Path localFile = dataSetDirectory.resolve(manifestEntry.getName());
+      rifFiles.add(new LocalDataSetRifFile(manifestEntry, localFile));
+    }
+    RifFilesEvent rifFilesEvent = new RifFilesEvent(manifest.getTimestamp(), rifFiles);
+
+    /*
+     * As with S3 data sets, it's important that we block until the DataSetMonitorListener has
+     * finished processing the data set, so that data sets are never processed in parallel.
+     */
+    listener.dataAvailable(rifFilesEvent);
+    LOGGER.info(DataSetMonitorWorker.LOG_MESSAGE_DATA_SET_COMPLETE);
+    listener.dataSetComplete(manifest.getTimestamp());
+
+    moveToDone(manifest);
+  }
+
+  /**
+   * @return the {@link DataSetManifest} for the oldest data set in the local <code>Incoming</code>
+   *     directory that passes the {@link ExtractionOptions#getDataSetFilter()}, if any
+   */
+  private Optional<DataSetManifest> findNextDataSetToProcess() {
+    Path pendingDirectory =
+        dataSetsDirectory.resolve(DataSetMonitorWorker.S3_PREFIX_PENDING_DATA_SETS);
+    if (!Files.isDirectory(pendingDirectory)) return Optional.empty();
+
+    Timer.Context timerScanning =
+        appMetrics.timer(MetricRegistry.name(getClass().getSimpleName(), "scanning")).time();
+
+    /*
+     * Find all of the manifests, using the same naming rules as for S3 keys (i.e. the data set
+     * directories must be named for valid timestamps).
+     */
+    SortedMap<DataSetManifestId, Path> manifestPaths = new TreeMap<>();
+    try (DirectoryStream<Path> dataSetDirectories = Files.newDirectoryStream(pendingDirectory)) {
+      for (Path dataSetDirectory : dataSetDirectories) {
+        if (!Files.isDirectory(dataSetDirectory)) continue;
+
+        try (DirectoryStream<Path> manifestFiles =
+            Files.newDirectoryStream(dataSetDirectory, "*_manifest.xml")) {
+          for (Path manifestFile : manifestFiles) {
+            String manifestKey =
+                String.format(
+                    "%s/%s/%s",
+                    DataSetMonitorWorker.S3_PREFIX_PENDING_DATA_SETS,
+                    dataSetDirectory.getFileName(),
+                    manifestFile.getFileName());
+            DataSetManifestId manifestId = DataSetManifestId.parseManifestIdFromS3Key(manifestKey);
+            if (manifestId != null) manifestPaths.put(manifestId, manifestFile);
+          }
+        }
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    LOGGER.debug("Scanned for data sets. Found '{}'.", manifestPaths.size());
+    timerScanning.close();
+
+    for (Path manifestPath : manifestPaths.values()) {
+      DataSetManifest manifest = readManifest(manifestPath);
+      if (!options.getDataSetFilter().test(manifest)) {
+        LOGGER.debug("Skipping data set that doesn't pass filter: {}", manifest);
+        continue;
+      }
+      return Optional.of(manifest);
+    }
+    return Optional.empty();
+  }
+
+  /**
+   * @param manifestPath the {@link Path} of the manifest file to read
+   * @return the {@link DataSetManifest} contained in the specified file
+   */
+  private static DataSetManifest readManifest(Path manifestPath) {
+    try (InputStream manifestStream = Files.newInputStream(manifestPath)) {
+      return DataSetQueue.readManifest(manifestStream);
+    } catch (JAXBException e) {
+      // As with S3 data sets, we want to terminate the load process if an invalid one is found.
+      throw new RuntimeException("Found data set with invalid manifest at: " + manifestPath, e);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Moves the specified data set from the local <code>Incoming</code> directory to the <code>Done
+   * </code> one, now that it has been processed.
+   *
+   * @param manifest the {@link DataSetManifest} of the data set to move
+   */
+  private void moveToDone(DataSetManifest manifest) {
+    Path pendingDirectory = computeDataSetDirectory(manifest, false);
+    Path completedDirectory = computeDataSetDirectory(manifest, true);
+    String manifestFileName = String.format("%d_manifest.xml", manifest.getSequenceId());
+
+    try {
+      Files.createDirectories(completedDirectory);
+
+      /*
+       * The manifest goes first: once it's been moved, this data set won't be picked up again, even
+       * if something goes wrong while moving the rest of it.
+       */
+      Files.move(
+          pendingDirectory.resolve(manifestFileName), completedDirectory.resolve(manifestFileName));
+      for (DataSetManifestEntry manifestEntry : manifest.getEntries())
+        Files.move(
+            pendingDirectory.resolve(manifestEntry.getName()),
+            completedDirectory.resolve(manifestEntry.getName()));
+
+      // Other data sets may share the same timestamp directory, so only remove it if it's empty.
+      try {
+        Files.deleteIfExists(pendingDirectory);
+      } catch (DirectoryNotEmptyException e) {
+        // Nothing to do here.
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    LOGGER.debug("Moved data set '{}' to '{}'.", manifest, completedDirectory);
+  }
+
+  /**
+   * @param manifest the {@link DataSetManifest} to compute the directory for
+   * @param completed <code>true</code> for the data set's <code>Done</code> directory, <code>false
+   *     </code> for its <code>Incoming</code> one
+   * @return the {@link Path} of the local directory for the specified {@link DataSetManifest}
+   */
+  private Path computeDataSetDirectory(DataSetManifest manifest, boolean completed) {
+    return dataSetsDirectory
+        .resolve(
+            completed
+                ? DataSetMonitorWorker.S3_PREFIX_COMPLETED_DATA_SETS
+                : DataSetMonitorWorker.S3_PREFIX_PENDING_DATA_SETS)
+        .resolve(manifest.getTimestampText());
+  }
+}
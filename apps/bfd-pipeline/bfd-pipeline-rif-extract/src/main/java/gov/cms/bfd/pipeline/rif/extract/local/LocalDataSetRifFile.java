@@ -0,0 +1,100 @@
+package gov.cms.bfd.pipeline.rif.extract.local;
+
+import gov.cms.bfd.model.rif.RifFile;
+import gov.cms.bfd.model.rif.RifFileType;
+import gov.cms.bfd.pipeline.rif.extract.s3.CompressionCodec;
+import gov.cms.bfd.pipeline.rif.extract.s3.DataSetManifest.DataSetManifestEntry;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * This {@link RifFile} implementation can be used for the files of data sets that have been staged
+ * in a local directory. Unlike S3 data sets, these are read in place: there's no need to copy them
+ * anywhere first.
+ */
+public final class LocalDataSetRifFile implements RifFile {
+  private final DataSetManifestEntry manifestEntry;
+  private final Path localFile;
+
+  /**
+   * Constructs a new {@link LocalDataSetRifFile} instance.
+   *
+   * @param manifestEntry the specific {@link DataSetManifestEntry} represented by this {@link
+   *     LocalDataSetRifFile}
+   * @param localFile the {@link Path} of the local file for the {@link DataSetManifestEntry}
+   */
+  public LocalDataSetRifFile(DataSetManifestEntry manifestEntry, Path localFile) {
+    Objects.requireNonNull(manifestEntry);
+    Objects.requireNonNull(localFile);
+
+    this.manifestEntry = manifestEntry;
+    this.localFile = localFile;
+  }
+
+  /** @see gov.cms.bfd.model.rif.RifFile#getFileType() */
+  @Override
+  public RifFileType getFileType() {
+    return manifestEntry.getType();
+  }
+
+  /** @see gov.cms.bfd.model.rif.RifFile#getDisplayName() */
+  @Override
+  public String getDisplayName() {
+    return String.format(
+        "%s.%d:%s",
+        manifestEntry.getParentManifest().getTimestampText(),
+        manifestEntry.getParentManifest().getSequenceId(),
+        manifestEntry.getName());
+  }
+
+  /** @see gov.cms.bfd.model.rif.RifFile#getCharset() */
+  @Override
+  public Charset getCharset() {
+    return StandardCharsets.UTF_8;
+  }
+
+  /** @see gov.cms.bfd.model.rif.RifFile#open() */
+  @Override
+  public InputStream open() {
+    try {
+      return manifestEntry
+          .getCompression()
+          .decompress(new BufferedInputStream(Files.newInputStream(localFile)));
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /** @see gov.cms.bfd.model.rif.RifFile#getSize() */
+  @Override
+  public Optional<Long> getSize() {
+    // The size of a compressed file has no bearing on how many bytes it will decompress to.
+    if (manifestEntry.getCompression() != CompressionCodec.NONE) return Optional.empty();
+
+    try {
+      return Optional.of(Files.size(localFile));
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /** @see java.lang.Object#toString() */
+  @Override
+  public String toString() {
+    StringBuilder builder = new StringBuilder();
+    builder.append("LocalDataSetRifFile [manifestEntry=");
+    builder.append(manifestEntry);
+    builder.append(", localFile=");
+    builder.append(localFile.toAbsolutePath());
+    builder.append("]");
+    return builder.toString();
+  }
+}
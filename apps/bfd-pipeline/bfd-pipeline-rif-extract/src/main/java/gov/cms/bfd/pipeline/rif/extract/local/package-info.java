@@ -0,0 +1,5 @@
+/**
+ * Handles monitoring a local directory for new data sets, laid out just as they would be in S3,
+ * and firing events for them.
+ */
+package gov.cms.bfd.pipeline.rif.extract.local;
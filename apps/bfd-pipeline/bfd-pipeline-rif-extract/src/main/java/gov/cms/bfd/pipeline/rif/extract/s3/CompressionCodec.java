@@ -0,0 +1,46 @@
+package gov.cms.bfd.pipeline.rif.extract.s3;
+
+import com.github.luben.zstd.ZstdInputStream;
+import gov.cms.bfd.pipeline.rif.extract.s3.DataSetManifest.DataSetManifestEntry;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Enumerates the compression formats that the files represented by {@link DataSetManifestEntry}s
+ * may be stored in. Compressed files are downloaded and stored locally as-is (and their checksums
+ * are computed against those compressed bytes), and only decompressed as they're read.
+ */
+public enum CompressionCodec {
+  /** Files that are not compressed at all. */
+  NONE,
+
+  /** Files that are compressed in the <code>gzip</code> format. */
+  GZIP,
+
+  /** Files that are compressed in the Zstandard (<code>zstd</code>) format. */
+  ZSTD;
+
+  /** The size of the buffer used by decompressors to read compressed bytes. */
+  private static final int DECOMPRESSION_BUFFER_SIZE = 64 * 1024;
+
+  /**
+   * @param compressedStream the {@link InputStream} of compressed bytes to wrap
+   * @return an {@link InputStream} that will decompress the bytes from the specified {@link
+   *     InputStream} as they're read
+   * @throws IOException Any {@link IOException}s encountered while reading the compressed stream's
+   *     header will be bubbled up.
+   */
+  public InputStream decompress(InputStream compressedStream) throws IOException {
+    switch (this) {
+      case NONE:
+        return compressedStream;
+      case GZIP:
+        return new GZIPInputStream(compressedStream, DECOMPRESSION_BUFFER_SIZE);
+      case ZSTD:
+        return new ZstdInputStream(compressedStream);
+      default:
+        throw new IllegalStateException();
+    }
+  }
+}
@@ -0,0 +1,82 @@
+package gov.cms.bfd.pipeline.rif.extract.s3;
+
+import gov.cms.bfd.pipeline.rif.extract.s3.DataSetManifest.DataSetManifestEntry;
+import java.util.Optional;
+
+/**
+ * Coordinates the processing of data sets across several ETL pipeline nodes, such that each data
+ * set's load is spread across all of them. Each {@link DataSetManifestEntry} (i.e. each file) of a
+ * data set is a work unit, which nodes take turns leasing via {@link
+ * #leaseWorkUnit(DataSetManifest)}. Leases are kept alive by heartbeats while their unit is being
+ * processed and, if a node dies, will expire such that another node can take the unit over.
+ *
+ * <p>Each work unit will be committed (via {@link WorkUnitLease#complete()}) exactly once, and each
+ * data set finalized (via {@link #finalizeDataSet(DataSetManifest)}) exactly once. Note, though,
+ * that a unit taken over from a node that lost its lease may have been partially (or even fully)
+ * loaded already, so coordinated loads must be idempotent. To keep two nodes from loading the same
+ * file at once, a node should abandon a unit as soon as it finds its lease lost (see {@link
+ * WorkUnitLease#isLost()}).
+ *
+ * <p>Beneficiary files must be loaded before any claims that reference them, so implementations
+ * must not lease out any of a data set's claims files until all of its beneficiary files have been
+ * completed.
+ */
+public interface DataSetCoordinator {
+  /**
+   * Registers the work units for the specified data set, if no node has done so already.
+   *
+   * @param manifest the {@link DataSetManifest} of the data set to register
+   */
+  void registerDataSet(DataSetManifest manifest);
+
+  /**
+   * @param manifest the {@link DataSetManifest} of the (registered) data set to lease a unit from
+   * @return a {@link WorkUnitLease} for one of the data set's units that's ready to be processed,
+   *     or {@link Optional#empty()} if none are (e.g. because all of the remaining units are leased
+   *     by other nodes)
+   */
+  Optional<WorkUnitLease> leaseWorkUnit(DataSetManifest manifest);
+
+  /**
+   * @param manifest the {@link DataSetManifest} of the (registered) data set to check
+   * @return <code>true</code> if all of the specified data set's units have been completed, <code>
+   *     false</code> if not
+   */
+  boolean isDataSetComplete(DataSetManifest manifest);
+
+  /**
+   * @param manifest the {@link DataSetManifest} of the (complete) data set to finalize
+   * @return <code>true</code> if this node should perform the data set's final steps (e.g. moving it
+   *     to "done"), or <code>false</code> if another node has already claimed them
+   */
+  boolean finalizeDataSet(DataSetManifest manifest);
+
+  /**
+   * A lease on one of a data set's work units, held by this node. Closing it without first calling
+   * {@link #complete()} will release the unit for another node to process.
+   */
+  interface WorkUnitLease extends AutoCloseable {
+    /** @return the {@link DataSetManifestEntry} for the leased work unit */
+    DataSetManifestEntry getManifestEntry();
+
+    /**
+     * @return <code>true</code> if this node has (or may have) lost the lease to another node, e.g.
+     *     because it couldn't be renewed in time, in which case the unit's processing should be
+     *     abandoned as soon as possible, as another node will be reprocessing it; <code>false
+     *     </code> if the lease is still held
+     */
+    boolean isLost();
+
+    /**
+     * Commits the leased work unit as completed, and releases the lease.
+     *
+     * @return <code>true</code> if the unit was committed, or <code>false</code> if this node lost
+     *     its lease to another node (which will then reprocess the unit) before it could be
+     */
+    boolean complete();
+
+    /** @see java.lang.AutoCloseable#close() */
+    @Override
+    void close();
+  }
+}
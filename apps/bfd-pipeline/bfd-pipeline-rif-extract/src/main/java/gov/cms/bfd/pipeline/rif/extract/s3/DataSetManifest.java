@@ -158,6 +158,8 @@ public final class DataSetManifest implements Comparable<DataSetManifest> {
 
     @XmlAttribute private final RifFileType type;
 
+    @XmlAttribute private final CompressionCodec compression;
+
     /**
      * Constructs a new {@link DataSetManifestEntry} instance.
      *
@@ -165,9 +167,21 @@ public final class DataSetManifest implements Comparable<DataSetManifest> {
      * @param type the value to use for {@link #getType()}
      */
     public DataSetManifestEntry(String name, RifFileType type) {
+      this(name, type, CompressionCodec.NONE);
+    }
+
+    /**
+     * Constructs a new {@link DataSetManifestEntry} instance.
+     *
+     * @param name the value to use for {@link #getName()}
+     * @param type the value to use for {@link #getType()}
+     * @param compression the value to use for {@link #getCompression()}
+     */
+    public DataSetManifestEntry(String name, RifFileType type, CompressionCodec compression) {
       this.parentManifest = null;
       this.name = name;
       this.type = type;
+      this.compression = compression;
     }
 
     /** This default constructor is required by JAX-B, and should not otherwise be used. */
@@ -175,6 +189,7 @@ public final class DataSetManifest implements Comparable<DataSetManifest> {
     private DataSetManifestEntry() {
       this.name = null;
       this.type = null;
+      this.compression = null;
     }
 
     /** @return the {@link DataSetManifest} that this {@link DataSetManifestEntry} is a part of */
@@ -198,6 +213,15 @@ public final class DataSetManifest implements Comparable<DataSetManifest> {
       return type;
     }
 
+    /**
+     * @return the {@link CompressionCodec} of the file represented by this {@link
+     *     DataSetManifestEntry}, which will be {@link CompressionCodec#NONE} if the manifest didn't
+     *     specify one
+     */
+    public CompressionCodec getCompression() {
+      return compression != null ? compression : CompressionCodec.NONE;
+    }
+
     /**
      * Per the {@link Unmarshaller} JavaDocs, when unmarshalling {@link DataSetManifestEntry}
      * instances from XML via JAX-B, this method is called after all the properties (except IDREF)
@@ -222,6 +246,8 @@ public final class DataSetManifest implements Comparable<DataSetManifest> {
       builder.append(name);
       builder.append(", type=");
       builder.append(type);
+      builder.append(", compression=");
+      builder.append(getCompression());
       builder.append("]");
       return builder.toString();
     }
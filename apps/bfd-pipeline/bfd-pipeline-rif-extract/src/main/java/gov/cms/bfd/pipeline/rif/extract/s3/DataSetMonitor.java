@@ -3,6 +3,7 @@ package gov.cms.bfd.pipeline.rif.extract.s3;
 import com.codahale.metrics.MetricRegistry;
 import com.justdavis.karl.misc.exceptions.BadCodeMonkeyException;
 import gov.cms.bfd.pipeline.rif.extract.ExtractionOptions;
+import gov.cms.bfd.pipeline.rif.extract.local.LocalDataSetMonitorWorker;
 import gov.cms.bfd.pipeline.rif.extract.s3.task.S3TaskManager;
 import java.util.concurrent.CancellationException;
 import java.util.concurrent.ExecutionException;
@@ -46,6 +47,13 @@ import org.slf4j.LoggerFactory;
  *
  * <p>The ETL operates in a loop: periodically checking for the oldest manifest file that can be
  * found and then handing it off to the rest of the pipeline for processing.
+ *
+ * <p>Alternatively, if {@link ExtractionOptions#getLocalDataSetsDirectory()} is specified, data
+ * sets will instead be read from that local directory (which should be structured the same way),
+ * via a {@link LocalDataSetMonitorWorker}.
+ *
+ * <p>Several ETL pipeline nodes can share the processing of each S3 data set, if they're all given
+ * a {@link DataSetCoordinator}: each node will then only process the files that it leases.
  */
 public final class DataSetMonitor {
   /**
@@ -67,11 +75,12 @@ public final class DataSetMonitor {
   private final ExtractionOptions options;
   private final int scanRepeatDelay;
   private final DataSetMonitorListener listener;
+  private final DataSetCoordinator coordinator;
 
   private TaskExecutor dataSetWatcherExecutor;
   private S3TaskManager s3TaskManager;
   private ScheduledFuture<?> dataSetWatcherFuture;
-  private DataSetMonitorWorker dataSetWatcher;
+  private Runnable dataSetWatcher;
 
   /**
    * Constructs a new {@link DataSetMonitor} instance. Note that this must be used as a singleton
@@ -82,22 +91,45 @@ public final class DataSetMonitor {
    * @param scanRepeatDelay the number of milliseconds to wait after completing one poll/process
    *     operation and starting another
    * @param listener the {@link DataSetMonitorListener} that will be notified when events occur
+   * @param coordinator the {@link DataSetCoordinator} to share each S3 data set's work with the
+   *     other ETL pipeline nodes via, or <code>null</code> if this is the only node
    */
   public DataSetMonitor(
       MetricRegistry appMetrics,
       ExtractionOptions options,
       int scanRepeatDelay,
-      DataSetMonitorListener listener) {
+      DataSetMonitorListener listener,
+      DataSetCoordinator coordinator) {
     this.appMetrics = appMetrics;
     this.options = options;
     this.scanRepeatDelay = scanRepeatDelay;
     this.listener = listener;
+    this.coordinator = coordinator;
 
     this.dataSetWatcherExecutor = null;
     this.dataSetWatcherFuture = null;
     this.dataSetWatcher = null;
   }
 
+  /**
+   * Constructs a new {@link DataSetMonitor} instance, for a single ETL pipeline node. Note that
+   * this must be used as a singleton service in the application: only one instance running at a
+   * time is supported.
+   *
+   * @param appMetrics the {@link MetricRegistry} for the overall application
+   * @param options the {@link ExtractionOptions} to use
+   * @param scanRepeatDelay the number of milliseconds to wait after completing one poll/process
+   *     operation and starting another
+   * @param listener the {@link DataSetMonitorListener} that will be notified when events occur
+   */
+  public DataSetMonitor(
+      MetricRegistry appMetrics,
+      ExtractionOptions options,
+      int scanRepeatDelay,
+      DataSetMonitorListener listener) {
+    this(appMetrics, options, scanRepeatDelay, listener, null);
+  }
+
   /**
    * Starts this monitor: it will begin regularly polling for and processing new data sets on a
    * background thread. This particular method will return immediately, but that background
@@ -109,8 +141,14 @@ public final class DataSetMonitor {
       throw new IllegalStateException();
 
     this.dataSetWatcherExecutor = new TaskExecutor("Data Set Watcher Executor", 1);
-    this.s3TaskManager = new S3TaskManager(appMetrics, options);
-    this.dataSetWatcher = new DataSetMonitorWorker(appMetrics, options, s3TaskManager, listener);
+    if (options.getLocalDataSetsDirectory().isPresent()) {
+      // Locally staged data sets are read in place, so no S3 tasks (e.g. downloads) are needed.
+      this.dataSetWatcher = new LocalDataSetMonitorWorker(appMetrics, options, listener);
+    } else {
+      this.s3TaskManager = new S3TaskManager(appMetrics, options);
+      this.dataSetWatcher =
+          new DataSetMonitorWorker(appMetrics, options, s3TaskManager, listener, coordinator);
+    }
     Runnable errorNotifyingDataSetWatcher =
         new ErrorNotifyingRunnableWrapper(dataSetWatcher, listener);
 
@@ -161,7 +199,7 @@ public final class DataSetMonitor {
     waitForStop();
 
     // Clean house.
-    s3TaskManager.shutdownSafely();
+    if (s3TaskManager != null) s3TaskManager.shutdownSafely();
 
     LOGGER.debug("Stopped.");
   }
@@ -1,6 +1,7 @@
 package gov.cms.bfd.pipeline.rif.extract.s3;
 
 import gov.cms.bfd.model.rif.RifFilesEvent;
+import java.time.Instant;
 
 /**
  * Implementations of this event/callback interface can receive the events fired by a {@link
@@ -29,6 +30,17 @@ public interface DataSetMonitorListener {
    */
   void dataAvailable(RifFilesEvent rifFilesEvent);
 
+  /**
+   * This callback will be fired once a data set has been completely processed: after {@link
+   * #dataAvailable(RifFilesEvent)} has returned for it or, when the data set is split across
+   * several ETL pipeline nodes, by just the one node that finalizes it.
+   *
+   * @param dataSetTimestamp the {@link RifFilesEvent#getTimestamp()} of the data set
+   */
+  default void dataSetComplete(Instant dataSetTimestamp) {
+    // Default is a no-op, as not every listener cares.
+  }
+
   /**
    * This callback will be fired when an unrecoverable error has occurred. It is this method's
    * responsibility to call {@link DataSetMonitor#stop()}, if the processing should be halted as a
@@ -1,10 +1,9 @@
 package gov.cms.bfd.pipeline.rif.extract.s3;
 
-import com.amazonaws.services.s3.model.ListObjectsV2Request;
-import com.amazonaws.services.s3.model.ListObjectsV2Result;
 import com.codahale.metrics.MetricRegistry;
 import gov.cms.bfd.model.rif.RifFilesEvent;
 import gov.cms.bfd.pipeline.rif.extract.ExtractionOptions;
+import gov.cms.bfd.pipeline.rif.extract.s3.DataSetCoordinator.WorkUnitLease;
 import gov.cms.bfd.pipeline.rif.extract.s3.DataSetManifest.DataSetManifestEntry;
 import gov.cms.bfd.pipeline.rif.extract.s3.DataSetManifest.DataSetManifestId;
 import gov.cms.bfd.pipeline.rif.extract.s3.task.DataSetMoveTask;
@@ -15,10 +14,11 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
-import java.util.Set;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
@@ -38,7 +38,27 @@ import org.slf4j.LoggerFactory;
 public final class DataSetMonitorWorker implements Runnable {
   private static final Logger LOGGER = LoggerFactory.getLogger(DataSetMonitorWorker.class);
 
-  private static final int GIGA = 1000 * 1000 * 1000;
+  private static final long GIGA = 1000L * 1000 * 1000;
+
+  /**
+   * The amount of local temp disk space that will be left free (at least, as far as downloads are
+   * concerned) when deciding whether or not to prefetch upcoming data sets, per {@link
+   * ExtractionOptions#getPrefetchDepth()}.
+   */
+  private static final long PREFETCH_TEMP_SPACE_RESERVE = 10 * GIGA;
+
+  /**
+   * The longest that S3 scanning will be backed off for (in addition to the {@link DataSetMonitor}
+   * scan interval), after repeatedly finding no data sets. Data sets arrive rarely, so this saves a
+   * lot of pointless S3 requests, at the cost of some slight latency in picking up new ones.
+   */
+  private static final long MAX_IDLE_SCAN_BACKOFF_MILLIS = 30 * 1000L;
+
+  /**
+   * The longest that the S3 listing of a data set that's still uploading will be backed off for,
+   * while waiting for it to complete.
+   */
+  private static final long MAX_UPLOAD_WAIT_BACKOFF_MILLIS = 30 * 1000L;
 
   /** The directory name that pending/incoming RIF data sets will be pulled from in S3. */
   public static final String S3_PREFIX_PENDING_DATA_SETS = "Incoming";
@@ -78,9 +98,20 @@ public final class DataSetMonitorWorker implements Runnable {
   private final ExtractionOptions options;
   private final DataSetMonitorListener listener;
   private final S3TaskManager s3TaskManager;
+  private final DataSetCoordinator coordinator;
 
   private final DataSetQueue dataSetQueue;
 
+  /** The number of consecutive S3 scans that have found no data sets to process. */
+  private int consecutiveIdleScans;
+
+  /**
+   * The {@link System#currentTimeMillis()} time before which S3 will not be scanned again, as
+   * scanning has been backed off after finding nothing. See {@link
+   * #MAX_IDLE_SCAN_BACKOFF_MILLIS}.
+   */
+  private long nextScanTime;
+
   /**
    * Constructs a new {@link DataSetMonitorWorker} instance.
    *
@@ -88,23 +119,54 @@ public final class DataSetMonitorWorker implements Runnable {
    * @param options the {@link ExtractionOptions} to use
    * @param s3TaskManager the {@link S3TaskManager} to use
    * @param listener the {@link DataSetMonitorListener} to send events to
+   * @param coordinator the {@link DataSetCoordinator} to share each data set's work with the other
+   *     ETL pipeline nodes via, or <code>null</code> if this is the only node
    */
   public DataSetMonitorWorker(
       MetricRegistry appMetrics,
       ExtractionOptions options,
       S3TaskManager s3TaskManager,
-      DataSetMonitorListener listener) {
+      DataSetMonitorListener listener,
+      DataSetCoordinator coordinator) {
     this.appMetrics = appMetrics;
     this.options = options;
     this.listener = listener;
     this.s3TaskManager = s3TaskManager;
+    this.coordinator = coordinator;
 
     this.dataSetQueue = new DataSetQueue(appMetrics, options, s3TaskManager);
+    this.consecutiveIdleScans = 0;
+    this.nextScanTime = 0L;
+  }
+
+  /**
+   * Constructs a new {@link DataSetMonitorWorker} instance, for a single ETL pipeline node.
+   *
+   * @param appMetrics the {@link MetricRegistry} for the overall application
+   * @param options the {@link ExtractionOptions} to use
+   * @param s3TaskManager the {@link S3TaskManager} to use
+   * @param listener the {@link DataSetMonitorListener} to send events to
+   */
+  public DataSetMonitorWorker(
+      MetricRegistry appMetrics,
+      ExtractionOptions options,
+      S3TaskManager s3TaskManager,
+      DataSetMonitorListener listener) {
+    this(appMetrics, options, s3TaskManager, listener, null);
   }
 
   /** @see java.lang.Runnable#run() */
   @Override
   public void run() {
+    /*
+     * If recent scans haven't found anything, skip this one. The listener still needs to hear
+     * about it, though, as it may use idle time for other work.
+     */
+    if (System.currentTimeMillis() < nextScanTime) {
+      listener.noDataAvailable();
+      return;
+    }
+
     LOGGER.debug("Scanning for data sets to process...");
 
     // Update the queue from S3.
@@ -113,9 +175,14 @@ public final class DataSetMonitorWorker implements Runnable {
     // If no manifest was found, we're done (until next time).
     if (dataSetQueue.isEmpty()) {
       LOGGER.debug(LOG_MESSAGE_NO_DATA_SETS);
+      long scanBackoff =
+          Math.min(MAX_IDLE_SCAN_BACKOFF_MILLIS, 1000L << Math.min(consecutiveIdleScans, 16));
+      consecutiveIdleScans++;
+      nextScanTime = System.currentTimeMillis() + scanBackoff;
       listener.noDataAvailable();
       return;
     }
+    consecutiveIdleScans = 0;
 
     // We've found the oldest manifest.
     DataSetManifest manifestToProcess = dataSetQueue.getNextDataSetToProcess().get();
@@ -132,7 +199,9 @@ public final class DataSetMonitorWorker implements Runnable {
      * processing it.
      */
     boolean alreadyLoggedWaitingEvent = false;
-    while (!dataSetIsAvailable(manifestToProcess)) {
+    long uploadWaitBackoff = 1000L;
+    Optional<Map<String, Long>> dataSetObjectSizes;
+    while (!(dataSetObjectSizes = dataSetQueue.getDataSetObjects(manifestToProcess)).isPresent()) {
       /*
        * We're very patient here, so we keep looping, but it's prudent to
        * pause between each iteration. TODO should eventually time out,
@@ -143,7 +212,8 @@ public final class DataSetMonitorWorker implements Runnable {
           LOGGER.info("Data set not ready. Waiting for it to finish uploading...");
           alreadyLoggedWaitingEvent = true;
         }
-        Thread.sleep(1000 * 1);
+        Thread.sleep(uploadWaitBackoff);
+        uploadWaitBackoff = Math.min(MAX_UPLOAD_WAIT_BACKOFF_MILLIS, uploadWaitBackoff * 2);
       } catch (InterruptedException e) {
         /*
          * Many Java applications use InterruptedExceptions to signal
@@ -153,6 +223,13 @@ public final class DataSetMonitorWorker implements Runnable {
          */
         throw new RuntimeException(e);
       }
+      dataSetQueue.refreshDataSetObjects(manifestToProcess);
+    }
+
+    // If other nodes are sharing the work, this node only processes the files it leases.
+    if (coordinator != null) {
+      processDataSetCoordinated(manifestToProcess, dataSetObjectSizes.get());
+      return;
     }
 
     /*
@@ -161,36 +238,23 @@ public final class DataSetMonitorWorker implements Runnable {
      * of asynchronously-downloading S3RifFiles.
      */
     LOGGER.info(LOG_MESSAGE_DATA_SET_READY);
+    Map<String, Long> objectSizes = dataSetObjectSizes.get();
     List<S3RifFile> rifFiles =
         manifestToProcess.getEntries().stream()
             .map(
                 manifestEntry ->
                     new S3RifFile(
-                        appMetrics, manifestEntry, s3TaskManager.downloadAsync(manifestEntry)))
+                        appMetrics,
+                        manifestEntry,
+                        s3TaskManager.downloadAsync(
+                            manifestEntry, objectSizes.get(manifestEntry.getName())),
+                        s3TaskManager.getProgressiveDownload(manifestEntry)))
             .collect(Collectors.toList());
     RifFilesEvent rifFilesEvent =
         new RifFilesEvent(manifestToProcess.getTimestamp(), new ArrayList<>(rifFiles));
 
-    /*
-     * To save time for the next data set, peek ahead at it. If it's available and
-     * it looks like there's enough disk space, start downloading it early in the
-     * background.
-     */
-    Optional<DataSetManifest> secondManifestToProcess = dataSetQueue.getSecondDataSetToProcess();
-    if (secondManifestToProcess.isPresent() && dataSetIsAvailable(secondManifestToProcess.get())) {
-      Path tmpdir = Paths.get(System.getProperty("java.io.tmpdir"));
-      long usableFreeTempSpace;
-      try {
-        usableFreeTempSpace = Files.getFileStore(tmpdir).getUsableSpace();
-      } catch (IOException e) {
-        throw new UncheckedIOException(e);
-      }
-
-      if (usableFreeTempSpace >= (50 * GIGA)) {
-        secondManifestToProcess.get().getEntries().stream()
-            .forEach(manifestEntry -> s3TaskManager.downloadAsync(manifestEntry));
-      }
-    }
+    // To save time for the data sets after this one, start downloading them early.
+    prefetchUpcomingDataSets();
 
     /*
      * Now we hand that off to the DataSetMonitorListener, to do the *real*
@@ -201,6 +265,7 @@ public final class DataSetMonitorWorker implements Runnable {
      */
     listener.dataAvailable(rifFilesEvent);
     LOGGER.info(LOG_MESSAGE_DATA_SET_COMPLETE);
+    listener.dataSetComplete(manifestToProcess.getTimestamp());
 
     /*
      * Now that the data set has been processed, we need to ensure that we
@@ -216,58 +281,159 @@ public final class DataSetMonitorWorker implements Runnable {
   }
 
   /**
-   * @param manifest the {@link DataSetManifest} that lists the objects to verify the presence of
-   * @return <code>true</code> if all of the objects listed in the specified manifest can be found
-   *     in S3, <code>false</code> if not
+   * Processes the specified data set in concert with the other ETL pipeline nodes, via the {@link
+   * DataSetCoordinator}: repeatedly leases one of its files and processes it (as a single-file
+   * {@link RifFilesEvent}), until none are left. If the remaining files are all leased by other
+   * nodes, this will wait for them to finish (or for their leases to expire, so that this node can
+   * take them over). Once the data set is complete, exactly one node will move it to "done".
+   *
+   * <p>Upcoming data sets aren't prefetched in this mode, as each node will only need some of their
+   * files.
+   *
+   * @param manifest the {@link DataSetManifest} of the data set to process
+   * @param objectSizes the sizes of the data set's objects in S3, keyed by name
    */
-  private boolean dataSetIsAvailable(DataSetManifest manifest) {
-    /*
-     * There are two ways to do this: 1) list all the objects in the data
-     * set and verify the ones we're looking for are there after, or 2) try
-     * to grab the metadata for each object. Option #2 *should* be simpler,
-     * but isn't, because each missing object will result in an exception.
-     * Exceptions-as-control-flow is a poor design choice, so we'll go with
-     * option #1.
-     */
+  private void processDataSetCoordinated(DataSetManifest manifest, Map<String, Long> objectSizes) {
+    LOGGER.info(LOG_MESSAGE_DATA_SET_READY);
+    coordinator.registerDataSet(manifest);
+
+    boolean alreadyLoggedWaitingEvent = false;
+    long leaseWaitBackoff = 1000L;
+    while (true) {
+      Optional<WorkUnitLease> lease = coordinator.leaseWorkUnit(manifest);
+      if (lease.isPresent()) {
+        try (WorkUnitLease leasedUnit = lease.get()) {
+          processWorkUnit(manifest, leasedUnit, objectSizes);
+        }
+        alreadyLoggedWaitingEvent = false;
+        leaseWaitBackoff = 1000L;
+        continue;
+      }
+
+      if (coordinator.isDataSetComplete(manifest)) break;
+
+      try {
+        if (!alreadyLoggedWaitingEvent) {
+          LOGGER.info("Waiting for other nodes to finish their parts of the data set...");
+          alreadyLoggedWaitingEvent = true;
+        }
+        Thread.sleep(leaseWaitBackoff);
+        leaseWaitBackoff = Math.min(MAX_UPLOAD_WAIT_BACKOFF_MILLIS, leaseWaitBackoff * 2);
+      } catch (InterruptedException e) {
+        // As above: this app doesn't use interrupts, so this is unexpected.
+        throw new RuntimeException(e);
+      }
+    }
+    LOGGER.info(LOG_MESSAGE_DATA_SET_COMPLETE);
+
+    dataSetQueue.markProcessed(manifest);
+    if (coordinator.finalizeDataSet(manifest)) {
+      listener.dataSetComplete(manifest.getTimestamp());
+      s3TaskManager.submit(new DataSetMoveTask(s3TaskManager, options, manifest));
+    }
+  }
 
-    String dataSetKeyPrefix =
-        String.format("%s/%s/", S3_PREFIX_PENDING_DATA_SETS, manifest.getTimestampText());
+  /**
+   * Downloads and processes the file for the specified leased work unit, then commits it. If the
+   * lease is lost partway through (i.e. another node has taken the unit over), the processing is
+   * cancelled between record batches, so that the two nodes aren't left loading the same file at
+   * once, and the unit is left for the other node to commit.
+   *
+   * @param manifest the {@link DataSetManifest} of the data set that the work unit is part of
+   * @param lease the {@link WorkUnitLease} for the work unit to process
+   * @param objectSizes the sizes of the data set's objects in S3, keyed by name
+   */
+  private void processWorkUnit(
+      DataSetManifest manifest, WorkUnitLease lease, Map<String, Long> objectSizes) {
+    DataSetManifestEntry manifestEntry = lease.getManifestEntry();
+    LOGGER.info("Leased data set file '{}'. Processing it...", manifestEntry.getName());
+
+    S3RifFile rifFile =
+        new S3RifFile(
+            appMetrics,
+            manifestEntry,
+            s3TaskManager.downloadAsync(manifestEntry, objectSizes.get(manifestEntry.getName())),
+            s3TaskManager.getProgressiveDownload(manifestEntry));
+    try {
+      listener.dataAvailable(
+          new RifFilesEvent(manifest.getTimestamp(), Arrays.asList(rifFile), lease::isLost));
+    } catch (CancellationException e) {
+      if (!lease.isLost()) throw e;
+      LOGGER.warn(
+          "Lease on data set file '{}' was lost while processing it, so processing was abandoned."
+              + " Another node has taken it over, and will reprocess it.",
+          manifestEntry.getName());
+      appMetrics
+          .meter(MetricRegistry.name(getClass().getSimpleName(), "workUnits", "abandoned"))
+          .mark();
+      return;
+    } finally {
+      rifFile.cleanupTempFile();
+    }
 
-    ListObjectsV2Request s3BucketListRequest = new ListObjectsV2Request();
-    s3BucketListRequest.setBucketName(options.getS3BucketName());
-    s3BucketListRequest.setPrefix(dataSetKeyPrefix);
-    if (options.getS3ListMaxKeys().isPresent())
-      s3BucketListRequest.setMaxKeys(options.getS3ListMaxKeys().get());
+    if (lease.complete())
+      LOGGER.info("Data set file '{}' processing committed.", manifestEntry.getName());
+    else
+      LOGGER.warn(
+          "Lease on data set file '{}' was lost before it could be committed."
+              + " Another node has taken it over, and will reprocess it.",
+          manifestEntry.getName());
+  }
 
-    Set<String> dataSetObjectNames = new HashSet<>();
-    ListObjectsV2Result s3ObjectListing;
-    do {
-      s3ObjectListing = s3TaskManager.getS3Client().listObjectsV2(s3BucketListRequest);
+  /**
+   * Peeks ahead at the data sets queued up after the one currently being processed, up to {@link
+   * ExtractionOptions#getPrefetchDepth()} of them, and starts downloading them in the background.
+   * Data sets are only admitted in processing order, and only while they're fully available in S3
+   * and the local temp disk space they'll need (after all of the downloads that are still pending)
+   * will leave at least {@link #PREFETCH_TEMP_SPACE_RESERVE} free.
+   */
+  private void prefetchUpcomingDataSets() {
+    if (options.getPrefetchDepth() < 1) return;
+
+    Path tmpdir = Paths.get(System.getProperty("java.io.tmpdir"));
+    long usableFreeTempSpace;
+    try {
+      usableFreeTempSpace = Files.getFileStore(tmpdir).getUsableSpace();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    long tempSpaceBudget =
+        usableFreeTempSpace - PREFETCH_TEMP_SPACE_RESERVE - s3TaskManager.getPendingDownloadBytes();
 
+    int prefetchDepth = options.getPrefetchDepth();
+    for (DataSetManifest manifest : dataSetQueue.getDataSetsToPrefetch(prefetchDepth)) {
       /*
-       * Pull the object names from the keys that were returned, by
-       * stripping the timestamp prefix and slash from each of them.
+       * Data sets have to be processed in order, so there's no point in prefetching one past a data
+       * set that's either still uploading or too large to fit.
        */
-      Set<String> namesForObjectsInPage =
-          s3ObjectListing.getObjectSummaries().stream()
-              .map(s -> s.getKey())
-              .peek(s -> LOGGER.debug("Found file: '{}', part of data set: '{}'.", s, manifest))
-              .map(k -> k.substring(dataSetKeyPrefix.length()))
-              .collect(Collectors.toSet());
-      dataSetObjectNames.addAll(namesForObjectsInPage);
-
-      // On to the next page! (If any.)
-      s3BucketListRequest.setContinuationToken(s3ObjectListing.getNextContinuationToken());
-    } while (s3ObjectListing.isTruncated());
-
-    for (DataSetManifestEntry manifestEntry : manifest.getEntries()) {
-      if (!dataSetObjectNames.contains(manifestEntry.getName())) {
+      Optional<Map<String, Long>> objectSizes = dataSetQueue.getDataSetObjects(manifest);
+      if (!objectSizes.isPresent()) {
+        LOGGER.debug("Not prefetching data set '{}', as it's not yet available.", manifest);
+        return;
+      }
+
+      List<DataSetManifestEntry> entriesToDownload =
+          manifest.getEntries().stream()
+              .filter(manifestEntry -> !s3TaskManager.isDownloadSubmitted(manifestEntry))
+              .collect(Collectors.toList());
+      long dataSetSize =
+          entriesToDownload.stream()
+              .mapToLong(manifestEntry -> objectSizes.get().get(manifestEntry.getName()))
+              .sum();
+      if (dataSetSize > tempSpaceBudget) {
         LOGGER.debug(
-            "Waiting for file '{}', part of data set: '{}'.", manifestEntry.getName(), manifest);
-        return false;
+            "Not prefetching data set '{}', as its '{}' bytes exceed the '{}' byte budget.",
+            manifest,
+            dataSetSize,
+            tempSpaceBudget);
+        return;
       }
-    }
 
-    return true;
+      LOGGER.debug("Prefetching data set '{}'.", manifest);
+      for (DataSetManifestEntry manifestEntry : entriesToDownload)
+        s3TaskManager.downloadAsync(
+            manifestEntry, objectSizes.get().get(manifestEntry.getName()));
+      tempSpaceBudget -= dataSetSize;
+    }
   }
 }
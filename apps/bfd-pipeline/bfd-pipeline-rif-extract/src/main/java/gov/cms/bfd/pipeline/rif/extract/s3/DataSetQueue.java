@@ -10,11 +10,16 @@ import com.amazonaws.services.s3.model.S3ObjectSummary;
 import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.Timer;
 import gov.cms.bfd.pipeline.rif.extract.ExtractionOptions;
+import gov.cms.bfd.pipeline.rif.extract.s3.DataSetManifest.DataSetManifestEntry;
 import gov.cms.bfd.pipeline.rif.extract.s3.DataSetManifest.DataSetManifestId;
 import gov.cms.bfd.pipeline.rif.extract.s3.task.S3TaskManager;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.SortedSet;
@@ -31,6 +36,12 @@ import org.slf4j.LoggerFactory;
 public final class DataSetQueue {
   private static final Logger LOGGER = LoggerFactory.getLogger(DataSetMonitorWorker.class);
 
+  /**
+   * The {@link JAXBContext} used to read {@link DataSetManifest}s. These are expensive to create
+   * but thread-safe, so it's created once and reused. See {@link #getManifestJaxbContext()}.
+   */
+  private static JAXBContext manifestJaxbContext;
+
   private final MetricRegistry appMetrics;
   private final ExtractionOptions options;
   private final S3TaskManager s3TaskManager;
@@ -56,6 +67,19 @@ public final class DataSetQueue {
    */
   private final Set<DataSetManifestId> knownInvalidManifests;
 
+  /**
+   * The objects found (as of the last listing) in each pending data set's S3 "directory", keyed by
+   * that directory's S3 key prefix. Each value maps the objects' names (relative to the directory)
+   * to their sizes. These listings are reused across scans until their manifests change: see
+   * {@link #needsListing(String)}.
+   */
+  private final Map<String, Map<String, Long>> pendingDataSetObjects;
+
+  /**
+   * The count of completed data sets' manifests that were found in S3 the first time it was
+   * scanned, plus those that have been processed and moved out of the pending "directory" since
+   * then. Will be <code>null</code> until the first scan.
+   */
   private Integer completedManifestsCount;
 
   /**
@@ -74,6 +98,7 @@ public final class DataSetQueue {
     this.manifestsToProcess = new TreeSet<>();
     this.recentlyProcessedManifests = new HashSet<>();
     this.knownInvalidManifests = new HashSet<>();
+    this.pendingDataSetObjects = new HashMap<>();
   }
 
   /**
@@ -136,7 +161,8 @@ public final class DataSetQueue {
       if (!manifestIdsPendingNow.contains(manifestId)) {
         manifestsToProcessIterator.remove();
         knownInvalidManifests.remove(manifestId);
-        recentlyProcessedManifests.remove(manifestId);
+        if (recentlyProcessedManifests.remove(manifestId) && completedManifestsCount != null)
+          completedManifestsCount++;
         s3TaskManager.cleanupOldDataSet(manifestId);
       }
     }
@@ -153,48 +179,197 @@ public final class DataSetQueue {
     Set<DataSetManifestId> manifestIds = new HashSet<>();
 
     /*
-     * Request a list of all objects in the configured bucket and directory.
-     * (In the results, we'll be looking for the oldest manifest file, if
-     * any.)
+     * Rather than listing every object in the bucket (including the ever-growing number of completed
+     * ones), just list the data set "directories" directly under the pending prefix, and then the
+     * objects in each of those that might have changed since they were last listed. (In the
+     * results, we'll be looking for the oldest manifest file, if any.)
      */
     ListObjectsV2Request s3BucketListRequest = new ListObjectsV2Request();
     s3BucketListRequest.setBucketName(options.getS3BucketName());
+    s3BucketListRequest.setPrefix(DataSetMonitorWorker.S3_PREFIX_PENDING_DATA_SETS + "/");
+    s3BucketListRequest.setDelimiter("/");
     if (options.getS3ListMaxKeys().isPresent())
       s3BucketListRequest.setMaxKeys(options.getS3ListMaxKeys().get());
 
+    // S3 will return results in separate pages. Loop through all of the pages.
+    Set<String> dataSetKeyPrefixes = new HashSet<>();
+    ListObjectsV2Result s3ObjectListing;
+    do {
+      s3ObjectListing = s3TaskManager.getS3Client().listObjectsV2(s3BucketListRequest);
+      dataSetKeyPrefixes.addAll(s3ObjectListing.getCommonPrefixes());
+      s3BucketListRequest.setContinuationToken(s3ObjectListing.getNextContinuationToken());
+    } while (s3ObjectListing.isTruncated());
+
+    pendingDataSetObjects.keySet().retainAll(dataSetKeyPrefixes);
+    for (String dataSetKeyPrefix : dataSetKeyPrefixes) {
+      if (needsListing(dataSetKeyPrefix))
+        pendingDataSetObjects.put(dataSetKeyPrefix, listDataSetObjects(dataSetKeyPrefix));
+      manifestIds.addAll(
+          findManifestIds(dataSetKeyPrefix, pendingDataSetObjects.get(dataSetKeyPrefix)));
+    }
+
     /*
-     * S3 will return results in separate pages. Loop through all of the
-     * pages, looking for manifests.
+     * Completed data sets are only ever added by this application, so they only need to be counted
+     * once: after that, the count is kept up to date as data sets are moved.
      */
-    int completedManifestsCount = 0;
+    if (completedManifestsCount == null) completedManifestsCount = countCompletedManifests();
+
+    LOGGER.debug("Scanned for data sets in S3. Found '{}'.", manifestIds.size());
+    timerS3Scanning.close();
+
+    return manifestIds;
+  }
+
+  /**
+   * Checks whether or not the specified data set "directory" needs to be listed again, in a scan.
+   * Once a directory's manifests and their data sets' objects have all arrived, it's only expected
+   * to change when they're moved out after being processed, so there's no need to re-list it until
+   * then. That way, scans only list the data sets that are still uploading or being moved, rather
+   * than every pending data set, every time.
+   *
+   * @param dataSetKeyPrefix the S3 key prefix of the data set "directory" to check
+   * @return <code>true</code> if the specified directory hasn't been listed yet, had no manifests
+   *     or was missing some of its data sets' objects as of its last listing, or has manifests that
+   *     have been processed (and so should be moved out soon), <code>false</code> if its last
+   *     listing can be reused
+   */
+  private boolean needsListing(String dataSetKeyPrefix) {
+    Map<String, Long> dataSetObjects = pendingDataSetObjects.get(dataSetKeyPrefix);
+    if (dataSetObjects == null) return true;
+
+    Set<DataSetManifestId> manifestIds = findManifestIds(dataSetKeyPrefix, dataSetObjects);
+    if (manifestIds.isEmpty()) return true;
+    if (manifestIds.stream().anyMatch(recentlyProcessedManifests::contains)) return true;
+    return manifestsToProcess.stream()
+        .filter(manifest -> computeKeyPrefix(manifest).equals(dataSetKeyPrefix))
+        .anyMatch(manifest -> !getDataSetObjects(manifest).isPresent());
+  }
+
+  /**
+   * @param dataSetKeyPrefix the S3 key prefix of a data set "directory"
+   * @param dataSetObjects the objects found in that directory, as returned by {@link
+   *     #listDataSetObjects(String)}
+   * @return the {@link DataSetManifestId}s of the manifests among the specified objects
+   */
+  private static Set<DataSetManifestId> findManifestIds(
+      String dataSetKeyPrefix, Map<String, Long> dataSetObjects) {
+    Set<DataSetManifestId> manifestIds = new HashSet<>();
+    for (String objectName : dataSetObjects.keySet()) {
+      String key = dataSetKeyPrefix + objectName;
+      if (DataSetMonitorWorker.REGEX_PENDING_MANIFEST.matcher(key).matches()) {
+        /*
+         * We've got an object that *looks like* it might be a
+         * manifest file. But we need to parse the key to ensure
+         * that it starts with a valid timestamp.
+         */
+        DataSetManifestId manifestId = DataSetManifestId.parseManifestIdFromS3Key(key);
+        if (manifestId != null) manifestIds.add(manifestId);
+      }
+    }
+    return manifestIds;
+  }
+
+  /**
+   * @param dataSetKeyPrefix the S3 key prefix of the data set "directory" to list the objects of
+   * @return the objects found in S3 under the specified key prefix, as a {@link Map} of their names
+   *     (relative to that prefix) to their sizes
+   */
+  private Map<String, Long> listDataSetObjects(String dataSetKeyPrefix) {
+    ListObjectsV2Request s3BucketListRequest = new ListObjectsV2Request();
+    s3BucketListRequest.setBucketName(options.getS3BucketName());
+    s3BucketListRequest.setPrefix(dataSetKeyPrefix);
+    if (options.getS3ListMaxKeys().isPresent())
+      s3BucketListRequest.setMaxKeys(options.getS3ListMaxKeys().get());
+
+    Map<String, Long> dataSetObjects = new HashMap<>();
     ListObjectsV2Result s3ObjectListing;
     do {
       s3ObjectListing = s3TaskManager.getS3Client().listObjectsV2(s3BucketListRequest);
 
+      /*
+       * Pull the object names from the keys that were returned, by
+       * stripping the timestamp prefix and slash from each of them.
+       */
+      for (S3ObjectSummary objectSummary : s3ObjectListing.getObjectSummaries()) {
+        LOGGER.debug("Found file: '{}'.", objectSummary.getKey());
+        dataSetObjects.put(
+            objectSummary.getKey().substring(dataSetKeyPrefix.length()), objectSummary.getSize());
+      }
+
+      // On to the next page! (If any.)
+      s3BucketListRequest.setContinuationToken(s3ObjectListing.getNextContinuationToken());
+    } while (s3ObjectListing.isTruncated());
+
+    return dataSetObjects;
+  }
+
+  /**
+   * @return the number of completed data sets' manifests found in S3 under the {@value
+   *     DataSetMonitorWorker#S3_PREFIX_COMPLETED_DATA_SETS} key prefix
+   */
+  private int countCompletedManifests() {
+    ListObjectsV2Request s3BucketListRequest = new ListObjectsV2Request();
+    s3BucketListRequest.setBucketName(options.getS3BucketName());
+    s3BucketListRequest.setPrefix(DataSetMonitorWorker.S3_PREFIX_COMPLETED_DATA_SETS + "/");
+    if (options.getS3ListMaxKeys().isPresent())
+      s3BucketListRequest.setMaxKeys(options.getS3ListMaxKeys().get());
+
+    int completedManifestsCount = 0;
+    ListObjectsV2Result s3ObjectListing;
+    do {
+      s3ObjectListing = s3TaskManager.getS3Client().listObjectsV2(s3BucketListRequest);
       for (S3ObjectSummary objectSummary : s3ObjectListing.getObjectSummaries()) {
-        String key = objectSummary.getKey();
-        if (DataSetMonitorWorker.REGEX_PENDING_MANIFEST.matcher(key).matches()) {
-          /*
-           * We've got an object that *looks like* it might be a
-           * manifest file. But we need to parse the key to ensure
-           * that it starts with a valid timestamp.
-           */
-          DataSetManifestId manifestId = DataSetManifestId.parseManifestIdFromS3Key(key);
-          if (manifestId != null) manifestIds.add(manifestId);
-        } else if (DataSetMonitorWorker.REGEX_COMPLETED_MANIFEST.matcher(key).matches()) {
+        if (DataSetMonitorWorker.REGEX_COMPLETED_MANIFEST.matcher(objectSummary.getKey()).matches())
           completedManifestsCount++;
-        }
       }
-
       s3BucketListRequest.setContinuationToken(s3ObjectListing.getNextContinuationToken());
     } while (s3ObjectListing.isTruncated());
 
-    this.completedManifestsCount = completedManifestsCount;
+    return completedManifestsCount;
+  }
 
-    LOGGER.debug("Scanned for data sets in S3. Found '{}'.", manifestsToProcess.size());
-    timerS3Scanning.close();
+  /**
+   * @param manifest the {@link DataSetManifest} that lists the objects to check for
+   * @return the sizes (in bytes) of the objects listed in the specified {@link DataSetManifest},
+   *     keyed by {@link DataSetManifestEntry#getName()}, if all of them were found in S3 the last
+   *     time it was listed, or {@link Optional#empty()} if not. (See {@link
+   *     #refreshDataSetObjects(DataSetManifest)}.)
+   */
+  public Optional<Map<String, Long>> getDataSetObjects(DataSetManifest manifest) {
+    Map<String, Long> dataSetObjects = pendingDataSetObjects.get(computeKeyPrefix(manifest));
+    if (dataSetObjects == null) return Optional.empty();
+
+    for (DataSetManifestEntry manifestEntry : manifest.getEntries()) {
+      if (!dataSetObjects.containsKey(manifestEntry.getName())) {
+        LOGGER.debug(
+            "Waiting for file '{}', part of data set: '{}'.", manifestEntry.getName(), manifest);
+        return Optional.empty();
+      }
+    }
 
-    return manifestIds;
+    return Optional.of(dataSetObjects);
+  }
+
+  /**
+   * Re-lists just the objects in the specified {@link DataSetManifest}'s S3 "directory", e.g. while
+   * waiting for it to finish uploading.
+   *
+   * @param manifest the {@link DataSetManifest} to refresh the {@link
+   *     #getDataSetObjects(DataSetManifest)} results of
+   */
+  public void refreshDataSetObjects(DataSetManifest manifest) {
+    String dataSetKeyPrefix = computeKeyPrefix(manifest);
+    pendingDataSetObjects.put(dataSetKeyPrefix, listDataSetObjects(dataSetKeyPrefix));
+  }
+
+  /**
+   * @param manifest the {@link DataSetManifest} to compute the key prefix for
+   * @return the S3 key prefix of the pending data set "directory" containing the specified {@link
+   *     DataSetManifest} and its objects
+   */
+  private static String computeKeyPrefix(DataSetManifest manifest) {
+    return String.format(
+        "%s/%s/", DataSetMonitorWorker.S3_PREFIX_PENDING_DATA_SETS, manifest.getTimestampText());
   }
 
   /**
@@ -213,13 +388,7 @@ public final class DataSetQueue {
       throws JAXBException {
     try (S3Object manifestObject =
         s3Client.getObject(options.getS3BucketName(), manifestToProcessKey)) {
-      JAXBContext jaxbContext = JAXBContext.newInstance(DataSetManifest.class);
-      Unmarshaller jaxbUnmarshaller = jaxbContext.createUnmarshaller();
-
-      DataSetManifest manifest =
-          (DataSetManifest) jaxbUnmarshaller.unmarshal(manifestObject.getObjectContent());
-
-      return manifest;
+      return readManifest(manifestObject.getObjectContent());
     } catch (AmazonServiceException e) {
       /*
        * This could likely be retried, but we don't currently support
@@ -241,6 +410,28 @@ public final class DataSetQueue {
     }
   }
 
+  /**
+   * @param manifestStream the {@link InputStream} for the manifest to be read, which the caller is
+   *     responsible for closing
+   * @return the {@link DataSetManifest} that was contained in the specified {@link InputStream}
+   * @throws JAXBException Any {@link JAXBException}s that are encountered will be bubbled up. See
+   *     {@link #readManifest(AmazonS3, ExtractionOptions, String)} for details.
+   */
+  public static DataSetManifest readManifest(InputStream manifestStream) throws JAXBException {
+    Unmarshaller jaxbUnmarshaller = getManifestJaxbContext().createUnmarshaller();
+    return (DataSetManifest) jaxbUnmarshaller.unmarshal(manifestStream);
+  }
+
+  /**
+   * @return the shared {@link JAXBContext} for reading {@link DataSetManifest}s
+   * @throws JAXBException Any {@link JAXBException}s encountered will be bubbled up.
+   */
+  private static synchronized JAXBContext getManifestJaxbContext() throws JAXBException {
+    if (manifestJaxbContext == null)
+      manifestJaxbContext = JAXBContext.newInstance(DataSetManifest.class);
+    return manifestJaxbContext;
+  }
+
   /**
    * @return the {@link Stream} that {@link QueuedDataSet}s should be pulled from, when requested
    */
@@ -263,11 +454,12 @@ public final class DataSetQueue {
   }
 
   /**
-   * @return the {@link DataSetManifest} for the next-but-one data set that should be processed, if
-   *     any
+   * @param maxCount the maximum number of {@link DataSetManifest}s to return
+   * @return the {@link DataSetManifest}s for the data sets that should be processed after {@link
+   *     #getNextDataSetToProcess()}, in processing order, limited to the specified count
    */
-  public Optional<DataSetManifest> getSecondDataSetToProcess() {
-    return getManifestsToProcess().skip(1).findFirst();
+  public List<DataSetManifest> getDataSetsToPrefetch(int maxCount) {
+    return getManifestsToProcess().skip(1).limit(maxCount).collect(Collectors.toList());
   }
 
   /**
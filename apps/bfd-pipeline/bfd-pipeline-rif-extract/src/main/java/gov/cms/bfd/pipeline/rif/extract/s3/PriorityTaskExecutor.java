@@ -0,0 +1,111 @@
+package gov.cms.bfd.pipeline.rif.extract.s3;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@link ThreadPoolExecutor} that, like {@link TaskExecutor}, will properly "bubble up" task
+ * failures to the {@link Thread} and its uncaught exception handler. Unlike {@link TaskExecutor},
+ * though, queued tasks are not necessarily run in the order they were submitted: if the submitted
+ * {@link Callable}s are {@link Comparable} with each other, the "smallest" queued task will always
+ * be run next. Tasks that aren't {@link Comparable} (or that compare as equal) will be run in the
+ * order they were submitted.
+ */
+public final class PriorityTaskExecutor extends ThreadPoolExecutor {
+  private final String name;
+  private final AtomicLong submissionSequence;
+
+  /**
+   * Constructs a new {@link PriorityTaskExecutor} instance.
+   *
+   * @param name the name of this executor, for use in error messages
+   * @param threadPoolSize the number of threads to maintain in the thread pool
+   */
+  public PriorityTaskExecutor(String name, int threadPoolSize) {
+    super(
+        threadPoolSize,
+        threadPoolSize,
+        100L,
+        TimeUnit.MILLISECONDS,
+        new PriorityBlockingQueue<Runnable>());
+    allowCoreThreadTimeOut(true);
+
+    this.name = name;
+    this.submissionSequence = new AtomicLong(0L);
+  }
+
+  /**
+   * @see java.util.concurrent.AbstractExecutorService#newTaskFor(java.util.concurrent.Callable)
+   */
+  @Override
+  protected <T> RunnableFuture<T> newTaskFor(Callable<T> callable) {
+    return new PrioritizedFutureTask<T>(callable, submissionSequence.getAndIncrement());
+  }
+
+  /**
+   * @see java.util.concurrent.AbstractExecutorService#newTaskFor(java.lang.Runnable,
+   *     java.lang.Object)
+   */
+  @Override
+  protected <T> RunnableFuture<T> newTaskFor(Runnable runnable, T value) {
+    return new PrioritizedFutureTask<T>(
+        () -> {
+          runnable.run();
+          return value;
+        },
+        submissionSequence.getAndIncrement());
+  }
+
+  /**
+   * @see java.util.concurrent.ThreadPoolExecutor#afterExecute(java.lang.Runnable,
+   *     java.lang.Throwable)
+   */
+  @Override
+  protected void afterExecute(Runnable runnable, Throwable throwable) {
+    super.afterExecute(runnable, throwable);
+    TaskExecutor.bubbleUpFailures(name, runnable, throwable);
+  }
+
+  /**
+   * The {@link FutureTask}s that {@link PriorityTaskExecutor} queues up, which are ordered by their
+   * {@link Callable}s (where possible), and then by submission order.
+   *
+   * @param <T> the result type of the task
+   */
+  private static final class PrioritizedFutureTask<T> extends FutureTask<T>
+      implements Comparable<PrioritizedFutureTask<?>> {
+    private final Callable<T> callable;
+    private final long sequence;
+
+    /**
+     * Constructs a new {@link PrioritizedFutureTask}.
+     *
+     * @param callable the {@link Callable} to run
+     * @param sequence the order in which the task was submitted
+     */
+    PrioritizedFutureTask(Callable<T> callable, long sequence) {
+      super(callable);
+      this.callable = callable;
+      this.sequence = sequence;
+    }
+
+    /** @see java.lang.Comparable#compareTo(java.lang.Object) */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    @Override
+    public int compareTo(PrioritizedFutureTask<?> o) {
+      if (callable instanceof Comparable
+          && o.callable instanceof Comparable
+          && callable.getClass().equals(o.callable.getClass())) {
+        int callableComparison = ((Comparable) callable).compareTo(o.callable);
+        if (callableComparison != 0) return callableComparison;
+      }
+
+      return Long.compare(sequence, o.sequence);
+    }
+  }
+}
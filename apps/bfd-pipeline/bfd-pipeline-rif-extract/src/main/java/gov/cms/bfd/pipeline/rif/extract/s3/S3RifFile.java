@@ -9,6 +9,7 @@ import gov.cms.bfd.model.rif.RifFileType;
 import gov.cms.bfd.pipeline.rif.extract.exceptions.AwsFailureException;
 import gov.cms.bfd.pipeline.rif.extract.s3.DataSetManifest.DataSetManifestEntry;
 import gov.cms.bfd.pipeline.rif.extract.s3.task.ManifestEntryDownloadTask.ManifestEntryDownloadResult;
+import gov.cms.bfd.pipeline.rif.extract.s3.task.ProgressiveDownload;
 import java.io.BufferedInputStream;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
@@ -19,6 +20,7 @@ import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.util.Objects;
+import java.util.Optional;
 import java.util.concurrent.CancellationException;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
@@ -37,6 +39,7 @@ public final class S3RifFile implements RifFile {
   private final MetricRegistry appMetrics;
   private final DataSetManifestEntry manifestEntry;
   private final Future<ManifestEntryDownloadResult> manifestEntryDownload;
+  private final Optional<ProgressiveDownload> progressiveDownload;
 
   /**
    * Constructs a new {@link S3RifFile} instance.
@@ -51,13 +54,35 @@ public final class S3RifFile implements RifFile {
       MetricRegistry appMetrics,
       DataSetManifestEntry manifestEntry,
       Future<ManifestEntryDownloadResult> manifestEntryDownload) {
+    this(appMetrics, manifestEntry, manifestEntryDownload, Optional.empty());
+  }
+
+  /**
+   * Constructs a new {@link S3RifFile} instance.
+   *
+   * @param appMetrics the {@link MetricRegistry} for the overall application
+   * @param manifestEntry the specific {@link DataSetManifestEntry} represented by this {@link
+   *     S3RifFile}
+   * @param manifestEntryDownload a {@link Future} for the {@link ManifestEntryDownloadResult} with
+   *     a local download of the RIF file's contents
+   * @param progressiveDownload the {@link ProgressiveDownload} for the RIF file's contents, if it's
+   *     being streamed, which {@link #open()} will read from rather than waiting for the {@link
+   *     Future} to complete
+   */
+  public S3RifFile(
+      MetricRegistry appMetrics,
+      DataSetManifestEntry manifestEntry,
+      Future<ManifestEntryDownloadResult> manifestEntryDownload,
+      Optional<ProgressiveDownload> progressiveDownload) {
     Objects.requireNonNull(appMetrics);
     Objects.requireNonNull(manifestEntry);
     Objects.requireNonNull(manifestEntryDownload);
+    Objects.requireNonNull(progressiveDownload);
 
     this.appMetrics = appMetrics;
     this.manifestEntry = manifestEntry;
     this.manifestEntryDownload = manifestEntryDownload;
+    this.progressiveDownload = progressiveDownload;
   }
 
   /** @see gov.cms.bfd.model.rif.RifFile#getFileType() */
@@ -85,19 +110,56 @@ public final class S3RifFile implements RifFile {
   /** @see gov.cms.bfd.model.rif.RifFile#open() */
   @Override
   public InputStream open() {
-    ManifestEntryDownloadResult fileDownloadResult = waitForDownload();
-
-    // Open a stream for the file.
+    /*
+     * If the file is being streamed, there's no need to wait for the download: the parser can
+     * start consuming it right away. Any download failures (including checksum mismatches) will
+     * instead surface as an IOException when the stream's end is reached.
+     */
     InputStream fileDownloadStream;
+    if (progressiveDownload.isPresent()) {
+      if (!manifestEntryDownload.isDone())
+        LOGGER.info("Streaming RIF file while it downloads: '{}'...", getDisplayName());
+      fileDownloadStream = new BufferedInputStream(progressiveDownload.get().openStream());
+    } else {
+      ManifestEntryDownloadResult fileDownloadResult = waitForDownload();
+
+      // Open a stream for the file.
+      try {
+        fileDownloadStream =
+            new BufferedInputStream(
+                new FileInputStream(fileDownloadResult.getLocalDownload().toFile()));
+      } catch (FileNotFoundException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+
+    // The local download is kept compressed (if it is), so decompress it as it's read.
     try {
-      fileDownloadStream =
-          new BufferedInputStream(
-              new FileInputStream(fileDownloadResult.getLocalDownload().toFile()));
-    } catch (FileNotFoundException e) {
+      return manifestEntry.getCompression().decompress(fileDownloadStream);
+    } catch (IOException e) {
       throw new UncheckedIOException(e);
     }
+  }
+
+  /** @see gov.cms.bfd.model.rif.RifFile#getSize() */
+  @Override
+  public Optional<Long> getSize() {
+    // The size of a compressed file has no bearing on how many bytes it will decompress to.
+    if (manifestEntry.getCompression() != CompressionCodec.NONE) return Optional.empty();
 
-    return fileDownloadStream;
+    if (progressiveDownload.isPresent()) return progressiveDownload.get().getTotalBytes();
+    if (!manifestEntryDownload.isDone()) return Optional.empty();
+    try {
+      return Optional.of(Files.size(manifestEntryDownload.get().getLocalDownload()));
+    } catch (InterruptedException e) {
+      // We're not expecting interrupts here, so go boom.
+      throw new BadCodeMonkeyException(e);
+    } catch (ExecutionException | CancellationException e) {
+      // The download failed, which will be reported when the file is opened.
+      return Optional.empty();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
   }
 
   /**
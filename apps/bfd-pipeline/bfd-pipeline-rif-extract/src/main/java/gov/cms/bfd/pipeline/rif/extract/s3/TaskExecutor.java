@@ -41,7 +41,18 @@ public final class TaskExecutor extends ScheduledThreadPoolExecutor {
   @Override
   protected void afterExecute(Runnable runnable, Throwable throwable) {
     super.afterExecute(runnable, throwable);
+    bubbleUpFailures(name, runnable, throwable);
+  }
 
+  /**
+   * Ensures that failures of asynchronous tasks cause exceptions to get thrown on the calling
+   * thread. Intended to be called from {@link #afterExecute(Runnable, Throwable)} implementations.
+   *
+   * @param executorName the name of the executor that ran the task, for use in error messages
+   * @param runnable the task that was run
+   * @param throwable the {@link Throwable} passed to {@link #afterExecute(Runnable, Throwable)}
+   */
+  static void bubbleUpFailures(String executorName, Runnable runnable, Throwable throwable) {
     /*
      * We need to ensure that failure of asynchronous tasks cause exceptions to get thrown on this
      * thread, which should ultimately bubble up to something that the application can handle, e.g.
@@ -73,13 +84,13 @@ public final class TaskExecutor extends ScheduledThreadPoolExecutor {
         LOGGER.trace(
             String.format(
                 "Asynchronous task '%s' on the '%s' executor was cancelled.",
-                getTaskId(runnable), this.name),
+                getTaskId(runnable), executorName),
             throwable);
       } else {
         throw new RuntimeException(
             String.format(
                 "Asynchronous task '%s' on the '%s' executor failed.",
-                getTaskId(runnable), this.name),
+                getTaskId(runnable), executorName),
             throwable);
       }
     }
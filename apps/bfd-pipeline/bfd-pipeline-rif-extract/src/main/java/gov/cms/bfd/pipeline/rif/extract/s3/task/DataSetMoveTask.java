@@ -1,17 +1,19 @@
 package gov.cms.bfd.pipeline.rif.extract.s3.task;
 
+import com.amazonaws.AmazonClientException;
 import com.amazonaws.services.s3.model.CopyObjectRequest;
-import com.amazonaws.services.s3.model.DeleteObjectRequest;
-import com.amazonaws.services.s3.model.GetObjectMetadataRequest;
+import com.amazonaws.services.s3.model.DeleteObjectsRequest;
+import com.amazonaws.services.s3.model.MultiObjectDeleteException;
 import com.amazonaws.services.s3.model.ObjectMetadata;
 import com.amazonaws.services.s3.model.SSEAwsKeyManagementParams;
 import com.amazonaws.services.s3.transfer.Copy;
-import com.amazonaws.waiters.WaiterParameters;
 import com.justdavis.karl.misc.exceptions.BadCodeMonkeyException;
 import gov.cms.bfd.pipeline.rif.extract.ExtractionOptions;
 import gov.cms.bfd.pipeline.rif.extract.s3.DataSetManifest;
 import gov.cms.bfd.pipeline.rif.extract.s3.DataSetMonitorWorker;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.Callable;
 import java.util.stream.Collectors;
 import org.slf4j.Logger;
@@ -21,6 +23,12 @@ import org.slf4j.LoggerFactory;
 public final class DataSetMoveTask implements Callable<Void> {
   private static final Logger LOGGER = LoggerFactory.getLogger(DataSetMoveTask.class);
 
+  /** The number of times that each object's copy or deletion will be attempted. */
+  private static final int MAX_ATTEMPTS = 3;
+
+  /** The maximum number of keys that S3 allows in a single {@link DeleteObjectsRequest}. */
+  private static final int MAX_DELETE_BATCH_SIZE = 1000;
+
   private final S3TaskManager s3TaskManager;
   private final ExtractionOptions options;
   private final DataSetManifest manifest;
@@ -63,72 +71,125 @@ public final class DataSetMoveTask implements Callable<Void> {
         String.format("%s/%d_manifest.xml", manifest.getTimestampText(), manifest.getSequenceId()));
 
     /*
-     * Then, loop through each of those objects and copy them (S3 has no
-     * bulk copy operation).
+     * Then, copy each of those objects (S3 has no bulk copy operation). The copies are all started
+     * at once and run in parallel: the TransferManager's thread pool bounds how many actually run
+     * at a time, and it splits large objects into parts that are copied in parallel, too.
      */
-    for (String s3KeySuffixToMove : s3KeySuffixesToMove) {
-      String sourceKey =
-          String.format(
-              "%s/%s", DataSetMonitorWorker.S3_PREFIX_PENDING_DATA_SETS, s3KeySuffixToMove);
-      String targetKey =
-          String.format(
-              "%s/%s", DataSetMonitorWorker.S3_PREFIX_COMPLETED_DATA_SETS, s3KeySuffixToMove);
-
-      /*
-       * Before copying, grab the metadata of the source object to ensure
-       * that we maintain its encryption settings (by default, the copy
-       * will maintain all metadata EXCEPT: server-side-encryption,
-       * storage-class, and website-redirect-location).
-       */
-      ObjectMetadata objectMetadata =
-          s3TaskManager.getS3Client().getObjectMetadata(options.getS3BucketName(), sourceKey);
-      CopyObjectRequest copyRequest =
-          new CopyObjectRequest(
-              options.getS3BucketName(), sourceKey, options.getS3BucketName(), targetKey);
-      if (objectMetadata.getSSEAwsKmsKeyId() != null) {
-        copyRequest.setSSEAwsKeyManagementParams(
-            new SSEAwsKeyManagementParams(objectMetadata.getSSEAwsKmsKeyId()));
-      }
+    Map<String, Copy> copyOperations = new LinkedHashMap<>();
+    for (String s3KeySuffixToMove : s3KeySuffixesToMove)
+      copyOperations.put(s3KeySuffixToMove, startCopy(s3KeySuffixToMove));
 
-      Copy copyOperation = s3TaskManager.getS3TransferManager().copy(copyRequest);
-      try {
-        copyOperation.waitForCopyResult();
-        s3TaskManager
-            .getS3Client()
-            .waiters()
-            .objectExists()
-            .run(
-                new WaiterParameters<GetObjectMetadataRequest>(
-                    new GetObjectMetadataRequest(options.getS3BucketName(), targetKey)));
-      } catch (InterruptedException e) {
-        throw new BadCodeMonkeyException(e);
+    for (Map.Entry<String, Copy> copyOperation : copyOperations.entrySet()) {
+      String s3KeySuffixToMove = copyOperation.getKey();
+      Copy copy = copyOperation.getValue();
+      for (int attempt = 1; ; attempt++) {
+        try {
+          copy.waitForCopyResult();
+          break;
+        } catch (AmazonClientException e) {
+          if (attempt >= MAX_ATTEMPTS) throw e;
+          LOGGER.warn(
+              String.format(
+                  "Copy of '%s' failed (attempt %d of %d). Retrying...",
+                  s3KeySuffixToMove, attempt, MAX_ATTEMPTS),
+              e);
+          copy = startCopy(s3KeySuffixToMove);
+        } catch (InterruptedException e) {
+          throw new BadCodeMonkeyException(e);
+        }
       }
     }
+
+    /*
+     * No need to poll S3 for the copies to show up: S3 is strongly read-after-write consistent, so
+     * each successful copy result above means that its target object is already there.
+     */
     LOGGER.debug("Data set copied in S3 (step 1 of move).");
 
     /*
-     * After everything's been copied, loop over it all again and delete it the source objects. (We
-     * could do it all in the same loop, but this is a bit easier to clean up from if it goes
-     * sideways.)
+     * After everything's been copied, delete the source objects, in batches. (We could do it all in
+     * the same step, but this is a bit easier to clean up from if it goes sideways.)
+     */
+    List<String> sourceKeys =
+        s3KeySuffixesToMove.stream()
+            .map(k -> String.format("%s/%s", DataSetMonitorWorker.S3_PREFIX_PENDING_DATA_SETS, k))
+            .collect(Collectors.toList());
+    for (int batchStart = 0; batchStart < sourceKeys.size(); batchStart += MAX_DELETE_BATCH_SIZE)
+      deleteObjects(
+          sourceKeys.subList(
+              batchStart, Math.min(batchStart + MAX_DELETE_BATCH_SIZE, sourceKeys.size())));
+
+    /*
+     * Likewise, each (retried) batch delete only returns once every one of its objects has been
+     * successfully deleted, which is all the confirmation needed.
      */
-    for (String s3KeySuffixToMove : s3KeySuffixesToMove) {
-      String sourceKey =
-          String.format(
-              "%s/%s", DataSetMonitorWorker.S3_PREFIX_PENDING_DATA_SETS, s3KeySuffixToMove);
-      DeleteObjectRequest deleteObjectRequest =
-          new DeleteObjectRequest(options.getS3BucketName(), sourceKey);
-      s3TaskManager.getS3Client().deleteObject(deleteObjectRequest);
-      s3TaskManager
-          .getS3Client()
-          .waiters()
-          .objectNotExists()
-          .run(
-              new WaiterParameters<GetObjectMetadataRequest>(
-                  new GetObjectMetadataRequest(options.getS3BucketName(), sourceKey)));
-    }
     LOGGER.debug("Data set deleted in S3 (step 2 of move).");
 
     LOGGER.debug("Renamed data set '{}' in S3, now that processing is complete.", manifest);
     return null;
   }
+
+  /**
+   * Starts an asynchronous copy of the specified object from the {@value
+   * DataSetMonitorWorker#S3_PREFIX_PENDING_DATA_SETS} "directory" to the {@value
+   * DataSetMonitorWorker#S3_PREFIX_COMPLETED_DATA_SETS} one.
+   *
+   * @param s3KeySuffixToMove the S3 key of the object to copy, relative to those "directories"
+   * @return the {@link Copy} operation that was started
+   */
+  private Copy startCopy(String s3KeySuffixToMove) {
+    String sourceKey =
+        String.format("%s/%s", DataSetMonitorWorker.S3_PREFIX_PENDING_DATA_SETS, s3KeySuffixToMove);
+    String targetKey =
+        String.format(
+            "%s/%s", DataSetMonitorWorker.S3_PREFIX_COMPLETED_DATA_SETS, s3KeySuffixToMove);
+
+    /*
+     * Before copying, grab the metadata of the source object to ensure
+     * that we maintain its encryption settings (by default, the copy
+     * will maintain all metadata EXCEPT: server-side-encryption,
+     * storage-class, and website-redirect-location).
+     */
+    ObjectMetadata objectMetadata =
+        s3TaskManager.getS3Client().getObjectMetadata(options.getS3BucketName(), sourceKey);
+    CopyObjectRequest copyRequest =
+        new CopyObjectRequest(
+            options.getS3BucketName(), sourceKey, options.getS3BucketName(), targetKey);
+    if (objectMetadata.getSSEAwsKmsKeyId() != null) {
+      copyRequest.setSSEAwsKeyManagementParams(
+          new SSEAwsKeyManagementParams(objectMetadata.getSSEAwsKmsKeyId()));
+    }
+
+    return s3TaskManager.getS3TransferManager().copy(copyRequest);
+  }
+
+  /**
+   * Deletes the specified objects with a single multi-object delete request, retrying any objects
+   * that fail to be deleted (up to {@link #MAX_ATTEMPTS} times in total).
+   *
+   * @param keys the S3 keys of the objects to delete, of which there must be no more than {@link
+   *     #MAX_DELETE_BATCH_SIZE}
+   */
+  private void deleteObjects(List<String> keys) {
+    List<String> keysToDelete = keys;
+    for (int attempt = 1; ; attempt++) {
+      DeleteObjectsRequest deleteRequest =
+          new DeleteObjectsRequest(options.getS3BucketName())
+              .withKeys(keysToDelete.toArray(new String[keysToDelete.size()]))
+              .withQuiet(true);
+      try {
+        s3TaskManager.getS3Client().deleteObjects(deleteRequest);
+        return;
+      } catch (MultiObjectDeleteException e) {
+        if (attempt >= MAX_ATTEMPTS) throw e;
+        LOGGER.warn(
+            "Deletion of {} objects failed (attempt {} of {}). Retrying...",
+            e.getErrors().size(),
+            attempt,
+            MAX_ATTEMPTS);
+        keysToDelete =
+            e.getErrors().stream().map(error -> error.getKey()).collect(Collectors.toList());
+      }
+    }
+  }
 }
@@ -1,41 +1,94 @@
 package gov.cms.bfd.pipeline.rif.extract.s3.task;
 
 import com.amazonaws.AmazonClientException;
+import com.amazonaws.services.s3.AmazonS3;
 import com.amazonaws.services.s3.model.GetObjectRequest;
-import com.amazonaws.services.s3.transfer.Download;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.S3Object;
 import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.Timer;
 import com.justdavis.karl.misc.exceptions.BadCodeMonkeyException;
 import gov.cms.bfd.pipeline.rif.extract.ExtractionOptions;
 import gov.cms.bfd.pipeline.rif.extract.exceptions.AwsFailureException;
 import gov.cms.bfd.pipeline.rif.extract.exceptions.ChecksumException;
+import gov.cms.bfd.pipeline.rif.extract.s3.DataSetManifest;
 import gov.cms.bfd.pipeline.rif.extract.s3.DataSetManifest.DataSetManifestEntry;
 import gov.cms.bfd.pipeline.rif.extract.s3.DataSetMonitorWorker;
 import gov.cms.bfd.pipeline.rif.extract.s3.task.ManifestEntryDownloadTask.ManifestEntryDownloadResult;
-import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
 import java.util.Base64;
+import java.util.List;
+import java.util.Optional;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * Represents an asynchronous operation to download the contents of a specific {@link
  * DataSetManifestEntry} from S3.
+ *
+ * <p>These tasks are {@link Comparable}, such that they're ordered by when the loader will need
+ * their files: by {@link DataSetManifest} order first, and then by their order within each {@link
+ * DataSetManifest}.
  */
-public final class ManifestEntryDownloadTask implements Callable<ManifestEntryDownloadResult> {
+public final class ManifestEntryDownloadTask
+    implements Callable<ManifestEntryDownloadResult>, Comparable<ManifestEntryDownloadTask> {
   private static final Logger LOGGER = LoggerFactory.getLogger(ManifestEntryDownloadTask.class);
 
+  /**
+   * The size of each ranged <code>GET</code> used to download objects. Larger ranges mean fewer
+   * requests, but more to redo if a connection drops partway through one.
+   */
+  private static final long RANGE_SIZE = 64L * 1024 * 1024;
+
+  /**
+   * Objects at least this large will (when not streaming) be downloaded as a number of ranges in
+   * parallel. Smaller objects are downloaded one range at a time.
+   */
+  private static final long PARALLEL_RANGES_THRESHOLD = 4 * RANGE_SIZE;
+
+  /**
+   * The size of each ranged <code>GET</code> used to download objects in parallel. Each of these
+   * ranges is held in memory until its bytes can be checksummed, so they're kept smaller than the
+   * sequential {@link #RANGE_SIZE}.
+   */
+  private static final long PARALLEL_RANGE_SIZE = 16L * 1024 * 1024;
+
+  /**
+   * The maximum number of ranges of each object that will be downloaded (or held in memory) at
+   * once, when downloading in parallel. Along with {@link #PARALLEL_RANGE_SIZE}, this bounds the
+   * memory used by each download.
+   */
+  private static final int MAX_PARALLEL_RANGES = 4;
+
+  /**
+   * The number of times that a ranged <code>GET</code> will be attempted before giving up on the
+   * whole download. Each retry resumes from the last byte that was successfully copied.
+   */
+  private static final int MAX_RANGE_ATTEMPTS = 3;
+
+  /** The size of the buffer used to copy each range's bytes to the local file. */
+  private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
   private final S3TaskManager s3TaskManager;
   private final MetricRegistry appMetrics;
   private final ExtractionOptions options;
   private final DataSetManifestEntry manifestEntry;
+  private final ProgressiveDownload progressiveDownload;
 
   /**
    * Constructs a new {@link ManifestEntryDownloadTask}.
@@ -54,66 +107,322 @@ public final class ManifestEntryDownloadTask implements Callable<ManifestEntryDo
     this.appMetrics = appMetrics;
     this.options = options;
     this.manifestEntry = manifestEntry;
+    this.progressiveDownload =
+        options.isStreamingDownloadsEnabled() ? new ProgressiveDownload(manifestEntry) : null;
+  }
+
+  /**
+   * @return the {@link ProgressiveDownload} that can be used to read this task's download while it
+   *     is still in progress, or {@link Optional#empty()} if {@link
+   *     ExtractionOptions#isStreamingDownloadsEnabled()} is <code>false</code>
+   */
+  public Optional<ProgressiveDownload> getProgressiveDownload() {
+    return Optional.ofNullable(progressiveDownload);
+  }
+
+  /** @see java.lang.Comparable#compareTo(java.lang.Object) */
+  @Override
+  public int compareTo(ManifestEntryDownloadTask o) {
+    DataSetManifest manifest = manifestEntry.getParentManifest();
+    DataSetManifest otherManifest = o.manifestEntry.getParentManifest();
+
+    int manifestComparison = manifest.compareTo(otherManifest);
+    if (manifestComparison != 0) return manifestComparison;
+
+    return Integer.compare(
+        manifest.getEntries().indexOf(manifestEntry),
+        otherManifest.getEntries().indexOf(o.manifestEntry));
   }
 
   /** @see java.util.concurrent.Callable#call() */
   @Override
   public ManifestEntryDownloadResult call() throws Exception {
     try {
-      GetObjectRequest objectRequest =
-          new GetObjectRequest(
-              options.getS3BucketName(),
-              String.format(
-                  "%s/%s/%s",
-                  DataSetMonitorWorker.S3_PREFIX_PENDING_DATA_SETS,
-                  manifestEntry.getParentManifest().getTimestampText(),
-                  manifestEntry.getName()));
+      ManifestEntryDownloadResult result = download();
+      if (progressiveDownload != null) progressiveDownload.completed();
+      return result;
+    } catch (Throwable t) {
+      /*
+       * Anything can fail here, including before the download has even started, and readers of the
+       * ProgressiveDownload would wait forever if they weren't told about it.
+       */
+      if (progressiveDownload != null) progressiveDownload.failed(t);
+      throw t;
+    }
+  }
+
+  /**
+   * Downloads the {@link #manifestEntry} to a new local temp file.
+   *
+   * @return the {@link ManifestEntryDownloadResult} for the download
+   */
+  private ManifestEntryDownloadResult download() {
+    try {
+      String objectKey =
+          String.format(
+              "%s/%s/%s",
+              DataSetMonitorWorker.S3_PREFIX_PENDING_DATA_SETS,
+              manifestEntry.getParentManifest().getTimestampText(),
+              manifestEntry.getName());
       Path localTempFile = Files.createTempFile("data-pipeline-s3-temp", ".rif");
 
-      Timer.Context downloadTimer =
-          appMetrics
-              .timer(MetricRegistry.name(getClass().getSimpleName(), "downloadSystemTime"))
-              .time();
-      LOGGER.debug(
-          "Downloading '{}' to '{}'...", manifestEntry, localTempFile.toAbsolutePath().toString());
-      Download downloadHandle =
-          s3TaskManager.getS3TransferManager().download(objectRequest, localTempFile.toFile());
-      downloadHandle.waitForCompletion();
-      LOGGER.debug(
-          "Downloaded '{}' to '{}'.", manifestEntry, localTempFile.toAbsolutePath().toString());
-      downloadTimer.close();
-
-      // generate MD5ChkSum value on file just downloaded
-      Timer.Context md5ChkSumTimer =
-          appMetrics
-              .timer(MetricRegistry.name(getClass().getSimpleName(), "md5ChkSumSystemTime"))
-              .time();
-      InputStream downloadedInputStream = new FileInputStream(localTempFile.toString());
-      String generatedMD5ChkSum = ManifestEntryDownloadTask.computeMD5ChkSum(downloadedInputStream);
-      md5ChkSumTimer.close();
-
-      String downloadedFileMD5ChkSum =
-          downloadHandle.getObjectMetadata().getUserMetaDataOf("md5chksum");
-      // TODO Remove null check below once Jira CBBD-368 is completed
-      if ((downloadedFileMD5ChkSum != null)
-          && (!generatedMD5ChkSum.equals(downloadedFileMD5ChkSum)))
-        throw new ChecksumException(
-            "Checksum doesn't match on downloaded file "
-                + localTempFile
-                + " manifest entry is "
-                + manifestEntry.toString());
+      if (progressiveDownload != null) {
+        downloadInRanges(objectKey, getObjectMetadata(objectKey), localTempFile);
+      } else {
+        ObjectMetadata objectMetadata = getObjectMetadata(objectKey);
+        if (objectMetadata.getContentLength() >= PARALLEL_RANGES_THRESHOLD)
+          downloadInParallelRanges(objectKey, objectMetadata, localTempFile);
+        else downloadInRanges(objectKey, objectMetadata, localTempFile);
+      }
 
       return new ManifestEntryDownloadResult(manifestEntry, localTempFile);
     } catch (IOException e) {
       throw new UncheckedIOException(e);
     } catch (AmazonClientException e) {
       throw new AwsFailureException(e);
+    } catch (NoSuchAlgorithmException e) {
+      // MD5 is one of the algorithms that every JVM is required to support.
+      throw new BadCodeMonkeyException(e);
     } catch (InterruptedException e) {
       // Shouldn't happen, as our apps don't use thread interrupts.
       throw new BadCodeMonkeyException(e);
     }
   }
 
+  /**
+   * @param objectKey the S3 key of the object to get the {@link ObjectMetadata} for
+   * @return the {@link ObjectMetadata} for the specified S3 object
+   */
+  private ObjectMetadata getObjectMetadata(String objectKey) {
+    return s3TaskManager.getS3Client().getObjectMetadata(options.getS3BucketName(), objectKey);
+  }
+
+  /**
+   * Downloads the specified S3 object to the specified local file via a series of ranged <code>GET
+   * </code>s, one after the other. If there's a {@link #progressiveDownload}, progress is published
+   * to it as the download goes, such that the file can be read while it is still being downloaded.
+   * The file's checksum is computed as its bytes are written (so that the file never has to be
+   * read back), and verified once the last of them has arrived.
+   *
+   * @param objectKey the S3 key of the object to download
+   * @param objectMetadata the {@link ObjectMetadata} of the object to download
+   * @param localTempFile the local file to download the object to
+   * @throws IOException Any {@link IOException}s encountered will be bubbled up.
+   * @throws NoSuchAlgorithmException Any {@link NoSuchAlgorithmException}s encountered will be
+   *     bubbled up.
+   */
+  private void downloadInRanges(String objectKey, ObjectMetadata objectMetadata, Path localTempFile)
+      throws IOException, NoSuchAlgorithmException {
+    long objectLength = objectMetadata.getContentLength();
+
+    Timer.Context downloadTimer =
+        appMetrics
+            .timer(MetricRegistry.name(getClass().getSimpleName(), "downloadSystemTime"))
+            .time();
+    LOGGER.debug(
+        "Downloading '{}' to '{}'...", manifestEntry, localTempFile.toAbsolutePath().toString());
+    if (progressiveDownload != null) progressiveDownload.started(localTempFile, objectLength);
+
+    MessageDigest md5Digest = MessageDigest.getInstance("MD5");
+    try (OutputStream localStream = new FileOutputStream(localTempFile.toFile())) {
+      for (long rangeStart = 0; rangeStart < objectLength; rangeStart += RANGE_SIZE) {
+        long rangeEnd = Math.min(rangeStart + RANGE_SIZE, objectLength) - 1;
+        copyRange(
+            objectKey,
+            rangeStart,
+            rangeEnd,
+            (position, bytes, length) -> {
+              /*
+               * Note: the local stream is deliberately unbuffered, as the bytes need to be visible
+               * to readers of the file as soon as they've been reported as written. Ranges are
+               * copied in order and retries resume where they left off, so the bytes always arrive
+               * here sequentially.
+               */
+              localStream.write(bytes, 0, length);
+              md5Digest.update(bytes, 0, length);
+              if (progressiveDownload != null) progressiveDownload.written(length);
+            });
+      }
+    }
+
+    LOGGER.debug(
+        "Downloaded '{}' to '{}'.", manifestEntry, localTempFile.toAbsolutePath().toString());
+    downloadTimer.close();
+
+    verifyChecksum(
+        Base64.getEncoder().encodeToString(md5Digest.digest()),
+        objectMetadata.getUserMetaDataOf("md5chksum"),
+        localTempFile);
+  }
+
+  /**
+   * Downloads the specified S3 object to the specified local file as a series of ranged <code>GET
+   * </code>s that are run in parallel, and then verifies its checksum.
+   *
+   * <p>MD5 can only be computed in order, so each range is downloaded into memory, written to the
+   * local file, and then digested once all of the ranges before it have been. To bound the memory
+   * that's needed for that, only the next {@link #MAX_PARALLEL_RANGES} ranges (after the last one
+   * that was digested) are ever downloaded at once, so the local file never has to be read back.
+   *
+   * @param objectKey the S3 key of the object to download
+   * @param objectMetadata the {@link ObjectMetadata} of the object to download
+   * @param localTempFile the local file to download the object to
+   * @throws IOException Any {@link IOException}s encountered will be bubbled up.
+   * @throws NoSuchAlgorithmException Any {@link NoSuchAlgorithmException}s encountered will be
+   *     bubbled up.
+   * @throws InterruptedException Any {@link InterruptedException}s encountered will be bubbled up.
+   */
+  private void downloadInParallelRanges(
+      String objectKey, ObjectMetadata objectMetadata, Path localTempFile)
+      throws IOException, NoSuchAlgorithmException, InterruptedException {
+    long objectLength = objectMetadata.getContentLength();
+    int rangeCount = (int) ((objectLength + PARALLEL_RANGE_SIZE - 1) / PARALLEL_RANGE_SIZE);
+
+    Timer.Context downloadTimer =
+        appMetrics
+            .timer(MetricRegistry.name(getClass().getSimpleName(), "downloadSystemTime"))
+            .time();
+    LOGGER.debug(
+        "Downloading '{}' to '{}' in parallel ranges...",
+        manifestEntry,
+        localTempFile.toAbsolutePath().toString());
+
+    MessageDigest md5Digest = MessageDigest.getInstance("MD5");
+    try (FileChannel localChannel = FileChannel.open(localTempFile, StandardOpenOption.WRITE)) {
+      List<Future<byte[]>> rangeFutures = new ArrayList<>();
+      Throwable rangeFailure = null;
+      for (int rangeIndex = 0; rangeIndex < rangeCount; rangeIndex++) {
+        // Keep the next few ranges downloading, unless one of them has already failed.
+        while (rangeFailure == null
+            && rangeFutures.size() < Math.min(rangeCount, rangeIndex + MAX_PARALLEL_RANGES))
+          rangeFutures.add(
+              submitParallelRange(objectKey, objectLength, rangeFutures.size(), localChannel));
+
+        /*
+         * Wait for all of the submitted ranges to finish, even if one of them fails, as none of
+         * them can be allowed to keep writing to the local file after it's been closed.
+         */
+        if (rangeIndex >= rangeFutures.size()) break;
+        try {
+          byte[] rangeBytes = rangeFutures.get(rangeIndex).get();
+          if (rangeFailure == null) md5Digest.update(rangeBytes);
+        } catch (ExecutionException e) {
+          if (rangeFailure == null) rangeFailure = e.getCause();
+        }
+      }
+      if (rangeFailure instanceof IOException) throw (IOException) rangeFailure;
+      if (rangeFailure instanceof RuntimeException) throw (RuntimeException) rangeFailure;
+      if (rangeFailure != null) throw new BadCodeMonkeyException(rangeFailure);
+    }
+
+    LOGGER.debug(
+        "Downloaded '{}' to '{}' in parallel ranges.",
+        manifestEntry,
+        localTempFile.toAbsolutePath().toString());
+    downloadTimer.close();
+
+    verifyChecksum(
+        Base64.getEncoder().encodeToString(md5Digest.digest()),
+        objectMetadata.getUserMetaDataOf("md5chksum"),
+        localTempFile);
+  }
+
+  /**
+   * Submits a task to download the specified range (of {@link #PARALLEL_RANGE_SIZE}) of the
+   * specified S3 object into memory, and then write it to the specified local file.
+   *
+   * @param objectKey the S3 key of the object to download
+   * @param objectLength the length of the object to download
+   * @param rangeIndex the index of the range to download
+   * @param localChannel the {@link FileChannel} of the local file to write the range to
+   * @return a {@link Future} for the range's bytes, once they've been written to the local file
+   */
+  private Future<byte[]> submitParallelRange(
+      String objectKey, long objectLength, int rangeIndex, FileChannel localChannel) {
+    long rangeStart = rangeIndex * PARALLEL_RANGE_SIZE;
+    long rangeEnd = Math.min(rangeStart + PARALLEL_RANGE_SIZE, objectLength) - 1;
+    return s3TaskManager.submitRangeDownload(
+        () -> {
+          byte[] rangeBytes = new byte[(int) (rangeEnd - rangeStart + 1)];
+          copyRange(
+              objectKey,
+              rangeStart,
+              rangeEnd,
+              (position, bytes, length) ->
+                  System.arraycopy(bytes, 0, rangeBytes, (int) (position - rangeStart), length));
+
+          ByteBuffer buffer = ByteBuffer.wrap(rangeBytes);
+          long writePosition = rangeStart;
+          while (buffer.hasRemaining()) writePosition += localChannel.write(buffer, writePosition);
+          return rangeBytes;
+        });
+  }
+
+  /**
+   * Copies the specified range of the specified S3 object to the specified {@link RangeWriter}. If
+   * the ranged <code>GET</code> fails partway through, it will be retried (up to {@link
+   * #MAX_RANGE_ATTEMPTS} times in total), resuming from the first byte that hadn't yet been
+   * copied.
+   *
+   * @param objectKey the S3 key of the object to download
+   * @param rangeStart the (inclusive) position of the first byte in the range to copy
+   * @param rangeEnd the (inclusive) position of the last byte in the range to copy
+   * @param rangeWriter the {@link RangeWriter} to copy the range's bytes to
+   * @throws IOException Any {@link IOException}s encountered on the final attempt will be bubbled
+   *     up.
+   */
+  private void copyRange(String objectKey, long rangeStart, long rangeEnd, RangeWriter rangeWriter)
+      throws IOException {
+    AmazonS3 s3Client = s3TaskManager.getS3Client();
+    byte[] copyBuffer = new byte[COPY_BUFFER_SIZE];
+    long position = rangeStart;
+    for (int attempt = 1; ; attempt++) {
+      GetObjectRequest rangeRequest =
+          new GetObjectRequest(options.getS3BucketName(), objectKey).withRange(position, rangeEnd);
+      try (S3Object rangeObject = s3Client.getObject(rangeRequest);
+          InputStream rangeStream = rangeObject.getObjectContent()) {
+        int bytesRead;
+        while ((bytesRead = rangeStream.read(copyBuffer)) != -1) {
+          rangeWriter.write(position, copyBuffer, bytesRead);
+          position += bytesRead;
+        }
+
+        if (position <= rangeEnd)
+          throw new IOException(
+              String.format(
+                  "Range of '%s' ended after byte %d, rather than %d.",
+                  objectKey, position - 1, rangeEnd));
+        return;
+      } catch (IOException | AmazonClientException e) {
+        if (attempt >= MAX_RANGE_ATTEMPTS) throw e;
+        LOGGER.warn(
+            String.format(
+                "Download of '%s' failed at byte %d (attempt %d of %d). Resuming...",
+                objectKey, position, attempt, MAX_RANGE_ATTEMPTS),
+            e);
+      }
+    }
+  }
+
+  /**
+   * @param generatedMD5ChkSum the Base64 encoded MD5 checksum computed from the downloaded bytes
+   * @param downloadedFileMD5ChkSum the Base64 encoded MD5 checksum from the S3 object's metadata,
+   *     if any
+   * @param localTempFile the local file that the object was downloaded to
+   * @throws ChecksumException A {@link ChecksumException} will be thrown if the checksums do not
+   *     match.
+   */
+  private void verifyChecksum(
+      String generatedMD5ChkSum, String downloadedFileMD5ChkSum, Path localTempFile) {
+    // TODO Remove null check below once Jira CBBD-368 is completed
+    if ((downloadedFileMD5ChkSum != null) && (!generatedMD5ChkSum.equals(downloadedFileMD5ChkSum)))
+      throw new ChecksumException(
+          "Checksum doesn't match on downloaded file "
+              + localTempFile
+              + " manifest entry is "
+              + manifestEntry.toString());
+  }
+
   /**
    * Calculates and returns a Base64 encoded MD5chksum value for the file just downloaded from S3
    *
@@ -142,6 +451,18 @@ public final class ManifestEntryDownloadTask implements Callable<ManifestEntryDo
     return Base64.getEncoder().encodeToString(bytes);
   }
 
+  /** Receives the bytes of a range that is being copied by {@link #copyRange}. */
+  @FunctionalInterface
+  private static interface RangeWriter {
+    /**
+     * @param position the position in the S3 object of the first byte being written
+     * @param bytes the buffer containing the bytes to write
+     * @param length the number of bytes (from the start of the buffer) to write
+     * @throws IOException Any {@link IOException}s encountered will be bubbled up.
+     */
+    void write(long position, byte[] bytes, int length) throws IOException;
+  }
+
   /** Represents the results of a {@link ManifestEntryDownloadTask}. */
   public static final class ManifestEntryDownloadResult {
     private final DataSetManifestEntry manifestEntry;
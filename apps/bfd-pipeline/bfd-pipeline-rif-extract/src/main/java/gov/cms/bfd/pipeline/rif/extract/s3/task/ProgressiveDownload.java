@@ -0,0 +1,188 @@
+package gov.cms.bfd.pipeline.rif.extract.s3.task;
+
+import com.justdavis.karl.misc.exceptions.BadCodeMonkeyException;
+import gov.cms.bfd.pipeline.rif.extract.s3.DataSetManifest.DataSetManifestEntry;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Optional;
+
+/**
+ * Tracks the state of a {@link DataSetManifestEntry} download that is being written to a local
+ * temp file, such that readers can consume the file's bytes as they arrive, rather than having to
+ * wait for the entire download to complete.
+ *
+ * <p>The local temp file acts as a spill-to-disk buffer between the download (the single writer)
+ * and the RIF parser (the readers): neither side ever holds more than a small copy buffer in
+ * memory, no matter how far ahead of the parser the download gets. Readers that catch up to the
+ * writer will block until more bytes are available. Once the writer has finished, readers that
+ * reach the end of the file will block until the download has been {@link #completed()} (i.e.
+ * its checksum has been verified) or has {@link #failed(Throwable)}, in which case they'll receive
+ * an {@link IOException}. This ensures that a corrupt download will always cause processing of the
+ * file to fail before it can be considered complete.
+ *
+ * <p>This class is thread-safe.
+ */
+public final class ProgressiveDownload {
+  private final DataSetManifestEntry manifestEntry;
+
+  private Path localDownload;
+  private Long totalBytes;
+  private long bytesWritten;
+  private boolean done;
+  private Throwable failure;
+
+  /**
+   * Constructs a new {@link ProgressiveDownload} instance.
+   *
+   * @param manifestEntry the {@link DataSetManifestEntry} whose file is being downloaded
+   */
+  public ProgressiveDownload(DataSetManifestEntry manifestEntry) {
+    this.manifestEntry = manifestEntry;
+    this.localDownload = null;
+    this.totalBytes = null;
+    this.bytesWritten = 0L;
+    this.done = false;
+    this.failure = null;
+  }
+
+  /**
+   * Called by the writer once it has created the local temp file that it will be writing to.
+   *
+   * @param localDownload the {@link Path} to the local temp file that the download is being written
+   *     to
+   * @param totalBytes the value to use for {@link #getTotalBytes()}
+   */
+  synchronized void started(Path localDownload, long totalBytes) {
+    this.localDownload = localDownload;
+    this.totalBytes = totalBytes;
+    notifyAll();
+  }
+
+  /**
+   * Called by the writer each time it has appended more bytes to the local temp file.
+   *
+   * @param count the number of bytes that were just written to the local temp file
+   */
+  synchronized void written(long count) {
+    this.bytesWritten += count;
+    notifyAll();
+  }
+
+  /** Called by the writer once the download has completed and been verified. */
+  synchronized void completed() {
+    this.done = true;
+    notifyAll();
+  }
+
+  /**
+   * Called by the writer if the download fails for any reason.
+   *
+   * @param failure the error that caused the download to fail
+   */
+  synchronized void failed(Throwable failure) {
+    this.failure = failure;
+    this.done = true;
+    notifyAll();
+  }
+
+  /** @return the size of the file being downloaded, once the download has started */
+  public synchronized Optional<Long> getTotalBytes() {
+    return Optional.ofNullable(totalBytes);
+  }
+
+  /** @return the number of bytes that have been written to the local temp file, so far */
+  public synchronized long getBytesWritten() {
+    return bytesWritten;
+  }
+
+  /**
+   * @return <code>true</code> if the download has completed successfully or failed, <code>false
+   *     </code> if it is still in progress
+   */
+  public synchronized boolean isDone() {
+    return done;
+  }
+
+  /**
+   * @return a new {@link InputStream} for the download's contents, which will block as needed
+   *     while waiting for those contents to arrive
+   */
+  public InputStream openStream() {
+    return new ProgressiveDownloadInputStream();
+  }
+
+  /**
+   * Blocks until there are bytes available past the specified position, or the download has
+   * finished.
+   *
+   * @param position the position in the local temp file that the caller wants to read from
+   * @return the total number of bytes available to be read from the local temp file, or <code>-1
+   *     </code> if the download has completed successfully and there are no more bytes past the
+   *     specified position
+   * @throws IOException An {@link IOException} will be thrown if the download failed.
+   */
+  private synchronized long awaitBytes(long position) throws IOException {
+    while (bytesWritten <= position && !done) {
+      try {
+        wait();
+      } catch (InterruptedException e) {
+        // We're not expecting interrupts here, so go boom.
+        throw new BadCodeMonkeyException(e);
+      }
+    }
+
+    if (failure != null)
+      throw new IOException(String.format("Download failed for '%s'.", manifestEntry), failure);
+    if (bytesWritten <= position) return -1;
+    return bytesWritten;
+  }
+
+  /** @return the {@link Path} to the local temp file that the download is being written to */
+  private synchronized Path getLocalDownload() {
+    return localDownload;
+  }
+
+  /**
+   * An {@link InputStream} that reads from the local temp file of its (outer) {@link
+   * ProgressiveDownload}, blocking as needed to wait for more bytes to arrive.
+   */
+  private final class ProgressiveDownloadInputStream extends InputStream {
+    private FileChannel channel;
+    private long position;
+
+    /** @see java.io.InputStream#read() */
+    @Override
+    public int read() throws IOException {
+      byte[] singleByte = new byte[1];
+      int bytesRead = read(singleByte, 0, 1);
+      return bytesRead < 0 ? -1 : (singleByte[0] & 0xFF);
+    }
+
+    /** @see java.io.InputStream#read(byte[], int, int) */
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      if (len == 0) return 0;
+
+      long bytesAvailable = awaitBytes(position);
+      if (bytesAvailable < 0) return -1;
+
+      // Bytes are only ever written after the temp file exists, so this is safe.
+      if (channel == null) channel = FileChannel.open(getLocalDownload(), StandardOpenOption.READ);
+
+      int bytesToRead = (int) Math.min(len, bytesAvailable - position);
+      int bytesRead = channel.read(ByteBuffer.wrap(b, off, bytesToRead), position);
+      if (bytesRead > 0) position += bytesRead;
+      return bytesRead;
+    }
+
+    /** @see java.io.InputStream#close() */
+    @Override
+    public void close() throws IOException {
+      if (channel != null) channel.close();
+    }
+  }
+}
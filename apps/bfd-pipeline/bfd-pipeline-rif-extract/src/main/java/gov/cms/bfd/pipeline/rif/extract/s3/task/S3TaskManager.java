@@ -10,11 +10,14 @@ import gov.cms.bfd.pipeline.rif.extract.s3.DataSetManifest;
 import gov.cms.bfd.pipeline.rif.extract.s3.DataSetManifest.DataSetManifestEntry;
 import gov.cms.bfd.pipeline.rif.extract.s3.DataSetManifest.DataSetManifestId;
 import gov.cms.bfd.pipeline.rif.extract.s3.DataSetQueue;
+import gov.cms.bfd.pipeline.rif.extract.s3.PriorityTaskExecutor;
 import gov.cms.bfd.pipeline.rif.extract.s3.S3Utilities;
 import gov.cms.bfd.pipeline.rif.extract.s3.TaskExecutor;
 import gov.cms.bfd.pipeline.rif.extract.s3.task.ManifestEntryDownloadTask.ManifestEntryDownloadResult;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Callable;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import org.slf4j.Logger;
@@ -24,11 +27,27 @@ import org.slf4j.LoggerFactory;
 public final class S3TaskManager {
   private static final Logger LOGGER = LoggerFactory.getLogger(S3TaskManager.class);
 
+  /**
+   * The number of threads in the {@link #rangeDownloadsExecutor} pool, per each of the {@link
+   * ExtractionOptions#getDownloadThreads()}.
+   */
+  private static final int RANGE_THREADS_PER_DOWNLOAD = 4;
+
+  /**
+   * Objects at least this large will be copied by {@link #s3TransferManager} as a multipart copy,
+   * with its parts being copied in parallel, rather than via a single (slow) copy request.
+   */
+  private static final long MULTIPART_COPY_THRESHOLD = 128L * 1024L * 1024L;
+
+  /** The size of each part of a multipart copy: see {@link #MULTIPART_COPY_THRESHOLD}. */
+  private static final long MULTIPART_COPY_PART_SIZE = 64L * 1024L * 1024L;
+
   private final MetricRegistry appMetrics;
   private final ExtractionOptions options;
   private final AmazonS3 s3Client;
   private final TransferManager s3TransferManager;
-  private final TaskExecutor downloadTasksExecutor;
+  private final PriorityTaskExecutor downloadTasksExecutor;
+  private final TaskExecutor rangeDownloadsExecutor;
   private final TaskExecutor moveTasksExecutor;
 
   /**
@@ -37,6 +56,18 @@ public final class S3TaskManager {
    */
   private final Map<DataSetManifestEntry, Future<ManifestEntryDownloadResult>> downloadTasks;
 
+  /**
+   * Tracks the {@link ProgressiveDownload}s for any {@link #downloadTasks} that are streaming, per
+   * {@link ExtractionOptions#isStreamingDownloadsEnabled()}.
+   */
+  private final Map<DataSetManifestEntry, ProgressiveDownload> progressiveDownloads;
+
+  /**
+   * Tracks the expected size (in bytes) of each of the {@link #downloadTasks}, where it was
+   * provided.
+   */
+  private final Map<DataSetManifestEntry, Long> downloadSizes;
+
   /**
    * Constructs a new {@link S3TaskManager}.
    *
@@ -44,15 +75,38 @@ public final class S3TaskManager {
    * @param options the {@link ExtractionOptions} to use
    */
   public S3TaskManager(MetricRegistry appMetrics, ExtractionOptions options) {
+    this(appMetrics, options, S3Utilities.createS3Client(options));
+  }
+
+  /**
+   * Constructs a new {@link S3TaskManager}.
+   *
+   * @param appMetrics the {@link MetricRegistry} for the overall application
+   * @param options the {@link ExtractionOptions} to use
+   * @param s3Client the {@link AmazonS3} client to use (e.g. a mock one, for tests)
+   */
+  public S3TaskManager(MetricRegistry appMetrics, ExtractionOptions options, AmazonS3 s3Client) {
     this.appMetrics = appMetrics;
     this.options = options;
 
-    this.s3Client = S3Utilities.createS3Client(options);
-    this.s3TransferManager = TransferManagerBuilder.standard().withS3Client(s3Client).build();
+    this.s3Client = s3Client;
+    this.s3TransferManager =
+        TransferManagerBuilder.standard()
+            .withS3Client(s3Client)
+            .withMultipartCopyThreshold(MULTIPART_COPY_THRESHOLD)
+            .withMultipartCopyPartSize(MULTIPART_COPY_PART_SIZE)
+            .build();
 
-    this.downloadTasksExecutor = new TaskExecutor("Download RIF Executor", 1);
+    this.downloadTasksExecutor =
+        new PriorityTaskExecutor("Download RIF Executor", options.getDownloadThreads());
+    this.rangeDownloadsExecutor =
+        new TaskExecutor(
+            "Download RIF Range Executor",
+            options.getDownloadThreads() * RANGE_THREADS_PER_DOWNLOAD);
     this.moveTasksExecutor = new TaskExecutor("Move Completed RIF Executor", 2);
     this.downloadTasks = new HashMap<>();
+    this.progressiveDownloads = new HashMap<>();
+    this.downloadSizes = new HashMap<>();
   }
 
   /** @return the {@link AmazonS3} client being used by this {@link S3TaskManager} */
@@ -78,6 +132,28 @@ public final class S3TaskManager {
    *     results of the asynchronous download
    */
   public Future<ManifestEntryDownloadResult> downloadAsync(DataSetManifestEntry manifestEntry) {
+    return downloadAsync(manifestEntry, 0L);
+  }
+
+  /**
+   * Submits an asynchronously task to download the specified {@link DataSetManifestEntry}'s RIF
+   * file and returns the result as a {@link Future} {@link ManifestEntryDownloadResult}.
+   *
+   * <p>Up to {@link ExtractionOptions#getDownloadThreads()} downloads will be run at once. Queued
+   * downloads are started in the order that their {@link DataSetManifestEntry}s will be needed by
+   * the loader: oldest data set first, and in manifest order within each data set. Note that
+   * callers of this method need to be careful not to start downloading too much at once, as each
+   * download can consume a large amount of disk space as it completes. See {@link
+   * #getPendingDownloadBytes()}.
+   *
+   * @param manifestEntry the {@link DataSetManifestEntry} to download asynchronously
+   * @param expectedSize the size (in bytes) of the S3 object to be downloaded, which will be
+   *     included in {@link #getPendingDownloadBytes()} until the download has completed
+   * @return a {@link Future} {@link ManifestEntryDownloadResult} that can be used to retrieve the
+   *     results of the asynchronous download
+   */
+  public Future<ManifestEntryDownloadResult> downloadAsync(
+      DataSetManifestEntry manifestEntry, long expectedSize) {
     // Has this download already been submitted? If so, just return it.
     if (this.downloadTasks.containsKey(manifestEntry)) return this.downloadTasks.get(manifestEntry);
 
@@ -91,10 +167,60 @@ public final class S3TaskManager {
         this.downloadTasksExecutor.submit(downloadTask);
     LOGGER.debug("Submitted future: {}", TaskExecutor.getTaskId(downloadFuture));
     this.downloadTasks.put(manifestEntry, downloadFuture);
+    this.downloadSizes.put(manifestEntry, expectedSize);
+    downloadTask
+        .getProgressiveDownload()
+        .ifPresent(download -> this.progressiveDownloads.put(manifestEntry, download));
 
     return downloadFuture;
   }
 
+  /**
+   * @param manifestEntry the {@link DataSetManifestEntry} to check for
+   * @return <code>true</code> if a download of the specified {@link DataSetManifestEntry} has
+   *     already been submitted via {@link #downloadAsync(DataSetManifestEntry, long)}, <code>false
+   *     </code> if not
+   */
+  public boolean isDownloadSubmitted(DataSetManifestEntry manifestEntry) {
+    return downloadTasks.containsKey(manifestEntry);
+  }
+
+  /**
+   * @return the total expected size (in bytes) of all submitted downloads that haven't yet
+   *     completed, which is (roughly) the amount of additional local disk space that they will
+   *     still consume
+   */
+  public long getPendingDownloadBytes() {
+    return downloadTasks.entrySet().stream()
+        .filter(e -> !e.getValue().isDone())
+        .mapToLong(e -> downloadSizes.getOrDefault(e.getKey(), 0L))
+        .sum();
+  }
+
+  /**
+   * Submits one range of a larger download to be run asynchronously. This is only intended for use
+   * by {@link ManifestEntryDownloadTask}s, which must not submit anything here that might block on
+   * other tasks.
+   *
+   * @param <T> the result type of the task
+   * @param rangeDownload the task that will download a range of an S3 object
+   * @return a {@link Future} for the specified task
+   */
+  <T> Future<T> submitRangeDownload(Callable<T> rangeDownload) {
+    return rangeDownloadsExecutor.submit(rangeDownload);
+  }
+
+  /**
+   * @param manifestEntry the {@link DataSetManifestEntry} to get the download for
+   * @return the {@link ProgressiveDownload} for the specified {@link DataSetManifestEntry}'s
+   *     download (which must have already been submitted via {@link
+   *     #downloadAsync(DataSetManifestEntry)}), or {@link Optional#empty()} if that download isn't
+   *     being streamed
+   */
+  public Optional<ProgressiveDownload> getProgressiveDownload(DataSetManifestEntry manifestEntry) {
+    return Optional.ofNullable(progressiveDownloads.get(manifestEntry));
+  }
+
   /**
    * The {@link DataSetQueue} needs to call this method as it discovers that {@link
    * DataSetManifest}s are no longer present in the "Incoming" queue in S3 -- most likely because
@@ -109,6 +235,12 @@ public final class S3TaskManager {
     downloadTasks
         .entrySet()
         .removeIf(e -> e.getKey().getParentManifest().getId().equals(manifestId));
+    progressiveDownloads
+        .entrySet()
+        .removeIf(e -> e.getKey().getParentManifest().getId().equals(manifestId));
+    downloadSizes
+        .entrySet()
+        .removeIf(e -> e.getKey().getParentManifest().getId().equals(manifestId));
   }
 
   /**
@@ -143,6 +275,9 @@ public final class S3TaskManager {
         this.downloadTasksExecutor.awaitTermination(30, TimeUnit.MINUTES);
         LOGGER.info("All in-progress downloads are complete.");
       }
+
+      // All of the range downloads are done once all of the downloads that submitted them are.
+      this.rangeDownloadsExecutor.shutdown();
     } catch (InterruptedException e) {
       // We're not expecting interrupts here, so go boom.
       throw new BadCodeMonkeyException(e);
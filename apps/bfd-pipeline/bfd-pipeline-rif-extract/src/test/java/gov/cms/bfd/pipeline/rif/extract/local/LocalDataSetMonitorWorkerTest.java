@@ -0,0 +1,121 @@
+package gov.cms.bfd.pipeline.rif.extract.local;
+
+import com.codahale.metrics.MetricRegistry;
+import gov.cms.bfd.model.rif.RifFileType;
+import gov.cms.bfd.model.rif.RifFilesEvent;
+import gov.cms.bfd.pipeline.rif.extract.ExtractionOptions;
+import gov.cms.bfd.pipeline.rif.extract.s3.DataSetManifest;
+import gov.cms.bfd.pipeline.rif.extract.s3.DataSetManifest.DataSetManifestEntry;
+import gov.cms.bfd.pipeline.rif.extract.s3.DataSetMonitorWorker;
+import gov.cms.bfd.pipeline.rif.extract.s3.MockDataSetMonitorListener;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.stream.Stream;
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.Marshaller;
+import org.junit.Assert;
+import org.junit.Test;
+
+/** Unit tests for {@link LocalDataSetMonitorWorker}. */
+public final class LocalDataSetMonitorWorkerTest {
+  /**
+   * Verifies that {@link LocalDataSetMonitorWorker} reports that there's no data available when the
+   * local directory is empty.
+   *
+   * @throws Exception (indicates a test error)
+   */
+  @Test
+  public void emptyDirectory() throws Exception {
+    Path dataSetsDirectory = Files.createTempDirectory("local-data-sets");
+    try {
+      MockDataSetMonitorListener listener = new MockDataSetMonitorListener();
+      new LocalDataSetMonitorWorker(
+              new MetricRegistry(), new ExtractionOptions(dataSetsDirectory, null), listener)
+          .run();
+
+      Assert.assertEquals(1, listener.getNoDataAvailableEvents());
+      Assert.assertEquals(0, listener.getDataEvents().size());
+    } finally {
+      deleteRecursively(dataSetsDirectory);
+    }
+  }
+
+  /**
+   * Verifies that {@link LocalDataSetMonitorWorker} processes a locally staged data set in place,
+   * and then moves it to the <code>Done</code> directory.
+   *
+   * @throws Exception (indicates a test error)
+   */
+  @Test
+  public void singleDataSet() throws Exception {
+    Path dataSetsDirectory = Files.createTempDirectory("local-data-sets");
+    try {
+      DataSetManifest manifest =
+          new DataSetManifest(
+              Instant.now(),
+              0,
+              new DataSetManifestEntry("beneficiaries.rif", RifFileType.BENEFICIARY));
+      Path pendingDirectory =
+          dataSetsDirectory
+              .resolve(DataSetMonitorWorker.S3_PREFIX_PENDING_DATA_SETS)
+              .resolve(manifest.getTimestampText());
+      Files.createDirectories(pendingDirectory);
+      writeManifest(pendingDirectory.resolve("0_manifest.xml"), manifest);
+      byte[] rifBytes = "foo|bar".getBytes(StandardCharsets.UTF_8);
+      Files.write(pendingDirectory.resolve("beneficiaries.rif"), rifBytes);
+
+      MockDataSetMonitorListener listener = new MockDataSetMonitorListener();
+      new LocalDataSetMonitorWorker(
+              new MetricRegistry(), new ExtractionOptions(dataSetsDirectory, null), listener)
+          .run();
+
+      Assert.assertEquals(0, listener.getNoDataAvailableEvents());
+      Assert.assertEquals(0, listener.getErrorEvents().size());
+      Assert.assertEquals(1, listener.getDataEvents().size());
+      RifFilesEvent rifFilesEvent = listener.getDataEvents().get(0);
+      Assert.assertEquals(manifest.getTimestamp(), rifFilesEvent.getTimestamp());
+      Assert.assertEquals(1, rifFilesEvent.getFileEvents().size());
+      Assert.assertEquals(
+          RifFileType.BENEFICIARY, rifFilesEvent.getFileEvents().get(0).getFile().getFileType());
+
+      Path completedDirectory =
+          dataSetsDirectory
+              .resolve(DataSetMonitorWorker.S3_PREFIX_COMPLETED_DATA_SETS)
+              .resolve(manifest.getTimestampText());
+      Assert.assertFalse(Files.exists(pendingDirectory));
+      Assert.assertTrue(Files.exists(completedDirectory.resolve("0_manifest.xml")));
+      Assert.assertArrayEquals(
+          rifBytes, Files.readAllBytes(completedDirectory.resolve("beneficiaries.rif")));
+    } finally {
+      deleteRecursively(dataSetsDirectory);
+    }
+  }
+
+  /**
+   * @param manifestPath the {@link Path} to write the manifest to
+   * @param manifest the {@link DataSetManifest} to write
+   * @throws Exception (indicates a test error)
+   */
+  private static void writeManifest(Path manifestPath, DataSetManifest manifest) throws Exception {
+    Marshaller marshaller = JAXBContext.newInstance(DataSetManifest.class).createMarshaller();
+    try (OutputStream manifestStream = Files.newOutputStream(manifestPath)) {
+      marshaller.marshal(manifest, manifestStream);
+    }
+  }
+
+  /**
+   * @param directory the directory to delete, along with all of its contents
+   * @throws IOException (indicates a test error)
+   */
+  private static void deleteRecursively(Path directory) throws IOException {
+    try (Stream<Path> paths = Files.walk(directory)) {
+      for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator)
+        Files.delete(path);
+    }
+  }
+}
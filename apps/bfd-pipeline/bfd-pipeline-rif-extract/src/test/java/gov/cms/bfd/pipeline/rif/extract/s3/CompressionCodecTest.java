@@ -0,0 +1,105 @@
+package gov.cms.bfd.pipeline.rif.extract.s3;
+
+import com.github.luben.zstd.ZstdOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPOutputStream;
+import org.junit.Assert;
+import org.junit.Test;
+
+/** Unit tests for {@link CompressionCodec}. */
+public final class CompressionCodecTest {
+  private static final String SAMPLE_RIF = "DML_IND|BENE_ID|STATE_CODE\nINSERT|567834|MO\n";
+
+  /**
+   * Verifies that {@link CompressionCodec#NONE} passes bytes through unchanged.
+   *
+   * @throws IOException (indicates a test error)
+   */
+  @Test
+  public void noneDecompression() throws IOException {
+    InputStream decompressedStream =
+        CompressionCodec.NONE.decompress(
+            new ByteArrayInputStream(SAMPLE_RIF.getBytes(StandardCharsets.UTF_8)));
+    Assert.assertEquals(SAMPLE_RIF, readFully(decompressedStream));
+  }
+
+  /**
+   * Verifies that {@link CompressionCodec#GZIP} decompresses <code>gzip</code>ed bytes.
+   *
+   * @throws IOException (indicates a test error)
+   */
+  @Test
+  public void gzipDecompression() throws IOException {
+    ByteArrayOutputStream compressedBytes = new ByteArrayOutputStream();
+    try (GZIPOutputStream compressedStream = new GZIPOutputStream(compressedBytes)) {
+      compressedStream.write(SAMPLE_RIF.getBytes(StandardCharsets.UTF_8));
+    }
+
+    InputStream decompressedStream =
+        CompressionCodec.GZIP.decompress(new ByteArrayInputStream(compressedBytes.toByteArray()));
+    Assert.assertEquals(SAMPLE_RIF, readFully(decompressedStream));
+  }
+
+  /**
+   * Verifies that {@link CompressionCodec#ZSTD} decompresses Zstandard-compressed bytes.
+   *
+   * @throws IOException (indicates a test error)
+   */
+  @Test
+  public void zstdDecompression() throws IOException {
+    ByteArrayOutputStream compressedBytes = new ByteArrayOutputStream();
+    try (ZstdOutputStream compressedStream = new ZstdOutputStream(compressedBytes)) {
+      compressedStream.write(SAMPLE_RIF.getBytes(StandardCharsets.UTF_8));
+    }
+
+    InputStream decompressedStream =
+        CompressionCodec.ZSTD.decompress(new ByteArrayInputStream(compressedBytes.toByteArray()));
+    Assert.assertEquals(SAMPLE_RIF, readFully(decompressedStream));
+  }
+
+  /**
+   * Verifies that {@link CompressionCodec#ZSTD} detects bytes that aren't actually in the Zstandard
+   * format (e.g. for a manifest entry that declares the wrong compression), and fails rather than
+   * passing garbage along to the parser.
+   *
+   * @throws IOException (expected)
+   */
+  @Test(expected = IOException.class)
+  public void zstdDetectsUncompressedBytes() throws IOException {
+    InputStream decompressedStream =
+        CompressionCodec.ZSTD.decompress(
+            new ByteArrayInputStream(SAMPLE_RIF.getBytes(StandardCharsets.UTF_8)));
+    readFully(decompressedStream);
+  }
+
+  /**
+   * Verifies that {@link CompressionCodec#GZIP} detects bytes that aren't actually in the <code>
+   * gzip</code> format, and fails rather than passing garbage along to the parser.
+   *
+   * @throws IOException (expected)
+   */
+  @Test(expected = IOException.class)
+  public void gzipDetectsUncompressedBytes() throws IOException {
+    InputStream decompressedStream =
+        CompressionCodec.GZIP.decompress(
+            new ByteArrayInputStream(SAMPLE_RIF.getBytes(StandardCharsets.UTF_8)));
+    readFully(decompressedStream);
+  }
+
+  /**
+   * @param stream the {@link InputStream} to read
+   * @return the contents of the specified {@link InputStream}
+   * @throws IOException (indicates a test error)
+   */
+  private static String readFully(InputStream stream) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    byte[] buffer = new byte[1024];
+    int bytesRead;
+    while ((bytesRead = stream.read(buffer)) != -1) bytes.write(buffer, 0, bytesRead);
+    return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+  }
+}
@@ -101,6 +101,30 @@ public final class DataSetManifestTest {
     Assert.assertNotNull(manifest.getTimestamp());
   }
 
+  /**
+   * Verifies that {@link gov.cms.bfd.pipeline.rif.extract.s3.DataSetManifest} can be unmarshalled,
+   * as expected, when its entries declare a {@link DataSetManifestEntry#getCompression()} (or
+   * don't).
+   *
+   * @throws JAXBException (indicates test failure)
+   */
+  @Test
+  public void jaxbUnmarshallingForCompressedEntries() throws JAXBException {
+    InputStream manifestStream =
+        Thread.currentThread().getContextClassLoader().getResourceAsStream("manifest-sample-d.xml");
+
+    JAXBContext jaxbContext = JAXBContext.newInstance(DataSetManifest.class);
+    Unmarshaller jaxbUnmarshaller = jaxbContext.createUnmarshaller();
+
+    DataSetManifest manifest = (DataSetManifest) jaxbUnmarshaller.unmarshal(manifestStream);
+
+    Assert.assertNotNull(manifest);
+    Assert.assertEquals(3, manifest.getEntries().size());
+    Assert.assertEquals(CompressionCodec.GZIP, manifest.getEntries().get(0).getCompression());
+    Assert.assertEquals(CompressionCodec.ZSTD, manifest.getEntries().get(1).getCompression());
+    Assert.assertEquals(CompressionCodec.NONE, manifest.getEntries().get(2).getCompression());
+  }
+
   /**
    * Verifies that {@link DataSetManifestId}s can be round-tripped, as expected. A regression test
    * case for <a href="http://issues.hhsdevcloud.us/browse/CBBD-298">CBBD-298: Error reading some
@@ -0,0 +1,54 @@
+package gov.cms.bfd.pipeline.rif.extract.s3;
+
+import com.codahale.metrics.MetricRegistry;
+import gov.cms.bfd.pipeline.rif.extract.ExtractionOptions;
+import gov.cms.bfd.pipeline.rif.extract.s3.task.S3TaskManager;
+import org.junit.Assert;
+import org.junit.Test;
+
+/** Unit tests for {@link DataSetMonitorWorker}, run against a {@link MockS3Client}. */
+public final class DataSetMonitorWorkerTest {
+  /**
+   * Verifies that {@link DataSetMonitorWorker#run()} backs off scanning S3 after finding no data
+   * sets, while still notifying its {@link DataSetMonitorListener} of each (skipped) run.
+   *
+   * @throws InterruptedException (not expected to happen)
+   */
+  @Test
+  public void idleScansBackOff() throws InterruptedException {
+    MockS3Client s3Client = new MockS3Client();
+    MockDataSetMonitorListener listener = new MockDataSetMonitorListener();
+    ExtractionOptions options = new ExtractionOptions("mock-bucket");
+    S3TaskManager s3TaskManager = new S3TaskManager(new MetricRegistry(), options, s3Client);
+    try {
+      DataSetMonitorWorker monitorWorker =
+          new DataSetMonitorWorker(new MetricRegistry(), options, s3TaskManager, listener);
+
+      // The first idle scan backs off for a second, so the next two runs shouldn't scan.
+      monitorWorker.run();
+      monitorWorker.run();
+      monitorWorker.run();
+      Assert.assertEquals(3, listener.getNoDataAvailableEvents());
+      Assert.assertEquals(1, countPendingDataSetScans(s3Client));
+
+      Thread.sleep(1100);
+      monitorWorker.run();
+      monitorWorker.run();
+      Assert.assertEquals(5, listener.getNoDataAvailableEvents());
+      Assert.assertEquals(2, countPendingDataSetScans(s3Client));
+      Assert.assertEquals(0, listener.getErrorEvents().size());
+    } finally {
+      s3TaskManager.shutdownSafely();
+    }
+  }
+
+  /**
+   * @param s3Client the {@link MockS3Client} to check
+   * @return the number of times that the pending data sets have been listed in the specified {@link
+   *     MockS3Client}
+   */
+  private static long countPendingDataSetScans(MockS3Client s3Client) {
+    String pendingDataSetsListing = DataSetMonitorWorker.S3_PREFIX_PENDING_DATA_SETS + "/|/";
+    return s3Client.getListedPrefixes().stream().filter(pendingDataSetsListing::equals).count();
+  }
+}
@@ -0,0 +1,304 @@
+package gov.cms.bfd.pipeline.rif.extract.s3;
+
+import com.amazonaws.services.s3.model.Bucket;
+import com.amazonaws.services.s3.model.DeleteObjectsRequest;
+import com.codahale.metrics.MetricRegistry;
+import gov.cms.bfd.model.rif.RifFileType;
+import gov.cms.bfd.pipeline.rif.extract.ExtractionOptions;
+import gov.cms.bfd.pipeline.rif.extract.s3.DataSetManifest.DataSetManifestEntry;
+import gov.cms.bfd.pipeline.rif.extract.s3.task.S3TaskManager;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+/** Unit tests for {@link DataSetQueue}, run against a {@link MockS3Client}. */
+public final class DataSetQueueTest {
+  private static final String BUCKET_NAME = "mock-bucket";
+
+  private static final DataSetManifest MANIFEST_A =
+      new DataSetManifest(
+          Instant.parse("2020-01-01T00:00:00Z"),
+          0,
+          new DataSetManifestEntry("beneficiaries.rif", RifFileType.BENEFICIARY),
+          new DataSetManifestEntry("carrier.rif", RifFileType.CARRIER));
+  private static final DataSetManifest MANIFEST_B =
+      new DataSetManifest(
+          Instant.parse("2020-01-02T00:00:00Z"),
+          0,
+          new DataSetManifestEntry("pde.rif", RifFileType.PDE));
+  private static final DataSetManifest MANIFEST_C =
+      new DataSetManifest(
+          Instant.parse("2020-01-03T00:00:00Z"),
+          0,
+          new DataSetManifestEntry("inpatient.rif", RifFileType.INPATIENT));
+
+  private S3TaskManager s3TaskManager;
+
+  /** Shuts down the {@link S3TaskManager} used by each test case, if any. */
+  @After
+  public void shutdownS3TaskManager() {
+    if (s3TaskManager != null) s3TaskManager.shutdownSafely();
+  }
+
+  /**
+   * Verifies that {@link DataSetQueue#updatePendingDataSets()} finds the pending data sets (and
+   * which of their objects have arrived) by listing each of the pending data set "directories", and
+   * that it only lists the completed data sets once, to count them.
+   */
+  @Test
+  public void updatePendingDataSetsListsEachDataSet() {
+    MockS3Client s3Client = new MockS3Client();
+    putDataSet(s3Client, MANIFEST_A, true);
+    putDataSet(s3Client, MANIFEST_B, false);
+    s3Client.put("Done/2019-12-01T00:00:00Z/0_manifest.xml", "<dataSetManifest />");
+    s3Client.put("Done/2019-12-01T00:00:00Z/beneficiaries.rif", "...");
+    s3Client.put("README.txt", "Not part of any data set.");
+
+    DataSetQueue dataSetQueue = createDataSetQueue(s3Client, null);
+    dataSetQueue.updatePendingDataSets();
+
+    Assert.assertEquals(MANIFEST_A.getId(), dataSetQueue.getNextDataSetToProcess().get().getId());
+    Assert.assertEquals(
+        Arrays.asList(MANIFEST_B.getId()),
+        dataSetQueue.getDataSetsToPrefetch(10).stream()
+            .map(DataSetManifest::getId)
+            .collect(Collectors.toList()));
+    Assert.assertEquals(2, dataSetQueue.getPendingManifestsCount());
+    Assert.assertEquals(Optional.of(1), dataSetQueue.getCompletedManifestsCount());
+
+    Optional<Map<String, Long>> objectsA = dataSetQueue.getDataSetObjects(MANIFEST_A);
+    Assert.assertTrue(objectsA.isPresent());
+    Assert.assertEquals(
+        Long.valueOf("beneficiaries.rif".length()), objectsA.get().get("beneficiaries.rif"));
+    Assert.assertFalse(dataSetQueue.getDataSetObjects(MANIFEST_B).isPresent());
+
+    Assert.assertEquals(
+        Arrays.asList(
+            "Incoming/|/",
+            computeKeyPrefix(MANIFEST_A),
+            computeKeyPrefix(MANIFEST_B),
+            DataSetMonitorWorker.S3_PREFIX_COMPLETED_DATA_SETS + "/"),
+        sortListedDataSetPrefixes(s3Client.getListedPrefixes()));
+  }
+
+  /**
+   * Verifies that {@link DataSetQueue#updatePendingDataSets()} pages through the listings, when S3
+   * returns them in pages.
+   */
+  @Test
+  public void updatePendingDataSetsPagesThroughListings() {
+    MockS3Client s3Client = new MockS3Client();
+    putDataSet(s3Client, MANIFEST_A, true);
+    putDataSet(s3Client, MANIFEST_B, true);
+    putDataSet(s3Client, MANIFEST_C, true);
+
+    DataSetQueue dataSetQueue = createDataSetQueue(s3Client, 1);
+    dataSetQueue.updatePendingDataSets();
+
+    Assert.assertEquals(3, dataSetQueue.getPendingManifestsCount());
+    Assert.assertEquals(2, dataSetQueue.getDataSetsToPrefetch(10).size());
+    Assert.assertTrue(dataSetQueue.getDataSetObjects(MANIFEST_A).isPresent());
+    Assert.assertEquals(3, dataSetQueue.getDataSetObjects(MANIFEST_A).get().size());
+
+    // Each of the pending data set "directories" comes back on its own page.
+    Assert.assertEquals(
+        3, s3Client.getListedPrefixes().stream().filter("Incoming/|/"::equals).count());
+    Assert.assertEquals(
+        3,
+        s3Client.getListedPrefixes().stream().filter(computeKeyPrefix(MANIFEST_A)::equals).count());
+  }
+
+  /**
+   * Verifies that {@link DataSetQueue#updatePendingDataSets()} only reads each manifest once,
+   * across scans, and keeps the completed data sets count up to date as data sets are moved,
+   * without listing them again.
+   */
+  @Test
+  public void updatePendingDataSetsCachesManifests() {
+    MockS3Client s3Client = new MockS3Client();
+    putDataSet(s3Client, MANIFEST_A, true);
+    putDataSet(s3Client, MANIFEST_B, true);
+
+    DataSetQueue dataSetQueue = createDataSetQueue(s3Client, null);
+    dataSetQueue.updatePendingDataSets();
+    dataSetQueue.updatePendingDataSets();
+    Assert.assertEquals(
+        Arrays.asList(computeManifestKey(MANIFEST_A), computeManifestKey(MANIFEST_B)),
+        s3Client.getReadKeys().stream().sorted().collect(Collectors.toList()));
+    Assert.assertEquals(Optional.of(0), dataSetQueue.getCompletedManifestsCount());
+
+    // Process data set A, and then (pretend to) move it, as DataSetMoveTask would.
+    dataSetQueue.markProcessed(MANIFEST_A);
+    Assert.assertEquals(MANIFEST_B.getId(), dataSetQueue.getNextDataSetToProcess().get().getId());
+    List<String> keysA =
+        s3Client.getKeys().stream()
+            .filter(k -> k.startsWith(computeKeyPrefix(MANIFEST_A)))
+            .collect(Collectors.toList());
+    s3Client.deleteObjects(
+        new DeleteObjectsRequest(BUCKET_NAME).withKeys(keysA.toArray(new String[0])));
+    dataSetQueue.updatePendingDataSets();
+
+    Assert.assertEquals(1, dataSetQueue.getPendingManifestsCount());
+    Assert.assertEquals(Optional.of(1), dataSetQueue.getCompletedManifestsCount());
+    Assert.assertEquals(2, s3Client.getReadKeys().size());
+    Assert.assertEquals(
+        1,
+        s3Client.getListedPrefixes().stream()
+            .filter(p -> p.startsWith(DataSetMonitorWorker.S3_PREFIX_COMPLETED_DATA_SETS))
+            .count());
+  }
+
+  /**
+   * Verifies that {@link DataSetQueue#updatePendingDataSets()} reuses the listings of data sets
+   * whose objects have all arrived, and only re-lists those that are still uploading or that have
+   * been processed (and so are about to be moved out).
+   */
+  @Test
+  public void updatePendingDataSetsReusesCompleteListings() {
+    MockS3Client s3Client = new MockS3Client();
+    putDataSet(s3Client, MANIFEST_A, true);
+    putDataSet(s3Client, MANIFEST_B, false);
+
+    DataSetQueue dataSetQueue = createDataSetQueue(s3Client, null);
+    dataSetQueue.updatePendingDataSets();
+
+    // Finish "uploading" data set B: only its listing should be redone.
+    putDataSetEntries(s3Client, MANIFEST_B);
+    int listingsBeforeScan = s3Client.getListedPrefixes().size();
+    dataSetQueue.updatePendingDataSets();
+    Assert.assertTrue(dataSetQueue.getDataSetObjects(MANIFEST_B).isPresent());
+    Assert.assertEquals(
+        Arrays.asList("Incoming/|/", computeKeyPrefix(MANIFEST_B)),
+        s3Client
+            .getListedPrefixes()
+            .subList(listingsBeforeScan, s3Client.getListedPrefixes().size()));
+
+    // Now that both data sets are complete, neither should be re-listed.
+    listingsBeforeScan = s3Client.getListedPrefixes().size();
+    dataSetQueue.updatePendingDataSets();
+    Assert.assertEquals(
+        Collections.singletonList("Incoming/|/"),
+        s3Client
+            .getListedPrefixes()
+            .subList(listingsBeforeScan, s3Client.getListedPrefixes().size()));
+
+    // Once data set A has been processed, it has to be re-listed, to see it being moved out.
+    dataSetQueue.markProcessed(MANIFEST_A);
+    listingsBeforeScan = s3Client.getListedPrefixes().size();
+    dataSetQueue.updatePendingDataSets();
+    Assert.assertEquals(
+        Arrays.asList("Incoming/|/", computeKeyPrefix(MANIFEST_A)),
+        s3Client
+            .getListedPrefixes()
+            .subList(listingsBeforeScan, s3Client.getListedPrefixes().size()));
+  }
+
+  /**
+   * Verifies that {@link DataSetQueue#getDataSetObjects(DataSetManifest)} answers from the last
+   * listing, and that {@link DataSetQueue#refreshDataSetObjects(DataSetManifest)} re-lists just the
+   * one data set.
+   */
+  @Test
+  public void refreshDataSetObjectsListsOneDataSet() {
+    MockS3Client s3Client = new MockS3Client();
+    putDataSet(s3Client, MANIFEST_A, true);
+    putDataSet(s3Client, MANIFEST_B, false);
+
+    DataSetQueue dataSetQueue = createDataSetQueue(s3Client, null);
+    dataSetQueue.updatePendingDataSets();
+    Assert.assertFalse(dataSetQueue.getDataSetObjects(MANIFEST_B).isPresent());
+
+    // Finish "uploading" data set B.
+    putDataSetEntries(s3Client, MANIFEST_B);
+    Assert.assertFalse(dataSetQueue.getDataSetObjects(MANIFEST_B).isPresent());
+
+    int listingsBeforeRefresh = s3Client.getListedPrefixes().size();
+    dataSetQueue.refreshDataSetObjects(MANIFEST_B);
+    Assert.assertTrue(dataSetQueue.getDataSetObjects(MANIFEST_B).isPresent());
+    Assert.assertEquals(
+        Collections.singletonList(computeKeyPrefix(MANIFEST_B)),
+        s3Client
+            .getListedPrefixes()
+            .subList(listingsBeforeRefresh, s3Client.getListedPrefixes().size()));
+  }
+
+  /**
+   * @param s3Client the {@link MockS3Client} to use
+   * @param s3ListMaxKeys the value to use for {@link ExtractionOptions#getS3ListMaxKeys()}
+   * @return a new {@link DataSetQueue} that will use the specified {@link MockS3Client}
+   */
+  private DataSetQueue createDataSetQueue(MockS3Client s3Client, Integer s3ListMaxKeys) {
+    ExtractionOptions options = new ExtractionOptions(BUCKET_NAME, null, s3ListMaxKeys);
+    s3TaskManager = new S3TaskManager(new MetricRegistry(), options, s3Client);
+    return new DataSetQueue(new MetricRegistry(), options, s3TaskManager);
+  }
+
+  /**
+   * Stores the specified data set in the pending data sets "directory" of the specified {@link
+   * MockS3Client}.
+   *
+   * @param s3Client the {@link MockS3Client} to store the data set in
+   * @param manifest the {@link DataSetManifest} of the data set to store
+   * @param includeEntries <code>true</code> to store all of the data set's entries along with its
+   *     manifest, <code>false</code> to store just the manifest (as if the data set was still
+   *     uploading)
+   */
+  private static void putDataSet(
+      MockS3Client s3Client, DataSetManifest manifest, boolean includeEntries) {
+    s3Client.putObject(DataSetTestUtilities.createPutRequest(new Bucket(BUCKET_NAME), manifest));
+    if (includeEntries) putDataSetEntries(s3Client, manifest);
+  }
+
+  /**
+   * @param s3Client the {@link MockS3Client} to store the data set entries in
+   * @param manifest the {@link DataSetManifest} whose entries should be stored, each containing
+   *     just its own name
+   */
+  private static void putDataSetEntries(MockS3Client s3Client, DataSetManifest manifest) {
+    for (DataSetManifestEntry entry : manifest.getEntries())
+      s3Client.put(computeKeyPrefix(manifest) + entry.getName(), entry.getName());
+  }
+
+  /**
+   * @param manifest the {@link DataSetManifest} to compute the key prefix for
+   * @return the S3 key prefix of the specified pending data set's "directory"
+   */
+  private static String computeKeyPrefix(DataSetManifest manifest) {
+    return String.format(
+        "%s/%s/", DataSetMonitorWorker.S3_PREFIX_PENDING_DATA_SETS, manifest.getTimestampText());
+  }
+
+  /**
+   * @param manifest the {@link DataSetManifest} to compute the key for
+   * @return the S3 key of the specified pending data set's manifest
+   */
+  private static String computeManifestKey(DataSetManifest manifest) {
+    return String.format("%s%d_manifest.xml", computeKeyPrefix(manifest), manifest.getSequenceId());
+  }
+
+  /**
+   * @param listedPrefixes the {@link MockS3Client#getListedPrefixes()} values to sort
+   * @return the specified values, with the individual pending data set listings (which happen in no
+   *     particular order) sorted
+   */
+  private static List<String> sortListedDataSetPrefixes(List<String> listedPrefixes) {
+    List<String> dataSetPrefixes =
+        listedPrefixes.stream()
+            .filter(p -> p.startsWith("Incoming/") && !p.contains("|"))
+            .sorted()
+            .collect(Collectors.toList());
+    List<String> sortedPrefixes =
+        listedPrefixes.stream()
+            .filter(p -> !dataSetPrefixes.contains(p))
+            .collect(Collectors.toList());
+    sortedPrefixes.addAll(1, dataSetPrefixes);
+    return sortedPrefixes;
+  }
+}
@@ -11,7 +11,7 @@ import org.slf4j.LoggerFactory;
  * A mock {@link gov.cms.bfd.pipeline.rif.extract.s3.DataSetMonitorListener} that tracks the events
  * it receives.
  */
-final class MockDataSetMonitorListener implements DataSetMonitorListener {
+public final class MockDataSetMonitorListener implements DataSetMonitorListener {
   private static final Logger LOGGER = LoggerFactory.getLogger(MockDataSetMonitorListener.class);
 
   private int noDataAvailableEvents = 0;
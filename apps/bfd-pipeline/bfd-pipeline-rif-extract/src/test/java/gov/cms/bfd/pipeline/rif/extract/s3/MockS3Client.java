@@ -0,0 +1,282 @@
+package gov.cms.bfd.pipeline.rif.extract.s3;
+
+import com.amazonaws.services.s3.AbstractAmazonS3;
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.amazonaws.services.s3.model.CopyObjectRequest;
+import com.amazonaws.services.s3.model.CopyObjectResult;
+import com.amazonaws.services.s3.model.DeleteObjectsRequest;
+import com.amazonaws.services.s3.model.DeleteObjectsRequest.KeyVersion;
+import com.amazonaws.services.s3.model.DeleteObjectsResult;
+import com.amazonaws.services.s3.model.DeleteObjectsResult.DeletedObject;
+import com.amazonaws.services.s3.model.GetObjectMetadataRequest;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.ListObjectsV2Request;
+import com.amazonaws.services.s3.model.ListObjectsV2Result;
+import com.amazonaws.services.s3.model.MultiObjectDeleteException;
+import com.amazonaws.services.s3.model.MultiObjectDeleteException.DeleteError;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.amazonaws.services.s3.model.PutObjectResult;
+import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * A mock, in-memory {@link com.amazonaws.services.s3.AmazonS3} client, for testing the S3 code
+ * without a real bucket. It supports just the operations that this project uses (listing, with
+ * delimiters and paging; reading; writing; copying; and batched deletes), all against a single
+ * bucket, and records the listing requests that it receives.
+ *
+ * <p>Everything else throws an {@link UnsupportedOperationException} (via {@link
+ * AbstractAmazonS3}).
+ */
+public final class MockS3Client extends AbstractAmazonS3 {
+  /** The default value for {@link ListObjectsV2Request#getMaxKeys()}, per the S3 API docs. */
+  private static final int DEFAULT_MAX_KEYS = 1000;
+
+  private final NavigableMap<String, byte[]> objects = new TreeMap<>();
+  private final List<String> listedPrefixes = new ArrayList<>();
+  private final List<String> readKeys = new ArrayList<>();
+  private final Set<String> keysToFailDeletionOf = new HashSet<>();
+
+  /**
+   * Stores the specified object.
+   *
+   * @param key the S3 key to store the object at
+   * @param content the (UTF-8) content of the object to store
+   */
+  public synchronized void put(String key, String content) {
+    objects.put(key, content.getBytes(StandardCharsets.UTF_8));
+  }
+
+  /** @return the S3 keys of all of the objects that are stored, in order */
+  public synchronized List<String> getKeys() {
+    return new ArrayList<>(objects.keySet());
+  }
+
+  /**
+   * @return the {@link ListObjectsV2Request#getPrefix()} of each listing request (i.e. page) that
+   *     has been received, each followed by its delimiter (if any), e.g. <code>"Incoming/|/"</code>
+   */
+  public synchronized List<String> getListedPrefixes() {
+    return Collections.unmodifiableList(new ArrayList<>(listedPrefixes));
+  }
+
+  /** @return the S3 keys of each object that has been read, in order */
+  public synchronized List<String> getReadKeys() {
+    return Collections.unmodifiableList(new ArrayList<>(readKeys));
+  }
+
+  /**
+   * Causes the next attempt to delete the specified object to fail (as part of a {@link
+   * MultiObjectDeleteException}).
+   *
+   * @param key the S3 key of the object whose next deletion should fail
+   */
+  public synchronized void failNextDeletionOf(String key) {
+    keysToFailDeletionOf.add(key);
+  }
+
+  /**
+   * @see
+   *     com.amazonaws.services.s3.AbstractAmazonS3#listObjectsV2(com.amazonaws.services.s3.model.ListObjectsV2Request)
+   */
+  @Override
+  public synchronized ListObjectsV2Result listObjectsV2(ListObjectsV2Request request) {
+    String prefix = request.getPrefix() != null ? request.getPrefix() : "";
+    String delimiter = request.getDelimiter();
+    int maxKeys = request.getMaxKeys() != null ? request.getMaxKeys() : DEFAULT_MAX_KEYS;
+    listedPrefixes.add(prefix + (delimiter != null ? "|" + delimiter : ""));
+
+    ListObjectsV2Result result = new ListObjectsV2Result();
+    result.setBucketName(request.getBucketName());
+    result.setPrefix(request.getPrefix());
+    result.setDelimiter(delimiter);
+
+    /*
+     * The continuation tokens here are just the last key (or common prefix) that was returned. Each
+     * common prefix's token sorts after all of the keys in it, so they aren't returned again.
+     */
+    NavigableMap<String, byte[]> remainingObjects =
+        request.getContinuationToken() != null
+            ? objects.tailMap(request.getContinuationToken(), false)
+            : objects.tailMap(prefix, true);
+    Set<String> commonPrefixes = new LinkedHashSet<>();
+    int resultCount = 0;
+    String lastToken = null;
+    for (Map.Entry<String, byte[]> object : remainingObjects.entrySet()) {
+      String key = object.getKey();
+      if (!key.startsWith(prefix)) break;
+
+      int delimiterIndex = delimiter != null ? key.indexOf(delimiter, prefix.length()) : -1;
+      String commonPrefix =
+          delimiterIndex >= 0 ? key.substring(0, delimiterIndex + delimiter.length()) : null;
+      if (commonPrefix != null && commonPrefixes.contains(commonPrefix)) continue;
+
+      if (resultCount >= maxKeys) {
+        result.setTruncated(true);
+        result.setNextContinuationToken(lastToken);
+        break;
+      }
+
+      if (commonPrefix != null) {
+        commonPrefixes.add(commonPrefix);
+        lastToken = commonPrefix + Character.MAX_VALUE;
+      } else {
+        S3ObjectSummary objectSummary = new S3ObjectSummary();
+        objectSummary.setBucketName(request.getBucketName());
+        objectSummary.setKey(key);
+        objectSummary.setSize(object.getValue().length);
+        result.getObjectSummaries().add(objectSummary);
+        lastToken = key;
+      }
+      resultCount++;
+    }
+    result.setCommonPrefixes(new ArrayList<>(commonPrefixes));
+    result.setKeyCount(resultCount);
+
+    return result;
+  }
+
+  /**
+   * @see
+   *     com.amazonaws.services.s3.AbstractAmazonS3#getObject(com.amazonaws.services.s3.model.GetObjectRequest)
+   */
+  @Override
+  public synchronized S3Object getObject(GetObjectRequest request) {
+    byte[] content = getContent(request.getKey());
+    readKeys.add(request.getKey());
+
+    S3Object object = new S3Object();
+    object.setBucketName(request.getBucketName());
+    object.setKey(request.getKey());
+    object.getObjectMetadata().setContentLength(content.length);
+    object.setObjectContent(new ByteArrayInputStream(content));
+    return object;
+  }
+
+  /**
+   * @see com.amazonaws.services.s3.AbstractAmazonS3#getObject(java.lang.String, java.lang.String)
+   */
+  @Override
+  public S3Object getObject(String bucketName, String key) {
+    return getObject(new GetObjectRequest(bucketName, key));
+  }
+
+  /**
+   * @see com.amazonaws.services.s3.AbstractAmazonS3#getObjectAsString(java.lang.String,
+   *     java.lang.String)
+   */
+  @Override
+  public synchronized String getObjectAsString(String bucketName, String key) {
+    byte[] content = getContent(key);
+    readKeys.add(key);
+    return new String(content, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * @see com.amazonaws.services.s3.AbstractAmazonS3#getObjectMetadata(java.lang.String,
+   *     java.lang.String)
+   */
+  @Override
+  public ObjectMetadata getObjectMetadata(String bucketName, String key) {
+    return getObjectMetadata(new GetObjectMetadataRequest(bucketName, key));
+  }
+
+  /**
+   * @see
+   *     com.amazonaws.services.s3.AbstractAmazonS3#getObjectMetadata(com.amazonaws.services.s3.model.GetObjectMetadataRequest)
+   */
+  @Override
+  public synchronized ObjectMetadata getObjectMetadata(GetObjectMetadataRequest request) {
+    ObjectMetadata metadata = new ObjectMetadata();
+    metadata.setContentLength(getContent(request.getKey()).length);
+    return metadata;
+  }
+
+  /**
+   * @see
+   *     com.amazonaws.services.s3.AbstractAmazonS3#putObject(com.amazonaws.services.s3.model.PutObjectRequest)
+   */
+  @Override
+  public synchronized PutObjectResult putObject(PutObjectRequest request) {
+    ByteArrayOutputStream content = new ByteArrayOutputStream();
+    try (InputStream contentStream = request.getInputStream()) {
+      byte[] buffer = new byte[4096];
+      int bytesRead;
+      while ((bytesRead = contentStream.read(buffer)) != -1) content.write(buffer, 0, bytesRead);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    objects.put(request.getKey(), content.toByteArray());
+
+    return new PutObjectResult();
+  }
+
+  /**
+   * @see
+   *     com.amazonaws.services.s3.AbstractAmazonS3#copyObject(com.amazonaws.services.s3.model.CopyObjectRequest)
+   */
+  @Override
+  public synchronized CopyObjectResult copyObject(CopyObjectRequest request) {
+    objects.put(request.getDestinationKey(), getContent(request.getSourceKey()));
+    return new CopyObjectResult();
+  }
+
+  /**
+   * @see
+   *     com.amazonaws.services.s3.AbstractAmazonS3#deleteObjects(com.amazonaws.services.s3.model.DeleteObjectsRequest)
+   */
+  @Override
+  public synchronized DeleteObjectsResult deleteObjects(DeleteObjectsRequest request) {
+    List<DeletedObject> deletedObjects = new ArrayList<>();
+    List<DeleteError> errors = new ArrayList<>();
+    for (KeyVersion keyVersion : request.getKeys()) {
+      if (keysToFailDeletionOf.remove(keyVersion.getKey())) {
+        DeleteError error = new DeleteError();
+        error.setKey(keyVersion.getKey());
+        error.setCode("InternalError");
+        errors.add(error);
+        continue;
+      }
+
+      objects.remove(keyVersion.getKey());
+      DeletedObject deletedObject = new DeletedObject();
+      deletedObject.setKey(keyVersion.getKey());
+      deletedObjects.add(deletedObject);
+    }
+
+    if (!errors.isEmpty()) throw new MultiObjectDeleteException(errors, deletedObjects);
+    return new DeleteObjectsResult(deletedObjects);
+  }
+
+  /**
+   * @param key the S3 key of the object to get the content of
+   * @return the content of the specified object
+   * @throws AmazonS3Exception A <code>404</code> {@link AmazonS3Exception} will be thrown if the
+   *     object doesn't exist.
+   */
+  private byte[] getContent(String key) {
+    byte[] content = objects.get(key);
+    if (content == null) {
+      AmazonS3Exception notFound = new AmazonS3Exception("Not Found: " + key);
+      notFound.setStatusCode(404);
+      throw notFound;
+    }
+    return content;
+  }
+}
@@ -0,0 +1,106 @@
+package gov.cms.bfd.pipeline.rif.extract.s3;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.Assert;
+import org.junit.Test;
+
+/** Unit tests for {@link PriorityTaskExecutor}. */
+public final class PriorityTaskExecutorTest {
+  /**
+   * Verifies that {@link PriorityTaskExecutor} runs queued {@link Comparable} tasks in their
+   * natural order, rather than the order they were submitted in.
+   *
+   * @throws Exception (indicates a test error)
+   */
+  @Test
+  public void runsComparableTasksInOrder() throws Exception {
+    PriorityTaskExecutor executor = new PriorityTaskExecutor("test", 1);
+    try {
+      // Keep the executor's only thread busy until all of the other tasks have been queued.
+      CountDownLatch blockerLatch = new CountDownLatch(1);
+      executor.submit(
+          () -> {
+            blockerLatch.await();
+            return null;
+          });
+
+      List<Integer> runOrder = Collections.synchronizedList(new ArrayList<>());
+      List<Future<Integer>> futures = new ArrayList<>();
+      for (int priority : Arrays.asList(3, 1, 2))
+        futures.add(executor.submit(new PrioritizedTask(priority, runOrder)));
+      blockerLatch.countDown();
+
+      for (Future<Integer> future : futures) future.get(10, TimeUnit.SECONDS);
+      Assert.assertEquals(Arrays.asList(1, 2, 3), runOrder);
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  /**
+   * Verifies that {@link PriorityTaskExecutor} runs tasks that aren't {@link Comparable} in the
+   * order they were submitted in.
+   *
+   * @throws Exception (indicates a test error)
+   */
+  @Test
+  public void runsOtherTasksInSubmissionOrder() throws Exception {
+    PriorityTaskExecutor executor = new PriorityTaskExecutor("test", 1);
+    try {
+      CountDownLatch blockerLatch = new CountDownLatch(1);
+      executor.submit(
+          () -> {
+            blockerLatch.await();
+            return null;
+          });
+
+      List<Integer> runOrder = Collections.synchronizedList(new ArrayList<>());
+      List<Future<?>> futures = new ArrayList<>();
+      for (int i : Arrays.asList(3, 1, 2)) futures.add(executor.submit(() -> runOrder.add(i)));
+      blockerLatch.countDown();
+
+      for (Future<?> future : futures) future.get(10, TimeUnit.SECONDS);
+      Assert.assertEquals(Arrays.asList(3, 1, 2), runOrder);
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  /** A {@link Comparable} task that records when it was run. */
+  private static final class PrioritizedTask
+      implements Callable<Integer>, Comparable<PrioritizedTask> {
+    private final int priority;
+    private final List<Integer> runOrder;
+
+    /**
+     * Constructs a new {@link PrioritizedTask}.
+     *
+     * @param priority the priority of this task, where lower values should be run first
+     * @param runOrder the {@link List} to record this task's priority to when it's run
+     */
+    PrioritizedTask(int priority, List<Integer> runOrder) {
+      this.priority = priority;
+      this.runOrder = runOrder;
+    }
+
+    /** @see java.util.concurrent.Callable#call() */
+    @Override
+    public Integer call() throws Exception {
+      runOrder.add(priority);
+      return priority;
+    }
+
+    /** @see java.lang.Comparable#compareTo(java.lang.Object) */
+    @Override
+    public int compareTo(PrioritizedTask o) {
+      return Integer.compare(priority, o.priority);
+    }
+  }
+}
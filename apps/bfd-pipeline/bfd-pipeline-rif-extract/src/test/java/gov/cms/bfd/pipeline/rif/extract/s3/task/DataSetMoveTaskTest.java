@@ -0,0 +1,92 @@
+package gov.cms.bfd.pipeline.rif.extract.s3.task;
+
+import com.codahale.metrics.MetricRegistry;
+import gov.cms.bfd.model.rif.RifFileType;
+import gov.cms.bfd.pipeline.rif.extract.ExtractionOptions;
+import gov.cms.bfd.pipeline.rif.extract.s3.DataSetManifest;
+import gov.cms.bfd.pipeline.rif.extract.s3.DataSetManifest.DataSetManifestEntry;
+import gov.cms.bfd.pipeline.rif.extract.s3.MockS3Client;
+import java.time.Instant;
+import java.util.Arrays;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/** Unit tests for {@link DataSetMoveTask}, run against a {@link MockS3Client}. */
+public final class DataSetMoveTaskTest {
+  private static final DataSetManifest MANIFEST =
+      new DataSetManifest(
+          Instant.parse("2020-01-01T00:00:00Z"),
+          0,
+          new DataSetManifestEntry("beneficiaries.rif", RifFileType.BENEFICIARY),
+          new DataSetManifestEntry("carrier.rif", RifFileType.CARRIER));
+
+  private MockS3Client s3Client;
+  private ExtractionOptions options;
+  private S3TaskManager s3TaskManager;
+
+  /** Stores the {@link #MANIFEST} data set in a new {@link MockS3Client}. */
+  @Before
+  public void createDataSet() {
+    s3Client = new MockS3Client();
+    s3Client.put("Incoming/2020-01-01T00:00:00Z/0_manifest.xml", "<dataSetManifest />");
+    s3Client.put("Incoming/2020-01-01T00:00:00Z/beneficiaries.rif", "beneficiaries");
+    s3Client.put("Incoming/2020-01-01T00:00:00Z/carrier.rif", "carrier");
+    s3Client.put("Incoming/2020-01-02T00:00:00Z/0_manifest.xml", "<dataSetManifest />");
+
+    options = new ExtractionOptions("mock-bucket");
+    s3TaskManager = new S3TaskManager(new MetricRegistry(), options, s3Client);
+  }
+
+  /** Shuts down the {@link S3TaskManager} used by each test case. */
+  @After
+  public void shutdownS3TaskManager() {
+    s3TaskManager.shutdownSafely();
+  }
+
+  /**
+   * Verifies that {@link DataSetMoveTask} moves all of a data set's objects (and only those) from
+   * the pending "directory" to the completed one.
+   *
+   * @throws Exception (indicates a test error)
+   */
+  @Test
+  public void movesDataSet() throws Exception {
+    new DataSetMoveTask(s3TaskManager, options, MANIFEST).call();
+
+    Assert.assertEquals(
+        Arrays.asList(
+            "Done/2020-01-01T00:00:00Z/0_manifest.xml",
+            "Done/2020-01-01T00:00:00Z/beneficiaries.rif",
+            "Done/2020-01-01T00:00:00Z/carrier.rif",
+            "Incoming/2020-01-02T00:00:00Z/0_manifest.xml"),
+        s3Client.getKeys());
+    Assert.assertEquals("carrier", readObject("Done/2020-01-01T00:00:00Z/carrier.rif"));
+  }
+
+  /**
+   * Verifies that {@link DataSetMoveTask} retries the deletion of any objects that S3 fails to
+   * delete as part of a batch.
+   *
+   * @throws Exception (indicates a test error)
+   */
+  @Test
+  public void retriesFailedDeletions() throws Exception {
+    s3Client.failNextDeletionOf("Incoming/2020-01-01T00:00:00Z/carrier.rif");
+
+    new DataSetMoveTask(s3TaskManager, options, MANIFEST).call();
+
+    Assert.assertFalse(
+        s3Client.getKeys().stream().anyMatch(k -> k.startsWith("Incoming/2020-01-01T00:00:00Z/")));
+    Assert.assertEquals(4, s3Client.getKeys().size());
+  }
+
+  /**
+   * @param key the S3 key of the object to read
+   * @return the (UTF-8) content of the specified object in the {@link MockS3Client}
+   */
+  private String readObject(String key) {
+    return s3Client.getObjectAsString(options.getS3BucketName(), key);
+  }
+}
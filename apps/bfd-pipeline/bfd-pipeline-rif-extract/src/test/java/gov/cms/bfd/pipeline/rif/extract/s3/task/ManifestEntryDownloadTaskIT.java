@@ -16,6 +16,7 @@ import gov.cms.bfd.pipeline.rif.extract.s3.DataSetManifest.DataSetManifestEntry;
 import gov.cms.bfd.pipeline.rif.extract.s3.DataSetMonitorWorker;
 import gov.cms.bfd.pipeline.rif.extract.s3.DataSetTestUtilities;
 import gov.cms.bfd.pipeline.rif.extract.s3.S3Utilities;
+import gov.cms.bfd.pipeline.rif.extract.s3.task.ManifestEntryDownloadTask.ManifestEntryDownloadResult;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
@@ -115,4 +116,48 @@ public final class ManifestEntryDownloadTaskIT {
       if (bucket != null) DataSetTestUtilities.deleteObjectsAndBucket(s3Client, bucket);
     }
   }
+
+  /**
+   * Verifies that {@link ManifestEntryDownloadTask} (which computes its checksum as the download's
+   * bytes are written, rather than re-reading the file) accepts an uncorrupted download, and
+   * produces a file with the expected checksum.
+   *
+   * @throws Exception (indicates a test error)
+   */
+  @Test
+  public void checksumComputedDuringDownload() throws Exception {
+    AmazonS3 s3Client = S3Utilities.createS3Client(new ExtractionOptions("foo"));
+    Bucket bucket = null;
+    Path localDownload = null;
+    try {
+      bucket = DataSetTestUtilities.createTestBucket(s3Client);
+      ExtractionOptions options = new ExtractionOptions(bucket.getName());
+      DataSetManifest manifest =
+          new DataSetManifest(
+              Instant.now(),
+              0,
+              new DataSetManifestEntry("beneficiaries.rif", RifFileType.BENEFICIARY));
+      s3Client.putObject(DataSetTestUtilities.createPutRequest(bucket, manifest));
+      s3Client.putObject(
+          DataSetTestUtilities.createPutRequest(
+              bucket,
+              manifest,
+              manifest.getEntries().get(0),
+              StaticRifResource.SAMPLE_A_BENES.getResourceUrl()));
+
+      s3TaskManager = new S3TaskManager(new MetricRegistry(), options);
+      ManifestEntryDownloadResult downloadResult =
+          s3TaskManager.downloadAsync(manifest.getEntries().get(0)).get();
+      localDownload = downloadResult.getLocalDownload();
+
+      InputStream sampleStream = StaticRifResource.SAMPLE_A_BENES.getResourceUrl().openStream();
+      Assert.assertEquals(
+          ManifestEntryDownloadTask.computeMD5ChkSum(sampleStream),
+          ManifestEntryDownloadTask.computeMD5ChkSum(Files.newInputStream(localDownload)));
+    } finally {
+      if (s3TaskManager != null) s3TaskManager.shutdownSafely();
+      if (localDownload != null) Files.deleteIfExists(localDownload);
+      if (bucket != null) DataSetTestUtilities.deleteObjectsAndBucket(s3Client, bucket);
+    }
+  }
 }
@@ -0,0 +1,127 @@
+package gov.cms.bfd.pipeline.rif.extract.s3.task;
+
+import gov.cms.bfd.model.rif.RifFileType;
+import gov.cms.bfd.pipeline.rif.extract.exceptions.ChecksumException;
+import gov.cms.bfd.pipeline.rif.extract.s3.DataSetManifest;
+import gov.cms.bfd.pipeline.rif.extract.s3.DataSetManifest.DataSetManifestEntry;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Optional;
+import org.junit.Assert;
+import org.junit.Test;
+
+/** Unit tests for {@link ProgressiveDownload}. */
+public final class ProgressiveDownloadTest {
+  /**
+   * Verifies that {@link ProgressiveDownload#openStream()} returns the bytes that have already
+   * arrived, blocks while waiting for more, and then hits the end of the stream once the download
+   * completes.
+   *
+   * @throws Exception (indicates a test error)
+   */
+  @Test
+  public void readsBytesAsTheyArrive() throws Exception {
+    ProgressiveDownload progressiveDownload = new ProgressiveDownload(createManifestEntry());
+    Path localDownload = Files.createTempFile("progressive-download-test", ".rif");
+    try (OutputStream localStream = Files.newOutputStream(localDownload);
+        InputStream downloadStream = progressiveDownload.openStream()) {
+      progressiveDownload.started(localDownload, 12L);
+      write(progressiveDownload, localStream, "foo|");
+
+      byte[] firstBytes = new byte[4];
+      Assert.assertEquals(4, downloadStream.read(firstBytes));
+      Assert.assertEquals("foo|", new String(firstBytes, StandardCharsets.UTF_8));
+
+      // The rest of the bytes will arrive after the reader starts waiting for them.
+      Thread writer =
+          new Thread(
+              () -> {
+                try {
+                  Thread.sleep(100);
+                  write(progressiveDownload, localStream, "bar|");
+                  Thread.sleep(100);
+                  write(progressiveDownload, localStream, "fizz");
+                  progressiveDownload.completed();
+                } catch (IOException | InterruptedException e) {
+                  progressiveDownload.failed(e);
+                }
+              });
+      writer.start();
+
+      Assert.assertEquals("bar|fizz", readFully(downloadStream));
+      Assert.assertEquals(-1, downloadStream.read());
+      writer.join();
+      Assert.assertTrue(progressiveDownload.isDone());
+      Assert.assertEquals(12L, progressiveDownload.getBytesWritten());
+      Assert.assertEquals(Optional.of(12L), progressiveDownload.getTotalBytes());
+    } finally {
+      Files.deleteIfExists(localDownload);
+    }
+  }
+
+  /**
+   * Verifies that {@link ProgressiveDownload#openStream()} throws an {@link IOException} at the end
+   * of the stream, if the download failed (e.g. due to a checksum mismatch).
+   *
+   * @throws Exception (indicates a test error)
+   */
+  @Test(expected = IOException.class)
+  public void failedDownloadsErrorAtEnd() throws Exception {
+    ProgressiveDownload progressiveDownload = new ProgressiveDownload(createManifestEntry());
+    Path localDownload = Files.createTempFile("progressive-download-test", ".rif");
+    try (OutputStream localStream = Files.newOutputStream(localDownload);
+        InputStream downloadStream = progressiveDownload.openStream()) {
+      progressiveDownload.started(localDownload, 7L);
+      write(progressiveDownload, localStream, "foo|bar");
+      progressiveDownload.failed(new ChecksumException("Checksum doesn't match."));
+
+      readFully(downloadStream);
+    } finally {
+      Files.deleteIfExists(localDownload);
+    }
+  }
+
+  /** @return a {@link DataSetManifestEntry} to use in tests */
+  private static DataSetManifestEntry createManifestEntry() {
+    DataSetManifest manifest =
+        new DataSetManifest(
+            Instant.now(),
+            0,
+            new DataSetManifestEntry("beneficiaries.rif", RifFileType.BENEFICIARY));
+    return manifest.getEntries().get(0);
+  }
+
+  /**
+   * @param progressiveDownload the {@link ProgressiveDownload} to report the write to
+   * @param localStream the {@link OutputStream} to write to
+   * @param text the text to write
+   * @throws IOException (indicates a test error)
+   */
+  private static void write(
+      ProgressiveDownload progressiveDownload, OutputStream localStream, String text)
+      throws IOException {
+    byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+    localStream.write(bytes);
+    localStream.flush();
+    progressiveDownload.written(bytes.length);
+  }
+
+  /**
+   * @param stream the {@link InputStream} to read
+   * @return the remaining contents of the specified {@link InputStream}
+   * @throws IOException (indicates a test error)
+   */
+  private static String readFully(InputStream stream) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    byte[] buffer = new byte[2];
+    int bytesRead;
+    while ((bytesRead = stream.read(buffer)) != -1) bytes.write(buffer, 0, bytesRead);
+    return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+  }
+}
@@ -0,0 +1,479 @@
+package gov.cms.bfd.pipeline.rif.load;
+
+import com.codahale.metrics.MetricRegistry;
+import gov.cms.bfd.model.rif.RifFileType;
+import gov.cms.bfd.pipeline.rif.extract.s3.DataSetCoordinator;
+import gov.cms.bfd.pipeline.rif.extract.s3.DataSetManifest;
+import gov.cms.bfd.pipeline.rif.extract.s3.DataSetManifest.DataSetManifestEntry;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import javax.sql.DataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A {@link DataSetCoordinator} that coordinates the ETL pipeline nodes via tables in the BFD
+ * database itself (<code>CoordinatedDataSets</code> and <code>CoordinatedWorkUnits</code>), so no
+ * additional infrastructure is needed.
+ *
+ * <p>Leases are taken and committed via compare-and-set <code>UPDATE</code>s on each unit's <code>
+ * leaseGeneration</code>, which is incremented every time the unit is leased. It acts as a fencing
+ * token: a node that has lost its lease to another node can't commit the unit, even if it's still
+ * busy processing it. Lease expiry is checked against each node's clock, so the nodes' clocks must
+ * be kept in (rough) sync, e.g. via NTP; {@link #DEFAULT_LEASE_DURATION} leaves plenty of slack.
+ */
+public final class DatabaseDataSetCoordinator implements DataSetCoordinator {
+  private static final Logger LOGGER = LoggerFactory.getLogger(DatabaseDataSetCoordinator.class);
+
+  /** The default value for {@link #getLeaseDuration()}. */
+  public static final Duration DEFAULT_LEASE_DURATION = Duration.ofMinutes(5);
+
+  /** How many heartbeats will be sent per {@link #getLeaseDuration()}. */
+  private static final int HEARTBEATS_PER_LEASE = 5;
+
+  /** The PostgreSQL (and HSQL) <code>SQLSTATE</code> for unique key violations. */
+  static final String SQL_STATE_UNIQUE_VIOLATION = "23505";
+
+  private final MetricRegistry appMetrics;
+  private final DataSource dataSource;
+  private final String nodeId;
+  private final Duration leaseDuration;
+  private final ScheduledExecutorService heartbeatExecutor;
+
+  /**
+   * Constructs a new {@link DatabaseDataSetCoordinator}.
+   *
+   * @param appMetrics the {@link MetricRegistry} for the overall application
+   * @param dataSource the {@link DataSource} for the BFD database
+   * @param nodeId the value to use for {@link #getNodeId()}
+   * @param leaseDuration the value to use for {@link #getLeaseDuration()}
+   */
+  public DatabaseDataSetCoordinator(
+      MetricRegistry appMetrics, DataSource dataSource, String nodeId, Duration leaseDuration) {
+    if (nodeId == null || nodeId.isEmpty()) throw new IllegalArgumentException();
+    if (leaseDuration.isNegative() || leaseDuration.isZero()) throw new IllegalArgumentException();
+
+    this.appMetrics = appMetrics;
+    this.dataSource = dataSource;
+    this.nodeId = nodeId;
+    this.leaseDuration = leaseDuration;
+    this.heartbeatExecutor =
+        Executors.newSingleThreadScheduledExecutor(
+            r -> {
+              Thread thread = new Thread(r, getClass().getSimpleName());
+              thread.setDaemon(true);
+              return thread;
+            });
+  }
+
+  /**
+   * Constructs a new {@link DatabaseDataSetCoordinator}, with the {@link #DEFAULT_LEASE_DURATION}.
+   *
+   * @param appMetrics the {@link MetricRegistry} for the overall application
+   * @param dataSource the {@link DataSource} for the BFD database
+   * @param nodeId the value to use for {@link #getNodeId()}
+   */
+  public DatabaseDataSetCoordinator(
+      MetricRegistry appMetrics, DataSource dataSource, String nodeId) {
+    this(appMetrics, dataSource, nodeId, DEFAULT_LEASE_DURATION);
+  }
+
+  /** @return the unique ID of this ETL pipeline node, which its leases will be recorded under */
+  public String getNodeId() {
+    return nodeId;
+  }
+
+  /**
+   * @return how long each lease will last without a heartbeat, i.e. how long it'll take for
+   *     another node to take over the work units of a node that has died
+   */
+  public Duration getLeaseDuration() {
+    return leaseDuration;
+  }
+
+  /**
+   * @param manifest the {@link DataSetManifest} of the data set to get the ID of
+   * @return the ID that the specified data set will be recorded under
+   */
+  static String computeDataSetId(DataSetManifest manifest) {
+    return String.format("%s/%d", manifest.getTimestampText(), manifest.getSequenceId());
+  }
+
+  /**
+   * @param fileType the {@link RifFileType} of a work unit
+   * @return the stage that the work unit should be processed in: all of a data set's units in one
+   *     stage must be completed before any in the next stage are started
+   */
+  static int computeStage(RifFileType fileType) {
+    switch (fileType) {
+      case BENEFICIARY:
+      case BENEFICIARY_HISTORY:
+      case MEDICARE_BENEFICIARY_ID_HISTORY:
+        return 0;
+      default:
+        // Claims reference beneficiaries, so they have to wait.
+        return 1;
+    }
+  }
+
+  /**
+   * @see
+   *     gov.cms.bfd.pipeline.rif.extract.s3.DataSetCoordinator#registerDataSet(gov.cms.bfd.pipeline.rif.extract.s3.DataSetManifest)
+   */
+  @Override
+  public void registerDataSet(DataSetManifest manifest) {
+    String dataSetId = computeDataSetId(manifest);
+    Timestamp now = Timestamp.from(Instant.now());
+
+    try (Connection connection = dataSource.getConnection()) {
+      // The data set and its units must become visible to the other nodes all at once.
+      connection.setAutoCommit(false);
+      try {
+        try (PreparedStatement insertDataSet =
+            connection.prepareStatement(
+                "INSERT INTO \"CoordinatedDataSets\""
+                    + " (\"dataSetId\", \"finalized\", \"updated\") VALUES (?, false, ?)")) {
+          insertDataSet.setString(1, dataSetId);
+          insertDataSet.setTimestamp(2, now);
+          insertDataSet.executeUpdate();
+        }
+
+        try (PreparedStatement insertUnit =
+            connection.prepareStatement(
+                "INSERT INTO \"CoordinatedWorkUnits\" (\"dataSetId\", \"unitIndex\", \"stage\","
+                    + " \"fileName\", \"leaseGeneration\", \"completed\", \"updated\")"
+                    + " VALUES (?, ?, ?, ?, 0, false, ?)")) {
+          List<DataSetManifestEntry> entries = manifest.getEntries();
+          for (int unitIndex = 0; unitIndex < entries.size(); unitIndex++) {
+            insertUnit.setString(1, dataSetId);
+            insertUnit.setInt(2, unitIndex);
+            insertUnit.setInt(3, computeStage(entries.get(unitIndex).getType()));
+            insertUnit.setString(4, entries.get(unitIndex).getName());
+            insertUnit.setTimestamp(5, now);
+            insertUnit.addBatch();
+          }
+          insertUnit.executeBatch();
+        }
+
+        connection.commit();
+        LOGGER.info("Registered data set '{}' for coordinated processing.", dataSetId);
+      } catch (SQLException e) {
+        connection.rollback();
+        if (!SQL_STATE_UNIQUE_VIOLATION.equals(e.getSQLState())) throw e;
+        LOGGER.debug("Data set '{}' was already registered by another node.", dataSetId);
+      }
+    } catch (SQLException e) {
+      throw new RifLoadFailure(e);
+    }
+  }
+
+  /**
+   * @see
+   *     gov.cms.bfd.pipeline.rif.extract.s3.DataSetCoordinator#leaseWorkUnit(gov.cms.bfd.pipeline.rif.extract.s3.DataSetManifest)
+   */
+  @Override
+  public Optional<WorkUnitLease> leaseWorkUnit(DataSetManifest manifest) {
+    String dataSetId = computeDataSetId(manifest);
+    Timestamp now = Timestamp.from(Instant.now());
+
+    try (Connection connection = dataSource.getConnection()) {
+      // Find the units that are available: unleased, or whose lease has expired.
+      List<LeaseCandidate> candidates = new ArrayList<>();
+      try (PreparedStatement select =
+          connection.prepareStatement(
+              "SELECT \"unitIndex\", \"leaseGeneration\", \"leaseOwner\""
+                  + " FROM \"CoordinatedWorkUnits\" WHERE \"dataSetId\" = ?"
+                  + " AND \"completed\" = false"
+                  + " AND (\"leaseOwner\" IS NULL OR \"leaseExpires\" < ?)"
+                  + " AND \"stage\" = (SELECT MIN(\"stage\") FROM \"CoordinatedWorkUnits\""
+                  + " WHERE \"dataSetId\" = ? AND \"completed\" = false)"
+                  + " ORDER BY \"unitIndex\"")) {
+        select.setString(1, dataSetId);
+        select.setTimestamp(2, now);
+        select.setString(3, dataSetId);
+        try (ResultSet results = select.executeQuery()) {
+          while (results.next())
+            candidates.add(
+                new LeaseCandidate(results.getInt(1), results.getLong(2), results.getString(3)));
+        }
+      }
+
+      // Other nodes may be racing for the same units, so each lease is a compare-and-set.
+      for (LeaseCandidate candidate : candidates) {
+        long leaseGeneration = candidate.leaseGeneration + 1;
+        try (PreparedStatement update =
+            connection.prepareStatement(
+                "UPDATE \"CoordinatedWorkUnits\" SET \"leaseOwner\" = ?,"
+                    + " \"leaseGeneration\" = ?, \"leaseExpires\" = ?, \"updated\" = ?"
+                    + " WHERE \"dataSetId\" = ? AND \"unitIndex\" = ?"
+                    + " AND \"leaseGeneration\" = ? AND \"completed\" = false")) {
+          update.setString(1, nodeId);
+          update.setLong(2, leaseGeneration);
+          update.setTimestamp(3, Timestamp.from(now.toInstant().plus(leaseDuration)));
+          update.setTimestamp(4, now);
+          update.setString(5, dataSetId);
+          update.setInt(6, candidate.unitIndex);
+          update.setLong(7, candidate.leaseGeneration);
+          if (update.executeUpdate() != 1) continue;
+        }
+
+        if (candidate.expiredLeaseOwner != null) {
+          LOGGER.warn(
+              "Took over work unit '{}' of data set '{}' from node '{}', whose lease expired.",
+              candidate.unitIndex,
+              dataSetId,
+              candidate.expiredLeaseOwner);
+          appMetrics
+              .meter(MetricRegistry.name(getClass().getSimpleName(), "leases", "takenOver"))
+              .mark();
+        }
+        appMetrics.meter(MetricRegistry.name(getClass().getSimpleName(), "leases", "taken")).mark();
+        return Optional.of(
+            new DatabaseWorkUnitLease(
+                dataSetId,
+                candidate.unitIndex,
+                leaseGeneration,
+                manifest.getEntries().get(candidate.unitIndex)));
+      }
+    } catch (SQLException e) {
+      throw new RifLoadFailure(e);
+    }
+
+    return Optional.empty();
+  }
+
+  /**
+   * @see
+   *     gov.cms.bfd.pipeline.rif.extract.s3.DataSetCoordinator#isDataSetComplete(gov.cms.bfd.pipeline.rif.extract.s3.DataSetManifest)
+   */
+  @Override
+  public boolean isDataSetComplete(DataSetManifest manifest) {
+    try (Connection connection = dataSource.getConnection();
+        PreparedStatement select =
+            connection.prepareStatement(
+                "SELECT COUNT(*) FROM \"CoordinatedWorkUnits\""
+                    + " WHERE \"dataSetId\" = ? AND \"completed\" = false")) {
+      select.setString(1, computeDataSetId(manifest));
+      try (ResultSet results = select.executeQuery()) {
+        results.next();
+        return results.getLong(1) == 0L;
+      }
+    } catch (SQLException e) {
+      throw new RifLoadFailure(e);
+    }
+  }
+
+  /**
+   * @see
+   *     gov.cms.bfd.pipeline.rif.extract.s3.DataSetCoordinator#finalizeDataSet(gov.cms.bfd.pipeline.rif.extract.s3.DataSetManifest)
+   */
+  @Override
+  public boolean finalizeDataSet(DataSetManifest manifest) {
+    String dataSetId = computeDataSetId(manifest);
+    try (Connection connection = dataSource.getConnection();
+        PreparedStatement update =
+            connection.prepareStatement(
+                "UPDATE \"CoordinatedDataSets\" SET \"finalized\" = true, \"finalizedBy\" = ?,"
+                    + " \"updated\" = ? WHERE \"dataSetId\" = ? AND \"finalized\" = false"
+                    + " AND NOT EXISTS (SELECT 1 FROM \"CoordinatedWorkUnits\""
+                    + " WHERE \"dataSetId\" = ? AND \"completed\" = false)")) {
+      update.setString(1, nodeId);
+      update.setTimestamp(2, Timestamp.from(Instant.now()));
+      update.setString(3, dataSetId);
+      update.setString(4, dataSetId);
+      return update.executeUpdate() == 1;
+    } catch (SQLException e) {
+      throw new RifLoadFailure(e);
+    }
+  }
+
+  /** An available work unit, which this node will attempt to lease. */
+  private static final class LeaseCandidate {
+    private final int unitIndex;
+    private final long leaseGeneration;
+    private final String expiredLeaseOwner;
+
+    /**
+     * Constructs a new {@link LeaseCandidate}.
+     *
+     * @param unitIndex the index of the work unit in its data set
+     * @param leaseGeneration the work unit's current <code>leaseGeneration</code>
+     * @param expiredLeaseOwner the node whose lease on the work unit has expired, or <code>null
+     *     </code> if it's not leased
+     */
+    LeaseCandidate(int unitIndex, long leaseGeneration, String expiredLeaseOwner) {
+      this.unitIndex = unitIndex;
+      this.leaseGeneration = leaseGeneration;
+      this.expiredLeaseOwner = expiredLeaseOwner;
+    }
+  }
+
+  /** A {@link WorkUnitLease} held in the BFD database, which is renewed by periodic heartbeats. */
+  private final class DatabaseWorkUnitLease implements WorkUnitLease {
+    private final String dataSetId;
+    private final int unitIndex;
+    private final long leaseGeneration;
+    private final DataSetManifestEntry manifestEntry;
+    private final ScheduledFuture<?> heartbeatFuture;
+    private boolean released;
+
+    /** Set once a heartbeat finds that another node has taken over the unit. */
+    private volatile boolean lost;
+
+    /** The {@link System#nanoTime()} that this lease was last taken or renewed at. */
+    private volatile long renewedNanos;
+
+    /**
+     * Constructs a new {@link DatabaseWorkUnitLease}, and starts its heartbeats.
+     *
+     * @param dataSetId the ID of the data set that the leased work unit is part of
+     * @param unitIndex the index of the leased work unit in its data set
+     * @param leaseGeneration the <code>leaseGeneration</code> that this lease was taken with
+     * @param manifestEntry the value to use for {@link #getManifestEntry()}
+     */
+    DatabaseWorkUnitLease(
+        String dataSetId,
+        int unitIndex,
+        long leaseGeneration,
+        DataSetManifestEntry manifestEntry) {
+      this.dataSetId = dataSetId;
+      this.unitIndex = unitIndex;
+      this.leaseGeneration = leaseGeneration;
+      this.manifestEntry = manifestEntry;
+      this.released = false;
+      this.lost = false;
+      this.renewedNanos = System.nanoTime();
+
+      long heartbeatMillis = Math.max(1L, leaseDuration.toMillis() / HEARTBEATS_PER_LEASE);
+      this.heartbeatFuture =
+          heartbeatExecutor.scheduleWithFixedDelay(
+              this::heartbeat, heartbeatMillis, heartbeatMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @see
+     *     gov.cms.bfd.pipeline.rif.extract.s3.DataSetCoordinator.WorkUnitLease#getManifestEntry()
+     */
+    @Override
+    public DataSetManifestEntry getManifestEntry() {
+      return manifestEntry;
+    }
+
+    /** @see gov.cms.bfd.pipeline.rif.extract.s3.DataSetCoordinator.WorkUnitLease#isLost() */
+    @Override
+    public boolean isLost() {
+      /*
+       * If the heartbeats have been failing for a whole lease duration, the lease has expired, and
+       * another node may already have taken the unit over.
+       */
+      return lost || System.nanoTime() - renewedNanos > leaseDuration.toNanos();
+    }
+
+    /** Extends this lease, unless it has already been lost to another node. */
+    private void heartbeat() {
+      long heartbeatNanos = System.nanoTime();
+      Timestamp now = Timestamp.from(Instant.now());
+      try (Connection connection = dataSource.getConnection();
+          PreparedStatement update =
+              connection.prepareStatement(
+                  "UPDATE \"CoordinatedWorkUnits\" SET \"leaseExpires\" = ?, \"updated\" = ?"
+                      + " WHERE \"dataSetId\" = ? AND \"unitIndex\" = ?"
+                      + " AND \"leaseGeneration\" = ? AND \"completed\" = false")) {
+        update.setTimestamp(1, Timestamp.from(now.toInstant().plus(leaseDuration)));
+        update.setTimestamp(2, now);
+        update.setString(3, dataSetId);
+        update.setInt(4, unitIndex);
+        update.setLong(5, leaseGeneration);
+        if (update.executeUpdate() == 1) {
+          renewedNanos = heartbeatNanos;
+        } else {
+          lost = true;
+          LOGGER.error(
+              "Lost lease on work unit '{}' of data set '{}' to another node.",
+              unitIndex,
+              dataSetId);
+          appMetrics
+              .meter(
+                  MetricRegistry.name(
+                      DatabaseDataSetCoordinator.class.getSimpleName(), "leases", "lost"))
+              .mark();
+          heartbeatFuture.cancel(false);
+        }
+      } catch (SQLException | RuntimeException e) {
+        /*
+         * Don't let one failed heartbeat stop the rest: the lease won't expire until several have
+         * been missed. (An exception here would cancel all future runs.)
+         */
+        LOGGER.warn(
+            "Heartbeat for work unit '{}' of data set '{}' failed.", unitIndex, dataSetId, e);
+      }
+    }
+
+    /** @see gov.cms.bfd.pipeline.rif.extract.s3.DataSetCoordinator.WorkUnitLease#complete() */
+    @Override
+    public synchronized boolean complete() {
+      if (released) throw new IllegalStateException();
+      heartbeatFuture.cancel(false);
+      released = true;
+
+      /*
+       * Note: this deliberately doesn't require that the lease hasn't expired. If no other node has
+       * taken the unit over (which would have bumped its leaseGeneration) then there's no conflict.
+       */
+      try (Connection connection = dataSource.getConnection();
+          PreparedStatement update =
+              connection.prepareStatement(
+                  "UPDATE \"CoordinatedWorkUnits\" SET \"completed\" = true,"
+                      + " \"completedBy\" = ?, \"leaseOwner\" = NULL, \"leaseExpires\" = NULL,"
+                      + " \"updated\" = ? WHERE \"dataSetId\" = ? AND \"unitIndex\" = ?"
+                      + " AND \"leaseGeneration\" = ? AND \"completed\" = false")) {
+        update.setString(1, nodeId);
+        update.setTimestamp(2, Timestamp.from(Instant.now()));
+        update.setString(3, dataSetId);
+        update.setInt(4, unitIndex);
+        update.setLong(5, leaseGeneration);
+        return update.executeUpdate() == 1;
+      } catch (SQLException e) {
+        throw new RifLoadFailure(e);
+      }
+    }
+
+    /** @see gov.cms.bfd.pipeline.rif.extract.s3.DataSetCoordinator.WorkUnitLease#close() */
+    @Override
+    public synchronized void close() {
+      if (released) return;
+      heartbeatFuture.cancel(false);
+      released = true;
+
+      // Give the unit up right away, rather than making the other nodes wait for it to expire.
+      try (Connection connection = dataSource.getConnection();
+          PreparedStatement update =
+              connection.prepareStatement(
+                  "UPDATE \"CoordinatedWorkUnits\" SET \"leaseOwner\" = NULL,"
+                      + " \"leaseExpires\" = NULL, \"updated\" = ?"
+                      + " WHERE \"dataSetId\" = ? AND \"unitIndex\" = ?"
+                      + " AND \"leaseGeneration\" = ? AND \"completed\" = false")) {
+        update.setTimestamp(1, Timestamp.from(Instant.now()));
+        update.setString(2, dataSetId);
+        update.setInt(3, unitIndex);
+        update.setLong(4, leaseGeneration);
+        update.executeUpdate();
+      } catch (SQLException e) {
+        // The lease will expire on its own, eventually.
+        LOGGER.warn("Unable to release work unit '{}' of data set '{}'.", unitIndex, dataSetId, e);
+      }
+    }
+  }
+}
@@ -0,0 +1,47 @@
+package gov.cms.bfd.pipeline.rif.load;
+
+/**
+ * A unit of background work (e.g. a backfill or some database maintenance) that the {@link
+ * IdleTaskScheduler} will run in the ETL pipeline's idle time, a time slice at a time.
+ *
+ * <p>Implementations must be able to resume their work from the last cursor that they saved via
+ * {@link IdleTaskContext#saveCursor(String)}, and should be idempotent: if a time slice fails or
+ * the application stops partway through one, the work done since the last saved cursor will be
+ * redone.
+ */
+public interface IdleTask {
+  /**
+   * @return the unique, stable identifier for this {@link IdleTask}, which its progress is
+   *     persisted under (so it must not change between application runs)
+   */
+  String getId();
+
+  /**
+   * @return the priority of this {@link IdleTask}: when multiple {@link IdleTask}s have work to do,
+   *     those with lower values will be run first
+   */
+  int getPriority();
+
+  /**
+   * Note: {@link IdleTask}s that have returned <code>true</code> from {@link
+   * #run(IdleTaskContext)} will never be run again, regardless of this value. Recurring tasks
+   * should instead use this to indicate when they next have work to do.
+   *
+   * @return <code>true</code> if this {@link IdleTask} currently has work to do, <code>false</code>
+   *     if it doesn't
+   */
+  default boolean hasWork() {
+    return true;
+  }
+
+  /**
+   * Does some of this {@link IdleTask}'s work. Implementations should work in small batches,
+   * checking {@link IdleTaskContext#shouldContinue()} between each, and return once it returns
+   * <code>false</code>.
+   *
+   * @param context the {@link IdleTaskContext} for this time slice
+   * @return <code>true</code> if this {@link IdleTask} has finished all of its work for good,
+   *     <code>false</code> if it should be run again in a later time slice
+   */
+  boolean run(IdleTaskContext context);
+}
@@ -0,0 +1,85 @@
+package gov.cms.bfd.pipeline.rif.load;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Optional;
+import javax.sql.DataSource;
+
+/**
+ * Provides an {@link IdleTask} with what it needs for a single time slice of work: its saved
+ * cursor, the database, and a way to tell when it should yield back to the ETL pipeline.
+ */
+public final class IdleTaskContext {
+  private final IdleTaskScheduler scheduler;
+  private final DataSource dataSource;
+  private final Instant deadline;
+  private String cursor;
+
+  /**
+   * Constructs a new {@link IdleTaskContext}.
+   *
+   * @param scheduler the {@link IdleTaskScheduler} that is running the {@link IdleTask}
+   * @param dataSource the value to use for {@link #getDataSource()}
+   * @param deadline the time after which {@link #shouldContinue()} will return <code>false</code>
+   * @param cursor the value to use for {@link #getCursor()}, or <code>null</code> if the {@link
+   *     IdleTask} hasn't saved one yet
+   */
+  IdleTaskContext(
+      IdleTaskScheduler scheduler, DataSource dataSource, Instant deadline, String cursor) {
+    this.scheduler = scheduler;
+    this.dataSource = dataSource;
+    this.deadline = deadline;
+    this.cursor = cursor;
+  }
+
+  /** @return the {@link DataSource} for the database that the {@link IdleTask} should work on */
+  public DataSource getDataSource() {
+    return dataSource;
+  }
+
+  /**
+   * @return the cursor most recently saved via {@link #saveCursor(String)} (in this or a previous
+   *     time slice or application run), if any
+   */
+  public Optional<String> getCursor() {
+    return Optional.ofNullable(cursor);
+  }
+
+  /**
+   * Records the {@link IdleTask}'s position in its work, which it will be able to resume from. The
+   * cursor is persisted at the end of the time slice.
+   *
+   * @param cursor the new cursor value, which may be <code>null</code> to clear it
+   */
+  public void saveCursor(String cursor) {
+    this.cursor = cursor;
+  }
+
+  /**
+   * Reports how long one of the {@link IdleTask}'s database operations took, which the {@link
+   * IdleTaskScheduler} uses to throttle idle work when the database seems to be under load.
+   *
+   * @param latency the {@link Duration} of the database operation
+   */
+  public void recordDbLatency(Duration latency) {
+    scheduler.recordDbLatency(latency);
+  }
+
+  /**
+   * @return how much of the time slice is left (never negative), which the {@link IdleTask} should
+   *     use to bound any single operation that it can't check {@link #shouldContinue()} during
+   */
+  public Duration getRemainingTime() {
+    Duration remainingTime = Duration.between(Instant.now(), deadline);
+    return remainingTime.isNegative() ? Duration.ZERO : remainingTime;
+  }
+
+  /**
+   * @return <code>true</code> if the {@link IdleTask} may do another batch of work, <code>false
+   *     </code> if it should instead return as soon as possible, because its time budget is spent
+   *     or the database is under load
+   */
+  public boolean shouldContinue() {
+    return Instant.now().isBefore(deadline) && !scheduler.isThrottled();
+  }
+}
@@ -0,0 +1,374 @@
+package gov.cms.bfd.pipeline.rif.load;
+
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import javax.sql.DataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs the registered {@link IdleTask}s during the ETL pipeline's idle time (i.e. when there are no
+ * data sets to process), one time slice at a time, via {@link #doIdleTask()}.
+ *
+ * <p>Each call runs the highest-priority {@link IdleTask} that still has work to do, for up to
+ * {@link #getTimeBudget()}. Each task's cursor is persisted to the database (in the <code>
+ * IdleTaskCursors</code> table) at the end of each time slice, so that its work can be resumed
+ * across time slices and application restarts. To avoid slowing down any other users of the
+ * database, idle work is throttled whenever the observed database latency rises well above its
+ * baseline: the database is probed before each time slice (which will be skipped if it's slow or
+ * unreachable), and the running task is asked to yield if its own operations slow down during that
+ * slice.
+ *
+ * <p>This class is not thread-safe, as idle tasks are only ever run from the pipeline's main loop.
+ */
+public final class IdleTaskScheduler {
+  private static final Logger LOGGER = LoggerFactory.getLogger(IdleTaskScheduler.class);
+
+  /** The default value for {@link #getTimeBudget()}. */
+  public static final Duration DEFAULT_TIME_BUDGET = Duration.ofSeconds(20);
+
+  /**
+   * Database latency is considered elevated (and idle work will be throttled) once the recent
+   * average is this many times higher than the lowest latency seen.
+   */
+  private static final int LATENCY_THROTTLE_FACTOR = 4;
+
+  /**
+   * Database latency is never considered elevated unless the recent average is at least this many
+   * milliseconds higher than the lowest latency seen, as tiny latencies are always noisy.
+   */
+  private static final long LATENCY_THROTTLE_MIN_HEADROOM_MILLIS = 20;
+
+  /** The weight given to each new sample in the moving average of database latency. */
+  private static final double LATENCY_AVERAGE_WEIGHT = 0.2;
+
+  /** The number of seconds that database probes will wait before timing out. */
+  private static final int PROBE_TIMEOUT_SECONDS = 5;
+
+  private final MetricRegistry appMetrics;
+  private final DataSource dataSource;
+  private final Duration timeBudget;
+  private final List<IdleTask> tasks;
+
+  /** Tracks the latency of the probes made before each time slice. */
+  private final LatencyTracker probeLatency;
+
+  /**
+   * Tracks the latency of each {@link IdleTask}'s own database operations, keyed by {@link
+   * IdleTask#getId()}. Tasks' operations vary too much to share a baseline.
+   */
+  private final Map<String, LatencyTracker> taskLatencies;
+
+  /** The persisted cursors, keyed by {@link IdleTask#getId()}, or <code>null</code> until read. */
+  private Map<String, String> cursors;
+
+  /** The {@link IdleTask#getId()}s of the tasks that have finished for good. */
+  private Set<String> completedTaskIds;
+
+  /** The {@link IdleTask} whose time slice is currently running, if any. */
+  private IdleTask runningTask;
+
+  /**
+   * Constructs a new {@link IdleTaskScheduler}, with a {@link #getTimeBudget()} of {@link
+   * #DEFAULT_TIME_BUDGET}.
+   *
+   * @param appMetrics the {@link MetricRegistry} for the overall application
+   * @param dataSource the {@link DataSource} for the database that tasks will work on, and that
+   *     their cursors will be persisted to
+   */
+  public IdleTaskScheduler(MetricRegistry appMetrics, DataSource dataSource) {
+    this(appMetrics, dataSource, DEFAULT_TIME_BUDGET);
+  }
+
+  /**
+   * Constructs a new {@link IdleTaskScheduler}.
+   *
+   * @param appMetrics the {@link MetricRegistry} for the overall application
+   * @param dataSource the {@link DataSource} for the database that tasks will work on, and that
+   *     their cursors will be persisted to
+   * @param timeBudget the value to use for {@link #getTimeBudget()}
+   */
+  public IdleTaskScheduler(MetricRegistry appMetrics, DataSource dataSource, Duration timeBudget) {
+    this.appMetrics = appMetrics;
+    this.dataSource = dataSource;
+    this.timeBudget = timeBudget;
+    this.tasks = new ArrayList<>();
+    this.probeLatency = new LatencyTracker();
+    this.taskLatencies = new HashMap<>();
+    this.cursors = null;
+    this.completedTaskIds = new HashSet<>();
+    this.runningTask = null;
+  }
+
+  /** @return the maximum amount of time that each {@link IdleTask} time slice may take */
+  public Duration getTimeBudget() {
+    return timeBudget;
+  }
+
+  /**
+   * Registers the specified {@link IdleTask}, so that it will be run in future idle time.
+   *
+   * @param task the {@link IdleTask} to register, whose {@link IdleTask#getId()} must not match
+   *     that of any previously registered one
+   */
+  public void register(IdleTask task) {
+    if (tasks.stream().anyMatch(t -> t.getId().equals(task.getId())))
+      throw new IllegalArgumentException("Duplicate idle task: " + task.getId());
+
+    tasks.add(task);
+    tasks.sort(Comparator.comparingInt(IdleTask::getPriority));
+  }
+
+  /**
+   * @return the registered {@link IdleTask}s that haven't finished for good, in priority order
+   *     (regardless of whether or not they have work to do right now)
+   */
+  public List<IdleTask> getPendingTasks() {
+    loadCursors();
+
+    List<IdleTask> pendingTasks = new ArrayList<>();
+    for (IdleTask task : tasks)
+      if (!completedTaskIds.contains(task.getId())) pendingTasks.add(task);
+    return pendingTasks;
+  }
+
+  /**
+   * Runs a single time slice of the highest-priority {@link IdleTask} that has work to do, if any,
+   * unless the database seems to be under load. This method is expected to be called whenever the
+   * pipeline has no data to process.
+   */
+  public void doIdleTask() {
+    Optional<IdleTask> task = getPendingTasks().stream().filter(IdleTask::hasWork).findFirst();
+    if (!task.isPresent()) return;
+
+    if (!probeDatabase()) return;
+    if (probeLatency.isElevated()) {
+      LOGGER.debug("Database latency is elevated: skipping idle task time slice.");
+      appMetrics.meter(MetricRegistry.name(getClass().getSimpleName(), "throttled")).mark();
+      return;
+    }
+
+    runTimeSlice(task.get());
+  }
+
+  /**
+   * Runs a single time slice of the specified {@link IdleTask}, and then persists its progress.
+   *
+   * @param task the {@link IdleTask} to run
+   */
+  private void runTimeSlice(IdleTask task) {
+    /*
+     * The probe just found the database to be responsive, so the task's recent latency from earlier
+     * time slices no longer says anything about its load: without this reset, a task whose average
+     * was left high would be throttled before its first operation, would never record another
+     * sample, and would stay throttled (starving all lower-priority tasks) until a restart.
+     */
+    LatencyTracker taskLatency = taskLatencies.get(task.getId());
+    if (taskLatency != null) taskLatency.resetAverage();
+
+    String cursorBefore = cursors.get(task.getId());
+    IdleTaskContext context =
+        new IdleTaskContext(this, dataSource, Instant.now().plus(timeBudget), cursorBefore);
+
+    LOGGER.debug("Started an idle task time slice: {}", task.getId());
+    Timer.Context timerSlice =
+        appMetrics
+            .timer(MetricRegistry.name(getClass().getSimpleName(), task.getId(), "timeSlices"))
+            .time();
+    boolean completed;
+    runningTask = task;
+    try {
+      completed = task.run(context);
+    } catch (RuntimeException e) {
+      /*
+       * Idle work is never worth stopping the pipeline for: the task will just resume from its last
+       * persisted cursor in a later time slice.
+       */
+      LOGGER.error("Error running idle task: " + task.getId(), e);
+      return;
+    } finally {
+      runningTask = null;
+      timerSlice.stop();
+    }
+
+    String cursorAfter = context.getCursor().orElse(null);
+    if (completed
+        || (cursorAfter == null ? cursorBefore != null : !cursorAfter.equals(cursorBefore)))
+      saveProgress(task.getId(), cursorAfter, completed);
+    LOGGER.debug("Finished an idle task time slice: {}, cursor '{}'", task.getId(), cursorAfter);
+    if (completed) LOGGER.info("Finished idle task: {}", task.getId());
+  }
+
+  /**
+   * Records the latency of an {@link IdleTask}'s database operation. See {@link
+   * IdleTaskContext#recordDbLatency(Duration)}.
+   *
+   * @param latency the {@link Duration} of the database operation
+   */
+  void recordDbLatency(Duration latency) {
+    if (runningTask == null) throw new IllegalStateException();
+
+    taskLatencies
+        .computeIfAbsent(runningTask.getId(), id -> new LatencyTracker())
+        .record(latency.toNanos());
+  }
+
+  /**
+   * @return <code>true</code> if the currently running {@link IdleTask} should yield, because its
+   *     database operations have slowed down, <code>false</code> if not
+   */
+  boolean isThrottled() {
+    if (runningTask == null) return false;
+
+    LatencyTracker taskLatency = taskLatencies.get(runningTask.getId());
+    return taskLatency != null && taskLatency.isElevated();
+  }
+
+  /**
+   * Measures the latency of a minimal round trip to the database.
+   *
+   * @return <code>true</code> if the probe succeeded, <code>false</code> if the database couldn't
+   *     be reached (in which case the time slice should be skipped, as idle work is never worth
+   *     stopping the pipeline for)
+   */
+  private boolean probeDatabase() {
+    long startNanos = System.nanoTime();
+    try (Connection connection = dataSource.getConnection()) {
+      if (!connection.isValid(PROBE_TIMEOUT_SECONDS)) {
+        LOGGER.warn("Database connection is not valid: skipping idle task time slice.");
+        appMetrics.meter(MetricRegistry.name(getClass().getSimpleName(), "probeFailures")).mark();
+        return false;
+      }
+    } catch (SQLException e) {
+      LOGGER.warn("Unable to probe database: skipping idle task time slice.", e);
+      appMetrics.meter(MetricRegistry.name(getClass().getSimpleName(), "probeFailures")).mark();
+      return false;
+    }
+    long latencyNanos = System.nanoTime() - startNanos;
+
+    probeLatency.record(latencyNanos);
+    appMetrics
+        .timer(MetricRegistry.name(getClass().getSimpleName(), "dbProbes"))
+        .update(latencyNanos, TimeUnit.NANOSECONDS);
+    return true;
+  }
+
+  /** Reads in the persisted {@link IdleTask} progress, if that hasn't already been done. */
+  private void loadCursors() {
+    if (cursors != null) return;
+
+    Map<String, String> loadedCursors = new HashMap<>();
+    try (Connection connection = dataSource.getConnection();
+        PreparedStatement select =
+            connection.prepareStatement(
+                "SELECT \"taskId\", \"cursor\", \"completed\" FROM \"IdleTaskCursors\"");
+        ResultSet results = select.executeQuery()) {
+      while (results.next()) {
+        loadedCursors.put(results.getString(1), results.getString(2));
+        if (results.getBoolean(3)) completedTaskIds.add(results.getString(1));
+      }
+    } catch (SQLException e) {
+      throw new RifLoadFailure(e);
+    }
+    cursors = loadedCursors;
+  }
+
+  /**
+   * Persists the specified {@link IdleTask} progress.
+   *
+   * @param taskId the {@link IdleTask#getId()} of the task to save the progress of
+   * @param cursor the task's cursor
+   * @param completed <code>true</code> if the task has finished for good, <code>false</code> if not
+   */
+  private void saveProgress(String taskId, String cursor, boolean completed) {
+    Timestamp now = Timestamp.from(Instant.now());
+    try (Connection connection = dataSource.getConnection()) {
+      int updatedRows;
+      try (PreparedStatement update =
+          connection.prepareStatement(
+              "UPDATE \"IdleTaskCursors\" SET \"cursor\" = ?, \"completed\" = ?, \"updated\" = ?"
+                  + " WHERE \"taskId\" = ?")) {
+        update.setString(1, cursor);
+        update.setBoolean(2, completed);
+        update.setTimestamp(3, now);
+        update.setString(4, taskId);
+        updatedRows = update.executeUpdate();
+      }
+
+      if (updatedRows == 0) {
+        try (PreparedStatement insert =
+            connection.prepareStatement(
+                "INSERT INTO \"IdleTaskCursors\""
+                    + " (\"taskId\", \"cursor\", \"completed\", \"updated\")"
+                    + " VALUES (?, ?, ?, ?)")) {
+          insert.setString(1, taskId);
+          insert.setString(2, cursor);
+          insert.setBoolean(3, completed);
+          insert.setTimestamp(4, now);
+          insert.executeUpdate();
+        }
+      }
+    } catch (SQLException e) {
+      throw new RifLoadFailure(e);
+    }
+
+    cursors.put(taskId, cursor);
+    if (completed) completedTaskIds.add(taskId);
+  }
+
+  /**
+   * Tracks the latency of a particular kind of database operation: its baseline (the lowest
+   * latency seen) and its recent (exponentially weighted moving) average.
+   */
+  private static final class LatencyTracker {
+    private long baselineNanos = Long.MAX_VALUE;
+    private double averageNanos = -1;
+
+    /** @param latencyNanos the latency of an operation, in nanoseconds */
+    void record(long latencyNanos) {
+      baselineNanos = Math.min(baselineNanos, latencyNanos);
+      averageNanos =
+          averageNanos < 0
+              ? latencyNanos
+              : (1 - LATENCY_AVERAGE_WEIGHT) * averageNanos + LATENCY_AVERAGE_WEIGHT * latencyNanos;
+    }
+
+    /**
+     * Forgets the recent average latency (but not the baseline), such that {@link #isElevated()}
+     * will return <code>false</code> until the next {@link #record(long)}.
+     */
+    void resetAverage() {
+      averageNanos = -1;
+    }
+
+    /**
+     * @return <code>true</code> if the recent average latency is well above the baseline, <code>
+     *     false</code> if not (or if nothing has been recorded yet)
+     */
+    boolean isElevated() {
+      if (averageNanos < 0) return false;
+
+      long thresholdNanos =
+          Math.max(
+              baselineNanos * LATENCY_THROTTLE_FACTOR,
+              baselineNanos + TimeUnit.MILLISECONDS.toNanos(LATENCY_THROTTLE_MIN_HEADROOM_MILLIS));
+      return averageNanos > thresholdNanos;
+    }
+  }
+}
@@ -20,6 +20,9 @@ public final class LoadAppOptions implements Serializable {
   public static final int DEFAULT_LOADER_THREADS =
       Math.max(1, (Runtime.getRuntime().availableProcessors() - 1)) * 2;
 
+  /** A suggested default value for {@link #getFixupThreads()}. */
+  public static final int DEFAULT_FIXUP_THREADS = 20;
+
   private final int hicnHashIterations;
   private final byte[] hicnHashPepper;
   private final String databaseUrl;
@@ -0,0 +1,585 @@
+package gov.cms.bfd.pipeline.rif.load;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.justdavis.karl.misc.exceptions.BadCodeMonkeyException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.StringJoiner;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import javax.crypto.SecretKeyFactory;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
+import org.hibernate.Transaction;
+import org.hibernate.query.NativeQuery;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An {@link IdleTask} that fills in the "mbiHash" column of one of the beneficiary tables, for the
+ * records that were loaded before {@link RifLoader} started computing it.
+ *
+ * <p>There are about a billion of these to fill, so the work is done in large batches, in parallel:
+ * the table is split into (up to) one contiguous range of primary keys per fixup thread, each of
+ * which is walked in order (keyset pagination), so that each batch is a cheap index range scan.
+ * The task's cursor records each unfinished range's position, so that each time slice (and
+ * application run) picks up where the last one left off.
+ *
+ * <p>The records' hashes are included in the server's responses, so this task records a new load
+ * generation (see {@link RifLoader#recordLoadGeneration(Instant)}) whenever it has fixed some up,
+ * which tells the server that any responses it has cached might be stale. As that clears all of
+ * the server's cached responses, it's done at most once per {@link #LOAD_GENERATION_INTERVAL},
+ * and once more when the table is finished.
+ *
+ * <p>If {@link LoadAppOptions#isFixupsEnabled()} is <code>false</code>, this task will just log the
+ * number of records that need fixing up, once per application run.
+ */
+public final class MbiHashFixupIdleTask implements IdleTask {
+  private static final Logger LOGGER = LoggerFactory.getLogger(MbiHashFixupIdleTask.class);
+
+  /** The prefix of each {@link #getId()}, which is followed by the table name. */
+  static final String ID_PREFIX = "mbiHashFixup.";
+
+  /**
+   * The value for {@link #getPriority()} of the <code>Beneficiaries</code> fixup: ahead of {@link
+   * SamhsaBackfillIdleTask#PRIORITY}, but after {@link TableMaintenanceIdleTask#PRIORITY}. The
+   * <code>BeneficiariesHistory</code> fixup runs right after it.
+   */
+  static final int PRIORITY = 5;
+
+  /**
+   * The minimum time between the load generations recorded by this task, which bounds how long the
+   * server's cached responses can lag behind its fixups.
+   */
+  static final Duration LOAD_GENERATION_INTERVAL = Duration.ofMinutes(15);
+
+  /** The record count of a db update batch */
+  private static final int BATCH_COUNT = 100;
+
+  /** Separates the partitions in this task's cursor. */
+  private static final String CURSOR_PARTITION_SEPARATOR = ",";
+
+  /** Separates each partition's position and upper bound in this task's cursor. */
+  private static final String CURSOR_BOUND_SEPARATOR = "~";
+
+  private final LoadAppOptions options;
+  private final EntityManagerFactory entityManagerFactory;
+  private final SecretKeyFactory secretKeyFactory;
+  private final ExecutorService executorService;
+  private final Runnable loadGenerationRecorder;
+  private final String tableName;
+  private final String idName;
+  private final boolean hasTextId;
+  private final int priority;
+  private final Meter fixupMeter;
+
+  /** Whether or not the number of records to fix up has been logged yet, in this run. */
+  private boolean missingCountLogged;
+
+  /** The number of records fixed up since the last load generation was recorded. */
+  private long unrecordedFixupCount;
+
+  /** When the last load generation was recorded by this task, if ever (in this run). */
+  private Instant lastLoadGeneration;
+
+  /**
+   * Constructs a new {@link MbiHashFixupIdleTask}. See {@link #forBeneficiaries(LoadAppOptions,
+   * MetricRegistry, EntityManagerFactory, SecretKeyFactory, ExecutorService, Runnable)} and {@link
+   * #forBeneficiaryHistory(LoadAppOptions, MetricRegistry, EntityManagerFactory, SecretKeyFactory,
+   * ExecutorService, Runnable)}.
+   *
+   * @param options pipeline options
+   * @param appMetrics pipeline metrics
+   * @param entityManagerFactory a connection to the database of the pipeline
+   * @param secretKeyFactory for hashing
+   * @param executorService the {@link ExecutorService} to run the partitions' batches on, which
+   *     should have at least {@link LoadAppOptions#getFixupThreads()} threads
+   * @param loadGenerationRecorder records a new load generation, to tell the server that the data
+   *     it has cached might be stale
+   * @param tableName to fix up
+   * @param idName of the table
+   * @param hasTextId is true if the id is a varchar, false if the id is a bigint
+   * @param priority the value to use for {@link #getPriority()}
+   * @param meterName the name of the {@link Meter} to mark with the number of records fixed up
+   */
+  private MbiHashFixupIdleTask(
+      LoadAppOptions options,
+      MetricRegistry appMetrics,
+      EntityManagerFactory entityManagerFactory,
+      SecretKeyFactory secretKeyFactory,
+      ExecutorService executorService,
+      Runnable loadGenerationRecorder,
+      String tableName,
+      String idName,
+      boolean hasTextId,
+      int priority,
+      String meterName) {
+    this.options = options;
+    this.entityManagerFactory = entityManagerFactory;
+    this.secretKeyFactory = secretKeyFactory;
+    this.executorService = executorService;
+    this.loadGenerationRecorder = loadGenerationRecorder;
+    this.tableName = tableName;
+    this.idName = idName;
+    this.hasTextId = hasTextId;
+    this.priority = priority;
+    this.fixupMeter = appMetrics.meter(meterName);
+    this.missingCountLogged = false;
+    this.unrecordedFixupCount = 0;
+    this.lastLoadGeneration = null;
+  }
+
+  /**
+   * @param options pipeline options
+   * @param appMetrics pipeline metrics
+   * @param entityManagerFactory a connection to the database of the pipeline
+   * @param secretKeyFactory for hashing
+   * @param executorService the {@link ExecutorService} to run the partitions' batches on
+   * @param loadGenerationRecorder records a new load generation, to tell the server that the data
+   *     it has cached might be stale
+   * @return a new {@link MbiHashFixupIdleTask} for the <code>Beneficiaries</code> table
+   */
+  public static MbiHashFixupIdleTask forBeneficiaries(
+      LoadAppOptions options,
+      MetricRegistry appMetrics,
+      EntityManagerFactory entityManagerFactory,
+      SecretKeyFactory secretKeyFactory,
+      ExecutorService executorService,
+      Runnable loadGenerationRecorder) {
+    return new MbiHashFixupIdleTask(
+        options,
+        appMetrics,
+        entityManagerFactory,
+        secretKeyFactory,
+        executorService,
+        loadGenerationRecorder,
+        "Beneficiaries",
+        "beneficiaryId",
+        true,
+        PRIORITY,
+        "fixups.beneficiary.rate");
+  }
+
+  /**
+   * @param options pipeline options
+   * @param appMetrics pipeline metrics
+   * @param entityManagerFactory a connection to the database of the pipeline
+   * @param secretKeyFactory for hashing
+   * @param executorService the {@link ExecutorService} to run the partitions' batches on
+   * @param loadGenerationRecorder records a new load generation, to tell the server that the data
+   *     it has cached might be stale
+   * @return a new {@link MbiHashFixupIdleTask} for the <code>BeneficiariesHistory</code> table
+   */
+  public static MbiHashFixupIdleTask forBeneficiaryHistory(
+      LoadAppOptions options,
+      MetricRegistry appMetrics,
+      EntityManagerFactory entityManagerFactory,
+      SecretKeyFactory secretKeyFactory,
+      ExecutorService executorService,
+      Runnable loadGenerationRecorder) {
+    return new MbiHashFixupIdleTask(
+        options,
+        appMetrics,
+        entityManagerFactory,
+        secretKeyFactory,
+        executorService,
+        loadGenerationRecorder,
+        "BeneficiariesHistory",
+        "beneficiaryHistoryId",
+        false,
+        PRIORITY + 1,
+        "fixups.beneficiary_history.rate");
+  }
+
+  /** @see gov.cms.bfd.pipeline.rif.load.IdleTask#getId() */
+  @Override
+  public String getId() {
+    return ID_PREFIX + tableName;
+  }
+
+  /** @see gov.cms.bfd.pipeline.rif.load.IdleTask#getPriority() */
+  @Override
+  public int getPriority() {
+    return priority;
+  }
+
+  /** @see gov.cms.bfd.pipeline.rif.load.IdleTask#hasWork() */
+  @Override
+  public boolean hasWork() {
+    return !missingCountLogged || options.isFixupsEnabled();
+  }
+
+  /**
+   * @see
+   *     gov.cms.bfd.pipeline.rif.load.IdleTask#run(gov.cms.bfd.pipeline.rif.load.IdleTaskContext)
+   */
+  @Override
+  public boolean run(IdleTaskContext context) {
+    if (!missingCountLogged) {
+      logMissingCount();
+      missingCountLogged = true;
+      if (!options.isFixupsEnabled()) {
+        LOGGER.info("MBI hash fixups are not enabled.");
+        return false;
+      }
+    }
+
+    List<KeysetPartition> partitions =
+        context.getCursor().isPresent()
+            ? parseCursor(context.getCursor().get(), hasTextId)
+            : computePartitions();
+
+    // Work on each partition in parallel, until the time slice is up.
+    List<Future<Integer>> futures = new ArrayList<>();
+    for (KeysetPartition partition : partitions)
+      futures.add(executorService.submit(() -> fixupPartition(context, partition)));
+    RuntimeException failure = null;
+    for (Future<Integer> future : futures) {
+      try {
+        unrecordedFixupCount += future.get();
+      } catch (InterruptedException e) {
+        // Interrupts should not be used on this thread, so go boom.
+        throw new BadCodeMonkeyException(e);
+      } catch (ExecutionException e) {
+        if (failure == null) failure = new RifLoadFailure(e.getCause());
+      }
+    }
+    // The work since the last saved cursor will just be redone, which is harmless.
+    if (failure != null) throw failure;
+
+    List<KeysetPartition> unfinishedPartitions =
+        partitions.stream().filter(p -> !p.done).collect(Collectors.toList());
+    context.saveCursor(
+        unfinishedPartitions.isEmpty() ? null : formatCursor(unfinishedPartitions));
+    recordLoadGenerationIfDue(unfinishedPartitions.isEmpty());
+    return unfinishedPartitions.isEmpty();
+  }
+
+  /**
+   * Records a new load generation, if any records have been fixed up since the last one and it's
+   * been at least {@link #LOAD_GENERATION_INTERVAL} since then (or the table is finished).
+   *
+   * @param finished <code>true</code> if the table has been completely fixed up
+   */
+  private void recordLoadGenerationIfDue(boolean finished) {
+    if (unrecordedFixupCount <= 0) return;
+    Instant now = Instant.now();
+    boolean intervalElapsed =
+        lastLoadGeneration == null
+            || !now.isBefore(lastLoadGeneration.plus(LOAD_GENERATION_INTERVAL));
+    if (!finished && !intervalElapsed) return;
+
+    LOGGER.info(
+        "Fixed up {} {} records since the last load generation: recording a new one.",
+        unrecordedFixupCount,
+        tableName);
+    loadGenerationRecorder.run();
+    unrecordedFixupCount = 0;
+    lastLoadGeneration = now;
+  }
+
+  /** Logs the number of records in the table that need to be fixed up. */
+  private void logMissingCount() {
+    final EntityManager em = entityManagerFactory.createEntityManager();
+    try {
+      Object missingCount =
+          em.createNativeQuery(
+                  "SELECT count(*) FROM \""
+                      + tableName
+                      + "\" WHERE \"mbiHash\" IS NULL AND \"medicareBeneficiaryId\" IS NOT NULL")
+              .getSingleResult();
+      LOGGER.info("Missing mbiHash for: {} {}", missingCount, tableName);
+    } finally {
+      em.close();
+    }
+  }
+
+  /**
+   * Split the table to be fixed up into (up to) one contiguous range of primary keys per fixup
+   * thread. The range boundaries are taken from the planner's histogram for the primary key column,
+   * which avoids having to scan the table to find them.
+   *
+   * @return the {@link KeysetPartition}s to work through
+   */
+  @SuppressWarnings("unchecked")
+  private List<KeysetPartition> computePartitions() {
+    final EntityManager em = entityManagerFactory.createEntityManager();
+    final List<Object> histogramBounds;
+    try {
+      histogramBounds =
+          em.createNativeQuery(
+                  "SELECT unnest(CAST(CAST(histogram_bounds AS text) AS text[])) FROM pg_stats "
+                      + "WHERE schemaname = current_schema() AND tablename = :tableName "
+                      + "AND attname = :idName")
+              .setParameter("tableName", tableName)
+              .setParameter("idName", idName)
+              .getResultList();
+    } finally {
+      em.close();
+    }
+
+    final List<Object> upperBounds =
+        computePartitionUpperBounds(
+            tableName, histogramBounds, options.getFixupThreads(), hasTextId);
+
+    final List<KeysetPartition> partitions = new ArrayList<>();
+    Object lowerBound = null;
+    for (Object upperBound : upperBounds) {
+      partitions.add(new KeysetPartition(lowerBound, upperBound));
+      lowerBound = upperBound;
+    }
+    LOGGER.info("Split {} into {} partitions for fixups", tableName, partitions.size());
+    return partitions;
+  }
+
+  /**
+   * Pick (up to) evenly spaced partition boundaries out of a primary key histogram: as each of the
+   * histogram's buckets holds about the same number of rows, so will each partition. If there's no
+   * histogram (e.g. the table hasn't been analyzed yet), there will just be a single partition.
+   *
+   * @param tableName of the table being partitioned, for logging
+   * @param histogramBounds the planner's histogram bounds for the table's primary key, in order
+   * @param partitionCount the maximum number of partitions to split the table into
+   * @param hasTextId is true if the id is a varchar, false if the id is a bigint
+   * @return the (inclusive) upper bound of each partition, in order, the last of which will be
+   *     <code>null</code>, as the last partition extends to the end of the table
+   */
+  static List<Object> computePartitionUpperBounds(
+      final String tableName,
+      final List<Object> histogramBounds,
+      final int partitionCount,
+      final boolean hasTextId) {
+    if (histogramBounds.isEmpty() && partitionCount > 1) {
+      LOGGER.warn(
+          "No planner statistics found for {}: its fixups will run as a single partition, on a"
+              + " single thread. Run ANALYZE on it to allow the fixups to run in parallel.",
+          tableName);
+    }
+
+    final List<Object> upperBounds = new ArrayList<>();
+    for (int partition = 1; partition < partitionCount && !histogramBounds.isEmpty(); partition++) {
+      String bound =
+          histogramBounds.get(partition * histogramBounds.size() / partitionCount).toString();
+      Object key = hasTextId ? bound : Long.valueOf(bound);
+      if (upperBounds.isEmpty() || !upperBounds.get(upperBounds.size() - 1).equals(key))
+        upperBounds.add(key);
+    }
+    upperBounds.add(null);
+    return upperBounds;
+  }
+
+  /**
+   * @param partitions the unfinished {@link KeysetPartition}s to record
+   * @return a cursor that records the position and upper bound of each of the specified {@link
+   *     KeysetPartition}s (neither of which can contain the separators, as they're numeric)
+   */
+  static String formatCursor(List<KeysetPartition> partitions) {
+    StringJoiner cursor = new StringJoiner(CURSOR_PARTITION_SEPARATOR);
+    for (KeysetPartition partition : partitions)
+      cursor.add(
+          (partition.cursor != null ? partition.cursor.toString() : "")
+              + CURSOR_BOUND_SEPARATOR
+              + (partition.upperBound != null ? partition.upperBound.toString() : ""));
+    return cursor.toString();
+  }
+
+  /**
+   * @param cursor a cursor produced by {@link #formatCursor(List)}
+   * @param hasTextId is true if the id is a varchar, false if the id is a bigint
+   * @return the {@link KeysetPartition}s recorded in the specified cursor
+   */
+  static List<KeysetPartition> parseCursor(String cursor, boolean hasTextId) {
+    List<KeysetPartition> partitions = new ArrayList<>();
+    for (String partition : cursor.split(CURSOR_PARTITION_SEPARATOR)) {
+      String[] bounds = partition.split(CURSOR_BOUND_SEPARATOR, -1);
+      if (bounds.length != 2) throw new IllegalArgumentException("Invalid cursor: " + cursor);
+      partitions.add(
+          new KeysetPartition(parseKey(bounds[0], hasTextId), parseKey(bounds[1], hasTextId)));
+    }
+    return partitions;
+  }
+
+  /**
+   * @param key a primary key value, or an empty {@link String} for none
+   * @param hasTextId is true if the id is a varchar, false if the id is a bigint
+   * @return the specified primary key value, or <code>null</code> for none
+   */
+  private static Object parseKey(String key, boolean hasTextId) {
+    if (key.isEmpty()) return null;
+    return hasTextId ? key : Long.valueOf(key);
+  }
+
+  /**
+   * Work through the specified partition, a batch at a time, until it's done or the time slice is
+   * up. Each batch is done in its own transaction.
+   *
+   * @param context the {@link IdleTaskContext} for this time slice
+   * @param partition to work on, whose position will be advanced past each batch
+   * @return the number of records that were fixed up
+   */
+  private int fixupPartition(IdleTaskContext context, KeysetPartition partition) {
+    LOGGER.debug("Start a {} executor: {}", tableName, partition);
+    int count = 0;
+
+    // Use the stateless sessions to avoid the overhead of Hibernates caches which are not needed in
+    // this bulk update use-case
+    final SessionFactory sf = entityManagerFactory.unwrap(SessionFactory.class);
+    final StatelessSession statelessSession = sf.openStatelessSession();
+    Transaction txn = null;
+    try {
+      while (!partition.done && context.shouldContinue()) {
+        txn = statelessSession.beginTransaction();
+        count += fixupBatch(statelessSession, partition);
+        txn.commit();
+      }
+    } finally {
+      if (txn != null && txn.isActive()) txn.rollback();
+      statelessSession.close();
+      fixupMeter.mark(count);
+    }
+    LOGGER.debug("Finished a {} executor: {}, count {}", tableName, partition, count);
+    return count;
+  }
+
+  /**
+   * Fixup a batch of records. Executed in the context of a transaction.
+   *
+   * @param session to use
+   * @param partition to fetch from, whose position will be advanced past the batch
+   * @return the number of records that were fixed up
+   */
+  private int fixupBatch(final StatelessSession session, final KeysetPartition partition) {
+    List<Object[]> rows = fetchBatchRows(session, partition);
+    if (rows.size() > 0) {
+      updateBatchMbiHash(session, rows);
+
+      Object lastId = rows.get(rows.size() - 1)[0];
+      partition.cursor = hasTextId ? lastId.toString() : Long.valueOf(lastId.toString());
+    }
+
+    // A short batch means that the end of the partition's range was reached.
+    partition.done = rows.size() < BATCH_COUNT;
+    return rows.size();
+  }
+
+  /**
+   * Fetch the rows of a batch: the next rows (in primary key order) of the partition that need to
+   * be fixed up. Each row contains the tableId and a medicareBeneficiaryId.
+   *
+   * @param session to use
+   * @param partition to fetch from
+   * @return a list of rows
+   */
+  @SuppressWarnings("unchecked")
+  private List<Object[]> fetchBatchRows(
+      final StatelessSession session, final KeysetPartition partition) {
+    final String select =
+        "SELECT b.\""
+            + idName
+            + "\", b.\"medicareBeneficiaryId\" "
+            + "FROM \""
+            + tableName
+            + "\" b "
+            + "WHERE b.\"mbiHash\" IS NULL AND b.\"medicareBeneficiaryId\" IS NOT NULL"
+            + (partition.cursor != null ? " AND b.\"" + idName + "\" > :cursor" : "")
+            + (partition.upperBound != null ? " AND b.\"" + idName + "\" <= :upperBound" : "")
+            + " ORDER BY b.\""
+            + idName
+            + "\"";
+
+    NativeQuery<Object[]> query = session.createNativeQuery(select);
+    if (partition.cursor != null) query.setParameter("cursor", partition.cursor);
+    if (partition.upperBound != null) query.setParameter("upperBound", partition.upperBound);
+    return query.setMaxResults(BATCH_COUNT).getResultList();
+  }
+
+  /**
+   * Update the mbiHash field of the batch.
+   *
+   * @param session to use
+   * @param rows rows of id and medicareBeneficiaryId tuples
+   */
+  private void updateBatchMbiHash(final StatelessSession session, final List<Object[]> rows) {
+    final StringJoiner ids = new StringJoiner(",");
+    final StringJoiner mbiHashes = new StringJoiner(",");
+    for (Object[] row : rows) {
+      ids.add(row[0].toString());
+      mbiHashes.add(RifLoader.computeMbiHash(options, secretKeyFactory, (String) row[1]));
+    }
+
+    /*
+     * Developer Note:
+     * The whole batch is applied in a single statement, by joining against arrays of the ids and
+     * their hashes. The arrays are passed as comma-separated parameters (neither the ids nor the
+     * hex hashes can contain commas), which keeps the statement text the same for every batch.
+     * UPDATE ... FROM and unnest(...) with multiple arrays are PostgreSQL-specific.
+     */
+    final String update =
+        "UPDATE \""
+            + tableName
+            + "\" b SET \"mbiHash\" = t.mbi_hash FROM unnest("
+            + (hasTextId
+                ? "string_to_array(:ids, ',')"
+                : "CAST(string_to_array(:ids, ',') AS bigint[])")
+            + ", string_to_array(:mbiHashes, ',')) AS t(id, mbi_hash) WHERE b.\""
+            + idName
+            + "\" = t.id";
+
+    session
+        .createNativeQuery(update)
+        .setParameter("ids", ids.toString())
+        .setParameter("mbiHashes", mbiHashes.toString())
+        .executeUpdate();
+  }
+
+  /**
+   * A contiguous range of a table's primary keys that a single fixup executor works through, along
+   * with its position within that range. This position is kept in the task's cursor between time
+   * slices, so that each slice picks up where the last one left off.
+   */
+  static final class KeysetPartition {
+    /* The (exclusive) key that the next batch starts after, or null to start at the beginning */
+    private Object cursor;
+
+    /* The (inclusive) last key in this partition, or null if it extends to the end of the table */
+    private final Object upperBound;
+
+    /* Set to true once the end of the range has been reached */
+    private boolean done;
+
+    /**
+     * Create a partition.
+     *
+     * @param lowerBound the (exclusive) first key of the partition, or null for no lower bound
+     * @param upperBound the (inclusive) last key of the partition, or null for no upper bound
+     */
+    KeysetPartition(final Object lowerBound, final Object upperBound) {
+      this.cursor = lowerBound;
+      this.upperBound = upperBound;
+      this.done = false;
+    }
+
+    /** @return the (exclusive) key that the next batch starts after, or null for the beginning */
+    Object getCursor() {
+      return cursor;
+    }
+
+    /** @return the (inclusive) last key in this partition, or null for the end of the table */
+    Object getUpperBound() {
+      return upperBound;
+    }
+
+    /** @see java.lang.Object#toString() */
+    @Override
+    public String toString() {
+      return "(" + cursor + ", " + upperBound + "]";
+    }
+  }
+}
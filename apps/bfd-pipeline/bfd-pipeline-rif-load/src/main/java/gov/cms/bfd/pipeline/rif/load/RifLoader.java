@@ -12,12 +12,20 @@ import gov.cms.bfd.model.rif.BeneficiaryHistory;
 import gov.cms.bfd.model.rif.CarrierClaim;
 import gov.cms.bfd.model.rif.CarrierClaimCsvWriter;
 import gov.cms.bfd.model.rif.CarrierClaimLine;
+import gov.cms.bfd.model.rif.DMEClaim;
+import gov.cms.bfd.model.rif.HHAClaim;
+import gov.cms.bfd.model.rif.HospiceClaim;
+import gov.cms.bfd.model.rif.InpatientClaim;
+import gov.cms.bfd.model.rif.OutpatientClaim;
+import gov.cms.bfd.model.rif.PartDEvent;
 import gov.cms.bfd.model.rif.RecordAction;
 import gov.cms.bfd.model.rif.RifFileEvent;
 import gov.cms.bfd.model.rif.RifFileRecords;
 import gov.cms.bfd.model.rif.RifFileType;
 import gov.cms.bfd.model.rif.RifFilesEvent;
 import gov.cms.bfd.model.rif.RifRecordEvent;
+import gov.cms.bfd.model.rif.SNFClaim;
+import gov.cms.bfd.model.rif.samhsa.SamhsaClaimMatcher;
 import gov.cms.bfd.model.rif.schema.DatabaseSchemaManager;
 import gov.cms.bfd.pipeline.rif.load.RifRecordLoadResult.LoadAction;
 import java.io.File;
@@ -28,19 +36,28 @@ import java.io.UncheckedIOException;
 import java.security.NoSuchAlgorithmException;
 import java.security.spec.InvalidKeySpecException;
 import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
 import java.util.stream.Collectors;
@@ -55,6 +72,7 @@ import javax.persistence.Persistence;
 import javax.persistence.Table;
 import javax.persistence.criteria.CriteriaBuilder;
 import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.metamodel.PluralAttribute;
 import javax.sql.DataSource;
 import org.apache.commons.codec.binary.Hex;
 import org.apache.commons.csv.CSVFormat;
@@ -88,7 +106,13 @@ public final class RifLoader implements AutoCloseable {
   private final HikariDataSource dataSource;
   private final EntityManagerFactory entityManagerFactory;
   private final SecretKeyFactory secretKeyFactory;
-  private final RifLoaderIdleTasks idleTasks;
+  private final ExecutorService idleTaskExecutor;
+  private final IdleTaskScheduler idleTaskScheduler;
+  private final TableMaintenanceIdleTask tableMaintenanceTask;
+  private final SamhsaClaimMatcher samhsaMatcher;
+
+  /** Caches the results of {@link #findEntityTables(Class)}. */
+  private final Map<Class<?>, Set<String>> tablesByEntityType;
 
   /**
    * Constructs a new {@link RifLoader} instance.
@@ -106,17 +130,49 @@ public final class RifLoader implements AutoCloseable {
     this.entityManagerFactory = createEntityManagerFactory(dataSource);
 
     this.secretKeyFactory = createSecretKeyFactory();
-    this.idleTasks =
-        new RifLoaderIdleTasks(options, appMetrics, entityManagerFactory, secretKeyFactory);
+    this.idleTaskExecutor =
+        Executors.newFixedThreadPool(
+            Math.max(options.getFixupThreads(), TableMaintenanceIdleTask.MAX_PARALLEL_TABLES));
+    this.idleTaskScheduler = new IdleTaskScheduler(appMetrics, dataSource);
+    idleTaskScheduler.register(
+        MbiHashFixupIdleTask.forBeneficiaries(
+            options,
+            appMetrics,
+            entityManagerFactory,
+            secretKeyFactory,
+            idleTaskExecutor,
+            () -> recordLoadGeneration(Instant.now())));
+    idleTaskScheduler.register(
+        MbiHashFixupIdleTask.forBeneficiaryHistory(
+            options,
+            appMetrics,
+            entityManagerFactory,
+            secretKeyFactory,
+            idleTaskExecutor,
+            () -> recordLoadGeneration(Instant.now())));
+    this.tableMaintenanceTask =
+        new TableMaintenanceIdleTask(appMetrics, options.getLoaderThreads(), idleTaskExecutor);
+    idleTaskScheduler.register(tableMaintenanceTask);
+    this.samhsaMatcher = new SamhsaClaimMatcher();
+    idleTaskScheduler.register(
+        new SamhsaBackfillIdleTask(appMetrics, entityManagerFactory, samhsaMatcher));
+    this.tablesByEntityType = new ConcurrentHashMap<>();
   }
 
   /**
-   * Get the IdleTask manager associated with this loader. Useful for testing.
-   *
-   * @return the RifLoaderIdleTasks associated with this
+   * @return the {@link IdleTaskScheduler} that runs this {@link RifLoader}'s {@link IdleTask}s, and
+   *     that additional ones can be registered with
+   */
+  public IdleTaskScheduler getIdleTaskScheduler() {
+    return idleTaskScheduler;
+  }
+
+  /**
+   * @return the (pooled) {@link DataSource} for the BFD database, e.g. for a {@link
+   *     DatabaseDataSetCoordinator}
    */
-  public RifLoaderIdleTasks getIdleTasks() {
-    return idleTasks;
+  public DataSource getDataSource() {
+    return dataSource;
   }
 
   /**
@@ -226,35 +282,71 @@ public final class RifLoader implements AutoCloseable {
   }
 
   /**
-   * @return <code>true</code> if {@link #entityManagerFactory} is connected to a PostgreSQL
-   *     database, <code>false</code> if it is not
+   * @param dataSource the {@link DataSource} for the database to check
+   * @return <code>true</code> if the specified database is PostgreSQL, <code>false</code> if it is
+   *     not
    */
-  private boolean isDatabasePostgreSql() {
-    AtomicBoolean result = new AtomicBoolean(false);
-
-    EntityManager entityManager = null;
-    try {
-      entityManager = entityManagerFactory.createEntityManager();
-      Session session = entityManager.unwrap(Session.class);
-      session.doWork(
-          new Work() {
-            /** @see org.hibernate.jdbc.Work#execute(java.sql.Connection) */
-            @Override
-            public void execute(Connection connection) throws SQLException {
-              String databaseName = connection.getMetaData().getDatabaseProductName();
-              if (databaseName.equals("PostgreSQL")) result.set(true);
-            }
-          });
-    } finally {
-      if (entityManager != null) entityManager.close();
+  static boolean isDatabasePostgreSql(DataSource dataSource) {
+    try (Connection connection = dataSource.getConnection()) {
+      return "PostgreSQL".equals(connection.getMetaData().getDatabaseProductName());
+    } catch (SQLException e) {
+      throw new RifLoadFailure(e);
     }
-
-    return result.get();
   }
 
-  /** Do the idle tasks on the database. */
+  /**
+   * Do the idle tasks on the database: whichever {@link IdleTask}s are registered with the {@link
+   * #getIdleTaskScheduler()}.
+   */
   public void doIdleTask() {
-    idleTasks.doIdleTask();
+    idleTaskScheduler.doIdleTask();
+  }
+
+  /**
+   * Records that a data set has been completely loaded, as the next "generation" in the <code>
+   * LoadGenerations</code> table. The server watches that table to know when any data it has
+   * cached may have gone stale. Idle tasks that change the data that the server returns also record
+   * new generations, using the current time in place of a data set timestamp.
+   *
+   * @param dataSetTimestamp the {@link RifFilesEvent#getTimestamp()} of the data set that was
+   *     loaded
+   * @return the generation number that was recorded for the data set
+   */
+  public long recordLoadGeneration(Instant dataSetTimestamp) {
+    /*
+     * Several pipeline nodes might finish data sets at once, in which case they'll race for the
+     * same generation number: the losers just retry with the next one.
+     */
+    while (true) {
+      try (Connection connection = dataSource.getConnection()) {
+        long generation;
+        try (PreparedStatement selectGeneration =
+                connection.prepareStatement(
+                    "SELECT COALESCE(MAX(\"generation\"), 0) + 1 FROM \"LoadGenerations\"");
+            ResultSet generationResult = selectGeneration.executeQuery()) {
+          generationResult.next();
+          generation = generationResult.getLong(1);
+        }
+
+        try (PreparedStatement insertGeneration =
+            connection.prepareStatement(
+                "INSERT INTO \"LoadGenerations\" (\"generation\", \"dataSetTimestamp\","
+                    + " \"completed\") VALUES (?, ?, ?)")) {
+          insertGeneration.setLong(1, generation);
+          insertGeneration.setTimestamp(2, Timestamp.from(dataSetTimestamp));
+          insertGeneration.setTimestamp(3, Timestamp.from(Instant.now()));
+          insertGeneration.executeUpdate();
+        }
+
+        LOGGER.info(
+            "Recorded load generation '{}' for data set '{}'.", generation, dataSetTimestamp);
+        return generation;
+      } catch (SQLException e) {
+        if (!DatabaseDataSetCoordinator.SQL_STATE_UNIQUE_VIOLATION.equals(e.getSQLState()))
+          throw new RifLoadFailure(e);
+        LOGGER.debug("Load generation was taken by another node; retrying.");
+      }
+    }
   }
 
   /**
@@ -329,6 +421,11 @@ public final class RifLoader implements AutoCloseable {
       // Define the Consumer that will handle each batch.
       Consumer<List<RifRecordEvent<?>>> batchProcessor =
           recordsBatch -> {
+            // Each batch commits on its own, so this is the place to stop a cancelled load.
+            if (dataToLoad.getSourceEvent().getParentFilesEvent().isCancelled())
+              throw new CancellationException(
+                  String.format("Processing of '%s' was cancelled.", dataToLoad));
+
             /*
              * Submit the RifRecordEvent for asynchronous processing. Note
              * that, due to the ExecutorService's configuration (see in
@@ -340,19 +437,25 @@ public final class RifLoader implements AutoCloseable {
           };
 
       // Collect records into batches and submit each to batchProcessor.
-      if (RECORD_BATCH_SIZE > 1)
-        BatchSpliterator.batches(dataToLoad.getRecords(), RECORD_BATCH_SIZE)
-            .forEach(batchProcessor);
-      else
-        dataToLoad
-            .getRecords()
-            .map(
-                record -> {
-                  List<RifRecordEvent<?>> ittyBittyBatch = new LinkedList<>();
-                  ittyBittyBatch.add(record);
-                  return ittyBittyBatch;
-                })
-            .forEach(batchProcessor);
+      CancellationException cancellation = null;
+      try {
+        if (RECORD_BATCH_SIZE > 1)
+          BatchSpliterator.batches(dataToLoad.getRecords(), RECORD_BATCH_SIZE)
+              .forEach(batchProcessor);
+        else
+          dataToLoad
+              .getRecords()
+              .map(
+                  record -> {
+                    List<RifRecordEvent<?>> ittyBittyBatch = new LinkedList<>();
+                    ittyBittyBatch.add(record);
+                    return ittyBittyBatch;
+                  })
+              .forEach(batchProcessor);
+      } catch (CancellationException e) {
+        // The batches already submitted still need to finish up before giving up on the rest.
+        cancellation = e;
+      }
 
       // Wait for all submitted batches to complete.
       try {
@@ -368,6 +471,15 @@ public final class RifLoader implements AutoCloseable {
         throw new RuntimeException(e);
       }
 
+      if (cancellation != null) {
+        LOGGER.warn(
+            "Cancelled processing of '{}', leaving its remaining records unloaded.", dataToLoad);
+        appMetrics
+            .meter(MetricRegistry.name(getClass().getSimpleName(), "dataSet", "file", "cancelled"))
+            .mark();
+        throw cancellation;
+      }
+
       // Submit the queued PostgreSQL COPY operations, if any.
       if (!postgresBatch.isEmpty()) {
         postgresBatch.submit();
@@ -431,6 +543,14 @@ public final class RifLoader implements AutoCloseable {
       }
     }
 
+    // Stamp the records, so that clients can find just the ones that have changed.
+    Instant lastUpdated = Instant.now();
+    for (RifRecordEvent<?> rifRecordEvent : recordsBatch)
+      setLastUpdated(rifRecordEvent.getRecord(), lastUpdated);
+
+    // Flag the SAMHSA-related claims, so that the server can filter them out in its queries.
+    for (RifRecordEvent<?> rifRecordEvent : recordsBatch) setSamhsa(rifRecordEvent.getRecord());
+
     // Only one of each failure/success Timer.Contexts will be applied.
     Timer.Context timerBatchSuccess =
         appMetrics.timer(MetricRegistry.name(getClass().getSimpleName(), "recordBatches")).time();
@@ -513,6 +633,9 @@ public final class RifLoader implements AutoCloseable {
 
       entityManager.getTransaction().commit();
 
+      // Note the tables this batch touched, so that they'll be maintained in the next idle time.
+      tableMaintenanceTask.recordTouchedTables(findTouchedTables(recordsBatch));
+
       // Update the metrics now that things have been pushed.
       timerBatchSuccess.stop();
       timerBatchTypeSuccess.stop();
@@ -549,6 +672,104 @@ public final class RifLoader implements AutoCloseable {
     }
   }
 
+  /**
+   * Sets the "lastUpdated" field of the specified {@link RifRecordEvent#getRecord()} (if it has
+   * one, as all {@link Beneficiary}s and claims do). Note that this will only make it to the
+   * database if the record is actually inserted or updated.
+   *
+   * @param record the {@link RifRecordEvent#getRecord()} to modify
+   * @param lastUpdated the value to set
+   */
+  private static void setLastUpdated(Object record, Instant lastUpdated) {
+    if (record instanceof Beneficiary)
+      ((Beneficiary) record).setLastUpdated(Optional.of(lastUpdated));
+    else if (record instanceof CarrierClaim)
+      ((CarrierClaim) record).setLastUpdated(Optional.of(lastUpdated));
+    else if (record instanceof DMEClaim)
+      ((DMEClaim) record).setLastUpdated(Optional.of(lastUpdated));
+    else if (record instanceof HHAClaim)
+      ((HHAClaim) record).setLastUpdated(Optional.of(lastUpdated));
+    else if (record instanceof HospiceClaim)
+      ((HospiceClaim) record).setLastUpdated(Optional.of(lastUpdated));
+    else if (record instanceof InpatientClaim)
+      ((InpatientClaim) record).setLastUpdated(Optional.of(lastUpdated));
+    else if (record instanceof OutpatientClaim)
+      ((OutpatientClaim) record).setLastUpdated(Optional.of(lastUpdated));
+    else if (record instanceof PartDEvent)
+      ((PartDEvent) record).setLastUpdated(Optional.of(lastUpdated));
+    else if (record instanceof SNFClaim)
+      ((SNFClaim) record).setLastUpdated(Optional.of(lastUpdated));
+  }
+
+  /**
+   * Sets the "samhsa" field of the specified {@link RifRecordEvent#getRecord()} (if it has one, as
+   * all claims do), per the {@link SamhsaClaimMatcher}.
+   *
+   * @param record the {@link RifRecordEvent#getRecord()} to modify
+   */
+  private void setSamhsa(Object record) {
+    if (record instanceof CarrierClaim)
+      ((CarrierClaim) record).setSamhsa(Optional.of(samhsaMatcher.test(record)));
+    else if (record instanceof DMEClaim)
+      ((DMEClaim) record).setSamhsa(Optional.of(samhsaMatcher.test(record)));
+    else if (record instanceof HHAClaim)
+      ((HHAClaim) record).setSamhsa(Optional.of(samhsaMatcher.test(record)));
+    else if (record instanceof HospiceClaim)
+      ((HospiceClaim) record).setSamhsa(Optional.of(samhsaMatcher.test(record)));
+    else if (record instanceof InpatientClaim)
+      ((InpatientClaim) record).setSamhsa(Optional.of(samhsaMatcher.test(record)));
+    else if (record instanceof OutpatientClaim)
+      ((OutpatientClaim) record).setSamhsa(Optional.of(samhsaMatcher.test(record)));
+    else if (record instanceof PartDEvent)
+      ((PartDEvent) record).setSamhsa(Optional.of(samhsaMatcher.test(record)));
+    else if (record instanceof SNFClaim)
+      ((SNFClaim) record).setSamhsa(Optional.of(samhsaMatcher.test(record)));
+  }
+
+  /**
+   * @param recordsBatch the {@link RifRecordEvent}s to be loaded
+   * @return the names of the database tables that loading the specified {@link RifRecordEvent}s
+   *     will write to
+   */
+  private Set<String> findTouchedTables(List<RifRecordEvent<?>> recordsBatch) {
+    Set<String> tables = new HashSet<>();
+    for (RifRecordEvent<?> rifRecordEvent : recordsBatch) {
+      tables.addAll(
+          tablesByEntityType.computeIfAbsent(
+              rifRecordEvent.getRecord().getClass(), this::findEntityTables));
+
+      // See updateBeneficaryHistory(...).
+      if (rifRecordEvent.getRecord() instanceof Beneficiary
+          && rifRecordEvent.getRecordAction() == RecordAction.UPDATE)
+        tables.add(getTableName(BeneficiaryHistory.class));
+    }
+    return tables;
+  }
+
+  /**
+   * @param entityType the JPA {@link Entity} type to find the tables for
+   * @return the names of the database tables that the specified JPA {@link Entity} type and its
+   *     child {@link Entity}s (e.g. claim lines) are stored in
+   */
+  private Set<String> findEntityTables(Class<?> entityType) {
+    Set<String> tables = new HashSet<>();
+    tables.add(getTableName(entityType));
+    for (PluralAttribute<?, ?, ?> childAttribute :
+        entityManagerFactory.getMetamodel().entity(entityType).getPluralAttributes())
+      tables.add(getTableName(childAttribute.getElementType().getJavaType()));
+    return tables;
+  }
+
+  /**
+   * @param entityType the JPA {@link Entity} type to get the table name of
+   * @return the (unquoted) name of the database table that the specified JPA {@link Entity} type is
+   *     stored in
+   */
+  private static String getTableName(Class<?> entityType) {
+    Table tableAnnotation = entityType.getAnnotation(Table.class);
+    return tableAnnotation.name().replaceAll("`", "");
+  }
+
   /**
    * Ensures that a {@link BeneficiaryHistory} record is created for the specified {@link
    * Beneficiary}, if that {@link Beneficiary} already exists and is just being updated.
@@ -815,6 +1036,7 @@ public final class RifLoader implements AutoCloseable {
   /** @see java.lang.AutoCloseable#close() */
   @Override
   public void close() {
+    if (this.idleTaskExecutor != null) this.idleTaskExecutor.shutdownNow();
     if (this.entityManagerFactory != null && this.entityManagerFactory.isOpen())
       this.entityManagerFactory.close();
     if (this.dataSource != null && !this.dataSource.isClosed()) this.dataSource.close();
@@ -36,7 +36,7 @@ public final class RifLoaderTestUtils {
         LoadAppOptions.DEFAULT_LOADER_THREADS,
         IDEMPOTENCY_REQUIRED,
         FIXUPS_ENABLED,
-        RifLoaderIdleTasks.DEFAULT_PARTITION_COUNT);
+        LoadAppOptions.DEFAULT_FIXUP_THREADS);
   }
 
   /**
@@ -0,0 +1,257 @@
+package gov.cms.bfd.pipeline.rif.load;
+
+import com.codahale.metrics.MetricRegistry;
+import gov.cms.bfd.model.rif.CarrierClaim;
+import gov.cms.bfd.model.rif.DMEClaim;
+import gov.cms.bfd.model.rif.HHAClaim;
+import gov.cms.bfd.model.rif.HospiceClaim;
+import gov.cms.bfd.model.rif.InpatientClaim;
+import gov.cms.bfd.model.rif.OutpatientClaim;
+import gov.cms.bfd.model.rif.PartDEvent;
+import gov.cms.bfd.model.rif.SNFClaim;
+import gov.cms.bfd.model.rif.samhsa.SamhsaClaimMatcher;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Predicate;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.TypedQuery;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An {@link IdleTask} that backfills the "samhsa" flag of the claims that were loaded before {@link
+ * RifLoader} started setting it, so that the server can rely on it to filter out SAMHSA-related
+ * claims in its queries.
+ *
+ * <p>The claim tables are backfilled one at a time, in batches of claims (walked in primary key
+ * order), using the same {@link SamhsaClaimMatcher} that {@link RifLoader} does. The task's cursor
+ * records the table and the last claim ID that was backfilled, so that each time slice (and
+ * application run) picks up where the last one left off. Once all of the tables are done, this
+ * task is finished for good, as all newly-loaded claims are flagged as they're loaded.
+ *
+ * <p>Unlike {@link MbiHashFixupIdleTask}, this task doesn't record new load generations (see
+ * {@link RifLoader#recordLoadGeneration(Instant)}), as it never changes what the server
+ * returns: the flag isn't included in any responses, and until this task has finished, the server
+ * doesn't trust it, checking each claim for SAMHSA-related codes itself instead. Either way, the
+ * same claims are filtered out, so the server's cached responses stay valid.
+ */
+public final class SamhsaBackfillIdleTask implements IdleTask {
+  private static final Logger LOGGER = LoggerFactory.getLogger(SamhsaBackfillIdleTask.class);
+
+  /** The value for {@link #getId()}. */
+  static final String ID = "samhsaBackfill";
+
+  /** The value for {@link #getPriority()}: after {@link TableMaintenanceIdleTask#PRIORITY}. */
+  static final int PRIORITY = 10;
+
+  /** The default number of claims to backfill per database transaction. */
+  static final int DEFAULT_BATCH_SIZE = 100;
+
+  /** Separates the entity name and the claim ID in this task's cursor. */
+  private static final String CURSOR_SEPARATOR = ":";
+
+  /** The claim entity types to backfill, in the order that they'll be backfilled. */
+  private static final List<Class<?>> CLAIM_TYPES =
+      Arrays.asList(
+          CarrierClaim.class,
+          DMEClaim.class,
+          HHAClaim.class,
+          HospiceClaim.class,
+          InpatientClaim.class,
+          OutpatientClaim.class,
+          SNFClaim.class,
+          PartDEvent.class);
+
+  private final MetricRegistry appMetrics;
+  private final EntityManagerFactory entityManagerFactory;
+  private final Predicate<Object> samhsaMatcher;
+  private final int batchSize;
+
+  /**
+   * Constructs a new {@link SamhsaBackfillIdleTask}.
+   *
+   * @param appMetrics the {@link MetricRegistry} for the overall application
+   * @param entityManagerFactory the {@link EntityManagerFactory} for the database to backfill
+   * @param samhsaMatcher the {@link SamhsaClaimMatcher} to flag claims with
+   */
+  public SamhsaBackfillIdleTask(
+      MetricRegistry appMetrics,
+      EntityManagerFactory entityManagerFactory,
+      SamhsaClaimMatcher samhsaMatcher) {
+    this(appMetrics, entityManagerFactory, samhsaMatcher, DEFAULT_BATCH_SIZE);
+  }
+
+  /**
+   * Constructs a new {@link SamhsaBackfillIdleTask}.
+   *
+   * @param appMetrics the {@link MetricRegistry} for the overall application
+   * @param entityManagerFactory the {@link EntityManagerFactory} for the database to backfill
+   * @param samhsaMatcher the {@link Predicate} to flag claims with, which will normally be a {@link
+   *     SamhsaClaimMatcher}
+   * @param batchSize the number of claims to backfill per database transaction
+   */
+  SamhsaBackfillIdleTask(
+      MetricRegistry appMetrics,
+      EntityManagerFactory entityManagerFactory,
+      Predicate<Object> samhsaMatcher,
+      int batchSize) {
+    this.appMetrics = appMetrics;
+    this.entityManagerFactory = entityManagerFactory;
+    this.samhsaMatcher = samhsaMatcher;
+    this.batchSize = batchSize;
+  }
+
+  /** @see gov.cms.bfd.pipeline.rif.load.IdleTask#getId() */
+  @Override
+  public String getId() {
+    return ID;
+  }
+
+  /** @see gov.cms.bfd.pipeline.rif.load.IdleTask#getPriority() */
+  @Override
+  public int getPriority() {
+    return PRIORITY;
+  }
+
+  /**
+   * @see
+   *     gov.cms.bfd.pipeline.rif.load.IdleTask#run(gov.cms.bfd.pipeline.rif.load.IdleTaskContext)
+   */
+  @Override
+  public boolean run(IdleTaskContext context) {
+    int claimTypeIndex = 0;
+    Optional<String> lastClaimId = Optional.empty();
+    if (context.getCursor().isPresent()) {
+      String[] cursorParts = context.getCursor().get().split(CURSOR_SEPARATOR, 2);
+      while (claimTypeIndex < CLAIM_TYPES.size()
+          && !CLAIM_TYPES.get(claimTypeIndex).getSimpleName().equals(cursorParts[0]))
+        claimTypeIndex++;
+      if (cursorParts.length > 1 && !cursorParts[1].isEmpty())
+        lastClaimId = Optional.of(cursorParts[1]);
+    }
+
+    while (claimTypeIndex < CLAIM_TYPES.size() && context.shouldContinue()) {
+      Class<?> claimType = CLAIM_TYPES.get(claimTypeIndex);
+
+      Instant batchStart = Instant.now();
+      List<String> claimIds = backfillBatch(claimType, lastClaimId);
+      context.recordDbLatency(Duration.between(batchStart, Instant.now()));
+
+      // A short batch means that the end of the table was reached.
+      if (claimIds.size() < batchSize) {
+        LOGGER.info(
+            "Finished backfilling the SAMHSA flags of all '{}'s.", claimType.getSimpleName());
+        claimTypeIndex++;
+        lastClaimId = Optional.empty();
+      } else {
+        lastClaimId = Optional.of(claimIds.get(claimIds.size() - 1));
+      }
+
+      context.saveCursor(
+          claimTypeIndex < CLAIM_TYPES.size()
+              ? CLAIM_TYPES.get(claimTypeIndex).getSimpleName()
+                  + CURSOR_SEPARATOR
+                  + lastClaimId.orElse("")
+              : null);
+    }
+
+    return claimTypeIndex >= CLAIM_TYPES.size();
+  }
+
+  /**
+   * Backfills the next batch of claims (in ID order) of the specified type that haven't been
+   * flagged yet, in a single transaction.
+   *
+   * @param claimType the claim entity type to backfill
+   * @param lastClaimId the ID of the last claim that was backfilled, if any
+   * @return the IDs of the claims that were backfilled, in order
+   */
+  private List<String> backfillBatch(Class<?> claimType, Optional<String> lastClaimId) {
+    String entityName = claimType.getSimpleName();
+    String idAttribute = claimType == PartDEvent.class ? "eventId" : "claimId";
+
+    EntityManager entityManager = null;
+    try {
+      entityManager = entityManagerFactory.createEntityManager();
+      entityManager.getTransaction().begin();
+
+      String afterLastClaimId =
+          lastClaimId.isPresent() ? String.format(" and c.%s > :lastClaimId", idAttribute) : "";
+      TypedQuery<String> claimIdsQuery =
+          entityManager.createQuery(
+              String.format(
+                  "select c.%1$s from %2$s c where c.samhsa is null%3$s order by c.%1$s",
+                  idAttribute, entityName, afterLastClaimId),
+              String.class);
+      if (lastClaimId.isPresent()) claimIdsQuery.setParameter("lastClaimId", lastClaimId.get());
+      List<String> claimIds = claimIdsQuery.setMaxResults(batchSize).getResultList();
+      if (claimIds.isEmpty()) {
+        entityManager.getTransaction().commit();
+        return claimIds;
+      }
+
+      List<String> samhsaClaimIds = new ArrayList<>();
+      List<String> nonSamhsaClaimIds = new ArrayList<>();
+      if (claimType == PartDEvent.class) {
+        // Part D events never contain SAMHSA-related codes, so there's no need to load them.
+        nonSamhsaClaimIds.addAll(claimIds);
+      } else {
+        List<?> claims =
+            entityManager
+                .createQuery(
+                    String.format(
+                        "select distinct c from %s c left join fetch c.lines where c.%s in :ids",
+                        entityName, idAttribute))
+                .setParameter("ids", claimIds)
+                .getResultList();
+        for (Object claim : claims) {
+          String claimId =
+              (String) entityManagerFactory.getPersistenceUnitUtil().getIdentifier(claim);
+          if (samhsaMatcher.test(claim)) samhsaClaimIds.add(claimId);
+          else nonSamhsaClaimIds.add(claimId);
+        }
+      }
+      updateSamhsa(entityManager, entityName, idAttribute, samhsaClaimIds, true);
+      updateSamhsa(entityManager, entityName, idAttribute, nonSamhsaClaimIds, false);
+
+      entityManager.getTransaction().commit();
+      appMetrics
+          .meter(MetricRegistry.name(getClass().getSimpleName(), "claims", entityName))
+          .mark(claimIds.size());
+      return claimIds;
+    } finally {
+      if (entityManager != null && entityManager.getTransaction().isActive())
+        entityManager.getTransaction().rollback();
+      if (entityManager != null) entityManager.close();
+    }
+  }
+
+  /**
+   * @param entityManager the {@link EntityManager} to use
+   * @param entityName the name of the claim entity type to update
+   * @param idAttribute the name of the claim entity type's ID attribute
+   * @param claimIds the IDs of the claims to update
+   * @param samhsa the "samhsa" flag value to set
+   */
+  private static void updateSamhsa(
+      EntityManager entityManager,
+      String entityName,
+      String idAttribute,
+      List<String> claimIds,
+      boolean samhsa) {
+    if (claimIds.isEmpty()) return;
+
+    entityManager
+        .createQuery(
+            String.format(
+                "update %s c set c.samhsa = :samhsa where c.%s in :ids", entityName, idAttribute))
+        .setParameter("samhsa", samhsa)
+        .setParameter("ids", claimIds)
+        .executeUpdate();
+  }
+}
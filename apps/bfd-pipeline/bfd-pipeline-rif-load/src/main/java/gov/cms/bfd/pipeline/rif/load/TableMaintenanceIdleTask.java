@@ -0,0 +1,281 @@
+package gov.cms.bfd.pipeline.rif.load;
+
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.justdavis.karl.misc.exceptions.BadCodeMonkeyException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import javax.sql.DataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An {@link IdleTask} that refreshes the PostgreSQL planner statistics for the tables that recent
+ * data sets have loaded into, so that queries against the new data don't get bad plans while
+ * waiting on autovacuum to catch up.
+ *
+ * <p>{@link RifLoader} records the tables that each data set touches via {@link
+ * #recordTouchedTables(Collection)}. In the next idle time, each of those tables (and only those)
+ * will be <code>ANALYZE</code>d, or <code>VACUUM ANALYZE</code>d if it has accumulated a lot of
+ * dead rows (e.g. from updates), several tables at a time. New tables are only started while the
+ * {@link IdleTaskContext#shouldContinue()}; any that are left are saved in the task's cursor and
+ * picked up in the next time slice. Each operation is given a <code>statement_timeout</code> of
+ * whatever is left of the time slice, as the pipeline can't pick up new data sets until they've all
+ * finished: tables too large to maintain in that time are left to autovacuum. Other databases (e.g.
+ * HSQL) don't need this, so it's skipped for them.
+ */
+public final class TableMaintenanceIdleTask implements IdleTask {
+  private static final Logger LOGGER = LoggerFactory.getLogger(TableMaintenanceIdleTask.class);
+
+  /** The value for {@link #getId()}. */
+  static final String ID = "tableMaintenance";
+
+  /**
+   * The value for {@link #getPriority()}: stale statistics hurt API queries right away, so this
+   * should be run ahead of any backfills.
+   */
+  static final int PRIORITY = 0;
+
+  /** The maximum number of tables that will be analyzed or vacuumed at once. */
+  static final int MAX_PARALLEL_TABLES = 4;
+
+  /**
+   * Tables will be <code>VACUUM</code>ed (as well as analyzed) once their dead rows are at least
+   * this fraction of their live rows.
+   */
+  private static final double VACUUM_DEAD_ROWS_RATIO = 0.1;
+
+  /** The PostgreSQL <code>SQLSTATE</code> for statements cancelled by a timeout. */
+  private static final String SQL_STATE_QUERY_CANCELED = "57014";
+
+  /** Separates the table names in this task's cursor. */
+  private static final String CURSOR_SEPARATOR = ",";
+
+  private final MetricRegistry appMetrics;
+  private final int parallelism;
+  private final ExecutorService executorService;
+
+  /** The tables waiting to be maintained, sorted so that the persisted cursor is stable. */
+  private final SortedSet<String> pendingTables;
+
+  /** Whether or not any tables left over from a previous run have been read in from the cursor. */
+  private boolean cursorRead;
+
+  /**
+   * Constructs a new {@link TableMaintenanceIdleTask}.
+   *
+   * @param appMetrics the {@link MetricRegistry} for the overall application
+   * @param maxConnections the maximum number of database connections that this task may use at
+   *     once
+   * @param executorService the {@link ExecutorService} to run the table maintenance operations on,
+   *     which should have at least {@link #MAX_PARALLEL_TABLES} threads
+   */
+  public TableMaintenanceIdleTask(
+      MetricRegistry appMetrics, int maxConnections, ExecutorService executorService) {
+    this.appMetrics = appMetrics;
+    this.parallelism = Math.max(1, Math.min(MAX_PARALLEL_TABLES, maxConnections));
+    this.executorService = executorService;
+    this.pendingTables = new TreeSet<>();
+    this.cursorRead = false;
+  }
+
+  /** @see gov.cms.bfd.pipeline.rif.load.IdleTask#getId() */
+  @Override
+  public String getId() {
+    return ID;
+  }
+
+  /** @see gov.cms.bfd.pipeline.rif.load.IdleTask#getPriority() */
+  @Override
+  public int getPriority() {
+    return PRIORITY;
+  }
+
+  /**
+   * Records that data has been loaded into the specified tables, such that they'll be maintained
+   * in the next idle time.
+   *
+   * @param tableNames the (unquoted) names of the tables that data was loaded into
+   */
+  public synchronized void recordTouchedTables(Collection<String> tableNames) {
+    pendingTables.addAll(tableNames);
+  }
+
+  /** @see gov.cms.bfd.pipeline.rif.load.IdleTask#hasWork() */
+  @Override
+  public synchronized boolean hasWork() {
+    // Until its cursor has been read, there's no telling whether a previous run left work behind.
+    return !cursorRead || !pendingTables.isEmpty();
+  }
+
+  /**
+   * @see
+   *     gov.cms.bfd.pipeline.rif.load.IdleTask#run(gov.cms.bfd.pipeline.rif.load.IdleTaskContext)
+   */
+  @Override
+  public boolean run(IdleTaskContext context) {
+    SortedSet<String> tablesToMaintain;
+    synchronized (this) {
+      if (!cursorRead) {
+        context
+            .getCursor()
+            .ifPresent(c -> pendingTables.addAll(Arrays.asList(c.split(CURSOR_SEPARATOR))));
+        cursorRead = true;
+      }
+      tablesToMaintain = new TreeSet<>(pendingTables);
+    }
+
+    if (!RifLoader.isDatabasePostgreSql(context.getDataSource())) {
+      LOGGER.debug("Skipping table maintenance, as it's only needed for PostgreSQL.");
+      synchronized (this) {
+        pendingTables.removeAll(tablesToMaintain);
+      }
+      context.saveCursor(null);
+      return false;
+    }
+
+    CompletionService<String> completionService = new ExecutorCompletionService<>(executorService);
+    Iterator<String> tablesIter = tablesToMaintain.iterator();
+    int tablesRunning = 0;
+    RifLoadFailure failure = null;
+    while (true) {
+      while (failure == null
+          && tablesRunning < parallelism
+          && tablesIter.hasNext()
+          && context.shouldContinue()) {
+        String tableName = tablesIter.next();
+        Duration timeout = context.getRemainingTime();
+        completionService.submit(() -> maintainTable(context.getDataSource(), tableName, timeout));
+        tablesRunning++;
+      }
+      if (tablesRunning == 0) break;
+
+      Future<String> tableFuture = awaitTable(completionService);
+      tablesRunning--;
+      try {
+        String tableName = tableFuture.get();
+        synchronized (this) {
+          pendingTables.remove(tableName);
+        }
+      } catch (ExecutionException e) {
+        // Don't leave the other tables' statements running unattended: wait for them first.
+        if (failure == null) failure = new RifLoadFailure(e.getCause());
+      } catch (InterruptedException e) {
+        // The future is already done, so this can't happen.
+        throw new BadCodeMonkeyException(e);
+      }
+    }
+
+    synchronized (this) {
+      context.saveCursor(
+          pendingTables.isEmpty() ? null : String.join(CURSOR_SEPARATOR, pendingTables));
+    }
+    if (failure != null) throw failure;
+
+    // This task is never finished for good: more data sets will come along.
+    return false;
+  }
+
+  /**
+   * @param completionService the {@link CompletionService} that table maintenance operations were
+   *     submitted to
+   * @return the {@link Future} of the next table maintenance operation to finish (successfully or
+   *     not), which resolves to the name of its table
+   */
+  private static Future<String> awaitTable(CompletionService<String> completionService) {
+    try {
+      return completionService.take();
+    } catch (InterruptedException e) {
+      // Interrupts should not be used on this thread, so go boom.
+      throw new BadCodeMonkeyException(e);
+    }
+  }
+
+  /**
+   * Analyzes (and, if needed, vacuums) the specified table. Failures and timeouts are logged, rather
+   * than retried, as they're unlikely to fix themselves and autovacuum will get to the table
+   * eventually.
+   *
+   * @param dataSource the {@link DataSource} for the database to use
+   * @param tableName the (unquoted) name of the table to maintain
+   * @param timeout the longest that the maintenance operation may run for
+   * @return the specified table name
+   */
+  private String maintainTable(DataSource dataSource, String tableName, Duration timeout) {
+    try (Connection connection = dataSource.getConnection()) {
+      boolean vacuum = needsVacuum(connection, tableName);
+      String operation = vacuum ? "vacuumAnalyze" : "analyze";
+
+      Timer.Context timerTable =
+          appMetrics
+              .timer(MetricRegistry.name(getClass().getSimpleName(), operation, tableName))
+              .time();
+      try (Statement statement = connection.createStatement()) {
+        // Note: VACUUM can't run inside a transaction, so the connection must be in auto-commit.
+        connection.setAutoCommit(true);
+        // Note: a timeout of 0 would mean no timeout at all.
+        statement.execute(
+            String.format("SET statement_timeout = %d", Math.max(1L, timeout.toMillis())));
+        try {
+          statement.execute(
+              String.format("%s \"%s\"", vacuum ? "VACUUM ANALYZE" : "ANALYZE", tableName));
+        } finally {
+          // The connection is pooled, so the timeout mustn't outlive this operation.
+          statement.execute("RESET statement_timeout");
+        }
+      }
+      long durationNanos = timerTable.stop();
+      LOGGER.info(
+          "Table maintenance ({}) of '{}' completed in {} ms.",
+          operation,
+          tableName,
+          durationNanos / 1000000);
+    } catch (SQLException e) {
+      if (SQL_STATE_QUERY_CANCELED.equals(e.getSQLState())) {
+        LOGGER.warn(
+            "Table maintenance of '{}' didn't finish within '{}' ms, so was left to autovacuum.",
+            tableName,
+            timeout.toMillis());
+        appMetrics.meter(MetricRegistry.name(getClass().getSimpleName(), "timedOut")).mark();
+        return tableName;
+      }
+
+      LOGGER.error("Table maintenance of '" + tableName + "' failed.", e);
+      appMetrics.meter(MetricRegistry.name(getClass().getSimpleName(), "failed")).mark();
+    }
+    return tableName;
+  }
+
+  /**
+   * @param connection the {@link Connection} to use
+   * @param tableName the (unquoted) name of the table to check
+   * @return <code>true</code> if the specified table has enough dead rows that it should be
+   *     vacuumed, <code>false</code> if it only needs to be analyzed
+   * @throws SQLException (indicates a problem querying the table's statistics)
+   */
+  private static boolean needsVacuum(Connection connection, String tableName) throws SQLException {
+    try (PreparedStatement select =
+        connection.prepareStatement(
+            "SELECT n_live_tup, n_dead_tup FROM pg_stat_user_tables WHERE relname = ?")) {
+      select.setString(1, tableName);
+      try (ResultSet results = select.executeQuery()) {
+        if (!results.next()) return false;
+        return results.getLong(2) > results.getLong(1) * VACUUM_DEAD_ROWS_RATIO;
+      }
+    }
+  }
+}
@@ -0,0 +1,220 @@
+package gov.cms.bfd.pipeline.rif.load;
+
+import com.codahale.metrics.MetricRegistry;
+import gov.cms.bfd.model.rif.RifFileEvent;
+import gov.cms.bfd.model.rif.RifFileRecords;
+import gov.cms.bfd.model.rif.RifFileType;
+import gov.cms.bfd.model.rif.RifFilesEvent;
+import gov.cms.bfd.model.rif.RifRecordEvent;
+import gov.cms.bfd.model.rif.samples.StaticRifResource;
+import gov.cms.bfd.model.rif.schema.DatabaseTestHelper;
+import gov.cms.bfd.pipeline.rif.extract.RifFilesProcessor;
+import gov.cms.bfd.pipeline.rif.extract.s3.DataSetCoordinator.WorkUnitLease;
+import gov.cms.bfd.pipeline.rif.extract.s3.DataSetManifest;
+import gov.cms.bfd.pipeline.rif.extract.s3.DataSetManifest.DataSetManifestEntry;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import javax.sql.DataSource;
+import org.junit.Assert;
+import org.junit.Test;
+
+/** Integration tests for {@link DatabaseDataSetCoordinator}. */
+public final class DatabaseDataSetCoordinatorIT {
+  /**
+   * Verifies that {@link DatabaseDataSetCoordinator} leases each work unit to only one node at a
+   * time, holds back the claims units until the beneficiary units are complete, and lets only one
+   * node finalize the data set.
+   */
+  @Test
+  public void leasesUnitsInStages() {
+    DataSource dataSource = DatabaseTestHelper.getTestDatabaseAfterCleanAndSchema();
+    DatabaseDataSetCoordinator nodeA =
+        new DatabaseDataSetCoordinator(new MetricRegistry(), dataSource, "a");
+    DatabaseDataSetCoordinator nodeB =
+        new DatabaseDataSetCoordinator(new MetricRegistry(), dataSource, "b");
+    DataSetManifest manifest = createManifest();
+    nodeA.registerDataSet(manifest);
+    nodeB.registerDataSet(manifest);
+
+    try (WorkUnitLease beneficiaryLease = nodeA.leaseWorkUnit(manifest).get()) {
+      Assert.assertEquals(RifFileType.BENEFICIARY, beneficiaryLease.getManifestEntry().getType());
+      Assert.assertFalse(nodeB.leaseWorkUnit(manifest).isPresent());
+      Assert.assertTrue(beneficiaryLease.complete());
+    }
+
+    try (WorkUnitLease carrierLease = nodeB.leaseWorkUnit(manifest).get()) {
+      Assert.assertEquals(RifFileType.CARRIER, carrierLease.getManifestEntry().getType());
+      Assert.assertFalse(nodeA.leaseWorkUnit(manifest).isPresent());
+      Assert.assertFalse(nodeA.isDataSetComplete(manifest));
+      Assert.assertTrue(carrierLease.complete());
+    }
+
+    Assert.assertTrue(nodeA.isDataSetComplete(manifest));
+    Assert.assertFalse(nodeA.leaseWorkUnit(manifest).isPresent());
+    Assert.assertTrue(nodeB.finalizeDataSet(manifest));
+    Assert.assertFalse(nodeA.finalizeDataSet(manifest));
+  }
+
+  /**
+   * Verifies that {@link DatabaseDataSetCoordinator} lets another node take over a work unit whose
+   * lease has expired, and that the original node can then no longer commit it.
+   *
+   * @throws SQLException (indicates a test error)
+   */
+  @Test
+  public void takesOverExpiredLeases() throws SQLException {
+    DataSource dataSource = DatabaseTestHelper.getTestDatabaseAfterCleanAndSchema();
+    DatabaseDataSetCoordinator nodeA =
+        new DatabaseDataSetCoordinator(new MetricRegistry(), dataSource, "a");
+    DatabaseDataSetCoordinator nodeB =
+        new DatabaseDataSetCoordinator(new MetricRegistry(), dataSource, "b");
+    DataSetManifest manifest = createManifest();
+    nodeA.registerDataSet(manifest);
+
+    try (WorkUnitLease staleLease = nodeA.leaseWorkUnit(manifest).get()) {
+      // Simulate node A dying (and so missing its heartbeats) until its lease expires.
+      try (Connection connection = dataSource.getConnection();
+          PreparedStatement update =
+              connection.prepareStatement(
+                  "UPDATE \"CoordinatedWorkUnits\" SET \"leaseExpires\" = ?")) {
+        update.setTimestamp(1, Timestamp.from(Instant.now().minus(1, ChronoUnit.MINUTES)));
+        update.executeUpdate();
+      }
+
+      Optional<WorkUnitLease> takenOverLease = nodeB.leaseWorkUnit(manifest);
+      Assert.assertTrue(takenOverLease.isPresent());
+      try (WorkUnitLease lease = takenOverLease.get()) {
+        Assert.assertEquals(
+            staleLease.getManifestEntry().getName(), lease.getManifestEntry().getName());
+        Assert.assertFalse(staleLease.complete());
+        Assert.assertTrue(lease.complete());
+      }
+    }
+  }
+
+  /**
+   * Verifies that when a node's lease on a work unit expires partway through loading its file, and
+   * another node takes the unit over, the first node's {@link RifLoader} stops loading the file at
+   * the next record batch, rather than carrying on concurrently with the other node.
+   */
+  @Test
+  public void cancelsLoadWhenLeaseLostMidFile() {
+    DataSource dataSource = DatabaseTestHelper.getTestDatabaseAfterClean();
+    MetricRegistry appMetrics = new MetricRegistry();
+    try (RifLoader loader =
+        new RifLoader(appMetrics, RifLoaderTestUtils.getLoadOptions(dataSource))) {
+      // Heartbeats are sent every 200 milliseconds, so a lost lease will be noticed quickly.
+      DatabaseDataSetCoordinator nodeA =
+          new DatabaseDataSetCoordinator(appMetrics, dataSource, "a", Duration.ofSeconds(1));
+      DatabaseDataSetCoordinator nodeB =
+          new DatabaseDataSetCoordinator(appMetrics, dataSource, "b");
+      DataSetManifest manifest = createManifest();
+      nodeA.registerDataSet(manifest);
+
+      try (WorkUnitLease staleLease = nodeA.leaseWorkUnit(manifest).get()) {
+        RifFilesEvent rifFilesEvent =
+            new RifFilesEvent(
+                Instant.now(),
+                Arrays.asList(StaticRifResource.SAMPLE_A_BENES.toRifFile()),
+                staleLease::isLost);
+        RifFileEvent rifFileEvent = rifFilesEvent.getFileEvents().get(0);
+        RifRecordEvent<?> beneficiaryRecord =
+            new RifFilesProcessor().produceRecords(rifFileEvent).getRecords().findFirst().get();
+
+        /*
+         * The (idempotent) load of the same record, over and over, stands in for a large file. Node
+         * B takes the unit over once the first batch of records has been read.
+         */
+        AtomicInteger recordsRead = new AtomicInteger(0);
+        List<WorkUnitLease> takenOverLeases = new ArrayList<>();
+        Stream<RifRecordEvent<?>> records =
+            Stream.<RifRecordEvent<?>>generate(() -> beneficiaryRecord)
+                .limit(1000)
+                .peek(
+                    r -> {
+                      if (recordsRead.incrementAndGet() == 150)
+                        takenOverLeases.add(takeOverLease(dataSource, nodeB, manifest, staleLease));
+                    });
+        AtomicInteger recordsLoaded = new AtomicInteger(0);
+        try {
+          loader.process(
+              new RifFileRecords(rifFileEvent, records),
+              error -> {
+                throw new IllegalStateException("Record(s) failed to load.", error);
+              },
+              result -> recordsLoaded.incrementAndGet());
+          Assert.fail("The load should have been cancelled.");
+        } catch (CancellationException e) {
+          // Expected.
+        }
+
+        Assert.assertEquals(100, recordsLoaded.get());
+        Assert.assertEquals(200, recordsRead.get());
+        Assert.assertEquals(1, takenOverLeases.size());
+        try (WorkUnitLease takenOverLease = takenOverLeases.get(0)) {
+          Assert.assertFalse(staleLease.complete());
+          Assert.assertTrue(takenOverLease.complete());
+        }
+      }
+    }
+  }
+
+  /**
+   * Simulates a node missing its heartbeats until its lease on a work unit expires, and has another
+   * node take the unit over, then waits for the original node to notice.
+   *
+   * @param dataSource the {@link DataSource} for the test database
+   * @param newOwner the {@link DatabaseDataSetCoordinator} of the node to take the unit over
+   * @param manifest the {@link DataSetManifest} of the data set that the work unit is part of
+   * @param staleLease the {@link WorkUnitLease} to be lost
+   * @return the other node's new {@link WorkUnitLease} on the unit
+   */
+  private static WorkUnitLease takeOverLease(
+      DataSource dataSource,
+      DatabaseDataSetCoordinator newOwner,
+      DataSetManifest manifest,
+      WorkUnitLease staleLease) {
+    try (Connection connection = dataSource.getConnection();
+        PreparedStatement update =
+            connection.prepareStatement(
+                "UPDATE \"CoordinatedWorkUnits\" SET \"leaseExpires\" = ?")) {
+      update.setTimestamp(1, Timestamp.from(Instant.now().minus(1, ChronoUnit.MINUTES)));
+      update.executeUpdate();
+    } catch (SQLException e) {
+      throw new IllegalStateException(e);
+    }
+    WorkUnitLease takenOverLease = newOwner.leaseWorkUnit(manifest).get();
+
+    Instant deadline = Instant.now().plusSeconds(10);
+    while (!staleLease.isLost()) {
+      if (Instant.now().isAfter(deadline)) throw new IllegalStateException("Lease not lost.");
+      try {
+        Thread.sleep(50);
+      } catch (InterruptedException e) {
+        throw new IllegalStateException(e);
+      }
+    }
+    return takenOverLease;
+  }
+
+  /** @return a {@link DataSetManifest} with one beneficiary file and one claims file */
+  private static DataSetManifest createManifest() {
+    return new DataSetManifest(
+        Instant.now(),
+        0,
+        new DataSetManifestEntry("beneficiaries.rif", RifFileType.BENEFICIARY),
+        new DataSetManifestEntry("carrier.rif", RifFileType.CARRIER));
+  }
+}
@@ -0,0 +1,233 @@
+package gov.cms.bfd.pipeline.rif.load;
+
+import com.codahale.metrics.MetricRegistry;
+import gov.cms.bfd.model.rif.schema.DatabaseTestHelper;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.sql.DataSource;
+import org.junit.Assert;
+import org.junit.Test;
+
+/** Integration tests for {@link IdleTaskScheduler}. */
+public final class IdleTaskSchedulerIT {
+  /** Verifies that {@link IdleTaskScheduler} runs the highest-priority pending task first. */
+  @Test
+  public void runsTasksInPriorityOrder() {
+    DataSource dataSource = DatabaseTestHelper.getTestDatabaseAfterCleanAndSchema();
+    IdleTaskScheduler scheduler = new IdleTaskScheduler(new MetricRegistry(), dataSource);
+
+    List<String> runOrder = new ArrayList<>();
+    scheduler.register(new CountingIdleTask("b", 2, 1, runOrder));
+    scheduler.register(new CountingIdleTask("a", 1, 1, runOrder));
+    scheduler.register(new CountingIdleTask("c", 3, 1, runOrder));
+    for (int i = 0; i < 4; i++) scheduler.doIdleTask();
+
+    Assert.assertEquals(Arrays.asList("a:1", "b:1", "c:1"), runOrder);
+    Assert.assertTrue(scheduler.getPendingTasks().isEmpty());
+  }
+
+  /**
+   * Verifies that {@link IdleTaskScheduler} persists each task's cursor, such that it's resumed
+   * from by a later {@link IdleTaskScheduler} (i.e. after an application restart).
+   */
+  @Test
+  public void resumesFromPersistedCursor() {
+    DataSource dataSource = DatabaseTestHelper.getTestDatabaseAfterCleanAndSchema();
+    List<String> runOrder = new ArrayList<>();
+
+    IdleTaskScheduler firstScheduler = new IdleTaskScheduler(new MetricRegistry(), dataSource);
+    firstScheduler.register(new CountingIdleTask("a", 1, 3, runOrder));
+    firstScheduler.doIdleTask();
+    firstScheduler.doIdleTask();
+
+    IdleTaskScheduler secondScheduler = new IdleTaskScheduler(new MetricRegistry(), dataSource);
+    secondScheduler.register(new CountingIdleTask("a", 1, 3, runOrder));
+    secondScheduler.doIdleTask();
+    secondScheduler.doIdleTask();
+
+    Assert.assertEquals(Arrays.asList("a:1", "a:2", "a:3"), runOrder);
+    Assert.assertTrue(secondScheduler.getPendingTasks().isEmpty());
+
+    IdleTaskScheduler thirdScheduler = new IdleTaskScheduler(new MetricRegistry(), dataSource);
+    thirdScheduler.register(new CountingIdleTask("a", 1, 3, runOrder));
+    Assert.assertTrue(thirdScheduler.getPendingTasks().isEmpty());
+  }
+
+  /**
+   * Verifies that {@link IdleTaskScheduler} throttles a task whose database operations slow down,
+   * and then lets it resume in a later time slice, once they've sped back up.
+   */
+  @Test
+  public void resumesAfterLatencyRecovers() {
+    DataSource dataSource = DatabaseTestHelper.getTestDatabaseAfterCleanAndSchema();
+    IdleTaskScheduler scheduler = new IdleTaskScheduler(new MetricRegistry(), dataSource);
+
+    // The third operation's latency is far above the baseline, but all the later ones are normal.
+    List<Integer> batchesPerSlice = new ArrayList<>();
+    LatencyIdleTask task =
+        new LatencyIdleTask(
+            Arrays.asList(
+                Duration.ofMillis(1),
+                Duration.ofMillis(1),
+                Duration.ofMillis(500),
+                Duration.ofMillis(1),
+                Duration.ofMillis(1),
+                Duration.ofMillis(1)),
+            batchesPerSlice);
+    scheduler.register(task);
+    scheduler.register(new CountingIdleTask("b", 2, 1, new ArrayList<>()));
+
+    scheduler.doIdleTask();
+    scheduler.doIdleTask();
+    Assert.assertEquals(Arrays.asList(3, 3), batchesPerSlice);
+    Assert.assertEquals(1, scheduler.getPendingTasks().size());
+
+    // The lower-priority task isn't starved.
+    scheduler.doIdleTask();
+    Assert.assertTrue(scheduler.getPendingTasks().isEmpty());
+  }
+
+  /**
+   * Verifies that {@link IdleTaskScheduler#doIdleTask()} just skips the time slice, rather than
+   * failing, when the database can't be reached.
+   */
+  @Test
+  public void skipsTimeSliceWhenProbeFails() {
+    DataSource dataSource = DatabaseTestHelper.getTestDatabaseAfterCleanAndSchema();
+    AtomicBoolean databaseDown = new AtomicBoolean(false);
+    DataSource flakyDataSource =
+        (DataSource)
+            Proxy.newProxyInstance(
+                getClass().getClassLoader(),
+                new Class<?>[] {DataSource.class},
+                (proxy, method, args) -> {
+                  if (method.getName().equals("getConnection") && databaseDown.get())
+                    throw new SQLException("Database is down.");
+                  try {
+                    return method.invoke(dataSource, args);
+                  } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                  }
+                });
+    IdleTaskScheduler scheduler = new IdleTaskScheduler(new MetricRegistry(), flakyDataSource);
+    List<String> runOrder = new ArrayList<>();
+    scheduler.register(new CountingIdleTask("a", 1, 1, runOrder));
+    Assert.assertEquals(1, scheduler.getPendingTasks().size());
+
+    databaseDown.set(true);
+    scheduler.doIdleTask();
+    Assert.assertTrue(runOrder.isEmpty());
+
+    databaseDown.set(false);
+    scheduler.doIdleTask();
+    Assert.assertEquals(Arrays.asList("a:1"), runOrder);
+  }
+
+  /**
+   * An {@link IdleTask} that reports a scripted latency for each of its (pretend) database
+   * operations, doing as many of them per time slice as it's allowed to.
+   */
+  private static final class LatencyIdleTask implements IdleTask {
+    private final List<Duration> latencies;
+    private final List<Integer> batchesPerSlice;
+
+    /**
+     * Constructs a new {@link LatencyIdleTask}.
+     *
+     * @param latencies the latency to report for each operation, in order: the task is finished
+     *     once it has done all of them
+     * @param batchesPerSlice the {@link List} to record the number of operations done in each time
+     *     slice to
+     */
+    LatencyIdleTask(List<Duration> latencies, List<Integer> batchesPerSlice) {
+      this.latencies = latencies;
+      this.batchesPerSlice = batchesPerSlice;
+    }
+
+    /** @see gov.cms.bfd.pipeline.rif.load.IdleTask#getId() */
+    @Override
+    public String getId() {
+      return "latency";
+    }
+
+    /** @see gov.cms.bfd.pipeline.rif.load.IdleTask#getPriority() */
+    @Override
+    public int getPriority() {
+      return 1;
+    }
+
+    /**
+     * @see
+     *     gov.cms.bfd.pipeline.rif.load.IdleTask#run(gov.cms.bfd.pipeline.rif.load.IdleTaskContext)
+     */
+    @Override
+    public boolean run(IdleTaskContext context) {
+      int done = context.getCursor().map(Integer::parseInt).orElse(0);
+      int batches = 0;
+      while (done < latencies.size() && context.shouldContinue()) {
+        context.recordDbLatency(latencies.get(done));
+        done++;
+        batches++;
+      }
+      batchesPerSlice.add(batches);
+      context.saveCursor(String.valueOf(done));
+      return done >= latencies.size();
+    }
+  }
+
+  /**
+   * An {@link IdleTask} that counts up to a limit, one step per time slice, using its cursor to
+   * track the count.
+   */
+  private static final class CountingIdleTask implements IdleTask {
+    private final String id;
+    private final int priority;
+    private final int limit;
+    private final List<String> runOrder;
+
+    /**
+     * Constructs a new {@link CountingIdleTask}.
+     *
+     * @param id the value to use for {@link #getId()}
+     * @param priority the value to use for {@link #getPriority()}
+     * @param limit the count at which this task will be finished
+     * @param runOrder the {@link List} to record each step to, as <code>id:count</code>
+     */
+    CountingIdleTask(String id, int priority, int limit, List<String> runOrder) {
+      this.id = id;
+      this.priority = priority;
+      this.limit = limit;
+      this.runOrder = runOrder;
+    }
+
+    /** @see gov.cms.bfd.pipeline.rif.load.IdleTask#getId() */
+    @Override
+    public String getId() {
+      return id;
+    }
+
+    /** @see gov.cms.bfd.pipeline.rif.load.IdleTask#getPriority() */
+    @Override
+    public int getPriority() {
+      return priority;
+    }
+
+    /**
+     * @see
+     *     gov.cms.bfd.pipeline.rif.load.IdleTask#run(gov.cms.bfd.pipeline.rif.load.IdleTaskContext)
+     */
+    @Override
+    public boolean run(IdleTaskContext context) {
+      int count = context.getCursor().map(Integer::parseInt).orElse(0) + 1;
+      runOrder.add(id + ":" + count);
+      context.saveCursor(String.valueOf(count));
+      return count >= limit;
+    }
+  }
+}
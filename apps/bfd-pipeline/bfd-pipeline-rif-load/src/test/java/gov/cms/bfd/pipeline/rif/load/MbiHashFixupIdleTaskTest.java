@@ -0,0 +1,98 @@
+package gov.cms.bfd.pipeline.rif.load;
+
+import gov.cms.bfd.pipeline.rif.load.MbiHashFixupIdleTask.KeysetPartition;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+import org.junit.Assert;
+import org.junit.Test;
+
+/** Unit tests for {@link MbiHashFixupIdleTask}. */
+public final class MbiHashFixupIdleTaskTest {
+  /**
+   * Verifies that {@link MbiHashFixupIdleTask#computePartitionUpperBounds(String, List, int,
+   * boolean)} picks evenly spaced bounds out of a bigint primary key histogram.
+   */
+  @Test
+  public void partitionsFromNumericHistogram() {
+    List<Object> histogramBounds =
+        LongStream.range(0, 100).mapToObj(Long::toString).collect(Collectors.toList());
+
+    Assert.assertEquals(
+        Arrays.asList(25L, 50L, 75L, null),
+        MbiHashFixupIdleTask.computePartitionUpperBounds(
+            "BeneficiariesHistory", histogramBounds, 4, false));
+  }
+
+  /**
+   * Verifies that {@link MbiHashFixupIdleTask#computePartitionUpperBounds(String, List, int,
+   * boolean)} handles varchar primary keys, and doesn't create empty partitions when the histogram
+   * has repeated bounds.
+   */
+  @Test
+  public void partitionsFromTextHistogramWithRepeatedBounds() {
+    List<Object> histogramBounds = Arrays.asList("-1", "-1", "-1", "-2", "-3", "-3");
+
+    Assert.assertEquals(
+        Arrays.asList("-1", "-2", "-3", null),
+        MbiHashFixupIdleTask.computePartitionUpperBounds(
+            "Beneficiaries", histogramBounds, 6, true));
+  }
+
+  /**
+   * Verifies that {@link MbiHashFixupIdleTask#computePartitionUpperBounds(String, List, int,
+   * boolean)} falls back to a single partition when there's no histogram (e.g. for a table that
+   * hasn't been analyzed).
+   */
+  @Test
+  public void singlePartitionWithoutHistogram() {
+    Assert.assertEquals(
+        Collections.singletonList(null),
+        MbiHashFixupIdleTask.computePartitionUpperBounds(
+            "Beneficiaries", Collections.emptyList(), 4, true));
+  }
+
+  /**
+   * Verifies that {@link MbiHashFixupIdleTask#computePartitionUpperBounds(String, List, int,
+   * boolean)} creates a single partition when only one fixup thread is configured.
+   */
+  @Test
+  public void singlePartitionForSingleThread() {
+    Assert.assertEquals(
+        Collections.singletonList(null),
+        MbiHashFixupIdleTask.computePartitionUpperBounds(
+            "Beneficiaries", Arrays.asList("-1", "-2", "-3"), 1, true));
+  }
+
+  /**
+   * Verifies that {@link MbiHashFixupIdleTask#parseCursor(String, boolean)} reads back the
+   * partitions recorded by {@link MbiHashFixupIdleTask#formatCursor(List)}, including their open
+   * ends.
+   */
+  @Test
+  public void cursorRoundTrip() {
+    List<KeysetPartition> partitions =
+        Arrays.asList(
+            new KeysetPartition(null, 25L),
+            new KeysetPartition(42L, 50L),
+            new KeysetPartition(75L, null));
+
+    String cursor = MbiHashFixupIdleTask.formatCursor(partitions);
+    Assert.assertEquals("~25,42~50,75~", cursor);
+
+    List<KeysetPartition> parsedPartitions = MbiHashFixupIdleTask.parseCursor(cursor, false);
+    Assert.assertEquals(
+        Arrays.asList(null, 42L, 75L),
+        parsedPartitions.stream().map(KeysetPartition::getCursor).collect(Collectors.toList()));
+    Assert.assertEquals(
+        Arrays.asList(25L, 50L, null),
+        parsedPartitions.stream().map(KeysetPartition::getUpperBound).collect(Collectors.toList()));
+
+    List<KeysetPartition> textPartitions = MbiHashFixupIdleTask.parseCursor("-1~-2,-3~", true);
+    Assert.assertEquals("-1", textPartitions.get(0).getCursor());
+    Assert.assertEquals("-2", textPartitions.get(0).getUpperBound());
+    Assert.assertNull(textPartitions.get(1).getUpperBound());
+  }
+}
@@ -148,7 +148,7 @@ public final class RifLoaderIT {
     loadSample(dataSource, StaticRifResourceGroup.SAMPLE_MCT_UPDATE_3);
   }
 
-  /** Tests the RifLoaderIdleTasks class with a Sample. Note: only works with Postgres. */
+  /** Tests the {@link MbiHashFixupIdleTask}s with a Sample. Note: only works with Postgres. */
   @Ignore
   @Test
   public void runIdleTasks() {
@@ -157,7 +157,7 @@ public final class RifLoaderIT {
     RifLoader loader = createLoader(dataSource, true);
 
     // The sample are loaded with mbiHash set, clear them for this test
-    clearMbiHash(loader);
+    clearMbiHash(dataSource);
     final String selectBeneficiary = "select b from Beneficiary b where b.mbiHash is null";
     EntityManager em = RifLoader.createEntityManagerFactory(dataSource).createEntityManager();
     Assert.assertFalse(
@@ -168,39 +168,12 @@ public final class RifLoaderIT {
         "Should not be empty now",
         em.createQuery(selectHistory, BeneficiaryHistory.class).getResultList().isEmpty());
 
-    // Run the initial task
-    Assert.assertEquals(
-        "Should be running the initial task",
-        RifLoaderIdleTasks.Task.INITIAL,
-        loader.getIdleTasks().getCurrentTask());
-    loader.doIdleTask();
-
-    // Run the post startup task
-    Assert.assertEquals(
-        "Should be running the post-startup task",
-        RifLoaderIdleTasks.Task.POST_STARTUP,
-        loader.getIdleTasks().getCurrentTask());
-    loader.doIdleTask();
-
-    // Run the post startup beneficiary task
-    Assert.assertEquals(
-        "Should be running the post-startup task",
-        RifLoaderIdleTasks.Task.POST_STARTUP_FIXUP_BENEFICIARIES,
-        loader.getIdleTasks().getCurrentTask());
-    loader.doIdleTask();
-
-    // Run the post startup beneficiary history task
-    Assert.assertEquals(
-        "Should be running the post-startup task",
-        RifLoaderIdleTasks.Task.POST_STARTUP_FIXUP_BENEFICIARY_HISTORY,
-        loader.getIdleTasks().getCurrentTask());
-    loader.doIdleTask();
+    // Run the idle tasks until the fixups are done
+    Assert.assertEquals("Should have fixups to run", 2, getPendingFixupTasks(loader).size());
+    for (int i = 0; i < 10 && !getPendingFixupTasks(loader).isEmpty(); i++) loader.doIdleTask();
 
     // Should mbiHash should be set now
-    Assert.assertEquals(
-        "Should be running the normal task",
-        RifLoaderIdleTasks.Task.NORMAL,
-        loader.getIdleTasks().getCurrentTask());
+    Assert.assertTrue("Fixups should be finished", getPendingFixupTasks(loader).isEmpty());
     Assert.assertTrue(
         "Expect all mbiHash have been filled",
         em.createQuery(selectBeneficiary, Beneficiary.class).getResultList().isEmpty());
@@ -211,7 +184,7 @@ public final class RifLoaderIT {
     loader.close();
   }
 
-  /** Tests the RifLoaderIdleTasks with no fixups needed. */
+  /** Tests the {@link MbiHashFixupIdleTask}s with fixups disabled. */
   @Test
   public void runIdleTasksWithNoFixups() {
     final DataSource dataSource = DatabaseTestHelper.getTestDatabaseAfterClean();
@@ -229,32 +202,19 @@ public final class RifLoaderIT {
         "Histories should be fixed up",
         em.createQuery(selectHistory, BeneficiaryHistory.class).getResultList().isEmpty());
 
-    // Run the initial task
-    Assert.assertEquals(
-        "Should be running the initial task",
-        RifLoaderIdleTasks.Task.INITIAL,
-        loader.getIdleTasks().getCurrentTask());
-    loader.doIdleTask();
-
-    // Run the post startup task
-    Assert.assertEquals(
-        "Should be running the post-startup task",
-        RifLoaderIdleTasks.Task.POST_STARTUP,
-        loader.getIdleTasks().getCurrentTask());
-    loader.doIdleTask();
-
-    // Should be normal now
-    Assert.assertEquals(
-        "Should be running the normal task",
-        RifLoaderIdleTasks.Task.NORMAL,
-        loader.getIdleTasks().getCurrentTask());
+    // The fixup tasks should only log what's missing, and then have nothing left to do
+    for (int i = 0; i < 5; i++) loader.doIdleTask();
+    Assert.assertEquals("Fixups should stay pending", 2, getPendingFixupTasks(loader).size());
+    Assert.assertTrue(
+        "Fixups should have no work",
+        getPendingFixupTasks(loader).stream().noneMatch(IdleTask::hasWork));
 
     loader.close();
   }
 
   /**
-   * Tests the RifLoaderIdleTasks class with existing data in the database. Useful for profiling
-   * against the beneficiary data set.
+   * Tests the {@link MbiHashFixupIdleTask}s with existing data in the database. Useful for
+   * profiling against the beneficiary data set.
    */
   @Ignore
   @Test
@@ -263,28 +223,16 @@ public final class RifLoaderIT {
     final RifLoader loader = createLoader(dataSource, true);
 
     // The sample are loaded with mbiHash set, clear them for this test
-    clearMbiHash(loader);
-
-    // Run the initial task
-    Assert.assertEquals(
-        "Should be running the initial task",
-        RifLoaderIdleTasks.Task.INITIAL,
-        loader.getIdleTasks().getCurrentTask());
-    loader.doIdleTask();
+    clearMbiHash(dataSource);
 
-    // Run the post startup task
+    // Run the idle tasks until the fixups are done
     Instant startTime = Instant.now();
-    while (loader.getIdleTasks().getCurrentTask() != RifLoaderIdleTasks.Task.NORMAL) {
+    while (!getPendingFixupTasks(loader).isEmpty()) {
       loader.doIdleTask();
     }
     Duration time = Duration.between(startTime, Instant.now());
     LOGGER.info("Post migration took: {} seconds", time.getSeconds());
 
-    // Should mbiHash should be set now
-    Assert.assertEquals(
-        "Should be running the normal task",
-        RifLoaderIdleTasks.Task.NORMAL,
-        loader.getIdleTasks().getCurrentTask());
     loader.close();
   }
 
@@ -454,19 +402,33 @@ public final class RifLoaderIT {
             defaultOptions.getFixupThreads()));
   }
 
+  /**
+   * @param loader the {@link RifLoader} whose {@link RifLoader#getIdleTaskScheduler()} to check
+   * @return the {@link MbiHashFixupIdleTask}s that haven't finished yet
+   */
+  private static List<IdleTask> getPendingFixupTasks(RifLoader loader) {
+    return loader.getIdleTaskScheduler().getPendingTasks().stream()
+        .filter(t -> t.getId().startsWith(MbiHashFixupIdleTask.ID_PREFIX))
+        .collect(Collectors.toList());
+  }
+
   /**
    * Clear the MBI hash fields in the db
    *
-   * @param loader the loader and the db connection within
+   * @param dataSource for the db
    */
-  private static void clearMbiHash(final RifLoader loader) {
-    loader
-        .getIdleTasks()
-        .doBatches(
-            (session) -> {
-              session.createQuery("update Beneficiary set mbiHash = null").executeUpdate();
-              session.createQuery("update BeneficiaryHistory set mbiHash = null").executeUpdate();
-              return true;
-            });
+  private static void clearMbiHash(DataSource dataSource) {
+    EntityManagerFactory entityManagerFactory = RifLoader.createEntityManagerFactory(dataSource);
+    EntityManager entityManager = entityManagerFactory.createEntityManager();
+    try {
+      entityManager.getTransaction().begin();
+      entityManager.createQuery("update Beneficiary set mbiHash = null").executeUpdate();
+      entityManager.createQuery("update BeneficiaryHistory set mbiHash = null").executeUpdate();
+      entityManager.getTransaction().commit();
+    } finally {
+      if (entityManager.getTransaction().isActive()) entityManager.getTransaction().rollback();
+      entityManager.close();
+      entityManagerFactory.close();
+    }
   }
 }
@@ -0,0 +1,341 @@
+package gov.cms.bfd.pipeline.rif.load;
+
+import com.codahale.metrics.MetricRegistry;
+import gov.cms.bfd.model.rif.CarrierClaim;
+import gov.cms.bfd.model.rif.DMEClaim;
+import gov.cms.bfd.model.rif.HHAClaim;
+import gov.cms.bfd.model.rif.HospiceClaim;
+import gov.cms.bfd.model.rif.InpatientClaim;
+import gov.cms.bfd.model.rif.OutpatientClaim;
+import gov.cms.bfd.model.rif.PartDEvent;
+import gov.cms.bfd.model.rif.RifFileEvent;
+import gov.cms.bfd.model.rif.RifFilesEvent;
+import gov.cms.bfd.model.rif.SNFClaim;
+import gov.cms.bfd.model.rif.samhsa.SamhsaClaimMatcher;
+import gov.cms.bfd.model.rif.samples.StaticRifResource;
+import gov.cms.bfd.model.rif.samples.StaticRifResourceGroup;
+import gov.cms.bfd.model.rif.schema.DatabaseTestHelper;
+import gov.cms.bfd.pipeline.rif.extract.RifFilesProcessor;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.sql.DataSource;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/** Integration tests for {@link SamhsaBackfillIdleTask}. */
+public final class SamhsaBackfillIdleTaskIT {
+  /** The claim entity types, in the order that {@link SamhsaBackfillIdleTask} backfills them. */
+  private static final List<Class<?>> CLAIM_TYPES =
+      Arrays.asList(
+          CarrierClaim.class,
+          DMEClaim.class,
+          HHAClaim.class,
+          HospiceClaim.class,
+          InpatientClaim.class,
+          OutpatientClaim.class,
+          SNFClaim.class,
+          PartDEvent.class);
+
+  private DataSource dataSource;
+  private MetricRegistry appMetrics;
+  private EntityManagerFactory entityManagerFactory;
+
+  /**
+   * Prepares a test database with the {@link StaticRifResourceGroup#SAMPLE_A} claims in it, none of
+   * which have been flagged yet (as if they'd been loaded before the flag was added).
+   */
+  @Before
+  public void setup() {
+    dataSource = DatabaseTestHelper.getTestDatabaseAfterClean();
+    appMetrics = new MetricRegistry();
+    loadSampleA();
+    entityManagerFactory = RifLoader.createEntityManagerFactory(dataSource);
+    clearSamhsaFlags();
+  }
+
+  /** Closes the {@link EntityManagerFactory} used by each test case. */
+  @After
+  public void closeEntityManagerFactory() {
+    if (entityManagerFactory != null) entityManagerFactory.close();
+  }
+
+  /**
+   * Verifies that {@link SamhsaBackfillIdleTask} flags the claims in every table, moving from one
+   * table to the next as it reaches the end of each, and then finishes for good.
+   */
+  @Test
+  public void backfillsAllTables() {
+    List<Object> checkedClaims = new ArrayList<>();
+    SamhsaBackfillIdleTask task =
+        createTask(
+            c -> {
+              checkedClaims.add(c);
+              return c instanceof DMEClaim;
+            });
+
+    runTimeSlice(task, Duration.ofMinutes(5));
+    Assert.assertTrue(isCompleted(task));
+    Assert.assertEquals(Optional.empty(), readCursor());
+    for (Class<?> claimType : CLAIM_TYPES) {
+      Assert.assertEquals(claimType.getSimpleName(), 0, countClaims(claimType, "is null"));
+      Assert.assertEquals(
+          claimType.getSimpleName(),
+          claimType == DMEClaim.class ? countClaims(claimType) : 0,
+          countClaims(claimType, "= true"));
+    }
+    Assert.assertEquals(
+        CLAIM_TYPES.stream()
+            .filter(t -> t != PartDEvent.class)
+            .mapToLong(this::countClaims)
+            .sum(),
+        checkedClaims.size());
+  }
+
+  /**
+   * Verifies that {@link SamhsaBackfillIdleTask} resumes from the claim ID in its persisted cursor,
+   * rather than going back over the claims before it.
+   */
+  @Test
+  public void resumesFromCursor() {
+    String firstCarrierClaimId = findFirstClaimId(CarrierClaim.class);
+    saveCursor("CarrierClaim:" + firstCarrierClaimId);
+
+    SamhsaBackfillIdleTask task = createTask(new SamhsaClaimMatcher());
+    runTimeSlice(task, Duration.ofMinutes(5));
+    Assert.assertTrue(isCompleted(task));
+    Assert.assertEquals(
+        1,
+        countClaims(CarrierClaim.class, "is null and c.claimId = '" + firstCarrierClaimId + "'"));
+    Assert.assertEquals(
+        countClaims(CarrierClaim.class) - 1, countClaims(CarrierClaim.class, "is not null"));
+    for (Class<?> claimType : CLAIM_TYPES.subList(1, CLAIM_TYPES.size()))
+      Assert.assertEquals(claimType.getSimpleName(), 0, countClaims(claimType, "is null"));
+  }
+
+  /**
+   * Verifies that {@link SamhsaBackfillIdleTask} starts from the table in its persisted cursor, and
+   * leaves it there when it's out of time.
+   */
+  @Test
+  public void resumesFromTableInCursor() {
+    saveCursor("HHAClaim:");
+    SamhsaBackfillIdleTask task = createTask(new SamhsaClaimMatcher());
+
+    runTimeSlice(task, Duration.ofMinutes(-1));
+    Assert.assertFalse(isCompleted(task));
+    Assert.assertEquals(Optional.of("HHAClaim:"), readCursor());
+    Assert.assertEquals(countClaims(HHAClaim.class), countClaims(HHAClaim.class, "is null"));
+
+    runTimeSlice(task, Duration.ofMinutes(5));
+    Assert.assertTrue(isCompleted(task));
+    for (Class<?> claimType : CLAIM_TYPES) {
+      boolean beforeCursor = claimType == CarrierClaim.class || claimType == DMEClaim.class;
+      Assert.assertEquals(
+          claimType.getSimpleName(),
+          beforeCursor ? countClaims(claimType) : 0,
+          countClaims(claimType, "is null"));
+    }
+  }
+
+  /**
+   * Verifies that {@link SamhsaBackfillIdleTask} flags {@link PartDEvent}s as not SAMHSA-related
+   * without checking them, as they never contain SAMHSA-related codes.
+   */
+  @Test
+  public void flagsPartDEventsWithoutCheckingThem() {
+    saveCursor("PartDEvent:");
+    List<Object> checkedClaims = new ArrayList<>();
+    SamhsaBackfillIdleTask task =
+        createTask(
+            c -> {
+              checkedClaims.add(c);
+              return true;
+            });
+
+    runTimeSlice(task, Duration.ofMinutes(5));
+    Assert.assertTrue(isCompleted(task));
+    Assert.assertTrue(checkedClaims.isEmpty());
+    long partDEventCount = countClaims(PartDEvent.class);
+    Assert.assertTrue(partDEventCount > 0);
+    Assert.assertEquals(partDEventCount, countClaims(PartDEvent.class, "= false"));
+    Assert.assertEquals(
+        partDEventCount,
+        appMetrics
+            .meter(
+                MetricRegistry.name(
+                    SamhsaBackfillIdleTask.class.getSimpleName(), "claims", "PartDEvent"))
+            .getCount());
+    Assert.assertEquals(
+        countClaims(CarrierClaim.class), countClaims(CarrierClaim.class, "is null"));
+  }
+
+  /**
+   * @param samhsaMatcher the {@link Predicate} for the task to flag claims with
+   * @return a new {@link SamhsaBackfillIdleTask} for the test database, which backfills a single
+   *     claim per batch, so that the tests cover its batching without needing many claims
+   */
+  private SamhsaBackfillIdleTask createTask(Predicate<Object> samhsaMatcher) {
+    return new SamhsaBackfillIdleTask(appMetrics, entityManagerFactory, samhsaMatcher, 1);
+  }
+
+  /**
+   * Runs a single time slice of the specified {@link SamhsaBackfillIdleTask}, via a new {@link
+   * IdleTaskScheduler} (as if the application had been restarted), which persists its progress.
+   *
+   * @param task the {@link SamhsaBackfillIdleTask} to run
+   * @param timeBudget how long the time slice may last for
+   */
+  private void runTimeSlice(SamhsaBackfillIdleTask task, Duration timeBudget) {
+    IdleTaskScheduler scheduler = new IdleTaskScheduler(appMetrics, dataSource, timeBudget);
+    scheduler.register(task);
+    scheduler.doIdleTask();
+  }
+
+  /**
+   * @param task the {@link SamhsaBackfillIdleTask} to check
+   * @return <code>true</code> if the task's persisted progress says that it has finished for good
+   */
+  private boolean isCompleted(SamhsaBackfillIdleTask task) {
+    IdleTaskScheduler scheduler = new IdleTaskScheduler(appMetrics, dataSource);
+    scheduler.register(task);
+    return scheduler.getPendingTasks().isEmpty();
+  }
+
+  /**
+   * Persists the specified cursor for {@link SamhsaBackfillIdleTask}, as if a previous time slice
+   * had saved it.
+   *
+   * @param cursor the cursor to save
+   */
+  private void saveCursor(String cursor) {
+    try (Connection connection = dataSource.getConnection();
+        PreparedStatement insert =
+            connection.prepareStatement(
+                "INSERT INTO \"IdleTaskCursors\""
+                    + " (\"taskId\", \"cursor\", \"completed\", \"updated\")"
+                    + " VALUES (?, ?, ?, ?)")) {
+      insert.setString(1, SamhsaBackfillIdleTask.ID);
+      insert.setString(2, cursor);
+      insert.setBoolean(3, false);
+      insert.setTimestamp(4, Timestamp.from(Instant.now()));
+      insert.executeUpdate();
+    } catch (SQLException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /** @return the persisted cursor for {@link SamhsaBackfillIdleTask}, if any */
+  private Optional<String> readCursor() {
+    try (Connection connection = dataSource.getConnection();
+        PreparedStatement select =
+            connection.prepareStatement(
+                "SELECT \"cursor\" FROM \"IdleTaskCursors\" WHERE \"taskId\" = ?")) {
+      select.setString(1, SamhsaBackfillIdleTask.ID);
+      try (ResultSet results = select.executeQuery()) {
+        return results.next() ? Optional.ofNullable(results.getString(1)) : Optional.empty();
+      }
+    } catch (SQLException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * @param claimType the claim entity type to count
+   * @return the number of claims of the specified type
+   */
+  private long countClaims(Class<?> claimType) {
+    return countClaims(claimType, "is null") + countClaims(claimType, "is not null");
+  }
+
+  /**
+   * @param claimType the claim entity type to count
+   * @param samhsaCondition the JPQL condition to apply to the claims' <code>samhsa</code> flags,
+   *     e.g. <code>"is null"</code>
+   * @return the number of claims of the specified type that match the condition
+   */
+  private long countClaims(Class<?> claimType, String samhsaCondition) {
+    EntityManager entityManager = entityManagerFactory.createEntityManager();
+    try {
+      return entityManager
+          .createQuery(
+              String.format(
+                  "select count(c) from %s c where c.samhsa %s",
+                  claimType.getSimpleName(), samhsaCondition),
+              Long.class)
+          .getSingleResult();
+    } finally {
+      entityManager.close();
+    }
+  }
+
+  /**
+   * @param claimType the claim entity type to check, other than {@link PartDEvent}
+   * @return the lowest ID of the claims of the specified type
+   */
+  private String findFirstClaimId(Class<?> claimType) {
+    EntityManager entityManager = entityManagerFactory.createEntityManager();
+    try {
+      return entityManager
+          .createQuery(
+              String.format("select min(c.claimId) from %s c", claimType.getSimpleName()),
+              String.class)
+          .getSingleResult();
+    } finally {
+      entityManager.close();
+    }
+  }
+
+  /** Loads the {@link StaticRifResourceGroup#SAMPLE_A} records into the test database. */
+  private void loadSampleA() {
+    List<StaticRifResource> sampleResources =
+        Arrays.asList(StaticRifResourceGroup.SAMPLE_A.getResources());
+    RifFilesEvent rifFilesEvent =
+        new RifFilesEvent(
+            Instant.now(),
+            sampleResources.stream().map(r -> r.toRifFile()).collect(Collectors.toList()));
+
+    RifFilesProcessor processor = new RifFilesProcessor();
+    try (RifLoader loader =
+        new RifLoader(appMetrics, RifLoaderTestUtils.getLoadOptions(dataSource))) {
+      for (RifFileEvent rifFileEvent : rifFilesEvent.getFileEvents())
+        loader.process(
+            processor.produceRecords(rifFileEvent),
+            error -> {
+              throw new IllegalStateException("Record(s) failed to load.", error);
+            },
+            result -> {});
+    }
+  }
+
+  /** Clears the "samhsa" flags of all of the claims in the test database. */
+  private void clearSamhsaFlags() {
+    EntityManager entityManager = entityManagerFactory.createEntityManager();
+    try {
+      entityManager.getTransaction().begin();
+      for (Class<?> claimType : CLAIM_TYPES)
+        entityManager
+            .createQuery(
+                String.format("update %s c set c.samhsa = null", claimType.getSimpleName()))
+            .executeUpdate();
+      entityManager.getTransaction().commit();
+    } finally {
+      if (entityManager.getTransaction().isActive()) entityManager.getTransaction().rollback();
+      entityManager.close();
+    }
+  }
+}
@@ -0,0 +1,156 @@
+package gov.cms.bfd.pipeline.rif.load;
+
+import com.codahale.metrics.MetricRegistry;
+import gov.cms.bfd.model.rif.schema.DatabaseTestHelper;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import javax.sql.DataSource;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+/** Integration tests for {@link TableMaintenanceIdleTask}. */
+public final class TableMaintenanceIdleTaskIT {
+  private DataSource dataSource;
+  private MetricRegistry appMetrics;
+  private ExecutorService executorService;
+
+  /** Prepares a clean test database, and the other resources needed by each test case. */
+  @Before
+  public void setup() {
+    dataSource = DatabaseTestHelper.getTestDatabaseAfterCleanAndSchema();
+    appMetrics = new MetricRegistry();
+    executorService = Executors.newFixedThreadPool(TableMaintenanceIdleTask.MAX_PARALLEL_TABLES);
+  }
+
+  /** Shuts down the {@link ExecutorService} used by each test case. */
+  @After
+  public void shutdownExecutor() {
+    executorService.shutdownNow();
+  }
+
+  /**
+   * Verifies that {@link TableMaintenanceIdleTask} maintains all of its recorded tables when it has
+   * time to, and then has no more work (on PostgreSQL), or just skips them (on other databases).
+   */
+  @Test
+  public void maintainsRecordedTables() {
+    TableMaintenanceIdleTask task = new TableMaintenanceIdleTask(appMetrics, 2, executorService);
+    IdleTaskContext firstContext = createContext(Duration.ofMinutes(5), null);
+    task.run(firstContext);
+    Assert.assertFalse(task.hasWork());
+    Assert.assertEquals(Optional.empty(), firstContext.getCursor());
+
+    task.recordTouchedTables(Arrays.asList("Beneficiaries", "CarrierClaims", "CarrierClaimLines"));
+    Assert.assertTrue(task.hasWork());
+    IdleTaskContext secondContext = createContext(Duration.ofMinutes(5), null);
+    Assert.assertFalse(task.run(secondContext));
+    Assert.assertFalse(task.hasWork());
+    Assert.assertEquals(Optional.empty(), secondContext.getCursor());
+    Assert.assertEquals(
+        RifLoader.isDatabasePostgreSql(dataSource) ? 3 : 0, countMaintenanceTimers());
+  }
+
+  /**
+   * Verifies that {@link TableMaintenanceIdleTask} leaves its recorded tables in its cursor when its
+   * time slice has already run out.
+   */
+  @Test
+  public void savesTablesWhenOutOfTime() {
+    Assume.assumeTrue(RifLoader.isDatabasePostgreSql(dataSource));
+
+    TableMaintenanceIdleTask task = new TableMaintenanceIdleTask(appMetrics, 2, executorService);
+    task.recordTouchedTables(Arrays.asList("CarrierClaims", "Beneficiaries"));
+    IdleTaskContext context = createContext(Duration.ofMinutes(-1), null);
+    Assert.assertFalse(task.run(context));
+
+    Assert.assertTrue(task.hasWork());
+    Assert.assertEquals(Optional.of("Beneficiaries,CarrierClaims"), context.getCursor());
+    Assert.assertEquals(0, countMaintenanceTimers());
+  }
+
+  /**
+   * Verifies that {@link TableMaintenanceIdleTask} maintains the tables left in its cursor by a
+   * previous run.
+   */
+  @Test
+  public void resumesFromCursor() {
+    Assume.assumeTrue(RifLoader.isDatabasePostgreSql(dataSource));
+
+    TableMaintenanceIdleTask task = new TableMaintenanceIdleTask(appMetrics, 2, executorService);
+    Assert.assertTrue(task.hasWork());
+    IdleTaskContext context = createContext(Duration.ofMinutes(5), "Beneficiaries,CarrierClaims");
+    Assert.assertFalse(task.run(context));
+
+    Assert.assertFalse(task.hasWork());
+    Assert.assertEquals(Optional.empty(), context.getCursor());
+    Assert.assertEquals(2, countMaintenanceTimers());
+  }
+
+  /**
+   * Verifies that {@link TableMaintenanceIdleTask} gives up on a table whose maintenance runs past
+   * the end of the time slice (here, because it's blocked by a lock), rather than holding up the
+   * pipeline until it finishes.
+   *
+   * @throws SQLException (indicates a test error)
+   */
+  @Test
+  public void timesOutAtEndOfTimeSlice() throws SQLException {
+    Assume.assumeTrue(RifLoader.isDatabasePostgreSql(dataSource));
+
+    TableMaintenanceIdleTask task = new TableMaintenanceIdleTask(appMetrics, 2, executorService);
+    task.recordTouchedTables(Arrays.asList("Beneficiaries"));
+    try (Connection lockConnection = dataSource.getConnection();
+        Statement lockStatement = lockConnection.createStatement()) {
+      lockConnection.setAutoCommit(false);
+      lockStatement.execute("LOCK TABLE \"Beneficiaries\" IN ACCESS EXCLUSIVE MODE");
+
+      IdleTaskContext context = createContext(Duration.ofSeconds(2), null);
+      Instant start = Instant.now();
+      Assert.assertFalse(task.run(context));
+      Duration elapsed = Duration.between(start, Instant.now());
+      Assert.assertTrue(elapsed.compareTo(Duration.ofSeconds(30)) < 0);
+      lockConnection.rollback();
+
+      Assert.assertFalse(task.hasWork());
+      Assert.assertEquals(Optional.empty(), context.getCursor());
+      Assert.assertEquals(
+          1,
+          appMetrics
+              .meter(
+                  MetricRegistry.name(TableMaintenanceIdleTask.class.getSimpleName(), "timedOut"))
+              .getCount());
+    }
+  }
+
+  /**
+   * @param timeRemaining how long the time slice should last for
+   * @param cursor the cursor to start from, or <code>null</code> for none
+   * @return a new {@link IdleTaskContext} for the test database
+   */
+  private IdleTaskContext createContext(Duration timeRemaining, String cursor) {
+    return new IdleTaskContext(
+        new IdleTaskScheduler(appMetrics, dataSource),
+        dataSource,
+        Instant.now().plus(timeRemaining),
+        cursor);
+  }
+
+  /** @return the number of tables that have been analyzed or vacuumed, per {@link #appMetrics} */
+  private long countMaintenanceTimers() {
+    String prefix = TableMaintenanceIdleTask.class.getSimpleName() + ".";
+    return appMetrics.getTimers().entrySet().stream()
+        .filter(e -> e.getKey().startsWith(prefix))
+        .mapToLong(e -> e.getValue().getCount())
+        .sum();
+  }
+}
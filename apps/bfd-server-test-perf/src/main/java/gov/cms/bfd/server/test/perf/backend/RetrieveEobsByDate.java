@@ -1,8 +1,10 @@
 package gov.cms.bfd.server.test.perf.backend;
 
+import ca.uhn.fhir.rest.gclient.DateClientParam;
 import gov.cms.bfd.server.test.perf.utils.BenefitIdManager;
 import gov.cms.bfd.server.test.perf.utils.CsvBenefitIdManager;
 import gov.cms.bfd.server.war.stu3.providers.TransformerUtils;
+import java.time.LocalDate;
 import org.apache.jmeter.protocol.java.sampler.JavaSamplerContext;
 import org.hl7.fhir.dstu3.model.Bundle;
 import org.hl7.fhir.dstu3.model.ExplanationOfBenefit;
@@ -33,11 +35,15 @@ public final class RetrieveEobsByDate extends CustomSamplerClient {
     //		{
     //		}
 
-    // TODO - query EOBs for a patient filtering by date
+    // Query the EOBs for a patient, filtered to just the last 90 days of claims.
     client
         .search()
         .forResource(ExplanationOfBenefit.class)
         .where(ExplanationOfBenefit.PATIENT.hasId(TransformerUtils.buildPatientId(bim.nextId())))
+        .and(
+            new DateClientParam("service-date")
+                .afterOrEquals()
+                .day(LocalDate.now().minusDays(90).toString()))
         .returnBundle(Bundle.class)
         .execute();
     // }
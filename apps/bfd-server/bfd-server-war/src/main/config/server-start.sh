@@ -157,7 +157,8 @@ else
 	visualVmArgs=""
 fi
 
-# Launch the server in the background.
+# Launch the server in the background. (Bulk exports are run in small chunks, so that the tests'
+# small sample data sets still span several of them.)
 BFD_PORT="${serverPortHttps}" \
 	BFD_KEYSTORE="${keyStore}" \
 	BFD_TRUSTSTORE="${trustStore}" \
@@ -169,6 +170,7 @@ BFD_PORT="${serverPortHttps}" \
 	"-DbfdServer.db.username=" \
 	"-DbfdServer.db.password=" \
 	"-DbfdServer.db.schema.apply=true" \
+	"-DbfdServer.export.chunkSize=10" \
 	-jar "${serverLauncher}" \
 	>"${serverLog}" 2>&1 \
 	&
@@ -0,0 +1,308 @@
+package gov.cms.bfd.server.war;
+
+import ca.uhn.fhir.rest.api.Constants;
+import gov.cms.bfd.server.war.stu3.providers.BulkExportJob;
+import gov.cms.bfd.server.war.stu3.providers.BulkExportJob.BulkExportOutput;
+import gov.cms.bfd.server.war.stu3.providers.BulkExportJob.Status;
+import gov.cms.bfd.server.war.stu3.providers.BulkExporter;
+import gov.cms.bfd.server.war.stu3.providers.ClaimType;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.hl7.fhir.dstu3.model.ExplanationOfBenefit;
+import org.springframework.web.context.ContextLoaderListener;
+
+/**
+ * Implements the FHIR Bulk Data "<code>$export</code>" kick-off, status, file, and delete requests
+ * (see <a href="https://github.com/smart-on-fhir/fhir-bulk-data-docs">FHIR Bulk Data Access</a>),
+ * on top of the application's {@link BulkExporter}.
+ *
+ * <p>Only the {@link ExplanationOfBenefit} resource type is supported. Rather than the
+ * <code>Group</code>-level export from that spec, the (<code>Patient</code>-level) kick-off request
+ * accepts an optional <code>patient</code> parameter, listing the beneficiaries to export claims
+ * for (at most {@link BulkExporter#MAX_EXPORT_BENEFICIARY_IDS} of them); all claims are exported if
+ * it's omitted.
+ */
+public final class BulkExportServlet extends HttpServlet {
+  private static final long serialVersionUID = 1L;
+
+  /** The path (within the application) of the FHIR server that this servlet extends. */
+  static final String FHIR_PATH = "/v1/fhir";
+
+  /** The servlet path that export kick-off requests are mapped to. */
+  static final String KICK_OFF_PATH = FHIR_PATH + "/Patient/$export";
+
+  /** The servlet path that export status, file, and delete requests are mapped to. */
+  static final String POLL_PATH = FHIR_PATH + "/$export-poll";
+
+  /**
+   * The HTTP status code (which isn't defined by {@link HttpServletResponse}) that kick-off
+   * requests are refused with when too many exports are already running.
+   */
+  static final int SC_TOO_MANY_REQUESTS = 429;
+
+  /** How long (in seconds) clients are asked to wait before retrying a refused kick-off request. */
+  private static final int KICK_OFF_RETRY_AFTER_SECONDS = 60;
+
+  /** The media type of the exported files. */
+  static final String CT_FHIR_NDJSON = "application/fhir+ndjson";
+
+  /** The <code>_outputFormat</code> values that are accepted for {@link #CT_FHIR_NDJSON}. */
+  private static final Set<String> NDJSON_OUTPUT_FORMATS =
+      Collections.unmodifiableSet(
+          new HashSet<>(Arrays.asList(CT_FHIR_NDJSON, "application/ndjson", "ndjson")));
+
+  private transient BulkExporter bulkExporter;
+
+  /** @see javax.servlet.GenericServlet#init() */
+  @Override
+  public void init() throws ServletException {
+    this.bulkExporter =
+        ContextLoaderListener.getCurrentWebApplicationContext().getBean(BulkExporter.class);
+  }
+
+  /**
+   * @see javax.servlet.http.HttpServlet#doGet(javax.servlet.http.HttpServletRequest,
+   *     javax.servlet.http.HttpServletResponse)
+   */
+  @Override
+  protected void doGet(HttpServletRequest request, HttpServletResponse response)
+      throws IOException {
+    if (KICK_OFF_PATH.equals(request.getServletPath())) kickOff(request, response);
+    else poll(request, response);
+  }
+
+  /**
+   * @see javax.servlet.http.HttpServlet#doPost(javax.servlet.http.HttpServletRequest,
+   *     javax.servlet.http.HttpServletResponse)
+   */
+  @Override
+  protected void doPost(HttpServletRequest request, HttpServletResponse response)
+      throws IOException {
+    if (KICK_OFF_PATH.equals(request.getServletPath())) kickOff(request, response);
+    else response.sendError(HttpServletResponse.SC_METHOD_NOT_ALLOWED);
+  }
+
+  /**
+   * @see javax.servlet.http.HttpServlet#doDelete(javax.servlet.http.HttpServletRequest,
+   *     javax.servlet.http.HttpServletResponse)
+   */
+  @Override
+  protected void doDelete(HttpServletRequest request, HttpServletResponse response)
+      throws IOException {
+    String[] pathParts = parsePollPath(request);
+    if (pathParts.length != 1 || !bulkExporter.deleteJob(pathParts[0])) {
+      response.sendError(HttpServletResponse.SC_NOT_FOUND);
+      return;
+    }
+
+    response.setStatus(HttpServletResponse.SC_ACCEPTED);
+  }
+
+  /**
+   * Handles export kick-off requests, which start a new {@link BulkExportJob} and point the client
+   * at its status URL, unless too many exports are already running.
+   *
+   * @param request the {@link HttpServletRequest} to handle
+   * @param response the {@link HttpServletResponse} to write to
+   * @throws IOException Any {@link IOException}s encountered will be bubbled up.
+   */
+  private void kickOff(HttpServletRequest request, HttpServletResponse response)
+      throws IOException {
+    String outputFormat = request.getParameter("_outputFormat");
+    if (outputFormat != null && !NDJSON_OUTPUT_FORMATS.contains(outputFormat)) {
+      response.sendError(
+          HttpServletResponse.SC_BAD_REQUEST, "Unsupported _outputFormat: " + outputFormat);
+      return;
+    }
+    String[] typeValues = request.getParameterValues("_type");
+    if (typeValues != null
+        && !Arrays.stream(typeValues)
+            .flatMap(t -> Arrays.stream(t.split(",")))
+            .allMatch(t -> "ExplanationOfBenefit".equals(t.trim()))) {
+      response.sendError(
+          HttpServletResponse.SC_BAD_REQUEST, "Only ExplanationOfBenefit can be exported.");
+      return;
+    }
+
+    // Patients can be listed as repeated parameters, comma-separated values, or both.
+    String[] patientValues = request.getParameterValues(ExplanationOfBenefit.SP_PATIENT);
+    Optional<Set<String>> beneficiaryIds = Optional.empty();
+    if (patientValues != null)
+      beneficiaryIds =
+          Optional.of(
+              Arrays.stream(patientValues)
+                  .flatMap(p -> Arrays.stream(p.split(",")))
+                  .map(String::trim)
+                  .filter(p -> !p.isEmpty())
+                  .collect(Collectors.toSet()));
+    if (beneficiaryIds.isPresent()
+        && beneficiaryIds.get().size() > BulkExporter.MAX_EXPORT_BENEFICIARY_IDS) {
+      response.sendError(
+          HttpServletResponse.SC_BAD_REQUEST,
+          String.format(
+              "At most %d patient values can be exported at once, but %d were specified.",
+              BulkExporter.MAX_EXPORT_BENEFICIARY_IDS, beneficiaryIds.get().size()));
+      return;
+    }
+    boolean excludeSamhsa = Boolean.parseBoolean(request.getParameter("excludeSAMHSA"));
+
+    StringBuilder requestUrl = new StringBuilder(request.getRequestURL());
+    if (request.getQueryString() != null) requestUrl.append('?').append(request.getQueryString());
+    Optional<BulkExportJob> job =
+        bulkExporter.startExport(requestUrl.toString(), beneficiaryIds, excludeSamhsa);
+    if (!job.isPresent()) {
+      response.setHeader("Retry-After", Integer.toString(KICK_OFF_RETRY_AFTER_SECONDS));
+      response.sendError(
+          SC_TOO_MANY_REQUESTS, "Too many exports are already running. Please try again later.");
+      return;
+    }
+
+    response.setStatus(HttpServletResponse.SC_ACCEPTED);
+    response.setHeader(
+        Constants.HEADER_CONTENT_LOCATION, createPollUrl(request, job.get().getId()));
+  }
+
+  /**
+   * Handles export status and file requests.
+   *
+   * @param request the {@link HttpServletRequest} to handle
+   * @param response the {@link HttpServletResponse} to write to
+   * @throws IOException Any {@link IOException}s encountered will be bubbled up.
+   */
+  private void poll(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    String[] pathParts = parsePollPath(request);
+    Optional<BulkExportJob> job =
+        pathParts.length == 1 || pathParts.length == 2
+            ? bulkExporter.getJob(pathParts[0])
+            : Optional.empty();
+    if (!job.isPresent()) {
+      response.sendError(HttpServletResponse.SC_NOT_FOUND);
+      return;
+    }
+
+    if (pathParts.length == 1) writeStatus(request, response, job.get());
+    else writeFile(response, job.get(), pathParts[1]);
+  }
+
+  /**
+   * @param request the {@link HttpServletRequest} to handle
+   * @param response the {@link HttpServletResponse} to write to
+   * @param job the {@link BulkExportJob} to write the status of
+   * @throws IOException Any {@link IOException}s encountered will be bubbled up.
+   */
+  private static void writeStatus(
+      HttpServletRequest request, HttpServletResponse response, BulkExportJob job)
+      throws IOException {
+    if (job.getStatus() == Status.IN_PROGRESS) {
+      response.setStatus(HttpServletResponse.SC_ACCEPTED);
+      response.setHeader(
+          "X-Progress",
+          String.format(
+              "%d of %d claim types exported",
+              job.getOutputs().size(),
+              ClaimType.values().length));
+      return;
+    }
+    if (job.getStatus() == Status.FAILED) {
+      response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, job.getError().get());
+      return;
+    }
+
+    String pollUrl = createPollUrl(request, job.getId());
+    String outputJson =
+        job.getOutputs().stream()
+            .map(
+                o ->
+                    String.format(
+                        "{\"type\":\"ExplanationOfBenefit\",\"url\":%s,\"count\":%d}",
+                        toJsonString(pollUrl + "/" + o.getFileName()), o.getCount()))
+            .collect(Collectors.joining(","));
+
+    response.setStatus(HttpServletResponse.SC_OK);
+    response.setContentType(Constants.CT_JSON);
+    response.setCharacterEncoding(Constants.CHARSET_NAME_UTF8);
+    try (Writer writer = response.getWriter()) {
+      writer.write(
+          String.format(
+              "{\"transactionTime\":%s,\"request\":%s,\"requiresAccessToken\":false,"
+                  + "\"output\":[%s],\"error\":[]}",
+              toJsonString(job.getTransactionTime().toString()),
+              toJsonString(job.getRequestUrl()),
+              outputJson));
+    }
+  }
+
+  /**
+   * @param response the {@link HttpServletResponse} to write to
+   * @param job the {@link BulkExportJob} that the file is from
+   * @param fileName the {@link BulkExportOutput#getFileName()} of the file to write out
+   * @throws IOException Any {@link IOException}s encountered will be bubbled up.
+   */
+  private static void writeFile(HttpServletResponse response, BulkExportJob job, String fileName)
+      throws IOException {
+    // Only the export's own (complete) files can be requested.
+    Optional<BulkExportOutput> output =
+        job.getOutputs().stream().filter(o -> o.getFileName().equals(fileName)).findAny();
+    if (!output.isPresent()) {
+      response.sendError(HttpServletResponse.SC_NOT_FOUND);
+      return;
+    }
+
+    response.setStatus(HttpServletResponse.SC_OK);
+    response.setContentType(CT_FHIR_NDJSON);
+    response.setCharacterEncoding(Constants.CHARSET_NAME_UTF8);
+    Files.copy(job.getDirectory().resolve(output.get().getFileName()), response.getOutputStream());
+  }
+
+  /**
+   * @param request the {@link HttpServletRequest} being handled
+   * @param jobId the {@link BulkExportJob#getId()} of the export
+   * @return the absolute URL that the status of the specified export can be polled at
+   */
+  private static String createPollUrl(HttpServletRequest request, String jobId) {
+    return String.format(
+        "%s://%s:%d%s%s/%s",
+        request.getScheme(),
+        request.getServerName(),
+        request.getServerPort(),
+        request.getContextPath(),
+        POLL_PATH,
+        jobId);
+  }
+
+  /**
+   * @param request a status, file, or delete {@link HttpServletRequest}
+   * @return the (non-empty) segments of the request's path, after {@link #POLL_PATH}
+   */
+  private static String[] parsePollPath(HttpServletRequest request) {
+    String pathInfo = request.getPathInfo();
+    if (pathInfo == null) return new String[0];
+
+    return Arrays.stream(pathInfo.split("/")).filter(p -> !p.isEmpty()).toArray(String[]::new);
+  }
+
+  /**
+   * @param value the text to encode
+   * @return the specified text, as a JSON string literal
+   */
+  private static String toJsonString(String value) {
+    StringBuilder json = new StringBuilder(value.length() + 2).append('"');
+    for (char c : value.toCharArray()) {
+      if (c == '"' || c == '\\') json.append('\\').append(c);
+      else if (c < 0x20) json.append(String.format("\\u%04x", (int) c));
+      else json.append(c);
+    }
+    return json.append('"').toString();
+  }
+}
@@ -59,6 +59,15 @@ public final class ServerInitializer implements WebApplicationInitializer {
     cxfServletReg.setLoadOnStartup(1);
     cxfServletReg.addMapping("/v1/fhir/*");
 
+    /*
+     * Register the bulk export servlet, whose more specific mappings take precedence over the
+     * STU3 servlet's for those paths.
+     */
+    ServletRegistration.Dynamic bulkExportServletReg =
+        servletContext.addServlet("bulkExportServlet", new BulkExportServlet());
+    bulkExportServletReg.addMapping(
+        BulkExportServlet.KICK_OFF_PATH, BulkExportServlet.POLL_PATH + "/*");
+
     /*
      * Register the MetricRegistry and HealthCheckRegistry into the ServletContext,
      * so that InstrumentedFilter and AdminServlet (configured in web.xml) can work.
@@ -10,12 +10,16 @@ import com.codahale.metrics.jvm.GarbageCollectorMetricSet;
 import com.codahale.metrics.jvm.MemoryUsageGaugeSet;
 import com.justdavis.karl.misc.exceptions.BadCodeMonkeyException;
 import com.zaxxer.hikari.HikariDataSource;
+import gov.cms.bfd.model.rif.samhsa.SamhsaClaimMatcher;
 import gov.cms.bfd.model.rif.schema.DatabaseSchemaManager;
 import gov.cms.bfd.model.rif.schema.DatabaseTestHelper;
 import gov.cms.bfd.model.rif.schema.DatabaseTestHelper.DataSourceComponents;
 import gov.cms.bfd.server.war.stu3.providers.CoverageResourceProvider;
 import gov.cms.bfd.server.war.stu3.providers.ExplanationOfBenefitResourceProvider;
+import gov.cms.bfd.server.war.stu3.providers.ExplanationOfBenefitStreamingInterceptor;
+import gov.cms.bfd.server.war.stu3.providers.LoadGenerationETagInterceptor;
 import gov.cms.bfd.server.war.stu3.providers.PatientResourceProvider;
+import gov.cms.bfd.server.war.stu3.providers.ResponseCache;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.UncheckedIOException;
@@ -25,6 +29,9 @@ import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
 import javax.persistence.EntityManager;
 import javax.persistence.EntityManagerFactory;
 import javax.persistence.PersistenceContext;
@@ -35,6 +42,7 @@ import net.ttddyy.dsproxy.support.ProxyDataSourceBuilder;
 import org.hibernate.cfg.AvailableSettings;
 import org.hibernate.jpa.HibernatePersistenceProvider;
 import org.hibernate.tool.schema.Action;
+import org.hl7.fhir.dstu3.model.ExplanationOfBenefit;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.beans.factory.config.BeanPostProcessor;
 import org.springframework.context.annotation.Bean;
@@ -53,6 +61,14 @@ public class SpringConfiguration {
   public static final String PROP_DB_PASSWORD = "bfdServer.db.password";
   public static final String PROP_DB_CONNECTIONS_MAX = "bfdServer.db.connections.max";
   public static final String PROP_DB_SCHEMA_APPLY = "bfdServer.db.schema.apply";
+  public static final String PROP_CLAIM_QUERY_PARALLELISM = "bfdServer.claims.query.parallelism";
+  public static final String PROP_EXPORT_DIR = "bfdServer.export.dir";
+  public static final String PROP_EXPORT_CHUNK_SIZE = "bfdServer.export.chunkSize";
+  public static final String PROP_EXPORT_MAX_ACTIVE = "bfdServer.export.maxActive";
+  public static final String PROP_EXPORT_EXPIRY_HOURS = "bfdServer.export.expiryHours";
+  public static final String PROP_EXPORT_TRANSFORM_THREADS = "bfdServer.export.transformThreads";
+  public static final String PROP_RESPONSE_CACHE_MAX_RESOURCES =
+      "bfdServer.responseCache.maxResources";
   public static final int TRANSACTION_TIMEOUT = 30;
 
   /**
@@ -61,6 +77,30 @@ public class SpringConfiguration {
    */
   static final String BLUEBUTTON_STU3_RESOURCE_PROVIDERS = "bluebuttonStu3ResourceProviders";
 
+  /**
+   * The {@link Bean#name()} for the {@link ExecutorService} that the application runs its
+   * concurrent per-claim-type queries on.
+   */
+  public static final String CLAIM_QUERY_EXECUTOR = "claimQueryExecutor";
+
+  /**
+   * The {@link Bean#name()} for the {@link ForkJoinPool} that the application splits the
+   * transformation of large claim lists across.
+   */
+  public static final String CLAIM_TRANSFORM_POOL = "claimTransformPool";
+
+  /**
+   * The {@link Bean#name()} for the {@link ExecutorService} that the application runs its bulk
+   * exports on.
+   */
+  public static final String BULK_EXPORT_EXECUTOR = "bulkExportExecutor";
+
+  /**
+   * The {@link Bean#name()} for the {@link ForkJoinPool} that the application splits the
+   * transformation of its bulk exports' claims across.
+   */
+  public static final String BULK_EXPORT_TRANSFORM_POOL = "bulkExportTransformPool";
+
   /**
    * Set this to <code>true</code> to have Hibernate log a ton of info on the SQL statements being
    * run and each session's performance. Be sure to also adjust the related logging levels in
@@ -190,15 +230,11 @@ public class SpringConfiguration {
   }
 
   /**
-   * @param poolingDataSource the {@link HikariDataSource} to be configured, which must already have
-   *     its basic connection properties (URL, username, password) configured
    * @param connectionsMaxText the maximum number of database connections to use
-   * @param metricRegistry the {@link MetricRegistry} for the application
+   * @return the maximum number of database connections to use, or a reasonable default if that
+   *     wasn't specified (or wasn't valid)
    */
-  private static void configureDataSource(
-      HikariDataSource poolingDataSource,
-      String connectionsMaxText,
-      MetricRegistry metricRegistry) {
+  private static int parseConnectionsMax(String connectionsMaxText) {
     int connectionsMax;
     try {
       connectionsMax = Integer.parseInt(connectionsMaxText);
@@ -210,7 +246,20 @@ public class SpringConfiguration {
       connectionsMax = Runtime.getRuntime().availableProcessors() * 5;
     }
 
-    poolingDataSource.setMaximumPoolSize(connectionsMax);
+    return connectionsMax;
+  }
+
+  /**
+   * @param poolingDataSource the {@link HikariDataSource} to be configured, which must already have
+   *     its basic connection properties (URL, username, password) configured
+   * @param connectionsMaxText the maximum number of database connections to use
+   * @param metricRegistry the {@link MetricRegistry} for the application
+   */
+  private static void configureDataSource(
+      HikariDataSource poolingDataSource,
+      String connectionsMaxText,
+      MetricRegistry metricRegistry) {
+    poolingDataSource.setMaximumPoolSize(parseConnectionsMax(connectionsMaxText));
 
     /*
      * FIXME Temporary workaround for CBBI-357: send Postgres' query planner a
@@ -324,6 +373,54 @@ public class SpringConfiguration {
     return stu3ResourceProviders;
   }
 
+  /**
+   * @param connectionsMaxText the maximum number of database connections to use
+   * @return the {@link ExecutorService} that the application's concurrent per-claim-type queries
+   *     will be run on, which is sized such that those queries can only ever use up half of the
+   *     database connection pool
+   */
+  @Bean(name = CLAIM_QUERY_EXECUTOR, destroyMethod = "shutdown")
+  public ExecutorService claimQueryExecutor(
+      @Value("${" + PROP_DB_CONNECTIONS_MAX + ":-1}") String connectionsMaxText) {
+    int claimQueryThreads = Math.max(1, parseConnectionsMax(connectionsMaxText) / 2);
+    return Executors.newFixedThreadPool(claimQueryThreads);
+  }
+
+  /**
+   * @return the {@link ForkJoinPool} that the application's large claim lists will be transformed
+   *     on, which is shared across all requests and has one thread per CPU
+   */
+  @Bean(name = CLAIM_TRANSFORM_POOL, destroyMethod = "shutdown")
+  public ForkJoinPool claimTransformPool() {
+    return new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * @return the {@link ExecutorService} that the application's bulk exports will be run on, which
+   *     has just the one thread, as each export already splits its transformation work across the
+   *     {@link #bulkExportTransformPool(String)}
+   */
+  @Bean(name = BULK_EXPORT_EXECUTOR, destroyMethod = "shutdownNow")
+  public ExecutorService bulkExportExecutor() {
+    return Executors.newSingleThreadExecutor();
+  }
+
+  /**
+   * @param transformThreadsText the number of threads to transform bulk exports' claims on, or
+   *     <code>-1</code> for half as many as there are CPUs
+   * @return the {@link ForkJoinPool} that the application's bulk exports will be transformed on,
+   *     which is kept separate from the {@link #claimTransformPool()}, so that a running export can
+   *     only ever use some of the CPUs, and never holds up the interactive requests' transformations
+   */
+  @Bean(name = BULK_EXPORT_TRANSFORM_POOL, destroyMethod = "shutdown")
+  public ForkJoinPool bulkExportTransformPool(
+      @Value("${" + PROP_EXPORT_TRANSFORM_THREADS + ":-1}") String transformThreadsText) {
+    int transformThreads = Integer.parseInt(transformThreadsText);
+    if (transformThreads < 1)
+      transformThreads = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+    return new ForkJoinPool(transformThreads);
+  }
+
   /**
    * @return the {@link MetricRegistry} for the application, which can be used to collect statistics
    *     on the application's performance
@@ -350,6 +447,15 @@ public class SpringConfiguration {
     return healthCheckRegistry;
   }
 
+  /**
+   * @return the {@link SamhsaClaimMatcher} for the application, which is used to filter out
+   *     SAMHSA-related claims that the ETL pipeline hasn't flagged yet
+   */
+  @Bean
+  public SamhsaClaimMatcher samhsaClaimMatcher() {
+    return new SamhsaClaimMatcher();
+  }
+
   /**
    * @return an {@link IServerInterceptor} that will add some pretty syntax highlighting in
    *     responses when a browser is detected
@@ -359,4 +465,25 @@ public class SpringConfiguration {
     ResponseHighlighterInterceptor retVal = new ResponseHighlighterInterceptor();
     return retVal;
   }
+
+  /**
+   * @param responseCache the application's {@link ResponseCache} bean
+   * @return an {@link IServerInterceptor} that will answer conditional requests for unchanged
+   *     resources with a <code>304 Not Modified</code>
+   */
+  @Bean
+  public IServerInterceptor loadGenerationETagInterceptor(ResponseCache responseCache) {
+    return new LoadGenerationETagInterceptor(responseCache);
+  }
+
+  /**
+   * @param eobResourceProvider the application's {@link ExplanationOfBenefitResourceProvider} bean
+   * @return an {@link IServerInterceptor} that will stream the responses to unpaged JSON {@link
+   *     ExplanationOfBenefit} searches, rather than building them up in memory
+   */
+  @Bean
+  public IServerInterceptor eobStreamingInterceptor(
+      ExplanationOfBenefitResourceProvider eobResourceProvider) {
+    return new ExplanationOfBenefitStreamingInterceptor(eobResourceProvider);
+  }
 }
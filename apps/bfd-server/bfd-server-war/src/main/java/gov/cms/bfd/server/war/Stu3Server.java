@@ -13,13 +13,13 @@ import java.io.InputStream;
 import java.io.UncheckedIOException;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collection;
 import java.util.List;
 import java.util.Properties;
 import javax.servlet.Servlet;
 import javax.servlet.ServletException;
 import org.hl7.fhir.dstu3.hapi.rest.server.ServerCapabilityStatementProvider;
 import org.hl7.fhir.dstu3.model.CapabilityStatement;
+import org.springframework.core.annotation.AnnotationAwareOrderComparator;
 import org.springframework.web.context.ContextLoaderListener;
 import org.springframework.web.context.WebApplicationContext;
 import org.springframework.web.cors.CorsConfiguration;
@@ -101,10 +101,13 @@ public class Stu3Server extends RestfulServer {
 
     /*
      * Register the HAPI server interceptors that have been configured in
-     * Spring.
+     * Spring. HAPI runs them in the order that they're registered, and
+     * Spring doesn't guarantee any particular order for them, so they're
+     * sorted by their @Order annotations (if any).
      */
-    Collection<IServerInterceptor> hapiInterceptors =
-        springContext.getBeansOfType(IServerInterceptor.class).values();
+    List<IServerInterceptor> hapiInterceptors =
+        new ArrayList<>(springContext.getBeansOfType(IServerInterceptor.class).values());
+    AnnotationAwareOrderComparator.sort(hapiInterceptors);
     for (IServerInterceptor hapiInterceptor : hapiInterceptors) {
       this.registerInterceptor(hapiInterceptor);
     }
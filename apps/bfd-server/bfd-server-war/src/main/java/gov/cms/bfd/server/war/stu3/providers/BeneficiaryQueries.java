@@ -0,0 +1,186 @@
+package gov.cms.bfd.server.war.stu3.providers;
+
+import ca.uhn.fhir.rest.param.DateRangeParam;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import gov.cms.bfd.model.rif.Beneficiary;
+import gov.cms.bfd.model.rif.Beneficiary_;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import javax.persistence.EntityManager;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.JoinType;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import javax.persistence.metamodel.PluralAttribute;
+
+/**
+ * Contains the {@link Beneficiary} queries that are shared by the {@link PatientResourceProvider}
+ * and {@link CoverageResourceProvider} searches.
+ */
+final class BeneficiaryQueries {
+  /** Not instantiable: this class only has static methods. */
+  private BeneficiaryQueries() {}
+
+  /**
+   * @param builder the {@link CriteriaBuilder} to use
+   * @param root the {@link Beneficiary} {@link Root} of the query being built
+   * @param beneficiaryIds the {@link Beneficiary#getBeneficiaryId()} values to match
+   * @param lastUpdated the {@link DateRangeParam} that the {@link Beneficiary}s' last update times
+   *     must fall in, or <code>null</code> if it doesn't matter
+   * @return the {@link Predicate}s that select the specified {@link Beneficiary}s
+   */
+  static Predicate[] createBeneficiaryIdsPredicates(
+      CriteriaBuilder builder,
+      Root<Beneficiary> root,
+      List<String> beneficiaryIds,
+      DateRangeParam lastUpdated) {
+    return new Predicate[] {
+      root.get(Beneficiary_.beneficiaryId).in(beneficiaryIds),
+      TransformerUtils.createLastUpdatedPredicate(
+          builder, root.get(Beneficiary_.lastUpdated), lastUpdated)
+    };
+  }
+
+  /**
+   * @param entityManager the {@link EntityManager} to query with
+   * @param metricRegistry the {@link MetricRegistry} to time the query in
+   * @param metricPrefix the prefix for the query's timer name, e.g. the calling resource provider's
+   *     simple class name
+   * @param beneficiaryIds the {@link Beneficiary#getBeneficiaryId()} values to match
+   * @param lastUpdated the {@link DateRangeParam} that the {@link Beneficiary}s' last update times
+   *     must fall in, or <code>null</code> if it doesn't matter
+   * @return the number of matching {@link Beneficiary}s
+   */
+  static int countBeneficiariesByIds(
+      EntityManager entityManager,
+      MetricRegistry metricRegistry,
+      String metricPrefix,
+      List<String> beneficiaryIds,
+      DateRangeParam lastUpdated) {
+    CriteriaBuilder builder = entityManager.getCriteriaBuilder();
+    CriteriaQuery<Long> criteria = builder.createQuery(Long.class);
+    Root<Beneficiary> root = criteria.from(Beneficiary.class);
+    criteria.select(builder.count(root));
+    criteria.where(createBeneficiaryIdsPredicates(builder, root, beneficiaryIds, lastUpdated));
+
+    Long beneficiaryCount = null;
+    Long beneCountByIdsQueryNanoSeconds = null;
+    Timer.Context timerBeneQuery =
+        metricRegistry
+            .timer(MetricRegistry.name(metricPrefix, "query", "bene_count_by_ids"))
+            .time();
+    try {
+      beneficiaryCount = entityManager.createQuery(criteria).getSingleResult();
+    } finally {
+      beneCountByIdsQueryNanoSeconds = timerBeneQuery.stop();
+      TransformerUtils.recordQueryInMdc("bene_count_by_ids", beneCountByIdsQueryNanoSeconds, 1);
+    }
+
+    return beneficiaryCount.intValue();
+  }
+
+  /**
+   * @param entityManager the {@link EntityManager} to query with
+   * @param metricRegistry the {@link MetricRegistry} to time the query in
+   * @param metricPrefix the prefix for the query's timer name, e.g. the calling resource provider's
+   *     simple class name
+   * @param beneficiaryIds the {@link Beneficiary#getBeneficiaryId()} values to match
+   * @param lastUpdated the {@link DateRangeParam} that the {@link Beneficiary}s' last update times
+   *     must fall in, or <code>null</code> if it doesn't matter
+   * @return the {@link Beneficiary#getBeneficiaryId()}s of the matching {@link Beneficiary}s, in
+   *     the same order as the specified IDs, so that they can be paged before any of the {@link
+   *     Beneficiary}s are loaded
+   */
+  static List<String> findBeneficiaryIdsByIds(
+      EntityManager entityManager,
+      MetricRegistry metricRegistry,
+      String metricPrefix,
+      List<String> beneficiaryIds,
+      DateRangeParam lastUpdated) {
+    CriteriaBuilder builder = entityManager.getCriteriaBuilder();
+    CriteriaQuery<String> criteria = builder.createQuery(String.class);
+    Root<Beneficiary> root = criteria.from(Beneficiary.class);
+    criteria.select(root.get(Beneficiary_.beneficiaryId));
+    criteria.where(createBeneficiaryIdsPredicates(builder, root, beneficiaryIds, lastUpdated));
+
+    List<String> matchingBeneficiaryIds = null;
+    Long beneIdsByIdsQueryNanoSeconds = null;
+    Timer.Context timerBeneQuery =
+        metricRegistry
+            .timer(MetricRegistry.name(metricPrefix, "query", "bene_ids_by_ids"))
+            .time();
+    try {
+      matchingBeneficiaryIds = entityManager.createQuery(criteria).getResultList();
+    } finally {
+      beneIdsByIdsQueryNanoSeconds = timerBeneQuery.stop();
+      TransformerUtils.recordQueryInMdc(
+          "bene_ids_by_ids",
+          beneIdsByIdsQueryNanoSeconds,
+          matchingBeneficiaryIds == null ? 0 : matchingBeneficiaryIds.size());
+    }
+
+    Set<String> matchingBeneficiaryIdSet = new HashSet<>(matchingBeneficiaryIds);
+    return beneficiaryIds.stream()
+        .filter(matchingBeneficiaryIdSet::contains)
+        .collect(Collectors.toList());
+  }
+
+  /**
+   * @param entityManager the {@link EntityManager} to query with
+   * @param metricRegistry the {@link MetricRegistry} to time the query in
+   * @param metricPrefix the prefix for the query's timer name, e.g. the calling resource provider's
+   *     simple class name
+   * @param mdcQueryId the ID to record the query in the MDC under, e.g. <code>
+   *     "benes_by_ids.include_"</code>
+   * @param beneficiaryIds the {@link Beneficiary#getBeneficiaryId()} values to load, e.g. as
+   *     returned by {@link #findBeneficiaryIdsByIds(EntityManager, MetricRegistry, String, List,
+   *     DateRangeParam)}
+   * @param fetchAttributes the {@link Beneficiary} collections to load along with them
+   * @return the specified {@link Beneficiary}s, in the same order as the specified IDs
+   */
+  static List<Beneficiary> findBeneficiariesByIds(
+      EntityManager entityManager,
+      MetricRegistry metricRegistry,
+      String metricPrefix,
+      String mdcQueryId,
+      List<String> beneficiaryIds,
+      List<PluralAttribute<Beneficiary, ?, ?>> fetchAttributes) {
+    if (beneficiaryIds.isEmpty()) return new ArrayList<>();
+
+    CriteriaBuilder builder = entityManager.getCriteriaBuilder();
+    CriteriaQuery<Beneficiary> criteria = builder.createQuery(Beneficiary.class);
+    Root<Beneficiary> root = criteria.from(Beneficiary.class);
+    for (PluralAttribute<Beneficiary, ?, ?> fetchAttribute : fetchAttributes)
+      root.fetch(fetchAttribute, JoinType.LEFT);
+    criteria.select(root).distinct(true);
+    criteria.where(root.get(Beneficiary_.beneficiaryId).in(beneficiaryIds));
+
+    List<Beneficiary> beneficiaries = null;
+    Long benesByIdsQueryNanoSeconds = null;
+    Timer.Context timerBeneQuery =
+        metricRegistry.timer(MetricRegistry.name(metricPrefix, "query", "benes_by_ids")).time();
+    try {
+      beneficiaries = entityManager.createQuery(criteria).getResultList();
+    } finally {
+      benesByIdsQueryNanoSeconds = timerBeneQuery.stop();
+      TransformerUtils.recordQueryInMdc(
+          mdcQueryId,
+          benesByIdsQueryNanoSeconds,
+          beneficiaries == null ? 0 : beneficiaries.size());
+    }
+
+    Map<String, Integer> beneficiaryIdIndexes = new HashMap<>();
+    for (int i = 0; i < beneficiaryIds.size(); i++)
+      beneficiaryIdIndexes.put(beneficiaryIds.get(i), i);
+    beneficiaries.sort(Comparator.comparing(b -> beneficiaryIdIndexes.get(b.getBeneficiaryId())));
+    return beneficiaries;
+  }
+}
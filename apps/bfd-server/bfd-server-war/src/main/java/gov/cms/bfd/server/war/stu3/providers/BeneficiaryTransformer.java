@@ -50,6 +50,7 @@ final class BeneficiaryTransformer {
     Patient patient = new Patient();
 
     patient.setId(beneficiary.getBeneficiaryId());
+    TransformerUtils.setLastUpdated(patient, beneficiary.getLastUpdated());
     patient.addIdentifier(
         TransformerUtils.createIdentifier(
             CcwCodebookVariable.BENE_ID, beneficiary.getBeneficiaryId()));
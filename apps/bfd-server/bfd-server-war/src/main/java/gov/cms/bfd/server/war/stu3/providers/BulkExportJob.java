@@ -0,0 +1,206 @@
+package gov.cms.bfd.server.war.stu3.providers;
+
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Tracks a single bulk export of claims, as started by {@link BulkExporter#startExport(String,
+ * Optional, boolean)}. Each export produces one NDJSON file of {@link
+ * org.hl7.fhir.dstu3.model.ExplanationOfBenefit}s per {@link ClaimType}.
+ */
+public final class BulkExportJob {
+  /** Enumerates the states that a {@link BulkExportJob} can be in. */
+  public enum Status {
+    IN_PROGRESS,
+
+    COMPLETE,
+
+    FAILED;
+  }
+
+  private final String id;
+  private final String requestUrl;
+  private final Instant transactionTime;
+  private final Optional<Set<String>> beneficiaryIds;
+  private final Path directory;
+  private final List<BulkExportOutput> outputs;
+  private volatile Status status;
+  private volatile String error;
+  private volatile Instant finishTime;
+
+  /**
+   * Constructs a new {@link BulkExportJob}, which is {@link Status#IN_PROGRESS}.
+   *
+   * @param id the value to use for {@link #getId()}
+   * @param requestUrl the value to use for {@link #getRequestUrl()}
+   * @param transactionTime the value to use for {@link #getTransactionTime()}
+   * @param beneficiaryIds the value to use for {@link #getBeneficiaryIds()}
+   * @param directory the value to use for {@link #getDirectory()}
+   */
+  BulkExportJob(
+      String id,
+      String requestUrl,
+      Instant transactionTime,
+      Optional<Set<String>> beneficiaryIds,
+      Path directory) {
+    this(
+        id,
+        requestUrl,
+        transactionTime,
+        beneficiaryIds,
+        directory,
+        Status.IN_PROGRESS,
+        Collections.emptyList(),
+        Optional.empty(),
+        Optional.empty());
+  }
+
+  /**
+   * Constructs a {@link BulkExportJob} that was saved earlier, possibly by another node.
+   *
+   * @param id the value to use for {@link #getId()}
+   * @param requestUrl the value to use for {@link #getRequestUrl()}
+   * @param transactionTime the value to use for {@link #getTransactionTime()}
+   * @param beneficiaryIds the value to use for {@link #getBeneficiaryIds()}
+   * @param directory the value to use for {@link #getDirectory()}
+   * @param status the value to use for {@link #getStatus()}
+   * @param outputs the value to use for {@link #getOutputs()}
+   * @param error the value to use for {@link #getError()}
+   * @param finishTime the value to use for {@link #getFinishTime()}
+   */
+  BulkExportJob(
+      String id,
+      String requestUrl,
+      Instant transactionTime,
+      Optional<Set<String>> beneficiaryIds,
+      Path directory,
+      Status status,
+      List<BulkExportOutput> outputs,
+      Optional<String> error,
+      Optional<Instant> finishTime) {
+    this.id = id;
+    this.requestUrl = requestUrl;
+    this.transactionTime = transactionTime;
+    this.beneficiaryIds = beneficiaryIds;
+    this.directory = directory;
+    this.outputs = new CopyOnWriteArrayList<>(outputs);
+    this.status = status;
+    this.error = error.orElse(null);
+    this.finishTime = finishTime.orElse(null);
+  }
+
+  /** @return the unique ID of this {@link BulkExportJob} */
+  public String getId() {
+    return id;
+  }
+
+  /** @return the full URL of the request that started this {@link BulkExportJob} */
+  public String getRequestUrl() {
+    return requestUrl;
+  }
+
+  /**
+   * @return when this {@link BulkExportJob} was started: it won't include any claims loaded after
+   *     that
+   */
+  public Instant getTransactionTime() {
+    return transactionTime;
+  }
+
+  /**
+   * @return the {@link gov.cms.bfd.model.rif.Beneficiary#getBeneficiaryId()}s of the beneficiaries
+   *     whose claims are being exported, or {@link Optional#empty()} if all of them are
+   */
+  public Optional<Set<String>> getBeneficiaryIds() {
+    return beneficiaryIds;
+  }
+
+  /** @return the directory that this {@link BulkExportJob}'s NDJSON files are written to */
+  public Path getDirectory() {
+    return directory;
+  }
+
+  /** @return the {@link BulkExportOutput}s that have been completely written so far */
+  public List<BulkExportOutput> getOutputs() {
+    return Collections.unmodifiableList(outputs);
+  }
+
+  /** @return the current {@link Status} of this {@link BulkExportJob} */
+  public Status getStatus() {
+    return status;
+  }
+
+  /**
+   * @return a description of the error that this {@link BulkExportJob} failed with, if its {@link
+   *     #getStatus()} is {@link Status#FAILED}
+   */
+  public Optional<String> getError() {
+    return Optional.ofNullable(error);
+  }
+
+  /**
+   * @return when this {@link BulkExportJob} completed or failed, or {@link Optional#empty()} if
+   *     it's still {@link Status#IN_PROGRESS}
+   */
+  public Optional<Instant> getFinishTime() {
+    return Optional.ofNullable(finishTime);
+  }
+
+  /** @param output a {@link BulkExportOutput} that has been completely written */
+  void addOutput(BulkExportOutput output) {
+    outputs.add(output);
+  }
+
+  /** Marks this {@link BulkExportJob} as {@link Status#COMPLETE}. */
+  void complete() {
+    this.finishTime = Instant.now();
+    this.status = Status.COMPLETE;
+  }
+
+  /** @param error a description of the error that this {@link BulkExportJob} failed with */
+  void fail(String error) {
+    this.error = error;
+    this.finishTime = Instant.now();
+    this.status = Status.FAILED;
+  }
+
+  /** Describes one of the NDJSON files produced by a {@link BulkExportJob}. */
+  public static final class BulkExportOutput {
+    private final ClaimType claimType;
+    private final String fileName;
+    private final int count;
+
+    /**
+     * Constructs a new {@link BulkExportOutput}.
+     *
+     * @param claimType the value to use for {@link #getClaimType()}
+     * @param fileName the value to use for {@link #getFileName()}
+     * @param count the value to use for {@link #getCount()}
+     */
+    BulkExportOutput(ClaimType claimType, String fileName, int count) {
+      this.claimType = claimType;
+      this.fileName = fileName;
+      this.count = count;
+    }
+
+    /** @return the {@link ClaimType} of the claims in the file */
+    public ClaimType getClaimType() {
+      return claimType;
+    }
+
+    /** @return the name of the file, within its {@link BulkExportJob#getDirectory()} */
+    public String getFileName() {
+      return fileName;
+    }
+
+    /** @return the number of resources (i.e. lines) in the file */
+    public int getCount() {
+      return count;
+    }
+  }
+}
@@ -0,0 +1,665 @@
+package gov.cms.bfd.server.war.stu3.providers;
+
+import ca.uhn.fhir.context.FhirContext;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import gov.cms.bfd.model.rif.samhsa.SamhsaClaimMatcher;
+import gov.cms.bfd.server.war.SpringConfiguration;
+import gov.cms.bfd.server.war.stu3.providers.BulkExportJob.BulkExportOutput;
+import gov.cms.bfd.server.war.stu3.providers.BulkExportJob.Status;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.PersistenceUnit;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.jpa.TypedParameterValue;
+import org.hibernate.query.Query;
+import org.hibernate.type.StandardBasicTypes;
+import org.hl7.fhir.dstu3.model.ExplanationOfBenefit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Runs bulk exports of claims, as {@link ExplanationOfBenefit} NDJSON files, in the background.
+ * Each export reads every {@link ClaimType}'s claims from a database cursor, one chunk at a time,
+ * transforms and encodes each chunk in parallel, and appends it to that {@link ClaimType}'s file.
+ * Only one chunk per export is ever held in memory, regardless of how many claims are exported.
+ *
+ * <p>The {@link BulkExportJob}s are tracked in the database (in <code>BulkExportJobs</code>), and
+ * their files are written to the configured export directory, which must be storage that's shared
+ * by all of the server's nodes: any node can report on, serve the files of, or delete an export,
+ * no matter which node is running it. Only a limited number of exports can be running (or waiting
+ * to run) on each node at once, and finished exports (and their files) are deleted once they
+ * expire. Exports whose nodes stop running them (e.g. because they were restarted) are failed once
+ * they've gone {@link #ABANDONED_EXPORT_TIMEOUT} without making any progress.
+ */
+@Component
+public final class BulkExporter {
+  private static final Logger LOGGER = LoggerFactory.getLogger(BulkExporter.class);
+
+  /**
+   * The default number of claims that are read from each database cursor, and then transformed in
+   * parallel, at a time.
+   */
+  static final int DEFAULT_EXPORT_CHUNK_SIZE = 1000;
+
+  /** The extension used for the NDJSON files that exports are written to. */
+  static final String NDJSON_EXTENSION = ".ndjson";
+
+  /**
+   * The maximum number of beneficiaries that an export can be limited to, as they all end up in a
+   * single <code>IN (...)</code> query.
+   */
+  public static final int MAX_EXPORT_BENEFICIARY_IDS = TransformerUtils.MAX_SEARCH_IDS;
+
+  /**
+   * How long a running export can go without making any progress (i.e. finishing a chunk) before
+   * it's assumed that the node running it has gone away, and the export is failed.
+   */
+  static final Duration ABANDONED_EXPORT_TIMEOUT = Duration.ofHours(1);
+
+  private final FhirContext fhirContext;
+  private final AtomicInteger activeExports;
+  private final Set<String> queuedJobIds;
+  private EntityManagerFactory entityManagerFactory;
+  private MetricRegistry metricRegistry;
+  private SamhsaClaimMatcher samhsaMatcher;
+  private ExecutorService bulkExportExecutor;
+  private ForkJoinPool bulkExportTransformPool;
+  private Path exportDirectory;
+  private int exportChunkSize;
+  private int maxActiveExports;
+  private Duration exportExpiry;
+
+  /** Constructs a new {@link BulkExporter}. */
+  public BulkExporter() {
+    this.fhirContext = FhirContext.forDstu3();
+    this.activeExports = new AtomicInteger(0);
+    this.queuedJobIds = ConcurrentHashMap.newKeySet();
+  }
+
+  /**
+   * @param entityManagerFactory the JPA {@link EntityManagerFactory} for the application's
+   *     database, used to create an {@link EntityManager} for each export, and to track the exports
+   */
+  @PersistenceUnit
+  public void setEntityManagerFactory(EntityManagerFactory entityManagerFactory) {
+    this.entityManagerFactory = entityManagerFactory;
+  }
+
+  /** @param metricRegistry the {@link MetricRegistry} to use */
+  @Inject
+  public void setMetricRegistry(MetricRegistry metricRegistry) {
+    this.metricRegistry = metricRegistry;
+  }
+
+  /** @param samhsaMatcher the {@link SamhsaClaimMatcher} to use */
+  @Inject
+  public void setSamhsaMatcher(SamhsaClaimMatcher samhsaMatcher) {
+    this.samhsaMatcher = samhsaMatcher;
+  }
+
+  /** @param bulkExportExecutor the {@link ExecutorService} to run exports on */
+  @Inject
+  public void setBulkExportExecutor(
+      @Named(SpringConfiguration.BULK_EXPORT_EXECUTOR) ExecutorService bulkExportExecutor) {
+    this.bulkExportExecutor = bulkExportExecutor;
+  }
+
+  /**
+   * @param bulkExportTransformPool the {@link ForkJoinPool} to transform each chunk of claims on
+   */
+  @Inject
+  public void setBulkExportTransformPool(
+      @Named(SpringConfiguration.BULK_EXPORT_TRANSFORM_POOL)
+          ForkJoinPool bulkExportTransformPool) {
+    this.bulkExportTransformPool = bulkExportTransformPool;
+  }
+
+  /**
+   * @param exportDirectoryText the directory that each export's NDJSON files will be written to a
+   *     subdirectory of, which must be shared by all of the server's nodes
+   */
+  @Value("${" + SpringConfiguration.PROP_EXPORT_DIR + ":${java.io.tmpdir}/bfd-export}")
+  public void setExportDirectory(String exportDirectoryText) {
+    this.exportDirectory = Paths.get(exportDirectoryText);
+  }
+
+  /**
+   * @param exportChunkSize the number of claims that are read from each database cursor, and then
+   *     transformed in parallel, at a time
+   */
+  @Value("${" + SpringConfiguration.PROP_EXPORT_CHUNK_SIZE + ":" + DEFAULT_EXPORT_CHUNK_SIZE + "}")
+  public void setExportChunkSize(int exportChunkSize) {
+    if (exportChunkSize < 1) throw new IllegalArgumentException();
+    this.exportChunkSize = exportChunkSize;
+  }
+
+  /**
+   * @param maxActiveExports the maximum number of exports that can be running (or waiting to run)
+   *     on this node at once: any more will be refused by {@link #startExport(String, Optional,
+   *     boolean)}
+   */
+  @Value("${" + SpringConfiguration.PROP_EXPORT_MAX_ACTIVE + ":4}")
+  public void setMaxActiveExports(int maxActiveExports) {
+    this.maxActiveExports = maxActiveExports;
+  }
+
+  /**
+   * @param exportExpiryHours how long (in hours) each export is kept for after it finishes, before
+   *     it's deleted
+   */
+  @Value("${" + SpringConfiguration.PROP_EXPORT_EXPIRY_HOURS + ":24}")
+  public void setExportExpiryHours(long exportExpiryHours) {
+    if (exportExpiryHours < 0) throw new IllegalArgumentException();
+    this.exportExpiry = Duration.ofHours(exportExpiryHours);
+  }
+
+  /**
+   * Starts a new export, which will run in the background.
+   *
+   * @param requestUrl the full URL of the request that asked for the export
+   * @param beneficiaryIds the {@link gov.cms.bfd.model.rif.Beneficiary#getBeneficiaryId()}s of the
+   *     beneficiaries whose claims should be exported (at most {@link
+   *     #MAX_EXPORT_BENEFICIARY_IDS} of them), or {@link Optional#empty()} to export all claims
+   * @param excludeSamhsa if <code>true</code>, SAMHSA-related claims will be left out of the export
+   * @return the {@link BulkExportJob} for the export, or {@link Optional#empty()} if it wasn't
+   *     started because too many other exports are already running (or waiting to run)
+   */
+  public Optional<BulkExportJob> startExport(
+      String requestUrl, Optional<Set<String>> beneficiaryIds, boolean excludeSamhsa) {
+    if (beneficiaryIds.isPresent() && beneficiaryIds.get().size() > MAX_EXPORT_BENEFICIARY_IDS)
+      throw new IllegalArgumentException();
+    deleteExpiredJobs();
+
+    // Exports are slow and run one at a time, so it's better to refuse them than to queue them up.
+    if (activeExports.incrementAndGet() > maxActiveExports) {
+      activeExports.decrementAndGet();
+      return Optional.empty();
+    }
+
+    String jobId = UUID.randomUUID().toString();
+    BulkExportJob job =
+        new BulkExportJob(
+            jobId, requestUrl, Instant.now(), beneficiaryIds, exportDirectory.resolve(jobId));
+    try {
+      insertJob(job);
+      queuedJobIds.add(jobId);
+      bulkExportExecutor.submit(() -> runExport(job, excludeSamhsa));
+    } catch (RuntimeException e) {
+      queuedJobIds.remove(jobId);
+      activeExports.decrementAndGet();
+      throw e;
+    }
+    return Optional.of(job);
+  }
+
+  /**
+   * @param jobId the {@link BulkExportJob#getId()} to find
+   * @return the matching {@link BulkExportJob}, or {@link Optional#empty()} if there isn't one (or
+   *     it has expired)
+   */
+  public Optional<BulkExportJob> getJob(String jobId) {
+    deleteExpiredJobs();
+    return findJob(jobId);
+  }
+
+  /**
+   * Forgets about the specified {@link BulkExportJob}, and deletes its files. Exports that are
+   * still running will be stopped (and their files deleted) by the node running them, once it next
+   * checks in.
+   *
+   * @param jobId the {@link BulkExportJob#getId()} of the export to delete
+   * @return <code>true</code> if the export was found and deleted, <code>false</code> if not
+   */
+  public boolean deleteJob(String jobId) {
+    Optional<BulkExportJob> job = findJob(jobId);
+    if (!job.isPresent()) return false;
+
+    int deletedCount =
+        inTransaction(
+            entityManager ->
+                entityManager
+                    .createNativeQuery("DELETE FROM \"BulkExportJobs\" WHERE \"jobId\" = :jobId")
+                    .setParameter("jobId", jobId)
+                    .executeUpdate());
+    if (deletedCount == 0) return false;
+
+    if (job.get().getStatus() != Status.IN_PROGRESS) deleteFiles(job.get().getDirectory());
+    return true;
+  }
+
+  /**
+   * Fails all of the {@link BulkExportJob}s that have been abandoned, and deletes all of the
+   * finished ones that have expired, along with their files. Rather than running on a schedule,
+   * this is done whenever exports are started or polled.
+   */
+  void deleteExpiredJobs() {
+    Instant now = Instant.now();
+    inTransaction(
+        entityManager ->
+            entityManager
+                .createNativeQuery(
+                    "UPDATE \"BulkExportJobs\" SET \"status\" = :failed, \"error\" = :error,"
+                        + " \"finishTime\" = :now, \"updated\" = :now"
+                        + " WHERE \"status\" = :inProgress AND \"updated\" < :abandoned")
+                .setParameter("failed", Status.FAILED.name())
+                .setParameter("error", "The export was abandoned by the node running it.")
+                .setParameter("now", Timestamp.from(now))
+                .setParameter("inProgress", Status.IN_PROGRESS.name())
+                .setParameter("abandoned", Timestamp.from(now.minus(ABANDONED_EXPORT_TIMEOUT)))
+                .executeUpdate());
+
+    Timestamp expiredFinishTime = Timestamp.from(now.minus(exportExpiry));
+    List<?> expiredJobIds =
+        inTransaction(
+            entityManager ->
+                entityManager
+                    .createNativeQuery(
+                        "SELECT \"jobId\" FROM \"BulkExportJobs\""
+                            + " WHERE \"finishTime\" <= :expiredFinishTime")
+                    .setParameter("expiredFinishTime", expiredFinishTime)
+                    .getResultList());
+    for (Object jobId : expiredJobIds) {
+      // Only the node that actually deletes the job should delete its files.
+      int deletedCount =
+          inTransaction(
+              entityManager ->
+                  entityManager
+                      .createNativeQuery(
+                          "DELETE FROM \"BulkExportJobs\" WHERE \"jobId\" = :jobId"
+                              + " AND \"finishTime\" <= :expiredFinishTime")
+                      .setParameter("jobId", jobId)
+                      .setParameter("expiredFinishTime", expiredFinishTime)
+                      .executeUpdate());
+      if (deletedCount == 1) {
+        LOGGER.info("Bulk export '{}' has expired, and is being deleted.", jobId);
+        deleteFiles(exportDirectory.resolve((String) jobId));
+      }
+    }
+  }
+
+  /**
+   * Runs the specified {@link BulkExportJob} to completion (or failure), on the current thread.
+   *
+   * @param job the {@link BulkExportJob} to run
+   * @param excludeSamhsa if <code>true</code>, SAMHSA-related claims will be left out of the export
+   */
+  private void runExport(BulkExportJob job, boolean excludeSamhsa) {
+    queuedJobIds.remove(job.getId());
+    Timer.Context timerExport =
+        metricRegistry.timer(MetricRegistry.name(getClass().getSimpleName(), "export")).time();
+    try {
+      Files.createDirectories(job.getDirectory());
+      for (ClaimType claimType : ClaimType.values()) {
+        String fileName = getFileName(claimType);
+        int count = exportClaimType(job, claimType, excludeSamhsa, fileName);
+        job.addOutput(new BulkExportOutput(claimType, fileName, count));
+        if (!updateJob(job)) throw new CancellationException();
+      }
+      job.complete();
+      if (!updateJob(job)) throw new CancellationException();
+    } catch (CancellationException e) {
+      LOGGER.info("Bulk export '{}' was deleted or abandoned, and has been stopped.", job.getId());
+    } catch (IOException | RuntimeException e) {
+      LOGGER.warn("Bulk export '{}' failed.", job.getId(), e);
+      job.fail(e.toString());
+      updateJob(job);
+    } finally {
+      timerExport.stop();
+      activeExports.decrementAndGet();
+    }
+
+    // If the export was deleted while it was running, clean up after it now.
+    if (!findJob(job.getId()).isPresent()) deleteFiles(job.getDirectory());
+  }
+
+  /**
+   * Writes all of the specified {@link BulkExportJob}'s claims of the specified {@link ClaimType}
+   * out to an NDJSON file.
+   *
+   * @param job the {@link BulkExportJob} being run
+   * @param claimType the {@link ClaimType} to export
+   * @param excludeSamhsa if <code>true</code>, SAMHSA-related claims will be left out of the export
+   * @param fileName the name of the NDJSON file to write, in {@link BulkExportJob#getDirectory()}
+   * @return the number of {@link ExplanationOfBenefit}s that were written
+   * @throws IOException Any {@link IOException}s encountered will be bubbled up.
+   */
+  @SuppressWarnings({"rawtypes", "unchecked"})
+  private int exportClaimType(
+      BulkExportJob job, ClaimType claimType, boolean excludeSamhsa, String fileName)
+      throws IOException {
+    EntityManager exportEntityManager = entityManagerFactory.createEntityManager();
+    ScrollableResults results = null;
+    int eobCount = 0;
+    Timer.Context timerClaimType =
+        metricRegistry
+            .timer(
+                MetricRegistry.name(
+                    getClass().getSimpleName(), "export", claimType.name().toLowerCase()))
+            .time();
+    try (Writer writer =
+        Files.newBufferedWriter(job.getDirectory().resolve(fileName), StandardCharsets.UTF_8)) {
+      // PostgreSQL only honors the fetch size (rather than reading everything) in a transaction.
+      exportEntityManager.getTransaction().begin();
+
+      CriteriaBuilder criteriaBuilder = exportEntityManager.getCriteriaBuilder();
+      CriteriaQuery criteria = criteriaBuilder.createQuery((Class) claimType.getEntityClass());
+      Root root = criteria.from(claimType.getEntityClass());
+      claimType.getEntityLazyAttributes().stream().forEach(a -> root.fetch(a));
+      criteria.select(root);
+
+      // Claims loaded after the export started aren't included in it.
+      javax.persistence.criteria.Path<Instant> lastUpdatedPath =
+          root.get(claimType.getEntityLastUpdatedAttribute());
+      Predicate wherePredicate =
+          criteriaBuilder.or(
+              criteriaBuilder.isNull(lastUpdatedPath),
+              criteriaBuilder.lessThanOrEqualTo(lastUpdatedPath, job.getTransactionTime()));
+      if (job.getBeneficiaryIds().isPresent())
+        wherePredicate =
+            criteriaBuilder.and(
+                wherePredicate,
+                root.get(claimType.getEntityBeneficiaryIdAttribute())
+                    .in(job.getBeneficiaryIds().get()));
+      // Claims that the ETL pipeline hasn't flagged yet are checked as they're transformed.
+      if (excludeSamhsa) {
+        javax.persistence.criteria.Path<Boolean> samhsaPath =
+            root.get(claimType.getEntitySamhsaAttribute());
+        wherePredicate =
+            criteriaBuilder.and(
+                wherePredicate,
+                criteriaBuilder.or(
+                    criteriaBuilder.isFalse(samhsaPath), criteriaBuilder.isNull(samhsaPath)));
+      }
+      criteria.where(wherePredicate);
+      // Hibernate can only assemble fetched collections from a cursor if it's ordered by ID.
+      criteria.orderBy(criteriaBuilder.asc(root.get(claimType.getEntityIdAttribute())));
+
+      Query query = exportEntityManager.createQuery(criteria).unwrap(Query.class);
+      query.setFetchSize(exportChunkSize);
+      results = query.scroll(ScrollMode.FORWARD_ONLY);
+
+      List<Object> claims = new ArrayList<>(exportChunkSize);
+      boolean moreClaims = true;
+      while (moreClaims) {
+        moreClaims = results.next();
+        if (moreClaims) claims.add(results.get(0));
+        if (claims.isEmpty() || (moreClaims && claims.size() < exportChunkSize)) continue;
+
+        for (String eobJson : transformAndEncode(claimType, claims, excludeSamhsa)) {
+          writer.write(eobJson);
+          writer.write('\n');
+          eobCount++;
+        }
+
+        // Once written, the chunk's claims (and their lines) can be garbage collected.
+        claims.clear();
+        exportEntityManager.clear();
+
+        // This also lets the other nodes know that the exports are still making progress.
+        touchQueuedJobs();
+        if (!updateJob(job)) throw new CancellationException();
+      }
+
+      return eobCount;
+    } finally {
+      if (results != null) results.close();
+      if (exportEntityManager.getTransaction().isActive())
+        exportEntityManager.getTransaction().rollback();
+      exportEntityManager.close();
+      timerClaimType.stop();
+    }
+  }
+
+  /**
+   * @param claimType the {@link ClaimType} being exported
+   * @param claims the chunk of claims/events to transform
+   * @param excludeSamhsa if <code>true</code>, SAMHSA-related claims will be left out
+   * @return the JSON encodings of the {@link ExplanationOfBenefit}s for the specified claims, in
+   *     the same order, each on a single line
+   */
+  private List<String> transformAndEncode(
+      ClaimType claimType, List<Object> claims, boolean excludeSamhsa) {
+    /*
+     * A parallel stream started from within a ForkJoinPool runs on that pool, rather than on the
+     * JVM-wide common pool. The stream is ordered, so the results stay in the claims' order.
+     */
+    return bulkExportTransformPool
+        .submit(
+            () ->
+                claims.parallelStream()
+                    .filter(c -> !excludeSamhsa || !samhsaMatcher.test(c))
+                    .map(c -> claimType.getTransformer().apply(metricRegistry, c))
+                    // Parsers aren't thread-safe, but they're cheap to create.
+                    .map(eob -> fhirContext.newJsonParser().encodeResourceToString(eob))
+                    .collect(Collectors.toList()))
+        .join();
+  }
+
+  /**
+   * @param claimType the {@link ClaimType} being exported
+   * @return the name of the NDJSON file that the specified {@link ClaimType}'s claims are exported
+   *     to
+   */
+  private static String getFileName(ClaimType claimType) {
+    return claimType.name().toLowerCase() + NDJSON_EXTENSION;
+  }
+
+  /**
+   * @param job the new {@link BulkExportJob} to save to the database, so that all of the server's
+   *     nodes can find it
+   */
+  private void insertJob(BulkExportJob job) {
+    inTransaction(
+        entityManager ->
+            entityManager
+                .createNativeQuery(
+                    "INSERT INTO \"BulkExportJobs\" (\"jobId\", \"requestUrl\","
+                        + " \"transactionTime\", \"beneficiaryIds\", \"status\", \"outputs\","
+                        + " \"updated\") VALUES (:jobId, :requestUrl, :transactionTime,"
+                        + " :beneficiaryIds, :status, :outputs, :updated)")
+                .setParameter("jobId", job.getId())
+                .setParameter("requestUrl", job.getRequestUrl())
+                .setParameter("transactionTime", Timestamp.from(job.getTransactionTime()))
+                .setParameter(
+                    "beneficiaryIds",
+                    new TypedParameterValue(
+                        StandardBasicTypes.STRING,
+                        job.getBeneficiaryIds().map(ids -> String.join(",", ids)).orElse(null)))
+                .setParameter("status", job.getStatus().name())
+                .setParameter("outputs", encodeOutputs(job.getOutputs()))
+                .setParameter("updated", Timestamp.from(Instant.now()))
+                .executeUpdate());
+  }
+
+  /**
+   * Saves the specified running {@link BulkExportJob}'s progress (and current {@link Status}) to
+   * the database.
+   *
+   * @param job the {@link BulkExportJob} to save
+   * @return <code>true</code> if the {@link BulkExportJob} was saved, or <code>false</code> if it
+   *     wasn't, because it has been deleted or failed as abandoned since, and should be stopped
+   */
+  private boolean updateJob(BulkExportJob job) {
+    // The error can't be longer than its column.
+    Optional<String> error = job.getError().map(e -> e.substring(0, Math.min(e.length(), 4096)));
+    int updatedCount =
+        inTransaction(
+            entityManager ->
+                entityManager
+                    .createNativeQuery(
+                        "UPDATE \"BulkExportJobs\" SET \"status\" = :status,"
+                            + " \"outputs\" = :outputs, \"error\" = :error,"
+                            + " \"finishTime\" = :finishTime, \"updated\" = :updated"
+                            + " WHERE \"jobId\" = :jobId AND \"status\" = :inProgress")
+                    .setParameter("status", job.getStatus().name())
+                    .setParameter("outputs", encodeOutputs(job.getOutputs()))
+                    .setParameter(
+                        "error",
+                        new TypedParameterValue(StandardBasicTypes.STRING, error.orElse(null)))
+                    .setParameter(
+                        "finishTime",
+                        new TypedParameterValue(
+                            StandardBasicTypes.TIMESTAMP,
+                            job.getFinishTime().map(Timestamp::from).orElse(null)))
+                    .setParameter("updated", Timestamp.from(Instant.now()))
+                    .setParameter("jobId", job.getId())
+                    .setParameter("inProgress", Status.IN_PROGRESS.name())
+                    .executeUpdate());
+    return updatedCount == 1;
+  }
+
+  /**
+   * Lets the other nodes know that the {@link BulkExportJob}s that are waiting to run on this node
+   * haven't been abandoned, as they can't make any progress until the running export finishes.
+   */
+  private void touchQueuedJobs() {
+    Set<String> jobIds = new HashSet<>(queuedJobIds);
+    if (jobIds.isEmpty()) return;
+
+    inTransaction(
+        entityManager ->
+            entityManager
+                .createNativeQuery(
+                    "UPDATE \"BulkExportJobs\" SET \"updated\" = :updated"
+                        + " WHERE \"jobId\" IN (:jobIds) AND \"status\" = :inProgress")
+                .setParameter("updated", Timestamp.from(Instant.now()))
+                .setParameter("jobIds", jobIds)
+                .setParameter("inProgress", Status.IN_PROGRESS.name())
+                .executeUpdate());
+  }
+
+  /**
+   * @param jobId the {@link BulkExportJob#getId()} to find
+   * @return the matching {@link BulkExportJob}, as last saved to the database by the node running
+   *     it, or {@link Optional#empty()} if there isn't one
+   */
+  private Optional<BulkExportJob> findJob(String jobId) {
+    EntityManager entityManager = entityManagerFactory.createEntityManager();
+    try {
+      List<?> rows =
+          entityManager
+              .createNativeQuery(
+                  "SELECT \"requestUrl\", \"transactionTime\", \"beneficiaryIds\","
+                      + " \"status\", \"outputs\", \"error\", \"finishTime\""
+                      + " FROM \"BulkExportJobs\" WHERE \"jobId\" = :jobId")
+              .setParameter("jobId", jobId)
+              .getResultList();
+      if (rows.isEmpty()) return Optional.empty();
+
+      Object[] row = (Object[]) rows.get(0);
+      return Optional.of(
+          new BulkExportJob(
+              jobId,
+              (String) row[0],
+              ((Timestamp) row[1]).toInstant(),
+              Optional.ofNullable((String) row[2])
+                  .map(
+                      ids ->
+                          Arrays.stream(ids.split(","))
+                              .filter(id -> !id.isEmpty())
+                              .collect(Collectors.toSet())),
+              exportDirectory.resolve(jobId),
+              Status.valueOf((String) row[3]),
+              decodeOutputs((String) row[4]),
+              Optional.ofNullable((String) row[5]),
+              Optional.ofNullable((Timestamp) row[6]).map(Timestamp::toInstant)));
+    } finally {
+      entityManager.close();
+    }
+  }
+
+  /**
+   * @param outputs the {@link BulkExportOutput}s to encode
+   * @return the specified {@link BulkExportOutput}s, encoded as (e.g.) <code>CARRIER=12,DME=3
+   *     </code>, as they're stored in the database
+   */
+  private static String encodeOutputs(List<BulkExportOutput> outputs) {
+    return outputs.stream()
+        .map(o -> o.getClaimType().name() + "=" + o.getCount())
+        .collect(Collectors.joining(","));
+  }
+
+  /**
+   * @param outputsText the {@link BulkExportOutput}s to decode, as encoded by {@link
+   *     #encodeOutputs(List)}
+   * @return the decoded {@link BulkExportOutput}s
+   */
+  private static List<BulkExportOutput> decodeOutputs(String outputsText) {
+    List<BulkExportOutput> outputs = new ArrayList<>();
+    for (String outputText : outputsText.split(",")) {
+      if (outputText.isEmpty()) continue;
+      String[] outputParts = outputText.split("=");
+      ClaimType claimType = ClaimType.valueOf(outputParts[0]);
+      int count = Integer.parseInt(outputParts[1]);
+      outputs.add(new BulkExportOutput(claimType, getFileName(claimType), count));
+    }
+    return outputs;
+  }
+
+  /**
+   * Runs the specified work in a new database transaction, which is committed if it succeeds.
+   *
+   * @param work the work to run, with an {@link EntityManager} for the transaction
+   * @return the result of the work
+   */
+  private <T> T inTransaction(Function<EntityManager, T> work) {
+    EntityManager entityManager = entityManagerFactory.createEntityManager();
+    try {
+      entityManager.getTransaction().begin();
+      T result = work.apply(entityManager);
+      entityManager.getTransaction().commit();
+      return result;
+    } finally {
+      if (entityManager.getTransaction().isActive()) entityManager.getTransaction().rollback();
+      entityManager.close();
+    }
+  }
+
+  /** @param directory the {@link BulkExportJob#getDirectory()} to delete */
+  private static void deleteFiles(Path directory) {
+    if (!Files.exists(directory)) return;
+
+    try (Stream<Path> paths = Files.walk(directory)) {
+      for (Path path : paths.sorted(Comparator.reverseOrder()).collect(Collectors.toList()))
+        Files.deleteIfExists(path);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+}
@@ -43,6 +43,7 @@ final class CarrierClaimTransformer {
    */
   private static ExplanationOfBenefit transformClaim(CarrierClaim claimGroup) {
     ExplanationOfBenefit eob = new ExplanationOfBenefit();
+    TransformerUtils.setLastUpdated(eob, claimGroup.getLastUpdated());
 
     // Common group level fields between all claim types
     TransformerUtils.mapEobCommonClaimHeaderData(
@@ -18,6 +18,8 @@ import gov.cms.bfd.model.rif.PartDEvent;
 import gov.cms.bfd.model.rif.PartDEvent_;
 import gov.cms.bfd.model.rif.SNFClaim;
 import gov.cms.bfd.model.rif.SNFClaim_;
+import java.time.Instant;
+import java.time.LocalDate;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
@@ -40,6 +42,10 @@ public enum ClaimType {
       CarrierClaim.class,
       CarrierClaim_.claimId,
       CarrierClaim_.beneficiaryId,
+      CarrierClaim_.dateFrom,
+      CarrierClaim_.dateThrough,
+      CarrierClaim_.lastUpdated,
+      CarrierClaim_.samhsa,
       CarrierClaimTransformer::transform,
       CarrierClaim_.lines),
 
@@ -47,6 +53,10 @@ public enum ClaimType {
       DMEClaim.class,
       DMEClaim_.claimId,
       DMEClaim_.beneficiaryId,
+      DMEClaim_.dateFrom,
+      DMEClaim_.dateThrough,
+      DMEClaim_.lastUpdated,
+      DMEClaim_.samhsa,
       DMEClaimTransformer::transform,
       DMEClaim_.lines),
 
@@ -54,6 +64,10 @@ public enum ClaimType {
       HHAClaim.class,
       HHAClaim_.claimId,
       HHAClaim_.beneficiaryId,
+      HHAClaim_.dateFrom,
+      HHAClaim_.dateThrough,
+      HHAClaim_.lastUpdated,
+      HHAClaim_.samhsa,
       HHAClaimTransformer::transform,
       HHAClaim_.lines),
 
@@ -61,6 +75,10 @@ public enum ClaimType {
       HospiceClaim.class,
       HospiceClaim_.claimId,
       HospiceClaim_.beneficiaryId,
+      HospiceClaim_.dateFrom,
+      HospiceClaim_.dateThrough,
+      HospiceClaim_.lastUpdated,
+      HospiceClaim_.samhsa,
       HospiceClaimTransformer::transform,
       HospiceClaim_.lines),
 
@@ -68,6 +86,10 @@ public enum ClaimType {
       InpatientClaim.class,
       InpatientClaim_.claimId,
       InpatientClaim_.beneficiaryId,
+      InpatientClaim_.dateFrom,
+      InpatientClaim_.dateThrough,
+      InpatientClaim_.lastUpdated,
+      InpatientClaim_.samhsa,
       InpatientClaimTransformer::transform,
       InpatientClaim_.lines),
 
@@ -75,6 +97,10 @@ public enum ClaimType {
       OutpatientClaim.class,
       OutpatientClaim_.claimId,
       OutpatientClaim_.beneficiaryId,
+      OutpatientClaim_.dateFrom,
+      OutpatientClaim_.dateThrough,
+      OutpatientClaim_.lastUpdated,
+      OutpatientClaim_.samhsa,
       OutpatientClaimTransformer::transform,
       OutpatientClaim_.lines),
 
@@ -82,18 +108,30 @@ public enum ClaimType {
       PartDEvent.class,
       PartDEvent_.eventId,
       PartDEvent_.beneficiaryId,
+      PartDEvent_.prescriptionFillDate,
+      PartDEvent_.prescriptionFillDate,
+      PartDEvent_.lastUpdated,
+      PartDEvent_.samhsa,
       PartDEventTransformer::transform),
 
   SNF(
       SNFClaim.class,
       SNFClaim_.claimId,
       SNFClaim_.beneficiaryId,
+      SNFClaim_.dateFrom,
+      SNFClaim_.dateThrough,
+      SNFClaim_.lastUpdated,
+      SNFClaim_.samhsa,
       SNFClaimTransformer::transform,
       SNFClaim_.lines);
 
   private final Class<?> entityClass;
   private final SingularAttribute<?, ?> entityIdAttribute;
   private final SingularAttribute<?, String> entityBeneficiaryIdAttribute;
+  private final SingularAttribute<?, LocalDate> entityServiceDateFromAttribute;
+  private final SingularAttribute<?, LocalDate> entityServiceDateThroughAttribute;
+  private final SingularAttribute<?, Instant> entityLastUpdatedAttribute;
+  private final SingularAttribute<?, Boolean> entitySamhsaAttribute;
   private final BiFunction<MetricRegistry, Object, ExplanationOfBenefit> transformer;
   private final Collection<PluralAttribute<?, ?, ?>> entityLazyAttributes;
 
@@ -104,6 +142,12 @@ public enum ClaimType {
    * @param entityIdAttribute the value to use for {@link #getEntityIdAttribute()}
    * @param entityBeneficiaryIdAttribute the value to use for {@link
    *     #getEntityBeneficiaryIdAttribute()}
+   * @param entityServiceDateFromAttribute the value to use for {@link
+   *     #getEntityServiceDateFromAttribute()}
+   * @param entityServiceDateThroughAttribute the value to use for {@link
+   *     #getEntityServiceDateThroughAttribute()}
+   * @param entityLastUpdatedAttribute the value to use for {@link #getEntityLastUpdatedAttribute()}
+   * @param entitySamhsaAttribute the value to use for {@link #getEntitySamhsaAttribute()}
    * @param transformer the value to use for {@link #getTransformer()}
    * @param entityLazyAttributes the value to use for {@link #getEntityLazyAttributes()}
    */
@@ -111,11 +155,19 @@ public enum ClaimType {
       Class<?> entityClass,
       SingularAttribute<?, ?> entityIdAttribute,
       SingularAttribute<?, String> entityBeneficiaryIdAttribute,
+      SingularAttribute<?, LocalDate> entityServiceDateFromAttribute,
+      SingularAttribute<?, LocalDate> entityServiceDateThroughAttribute,
+      SingularAttribute<?, Instant> entityLastUpdatedAttribute,
+      SingularAttribute<?, Boolean> entitySamhsaAttribute,
       BiFunction<MetricRegistry, Object, ExplanationOfBenefit> transformer,
       PluralAttribute<?, ?, ?>... entityLazyAttributes) {
     this.entityClass = entityClass;
     this.entityIdAttribute = entityIdAttribute;
     this.entityBeneficiaryIdAttribute = entityBeneficiaryIdAttribute;
+    this.entityServiceDateFromAttribute = entityServiceDateFromAttribute;
+    this.entityServiceDateThroughAttribute = entityServiceDateThroughAttribute;
+    this.entityLastUpdatedAttribute = entityLastUpdatedAttribute;
+    this.entitySamhsaAttribute = entitySamhsaAttribute;
     this.transformer = transformer;
     this.entityLazyAttributes =
         entityLazyAttributes != null
@@ -144,6 +196,37 @@ public enum ClaimType {
     return entityBeneficiaryIdAttribute;
   }
 
+  /**
+   * @return the JPA {@link Entity} field for the start of the claim's service (i.e. billable)
+   *     period
+   */
+  public SingularAttribute<?, LocalDate> getEntityServiceDateFromAttribute() {
+    return entityServiceDateFromAttribute;
+  }
+
+  /**
+   * @return the JPA {@link Entity} field for the end of the claim's service (i.e. billable) period
+   */
+  public SingularAttribute<?, LocalDate> getEntityServiceDateThroughAttribute() {
+    return entityServiceDateThroughAttribute;
+  }
+
+  /**
+   * @return the JPA {@link Entity} field for when the claim was last loaded (i.e. inserted or
+   *     updated) into the database
+   */
+  public SingularAttribute<?, Instant> getEntityLastUpdatedAttribute() {
+    return entityLastUpdatedAttribute;
+  }
+
+  /**
+   * @return the JPA {@link Entity} field for whether or not the claim is SAMHSA-related, which is
+   *     <code>null</code> for claims that haven't been checked yet
+   */
+  public SingularAttribute<?, Boolean> getEntitySamhsaAttribute() {
+    return entitySamhsaAttribute;
+  }
+
   /**
    * @return the {@link Function} to use to transform the JPA {@link Entity} instances into FHIR
    *     {@link ExplanationOfBenefit} instances
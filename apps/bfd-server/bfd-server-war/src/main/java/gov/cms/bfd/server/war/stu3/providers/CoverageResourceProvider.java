@@ -6,7 +6,11 @@ import ca.uhn.fhir.rest.annotation.OptionalParam;
 import ca.uhn.fhir.rest.annotation.Read;
 import ca.uhn.fhir.rest.annotation.RequiredParam;
 import ca.uhn.fhir.rest.annotation.Search;
+import ca.uhn.fhir.rest.api.Constants;
+import ca.uhn.fhir.rest.api.SummaryEnum;
 import ca.uhn.fhir.rest.api.server.RequestDetails;
+import ca.uhn.fhir.rest.param.DateRangeParam;
+import ca.uhn.fhir.rest.param.ReferenceOrListParam;
 import ca.uhn.fhir.rest.param.ReferenceParam;
 import ca.uhn.fhir.rest.server.IResourceProvider;
 import ca.uhn.fhir.rest.server.exceptions.ResourceNotFoundException;
@@ -14,12 +18,16 @@ import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.Timer;
 import gov.cms.bfd.model.rif.Beneficiary;
 import gov.cms.bfd.model.rif.Beneficiary_;
-import java.util.LinkedList;
+import gov.cms.bfd.server.war.SpringConfiguration;
+import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 import javax.inject.Inject;
+import javax.inject.Named;
 import javax.persistence.EntityManager;
 import javax.persistence.NoResultException;
 import javax.persistence.PersistenceContext;
@@ -43,6 +51,7 @@ public final class CoverageResourceProvider implements IResourceProvider {
 
   private EntityManager entityManager;
   private MetricRegistry metricRegistry;
+  private ForkJoinPool claimTransformPool;
 
   /** @param entityManager a JPA {@link EntityManager} connected to the application's database */
   @PersistenceContext
@@ -56,6 +65,16 @@ public final class CoverageResourceProvider implements IResourceProvider {
     this.metricRegistry = metricRegistry;
   }
 
+  /**
+   * @param claimTransformPool the {@link ForkJoinPool} to transform large lists of beneficiaries
+   *     on
+   */
+  @Inject
+  public void setClaimTransformPool(
+      @Named(SpringConfiguration.CLAIM_TRANSFORM_POOL) ForkJoinPool claimTransformPool) {
+    this.claimTransformPool = claimTransformPool;
+  }
+
   /** @see ca.uhn.fhir.rest.server.IResourceProvider#getResourceType() */
   @Override
   public Class<? extends IBaseResource> getResourceType() {
@@ -106,16 +125,23 @@ public final class CoverageResourceProvider implements IResourceProvider {
 
   /**
    * Adds support for the FHIR "search" operation for {@link Coverage}s, allowing users to search by
-   * {@link Coverage#getBeneficiary()}.
+   * {@link Coverage#getBeneficiary()}. Several beneficiaries (up to {@link
+   * TransformerUtils#MAX_SEARCH_IDS}) can be searched for at once (e.g. <code>beneficiary=a,b,c
+   * </code>), in which case they're all checked by a single database query, and then just the
+   * beneficiaries with {@link Coverage}s on the requested page are loaded and transformed.
    *
    * <p>The {@link Search} annotation indicates that this method supports the search operation.
    * There may be many different methods annotated with this {@link Search} annotation, to support
    * many different search criteria.
    *
-   * @param beneficiary a {@link ReferenceParam} for the {@link Coverage#getBeneficiary()} to try
-   *     and find matches for
+   * @param beneficiaries a {@link ReferenceOrListParam} for the {@link Coverage#getBeneficiary()}s
+   *     to try and find matches for
    * @param startIndex an {@link OptionalParam} for the startIndex (or offset) used to determine
    *     pagination
+   * @param lastUpdated an {@link OptionalParam} for the range of times that the matching {@link
+   *     Coverage}s' beneficiary must have last been loaded in
+   * @param summary the <code>_summary</code> mode requested, if any: for {@link SummaryEnum#COUNT},
+   *     just the number of matching {@link Coverage}s will be returned, without loading them
    * @param requestDetails a {@link RequestDetails} containing the details of the request URL, used
    *     to parse out pagination values
    * @return Returns a {@link List} of {@link Coverage}s, which may contain multiple matching
@@ -123,21 +149,74 @@ public final class CoverageResourceProvider implements IResourceProvider {
    */
   @Search
   public Bundle searchByBeneficiary(
-      @RequiredParam(name = Coverage.SP_BENEFICIARY) ReferenceParam beneficiary,
+      @RequiredParam(name = Coverage.SP_BENEFICIARY) ReferenceOrListParam beneficiaries,
       @OptionalParam(name = "startIndex") String startIndex,
+      @OptionalParam(name = Constants.PARAM_LASTUPDATED) DateRangeParam lastUpdated,
+      SummaryEnum summary,
       RequestDetails requestDetails) {
-    List<IBaseResource> coverages;
-    try {
-      Beneficiary beneficiaryEntity = findBeneficiaryById(beneficiary.getIdPart());
-      coverages = CoverageTransformer.transform(metricRegistry, beneficiaryEntity);
-    } catch (NoResultException e) {
-      coverages = new LinkedList<IBaseResource>();
+    List<String> beneficiaryIds =
+        beneficiaries.getValuesAsQueryTokens().stream()
+            .map(ReferenceParam::getIdPart)
+            .distinct()
+            .collect(Collectors.toList());
+    TransformerUtils.validateSearchIds(Coverage.SP_BENEFICIARY, beneficiaryIds);
+
+    // Every beneficiary has one Coverage per MedicareSegment, so there's nothing to load.
+    if (summary == SummaryEnum.COUNT) {
+      int beneficiaryCount =
+          BeneficiaryQueries.countBeneficiariesByIds(
+              entityManager,
+              metricRegistry,
+              getClass().getSimpleName(),
+              beneficiaryIds,
+              lastUpdated);
+      return TransformerUtils.createCountBundle(beneficiaryCount * MedicareSegment.values().length);
     }
 
+    List<String> matchingBeneficiaryIds =
+        BeneficiaryQueries.findBeneficiaryIdsByIds(
+            entityManager, metricRegistry, getClass().getSimpleName(), beneficiaryIds, lastUpdated);
+    int coveragesPerBeneficiary = MedicareSegment.values().length;
+    int totalCoverages = matchingBeneficiaryIds.size() * coveragesPerBeneficiary;
+
+    /*
+     * The requested page of Coverages can be mapped back to the beneficiaries that they're from,
+     * so just those beneficiaries need to be loaded.
+     */
     PagingArguments pagingArgs = new PagingArguments(requestDetails);
+    int startIndex = 0;
+    int endIndex = totalCoverages;
+    if (pagingArgs.isPagingRequested()) {
+      startIndex = Math.min(pagingArgs.getStartIndex(), totalCoverages);
+      endIndex = (int) Math.min(totalCoverages, (long) startIndex + pagingArgs.getPageSize());
+    }
+    int beneficiaryStartIndex = startIndex / coveragesPerBeneficiary;
+    int beneficiaryEndIndex = (endIndex + coveragesPerBeneficiary - 1) / coveragesPerBeneficiary;
+
+    List<Beneficiary> beneficiaryEntities =
+        BeneficiaryQueries.findBeneficiariesByIds(
+            entityManager,
+            metricRegistry,
+            getClass().getSimpleName(),
+            "benes_by_ids.include_",
+            matchingBeneficiaryIds.subList(beneficiaryStartIndex, beneficiaryEndIndex),
+            Collections.emptyList());
+    List<IBaseResource> coverages =
+        TransformerUtils.transformAll(
+                claimTransformPool,
+                beneficiaryEntities,
+                b -> CoverageTransformer.transform(metricRegistry, b))
+            .stream()
+            .flatMap(List::stream)
+            .collect(Collectors.toList());
+    int coveragesOffset = beneficiaryStartIndex * coveragesPerBeneficiary;
+    List<IBaseResource> pageCoverages =
+        coverages.subList(
+            Math.min(coverages.size(), startIndex - coveragesOffset),
+            Math.min(coverages.size(), endIndex - coveragesOffset));
+
     Bundle bundle =
-        TransformerUtils.createBundle(
-            pagingArgs, "/Coverage?", Coverage.SP_BENEFICIARY, beneficiary.getIdPart(), coverages);
+        TransformerUtils.createBundle(pagingArgs, "/Coverage?", pageCoverages, totalCoverages);
     return bundle;
   }
 
@@ -30,15 +30,19 @@ final class CoverageTransformer {
       MetricRegistry metricRegistry, MedicareSegment medicareSegment, Beneficiary beneficiary) {
     Objects.requireNonNull(medicareSegment);
 
+    Coverage coverage;
     if (medicareSegment == MedicareSegment.PART_A)
-      return transformPartA(metricRegistry, beneficiary);
+      coverage = transformPartA(metricRegistry, beneficiary);
     else if (medicareSegment == MedicareSegment.PART_B)
-      return transformPartB(metricRegistry, beneficiary);
+      coverage = transformPartB(metricRegistry, beneficiary);
     else if (medicareSegment == MedicareSegment.PART_C)
-      return transformPartC(metricRegistry, beneficiary);
+      coverage = transformPartC(metricRegistry, beneficiary);
     else if (medicareSegment == MedicareSegment.PART_D)
-      return transformPartD(metricRegistry, beneficiary);
+      coverage = transformPartD(metricRegistry, beneficiary);
     else throw new BadCodeMonkeyException();
+
+    TransformerUtils.setLastUpdated(coverage, beneficiary.getLastUpdated());
+    return coverage;
   }
 
   /**
@@ -42,6 +42,7 @@ final class DMEClaimTransformer {
    */
   private static ExplanationOfBenefit transformClaim(DMEClaim claimGroup) {
     ExplanationOfBenefit eob = new ExplanationOfBenefit();
+    TransformerUtils.setLastUpdated(eob, claimGroup.getLastUpdated());
 
     // Common group level fields between all claim types
     TransformerUtils.mapEobCommonClaimHeaderData(
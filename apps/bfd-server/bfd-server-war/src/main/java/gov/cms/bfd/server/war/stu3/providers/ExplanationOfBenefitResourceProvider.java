@@ -6,7 +6,12 @@ import ca.uhn.fhir.rest.annotation.OptionalParam;
 import ca.uhn.fhir.rest.annotation.Read;
 import ca.uhn.fhir.rest.annotation.RequiredParam;
 import ca.uhn.fhir.rest.annotation.Search;
+import ca.uhn.fhir.rest.api.Constants;
+import ca.uhn.fhir.rest.api.SummaryEnum;
 import ca.uhn.fhir.rest.api.server.RequestDetails;
+import ca.uhn.fhir.rest.param.DateParam;
+import ca.uhn.fhir.rest.param.DateRangeParam;
+import ca.uhn.fhir.rest.param.ParamPrefixEnum;
 import ca.uhn.fhir.rest.param.ReferenceParam;
 import ca.uhn.fhir.rest.param.TokenAndListParam;
 import ca.uhn.fhir.rest.param.TokenOrListParam;
@@ -15,28 +20,60 @@ import ca.uhn.fhir.rest.server.IResourceProvider;
 import ca.uhn.fhir.rest.server.exceptions.ResourceNotFoundException;
 import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.Timer;
+import com.justdavis.karl.misc.exceptions.BadCodeMonkeyException;
 import gov.cms.bfd.model.rif.Beneficiary;
+import gov.cms.bfd.model.rif.samhsa.SamhsaClaimMatcher;
+import gov.cms.bfd.server.war.SpringConfiguration;
+import java.time.LocalDate;
+import java.time.ZoneId;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.ListIterator;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.PriorityQueue;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 import javax.inject.Inject;
+import javax.inject.Named;
 import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
 import javax.persistence.NoResultException;
 import javax.persistence.PersistenceContext;
+import javax.persistence.PersistenceUnit;
+import javax.persistence.PersistenceUnitUtil;
 import javax.persistence.criteria.CriteriaBuilder;
 import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Expression;
+import javax.persistence.criteria.Path;
+import javax.persistence.criteria.Predicate;
 import javax.persistence.criteria.Root;
+import org.hibernate.dialect.Dialect;
+import org.hibernate.dialect.PostgreSQL81Dialect;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
 import org.hl7.fhir.dstu3.model.Bundle;
 import org.hl7.fhir.dstu3.model.ExplanationOfBenefit;
 import org.hl7.fhir.dstu3.model.IdType;
 import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.slf4j.MDC;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 /**
@@ -52,9 +89,21 @@ public final class ExplanationOfBenefitResourceProvider implements IResourceProv
    */
   private static final Pattern EOB_ID_PATTERN = Pattern.compile("(\\p{Alpha}+)-(\\p{Alnum}+)");
 
+  /**
+   * The number of claims that {@link #streamByClaimKeys(List, boolean, Consumer)} loads (and
+   * transforms) at a time, which bounds how many of them it holds in memory at once.
+   */
+  static final int STREAM_BATCH_SIZE = 100;
+
   private EntityManager entityManager;
+  private EntityManagerFactory entityManagerFactory;
   private MetricRegistry metricRegistry;
-  private SamhsaMatcher samhsaMatcher;
+  private SamhsaClaimMatcher samhsaMatcher;
+  private ExecutorService claimQueryExecutor;
+  private int claimQueryParallelism;
+  private ForkJoinPool claimTransformPool;
+  private ResponseCache responseCache;
+  private SamhsaBackfillStatus samhsaBackfillStatus;
 
   /** @param entityManager a JPA {@link EntityManager} connected to the application's database */
   @PersistenceContext
@@ -62,18 +111,65 @@ public final class ExplanationOfBenefitResourceProvider implements IResourceProv
     this.entityManager = entityManager;
   }
 
+  /**
+   * @param entityManagerFactory the JPA {@link EntityManagerFactory} for the application's
+   *     database, used to create an {@link EntityManager} for each concurrent query
+   */
+  @PersistenceUnit
+  public void setEntityManagerFactory(EntityManagerFactory entityManagerFactory) {
+    this.entityManagerFactory = entityManagerFactory;
+  }
+
   /** @param metricRegistry the {@link MetricRegistry} to use */
   @Inject
   public void setMetricRegistry(MetricRegistry metricRegistry) {
     this.metricRegistry = metricRegistry;
   }
 
-  /** @param samhsaMatcher the {@link SamhsaMatcher} to use */
+  /** @param samhsaMatcher the {@link SamhsaClaimMatcher} to use */
   @Inject
-  public void setSamhsaFilterer(SamhsaMatcher samhsaMatcher) {
+  public void setSamhsaFilterer(SamhsaClaimMatcher samhsaMatcher) {
     this.samhsaMatcher = samhsaMatcher;
   }
 
+  /** @param claimQueryExecutor the {@link ExecutorService} to run per-claim-type queries on */
+  @Inject
+  public void setClaimQueryExecutor(
+      @Named(SpringConfiguration.CLAIM_QUERY_EXECUTOR) ExecutorService claimQueryExecutor) {
+    this.claimQueryExecutor = claimQueryExecutor;
+  }
+
+  /**
+   * @param claimQueryParallelism the maximum number of per-claim-type queries that a single search
+   *     will run concurrently
+   */
+  @Value("${" + SpringConfiguration.PROP_CLAIM_QUERY_PARALLELISM + ":4}")
+  public void setClaimQueryParallelism(int claimQueryParallelism) {
+    this.claimQueryParallelism = claimQueryParallelism;
+  }
+
+  /** @param claimTransformPool the {@link ForkJoinPool} to transform large claim lists on */
+  @Inject
+  public void setClaimTransformPool(
+      @Named(SpringConfiguration.CLAIM_TRANSFORM_POOL) ForkJoinPool claimTransformPool) {
+    this.claimTransformPool = claimTransformPool;
+  }
+
+  /** @param responseCache the {@link ResponseCache} to cache beneficiaries' search results in */
+  @Inject
+  public void setResponseCache(ResponseCache responseCache) {
+    this.responseCache = responseCache;
+  }
+
+  /**
+   * @param samhsaBackfillStatus the {@link SamhsaBackfillStatus} to check before relying on the
+   *     claims' SAMHSA flags
+   */
+  @Inject
+  public void setSamhsaBackfillStatus(SamhsaBackfillStatus samhsaBackfillStatus) {
+    this.samhsaBackfillStatus = samhsaBackfillStatus;
+  }
+
   /** @see ca.uhn.fhir.rest.server.IResourceProvider#getResourceType() */
   @Override
   public Class<? extends IBaseResource> getResourceType() {
@@ -149,8 +245,15 @@ public final class ExplanationOfBenefitResourceProvider implements IResourceProv
    *     try and find matches for {@link ExplanationOfBenefit}s
    * @param startIndex an {@link OptionalParam} for the startIndex (or offset) used to determine
    *     pagination
-   * @param excludeSamhsa an {@link OptionalParam} that, if <code>"true"</code>, will use {@link
-   *     SamhsaMatcher} to filter out all SAMHSA-related claims from the results
+   * @param excludeSamhsa an {@link OptionalParam} that, if <code>"true"</code>, will filter out all
+   *     SAMHSA-related claims from the results (see {@link #filterSamhsa(ClaimType, List)})
+   * @param serviceDate an {@link OptionalParam} for the range of dates that the matching claims'
+   *     service (i.e. billable) periods must overlap
+   * @param lastUpdated an {@link OptionalParam} for the range of times that the matching claims
+   *     must have last been loaded in, which allows clients to only fetch what's changed since
+   *     their last sync
+   * @param summary the <code>_summary</code> mode requested, if any: for {@link SummaryEnum#COUNT},
+   *     just the number of matching claims will be returned, as counted by the database
    * @param requestDetails a {@link RequestDetails} containing the details of the request URL, used
    *     to parse out pagination values
    * @return Returns a {@link Bundle} of {@link ExplanationOfBenefit}s, which may contain multiple
@@ -162,6 +265,9 @@ public final class ExplanationOfBenefitResourceProvider implements IResourceProv
       @OptionalParam(name = "type") TokenAndListParam type,
       @OptionalParam(name = "startIndex") String startIndex,
       @OptionalParam(name = "excludeSAMHSA") String excludeSamhsa,
+      @OptionalParam(name = "service-date") DateRangeParam serviceDate,
+      @OptionalParam(name = Constants.PARAM_LASTUPDATED) DateRangeParam lastUpdated,
+      SummaryEnum summary,
       RequestDetails requestDetails) {
     /*
      * startIndex is an optional parameter here because it must be declared in the
@@ -173,54 +279,553 @@ public final class ExplanationOfBenefitResourceProvider implements IResourceProv
     String beneficiaryId = patient.getIdPart();
     Set<ClaimType> types = parseTypeParam(type);
 
-    List<IBaseResource> eobs = new ArrayList<IBaseResource>();
+    boolean excludeSamhsaFlag = Boolean.parseBoolean(excludeSamhsa);
+
+    /*
+     * The database can only do the counting and paging once all of the SAMHSA-related claims that
+     * are to be excluded have been flagged as such. Until then, all of the claims have to be loaded
+     * and checked, so that the totals are right.
+     */
+    boolean samhsaFlagsReliable = !excludeSamhsaFlag || samhsaBackfillStatus.isComplete();
+
+    /*
+     * When only the total is needed, the claims can just be counted in the database, without
+     * loading or transforming any of them.
+     */
+    if (summary == SummaryEnum.COUNT) {
+      if (!samhsaFlagsReliable)
+        return TransformerUtils.createCountBundle(
+            findAllByPatient(types, beneficiaryId, serviceDate, lastUpdated, true).size());
+
+      int total = 0;
+      for (ClaimType claimType : types)
+        total +=
+            countClaimTypeByPatient(
+                claimType, beneficiaryId, serviceDate, lastUpdated, excludeSamhsaFlag);
+      return TransformerUtils.createCountBundle(total);
+    }
+
+    /*
+     * Each beneficiary's complete search results are cached, so that repeat searches (including
+     * those for the other pages of them) can be answered without going back to the database.
+     * Searches narrowed by date aren't worth caching, though.
+     */
+    boolean cacheable = serviceDate == null && lastUpdated == null;
+    ResponseCache.CacheKey cacheKey =
+        ResponseCache.CacheKey.forEobs(beneficiaryId, types, excludeSamhsaFlag);
+
+    /*
+     * When only a page of the results is needed, just the claim IDs are queried at first, so that
+     * only that page's claims have to be loaded and transformed. If all of the beneficiary's claims
+     * would fit in the cache, though, they're all loaded and cached now, so that the search's other
+     * pages can be answered from it.
+     */
+    PagingArguments pagingArgs = new PagingArguments(requestDetails);
+    if (pagingArgs.isPagingRequested()) {
+      Optional<List<IBaseResource>> cachedEobs =
+          cacheable ? responseCache.getIfPresent(cacheKey) : Optional.empty();
+      if (cachedEobs.isPresent())
+        return TransformerUtils.createBundle(
+            pagingArgs, "/ExplanationOfBenefit?", cachedEobs.get());
+
+      if (!samhsaFlagsReliable) {
+        List<IBaseResource> eobs =
+            cacheable
+                ? responseCache.load(
+                    cacheKey, () -> findAllByPatient(types, beneficiaryId, null, null, true))
+                : findAllByPatient(types, beneficiaryId, serviceDate, lastUpdated, true);
+        return TransformerUtils.createBundle(pagingArgs, "/ExplanationOfBenefit?", eobs);
+      }
+
+      return findPageByPatient(
+          beneficiaryId,
+          types,
+          serviceDate,
+          lastUpdated,
+          excludeSamhsaFlag,
+          pagingArgs,
+          cacheable ? Optional.of(cacheKey) : Optional.empty());
+    }
+
+    List<IBaseResource> eobs =
+        cacheable
+            ? responseCache.get(
+                cacheKey,
+                () -> findAllByPatient(types, beneficiaryId, null, null, excludeSamhsaFlag))
+            : findAllByPatient(types, beneficiaryId, serviceDate, lastUpdated, excludeSamhsaFlag);
+
+    Bundle bundle = TransformerUtils.createBundle(pagingArgs, "/ExplanationOfBenefit?", eobs);
+    return bundle;
+  }
+
+  /**
+   * Finds and transforms all of the specified beneficiary's claims of the specified {@link
+   * ClaimType}s.
+   *
+   * @param types the {@link ClaimType}s to search
+   * @param beneficiaryId the {@link Beneficiary#getBeneficiaryId()} to find claims for
+   * @param serviceDate the {@link DateRangeParam} that the claims' service periods must overlap, or
+   *     <code>null</code> for all claims
+   * @param lastUpdated the {@link DateRangeParam} that the claims' last update times must fall in,
+   *     or <code>null</code> for all claims
+   * @param excludeSamhsa whether or not to filter out all SAMHSA-related claims
+   * @return the {@link ExplanationOfBenefit}s for the matching claims, sorted by claim ID
+   */
+  private List<IBaseResource> findAllByPatient(
+      Set<ClaimType> types,
+      String beneficiaryId,
+      DateRangeParam serviceDate,
+      DateRangeParam lastUpdated,
+      boolean excludeSamhsa) {
     /*
      * The way our JPA/SQL schema is setup, we have to run a separate search for
      * each claim type, then combine the results. It's not super efficient, but it's
-     * also not so inefficient that it's worth fixing.
+     * also not so inefficient that it's worth fixing. Those searches are run
+     * concurrently, though, so that the request's latency isn't the sum of them.
      */
-    if (types.contains(ClaimType.CARRIER))
-      eobs.addAll(
-          transformToEobs(
-              ClaimType.CARRIER, findClaimTypeByPatient(ClaimType.CARRIER, beneficiaryId)));
-    if (types.contains(ClaimType.DME))
-      eobs.addAll(
-          transformToEobs(ClaimType.DME, findClaimTypeByPatient(ClaimType.DME, beneficiaryId)));
-    if (types.contains(ClaimType.HHA))
-      eobs.addAll(
-          transformToEobs(ClaimType.HHA, findClaimTypeByPatient(ClaimType.HHA, beneficiaryId)));
-    if (types.contains(ClaimType.HOSPICE))
-      eobs.addAll(
-          transformToEobs(
-              ClaimType.HOSPICE, findClaimTypeByPatient(ClaimType.HOSPICE, beneficiaryId)));
-    if (types.contains(ClaimType.INPATIENT))
-      eobs.addAll(
-          transformToEobs(
-              ClaimType.INPATIENT, findClaimTypeByPatient(ClaimType.INPATIENT, beneficiaryId)));
-    if (types.contains(ClaimType.OUTPATIENT))
-      eobs.addAll(
-          transformToEobs(
-              ClaimType.OUTPATIENT, findClaimTypeByPatient(ClaimType.OUTPATIENT, beneficiaryId)));
-    if (types.contains(ClaimType.PDE))
-      eobs.addAll(
-          transformToEobs(ClaimType.PDE, findClaimTypeByPatient(ClaimType.PDE, beneficiaryId)));
-    if (types.contains(ClaimType.SNF))
-      eobs.addAll(
-          transformToEobs(ClaimType.SNF, findClaimTypeByPatient(ClaimType.SNF, beneficiaryId)));
-
-    if (Boolean.parseBoolean(excludeSamhsa) == true) filterSamhsa(eobs);
+    List<IBaseResource> eobs = new ArrayList<IBaseResource>();
+    eobs.addAll(findEobsByPatient(types, beneficiaryId, serviceDate, lastUpdated, excludeSamhsa));
 
     eobs.sort(ExplanationOfBenefitResourceProvider::compareByClaimIdThenClaimType);
+    return eobs;
+  }
+
+  /**
+   * Adds support for the FHIR "search" operation for {@link ExplanationOfBenefit}s, allowing users
+   * to search by {@link ExplanationOfBenefit#getId()}. Several IDs (up to {@link
+   * TransformerUtils#MAX_SEARCH_IDS}) can be searched for at once (e.g. <code>_id=carrier-1,pde-2
+   * </code>), in which case each {@link ClaimType}'s IDs are checked by a single database query,
+   * and then just the claims on the requested page are loaded and transformed.
+   *
+   * @param eobIds a {@link TokenOrListParam} for the {@link ExplanationOfBenefit#getId()}s to try
+   *     and find matches for
+   * @param startIndex an {@link OptionalParam} for the startIndex (or offset) used to determine
+   *     pagination
+   * @param excludeSamhsa an {@link OptionalParam} that, if <code>"true"</code>, will filter out all
+   *     SAMHSA-related claims from the results (see {@link #filterSamhsa(ClaimType, List)})
+   * @param requestDetails a {@link RequestDetails} containing the details of the request URL, used
+   *     to parse out pagination values
+   * @return Returns a {@link Bundle} of the matching {@link ExplanationOfBenefit}s, in the same
+   *     order as the requested IDs, which may also be empty
+   */
+  @Search
+  public Bundle findById(
+      @RequiredParam(name = ExplanationOfBenefit.SP_RES_ID) TokenOrListParam eobIds,
+      @OptionalParam(name = "startIndex") String startIndex,
+      @OptionalParam(name = "excludeSAMHSA") String excludeSamhsa,
+      RequestDetails requestDetails) {
+    List<String> eobIdTexts =
+        eobIds.getValuesAsQueryTokens().stream()
+            .map(TokenParam::getValueNotNull)
+            .distinct()
+            .collect(Collectors.toList());
+    TransformerUtils.validateSearchIds(ExplanationOfBenefit.SP_RES_ID, eobIdTexts);
+    boolean excludeSamhsaFlag = Boolean.parseBoolean(excludeSamhsa);
+
+    // IDs that don't match the expected format can't match any claims, so they're just skipped.
+    Set<ClaimKey> requestedClaimKeys = new LinkedHashSet<>();
+    Map<ClaimType, List<String>> claimIdsByType = new EnumMap<>(ClaimType.class);
+    for (String eobIdText : eobIdTexts) {
+      Matcher eobIdMatcher = EOB_ID_PATTERN.matcher(eobIdText);
+      if (!eobIdMatcher.matches()) continue;
+      Optional<ClaimType> eobIdType = ClaimType.parse(eobIdMatcher.group(1));
+      if (!eobIdType.isPresent()) continue;
+      if (requestedClaimKeys.add(new ClaimKey(eobIdType.get(), eobIdMatcher.group(2))))
+        claimIdsByType
+            .computeIfAbsent(eobIdType.get(), t -> new ArrayList<>())
+            .add(eobIdMatcher.group(2));
+    }
+
+    /*
+     * Only the IDs are queried for at first, so that just the requested page of claims needs to be
+     * loaded and transformed. Until all of the SAMHSA-related claims have been flagged as such,
+     * though, the claims have to be loaded and checked first, so that the total is right.
+     */
+    Set<ClaimKey> existingClaimKeys = new HashSet<>();
+    for (Map.Entry<ClaimType, List<String>> claimIds : claimIdsByType.entrySet())
+      for (String claimId :
+          findClaimIdsByIds(claimIds.getKey(), claimIds.getValue(), excludeSamhsaFlag))
+        existingClaimKeys.add(new ClaimKey(claimIds.getKey(), claimId));
+    List<ClaimKey> claimKeys =
+        requestedClaimKeys.stream()
+            .filter(existingClaimKeys::contains)
+            .collect(Collectors.toList());
+    if (excludeSamhsaFlag && !samhsaBackfillStatus.isComplete())
+      claimKeys = findNonSamhsaClaimKeys(claimKeys);
 
     PagingArguments pagingArgs = new PagingArguments(requestDetails);
-    Bundle bundle =
-        TransformerUtils.createBundle(
-            pagingArgs,
-            "/ExplanationOfBenefit?",
-            ExplanationOfBenefit.SP_PATIENT,
-            beneficiaryId,
-            eobs);
-    return bundle;
+    List<ClaimKey> pageClaimKeys = TransformerUtils.selectPage(pagingArgs, claimKeys);
+
+    List<IBaseResource> eobs = new ArrayList<IBaseResource>();
+    for (ClaimType claimType : ClaimType.values()) {
+      List<String> pageClaimIds =
+          pageClaimKeys.stream()
+              .filter(k -> k.getClaimType() == claimType)
+              .map(ClaimKey::getClaimId)
+              .collect(Collectors.toList());
+      if (pageClaimIds.isEmpty()) continue;
+      List<?> claims = findClaimTypeByIds(claimType, pageClaimIds);
+      if (excludeSamhsaFlag) claims = filterSamhsa(claimType, claims);
+      eobs.addAll(transformToEobs(claimType, claims));
+    }
+
+    // The results are returned in the same order as the IDs were requested in.
+    Map<String, Integer> eobIdIndexes = new HashMap<>();
+    for (int i = 0; i < pageClaimKeys.size(); i++)
+      eobIdIndexes.put(
+          TransformerUtils.buildEobId(
+              pageClaimKeys.get(i).getClaimType(), pageClaimKeys.get(i).getClaimId()),
+          i);
+    eobs.sort(Comparator.comparing(e -> eobIdIndexes.get(e.getIdElement().getIdPart())));
+
+    return TransformerUtils.createBundle(
+        pagingArgs, "/ExplanationOfBenefit?", eobs, claimKeys.size());
+  }
+
+  /**
+   * Finds and transforms all of the specified beneficiary's claims of the specified {@link
+   * ClaimType}s, running the per-claim-type queries concurrently on the {@link
+   * #claimQueryExecutor}, in (at most) {@link #claimQueryParallelism} batches.
+   *
+   * @param types the {@link ClaimType}s to search
+   * @param beneficiaryId the {@link Beneficiary#getBeneficiaryId()} to find claims for
+   * @param serviceDate the {@link DateRangeParam} that the claims' service periods must overlap, or
+   *     <code>null</code> for all claims
+   * @param lastUpdated the {@link DateRangeParam} that the claims' last update times must fall in,
+   *     or <code>null</code> for all claims
+   * @param excludeSamhsa whether or not to filter out all SAMHSA-related claims
+   * @return the {@link ExplanationOfBenefit}s for the matching claims, in no particular order
+   */
+  private List<ExplanationOfBenefit> findEobsByPatient(
+      Set<ClaimType> types,
+      String beneficiaryId,
+      DateRangeParam serviceDate,
+      DateRangeParam lastUpdated,
+      boolean excludeSamhsa) {
+    /*
+     * The batches run on other threads, so they each get a copy of this request's MDC, and the
+     * query details that they record there are copied back into it once they're done.
+     */
+    Map<String, String> requestMdc = MDC.getCopyOfContextMap();
+    Map<String, String> batchesMdc = new ConcurrentHashMap<>();
+
+    List<Future<List<ExplanationOfBenefit>>> batchFutures = new ArrayList<>();
+    for (List<ClaimType> claimTypeBatch : partitionClaimTypes(types, claimQueryParallelism))
+      batchFutures.add(
+          claimQueryExecutor.submit(
+              () ->
+                  findEobsByPatient(
+                      claimTypeBatch,
+                      beneficiaryId,
+                      serviceDate,
+                      lastUpdated,
+                      excludeSamhsa,
+                      requestMdc,
+                      batchesMdc)));
+
+    List<ExplanationOfBenefit> eobs = new ArrayList<>();
+    try {
+      for (Future<List<ExplanationOfBenefit>> batchFuture : batchFutures)
+        eobs.addAll(batchFuture.get());
+    } catch (InterruptedException e) {
+      // This app doesn't use interrupts to signal anything, so this is unexpected.
+      throw new BadCodeMonkeyException(e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+      throw new BadCodeMonkeyException(e);
+    } finally {
+      // Don't leave the other batches tying up connections if one of them failed.
+      batchFutures.stream().forEach(f -> f.cancel(true));
+      batchesMdc.forEach(MDC::put);
+    }
+
+    return eobs;
+  }
+
+  /**
+   * Finds and transforms all of the specified beneficiary's claims of the specified {@link
+   * ClaimType}s, one after the other, using a new {@link EntityManager}. This is intended to be run
+   * on the {@link #claimQueryExecutor}.
+   *
+   * @param claimTypes the {@link ClaimType}s to search
+   * @param beneficiaryId the {@link Beneficiary#getBeneficiaryId()} to find claims for
+   * @param serviceDate the {@link DateRangeParam} that the claims' service periods must overlap, or
+   *     <code>null</code> for all claims
+   * @param lastUpdated the {@link DateRangeParam} that the claims' last update times must fall in,
+   *     or <code>null</code> for all claims
+   * @param excludeSamhsa whether or not to filter out all SAMHSA-related claims
+   * @param requestMdc the {@link MDC} context of the request being served, or <code>null</code> if
+   *     it's empty
+   * @param batchesMdc the {@link Map} to copy the {@link MDC} entries recorded by this batch into
+   * @return the {@link ExplanationOfBenefit}s for the matching claims
+   */
+  private List<ExplanationOfBenefit> findEobsByPatient(
+      List<ClaimType> claimTypes,
+      String beneficiaryId,
+      DateRangeParam serviceDate,
+      DateRangeParam lastUpdated,
+      boolean excludeSamhsa,
+      Map<String, String> requestMdc,
+      Map<String, String> batchesMdc) {
+    if (requestMdc != null) MDC.setContextMap(requestMdc);
+    EntityManager batchEntityManager = entityManagerFactory.createEntityManager();
+    try {
+      List<ExplanationOfBenefit> eobs = new ArrayList<>();
+      for (ClaimType claimType : claimTypes) {
+        List<?> claims =
+            findClaimTypeByPatient(
+                batchEntityManager,
+                claimType,
+                beneficiaryId,
+                serviceDate,
+                lastUpdated,
+                excludeSamhsa);
+        if (excludeSamhsa) claims = filterSamhsa(claimType, claims);
+        eobs.addAll(transformToEobs(claimType, claims));
+      }
+      return eobs;
+    } finally {
+      batchEntityManager.close();
+      Map<String, String> batchMdc = MDC.getCopyOfContextMap();
+      if (batchMdc != null) batchesMdc.putAll(batchMdc);
+      MDC.clear();
+    }
+  }
+
+  /**
+   * Finds the keys of the results of {@link #findByPatient(ReferenceParam, TokenAndListParam,
+   * String, String, DateRangeParam, DateRangeParam, SummaryEnum, RequestDetails)} (without paging),
+   * in the same order, so that they can be paged or passed to {@link #streamByClaimKeys(List,
+   * boolean, Consumer)}. Only the claim IDs are queried here, so any errors in the search will be raised
+   * before any of its results have been streamed.
+   *
+   * @param beneficiaryId the {@link Beneficiary#getBeneficiaryId()} to find claims for
+   * @param types the {@link ClaimType}s to search
+   * @param serviceDate the {@link DateRangeParam} that the claims' service periods must overlap, or
+   *     <code>null</code> for all claims
+   * @param lastUpdated the {@link DateRangeParam} that the claims' last update times must fall in,
+   *     or <code>null</code> for all claims
+   * @param excludeSamhsa whether or not to leave out the claims flagged as SAMHSA-related
+   * @return the {@link ClaimKey}s of the matching claims, in order
+   */
+  List<ClaimKey> findClaimKeysByPatient(
+      String beneficiaryId,
+      Set<ClaimType> types,
+      DateRangeParam serviceDate,
+      DateRangeParam lastUpdated,
+      boolean excludeSamhsa) {
+    Map<ClaimType, List<String>> claimIdsByType = new EnumMap<>(ClaimType.class);
+    for (ClaimType claimType : ClaimType.values()) {
+      if (!types.contains(claimType)) continue;
+      claimIdsByType.put(
+          claimType,
+          findClaimIdsByPatient(
+              claimType,
+              beneficiaryId,
+              serviceDate,
+              lastUpdated,
+              excludeSamhsa,
+              Integer.MAX_VALUE));
+    }
+    return mergeClaimKeys(claimIdsByType, Integer.MAX_VALUE);
+  }
+
+  /**
+   * Streams the specified claims to the specified {@link Consumer}, one {@link
+   * ExplanationOfBenefit} at a time, in the same order. The claims are loaded and transformed in
+   * batches of {@link #STREAM_BATCH_SIZE}, so only a handful of them are ever held in memory at
+   * once, no matter how many the beneficiary has.
+   *
+   * @param claimKeys the {@link ClaimKey}s of the claims to stream, as returned by {@link
+   *     #findClaimKeysByPatient(String, Set, DateRangeParam, DateRangeParam, boolean)}
+   * @param excludeSamhsa if <code>true</code>, all SAMHSA-related claims will be filtered out (see
+   *     {@link #filterSamhsa(ClaimType, List)})
+   * @param eobConsumer the {@link Consumer} to pass each matching {@link ExplanationOfBenefit} to
+   * @return the number of {@link ExplanationOfBenefit}s that were passed to the {@link Consumer}
+   */
+  int streamByClaimKeys(
+      List<ClaimKey> claimKeys, boolean excludeSamhsa, Consumer<ExplanationOfBenefit> eobConsumer) {
+    EntityManager streamEntityManager = entityManagerFactory.createEntityManager();
+    PersistenceUnitUtil persistenceUnitUtil = entityManagerFactory.getPersistenceUnitUtil();
+    int eobCount = 0;
+    Long eobsStreamedNanoSeconds = null;
+    Timer.Context timerEobsStreamed =
+        metricRegistry
+            .timer(MetricRegistry.name(getClass().getSimpleName(), "stream", "eobs_by_bene_id"))
+            .time();
+    try {
+      for (int batchStart = 0; batchStart < claimKeys.size(); batchStart += STREAM_BATCH_SIZE) {
+        List<ClaimKey> batchClaimKeys =
+            claimKeys.subList(
+                batchStart, Math.min(claimKeys.size(), batchStart + STREAM_BATCH_SIZE));
+
+        Map<ClaimKey, Object> batchClaims = new HashMap<>();
+        for (ClaimType claimType : ClaimType.values()) {
+          List<String> batchClaimIds =
+              batchClaimKeys.stream()
+                  .filter(k -> k.getClaimType() == claimType)
+                  .map(ClaimKey::getClaimId)
+                  .collect(Collectors.toList());
+          if (batchClaimIds.isEmpty()) continue;
+          for (Object claim : findClaimTypeByIds(streamEntityManager, claimType, batchClaimIds))
+            batchClaims.put(
+                new ClaimKey(claimType, (String) persistenceUnitUtil.getIdentifier(claim)), claim);
+        }
+
+        for (ClaimKey claimKey : batchClaimKeys) {
+          // The claim will be missing if it was deleted after its ID was queried.
+          Object claim = batchClaims.get(claimKey);
+          if (claim == null) continue;
+          if (excludeSamhsa && samhsaMatcher.test(claim)) continue;
+
+          ExplanationOfBenefit eob =
+              claimKey.getClaimType().getTransformer().apply(metricRegistry, claim);
+          eobConsumer.accept(eob);
+          eobCount++;
+        }
+
+        // Once transformed (or skipped), the batch's claims (and lines) can be garbage collected.
+        streamEntityManager.clear();
+      }
+
+      return eobCount;
+    } finally {
+      streamEntityManager.close();
+
+      eobsStreamedNanoSeconds = timerEobsStreamed.stop();
+      TransformerUtils.recordQueryInMdc(
+          "eobs_by_bene_id.streamed", eobsStreamedNanoSeconds, eobCount);
+    }
+  }
+
+  /**
+   * @param types the {@link ClaimType}s to be searched
+   * @param parallelism the maximum number of batches to split those {@link ClaimType}s into
+   * @return the specified {@link ClaimType}s, dealt out (in {@link ClaimType#values()} order) into
+   *     (at most) <code>parallelism</code> non-empty batches
+   */
+  static List<List<ClaimType>> partitionClaimTypes(Set<ClaimType> types, int parallelism) {
+    int batchCount = Math.min(Math.max(1, parallelism), types.size());
+    List<List<ClaimType>> claimTypeBatches = new ArrayList<>();
+    for (int i = 0; i < batchCount; i++) claimTypeBatches.add(new ArrayList<>());
+
+    int claimTypeIndex = 0;
+    for (ClaimType claimType : ClaimType.values()) {
+      if (!types.contains(claimType)) continue;
+      claimTypeBatches.get(claimTypeIndex++ % batchCount).add(claimType);
+    }
+    return claimTypeBatches;
+  }
+
+  /**
+   * Finds just the requested page of a beneficiary's claims: each claim type's IDs are queried in
+   * order (up to the end of the page), those are merged, and then only the claims on the page are
+   * loaded and transformed. The total is computed by separate count queries, where needed.
+   *
+   * @param beneficiaryId the {@link Beneficiary#getBeneficiaryId()} to find claims for
+   * @param types the {@link ClaimType}s to search
+   * @param serviceDate the {@link DateRangeParam} that the claims' service periods must overlap, or
+   *     <code>null</code> for all claims
+   * @param lastUpdated the {@link DateRangeParam} that the claims' last update times must fall in,
+   *     or <code>null</code> for all claims
+   * @param excludeSamhsa whether or not to filter out all SAMHSA-related claims: the paging and
+   *     total only account for the claims that the ETL pipeline has flagged as such, so this must
+   *     only be used once it has flagged all of them (see {@link SamhsaBackfillStatus})
+   * @param pagingArgs the {@link PagingArguments} for the requested page
+   * @param cacheKey the {@link ResponseCache.CacheKey} to load all of the beneficiary's claims into,
+   *     if they'd all fit in the {@link ResponseCache}, or {@link Optional#empty()} if the search
+   *     shouldn't be cached
+   * @return a {@link Bundle} of the {@link ExplanationOfBenefit}s on the requested page
+   */
+  private Bundle findPageByPatient(
+      String beneficiaryId,
+      Set<ClaimType> types,
+      DateRangeParam serviceDate,
+      DateRangeParam lastUpdated,
+      boolean excludeSamhsa,
+      PagingArguments pagingArgs,
+      Optional<ResponseCache.CacheKey> cacheKey) {
+    int startIndex = pagingArgs.getStartIndex();
+    int endIndex = (int) Math.min(Integer.MAX_VALUE, (long) startIndex + pagingArgs.getPageSize());
+
+    Map<ClaimType, List<String>> claimIdsByType = new EnumMap<>(ClaimType.class);
+    int total = 0;
+    for (ClaimType claimType : ClaimType.values()) {
+      if (!types.contains(claimType)) continue;
+
+      List<String> claimIds =
+          endIndex > 0
+              ? findClaimIdsByPatient(
+                  claimType, beneficiaryId, serviceDate, lastUpdated, excludeSamhsa, endIndex)
+              : Collections.emptyList();
+      claimIdsByType.put(claimType, claimIds);
+
+      // If the IDs query came up short, that's all of them: no need to count.
+      if (claimIds.size() < endIndex) total += claimIds.size();
+      else
+        total +=
+            countClaimTypeByPatient(
+                claimType, beneficiaryId, serviceDate, lastUpdated, excludeSamhsa);
+    }
+
+    if (cacheKey.isPresent() && responseCache.canCache(total)) {
+      List<IBaseResource> eobs =
+          responseCache.load(
+              cacheKey.get(),
+              () -> findAllByPatient(types, beneficiaryId, null, null, excludeSamhsa));
+      return TransformerUtils.createBundle(pagingArgs, "/ExplanationOfBenefit?", eobs);
+    }
+
+    List<ClaimKey> claimKeys = mergeClaimKeys(claimIdsByType, endIndex);
+    List<ClaimKey> pageClaimKeys =
+        claimKeys.subList(Math.min(startIndex, claimKeys.size()), claimKeys.size());
+
+    List<IBaseResource> eobs = new ArrayList<IBaseResource>();
+    for (ClaimType claimType : ClaimType.values()) {
+      List<String> pageClaimIds =
+          pageClaimKeys.stream()
+              .filter(k -> k.getClaimType() == claimType)
+              .map(ClaimKey::getClaimId)
+              .collect(Collectors.toList());
+      if (pageClaimIds.isEmpty()) continue;
+      List<?> claims = findClaimTypeByIds(claimType, pageClaimIds);
+      if (excludeSamhsa) claims = filterSamhsa(claimType, claims);
+      eobs.addAll(transformToEobs(claimType, claims));
+    }
+    eobs.sort(ExplanationOfBenefitResourceProvider::compareByClaimIdThenClaimType);
+
+    return TransformerUtils.createBundle(pagingArgs, "/ExplanationOfBenefit?", eobs, total);
+  }
+
+  /**
+   * Merges the specified (sorted) claim IDs for each {@link ClaimType} into a single list, in the
+   * same order as {@link #compareByClaimIdThenClaimType(IBaseResource, IBaseResource)}.
+   *
+   * @param claimIdsByType the claim IDs to merge, each sorted, keyed by {@link ClaimType}
+   * @param limit the maximum number of {@link ClaimKey}s to return
+   * @return the first (up to) <code>limit</code> {@link ClaimKey}s, in order
+   */
+  static List<ClaimKey> mergeClaimKeys(Map<ClaimType, List<String>> claimIdsByType, int limit) {
+    // This is a k-way merge: each queue entry is the next claim from one of the claim types.
+    PriorityQueue<ClaimKey> nextClaimKeys = new PriorityQueue<>();
+    Map<ClaimType, Iterator<String>> claimIdIters = new EnumMap<>(ClaimType.class);
+    for (Map.Entry<ClaimType, List<String>> claimIds : claimIdsByType.entrySet()) {
+      Iterator<String> claimIdsIter = claimIds.getValue().iterator();
+      claimIdIters.put(claimIds.getKey(), claimIdsIter);
+      if (claimIdsIter.hasNext())
+        nextClaimKeys.add(new ClaimKey(claimIds.getKey(), claimIdsIter.next()));
+    }
+
+    List<ClaimKey> mergedClaimKeys = new ArrayList<>();
+    while (mergedClaimKeys.size() < limit && !nextClaimKeys.isEmpty()) {
+      ClaimKey claimKey = nextClaimKeys.poll();
+      mergedClaimKeys.add(claimKey);
+
+      Iterator<String> claimIdsIter = claimIdIters.get(claimKey.claimType);
+      if (claimIdsIter.hasNext())
+        nextClaimKeys.add(new ClaimKey(claimKey.claimType, claimIdsIter.next()));
+    }
+    return mergedClaimKeys;
   }
 
   /*
@@ -249,19 +854,32 @@ public final class ExplanationOfBenefitResourceProvider implements IResourceProv
   }
 
   /**
+   * @param entityManager the {@link EntityManager} to query with
    * @param claimType the {@link ClaimType} to find
    * @param patientId the {@link Beneficiary#getBeneficiaryId()} to filter by
+   * @param serviceDate the {@link DateRangeParam} that the claims' service periods must overlap, or
+   *     <code>null</code> for all claims
+   * @param lastUpdated the {@link DateRangeParam} that the claims' last update times must fall in,
+   *     or <code>null</code> for all claims
+   * @param excludeSamhsa whether or not to leave out the claims flagged as SAMHSA-related
    * @return the matching claim/event entities
    */
   @SuppressWarnings({"rawtypes", "unchecked"})
-  private <T> List<T> findClaimTypeByPatient(ClaimType claimType, String patientId) {
+  private <T> List<T> findClaimTypeByPatient(
+      EntityManager entityManager,
+      ClaimType claimType,
+      String patientId,
+      DateRangeParam serviceDate,
+      DateRangeParam lastUpdated,
+      boolean excludeSamhsa) {
     CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
     CriteriaQuery criteria = criteriaBuilder.createQuery((Class) claimType.getEntityClass());
     Root root = criteria.from(claimType.getEntityClass());
     claimType.getEntityLazyAttributes().stream().forEach(a -> root.fetch(a));
     criteria.select(root).distinct(true);
     criteria.where(
-        criteriaBuilder.equal(root.get(claimType.getEntityBeneficiaryIdAttribute()), patientId));
+        createByPatientPredicate(
+            criteriaBuilder, root, claimType, patientId, serviceDate, lastUpdated, excludeSamhsa));
 
     List claimEntities = null;
     Long eobsByBeneIdQueryNanoSeconds = null;
@@ -287,6 +905,312 @@ public final class ExplanationOfBenefitResourceProvider implements IResourceProv
     return claimEntities;
   }
 
+  /**
+   * @param claimType the {@link ClaimType} to find
+   * @param patientId the {@link Beneficiary#getBeneficiaryId()} to filter by
+   * @param serviceDate the {@link DateRangeParam} that the claims' service periods must overlap, or
+   *     <code>null</code> for all claims
+   * @param lastUpdated the {@link DateRangeParam} that the claims' last update times must fall in,
+   *     or <code>null</code> for all claims
+   * @param excludeSamhsa whether or not to leave out the claims flagged as SAMHSA-related
+   * @param maxResults the maximum number of claim IDs to return
+   * @return the first (up to) <code>maxResults</code> IDs of the matching claim/event entities, in
+   *     ascending {@link String} order
+   */
+  @SuppressWarnings({"rawtypes", "unchecked"})
+  private List<String> findClaimIdsByPatient(
+      ClaimType claimType,
+      String patientId,
+      DateRangeParam serviceDate,
+      DateRangeParam lastUpdated,
+      boolean excludeSamhsa,
+      int maxResults) {
+    CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
+    CriteriaQuery criteria = criteriaBuilder.createQuery(String.class);
+    Root root = criteria.from(claimType.getEntityClass());
+    Path<String> claimIdPath = root.get(claimType.getEntityIdAttribute());
+    criteria.select(claimIdPath);
+    criteria.where(
+        createByPatientPredicate(
+            criteriaBuilder, root, claimType, patientId, serviceDate, lastUpdated, excludeSamhsa));
+    criteria.orderBy(criteriaBuilder.asc(createByteOrderExpression(criteriaBuilder, claimIdPath)));
+
+    List<String> claimIds = null;
+    Long eobIdsByBeneIdQueryNanoSeconds = null;
+    Timer.Context timerEobQuery =
+        metricRegistry
+            .timer(
+                MetricRegistry.name(
+                    getClass().getSimpleName(),
+                    "query",
+                    "eob_ids_by_bene_id",
+                    claimType.name().toLowerCase()))
+            .time();
+    try {
+      claimIds = entityManager.createQuery(criteria).setMaxResults(maxResults).getResultList();
+    } finally {
+      eobIdsByBeneIdQueryNanoSeconds = timerEobQuery.stop();
+      TransformerUtils.recordQueryInMdc(
+          String.format("eob_ids_by_bene_id.%s", claimType.name().toLowerCase()),
+          eobIdsByBeneIdQueryNanoSeconds,
+          claimIds == null ? 0 : claimIds.size());
+    }
+
+    return claimIds;
+  }
+
+  /**
+   * The claim IDs have to come back from the database in the same order that they'll be merged in
+   * (see {@link #mergeClaimKeys(Map, int)}), which is Java's {@link String} order. PostgreSQL's
+   * collations don't match that, though (e.g. en_US ignores the '-' in synthetic claims' negative
+   * IDs), so there they're sorted by their (UTF-8) bytes instead, which is the same as sorting them
+   * with <code>COLLATE "C"</code>. HSQL's default collation already sorts by code point.
+   *
+   * @param criteriaBuilder the {@link CriteriaBuilder} for the query
+   * @param claimIdPath the claim ID {@link Path} to sort by
+   * @return an {@link Expression} that sorts the specified claim IDs in byte order
+   */
+  private Expression<?> createByteOrderExpression(
+      CriteriaBuilder criteriaBuilder, Path<String> claimIdPath) {
+    Dialect dialect =
+        entityManagerFactory.unwrap(SessionFactoryImplementor.class).getJdbcServices().getDialect();
+    if (dialect instanceof PostgreSQL81Dialect)
+      return criteriaBuilder.function("textsend", byte[].class, claimIdPath);
+    return claimIdPath;
+  }
+
+  /**
+   * @param claimType the {@link ClaimType} to find
+   * @param claimIds the IDs of the claim/event entities to find
+   * @param excludeSamhsa whether or not to leave out the claims flagged as SAMHSA-related
+   * @return the IDs of those of the specified claim/event entities that exist (and match), in no
+   *     particular order
+   */
+  @SuppressWarnings({"rawtypes", "unchecked"})
+  private List<String> findClaimIdsByIds(
+      ClaimType claimType, List<String> claimIds, boolean excludeSamhsa) {
+    CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
+    CriteriaQuery criteria = criteriaBuilder.createQuery(String.class);
+    Root root = criteria.from(claimType.getEntityClass());
+    Path<String> claimIdPath = root.get(claimType.getEntityIdAttribute());
+    criteria.select(claimIdPath);
+    criteria.where(
+        excludeSamhsa
+            ? criteriaBuilder.and(
+                claimIdPath.in(claimIds),
+                createNotSamhsaPredicate(criteriaBuilder, root, claimType))
+            : claimIdPath.in(claimIds));
+
+    List<String> existingClaimIds = null;
+    Long eobIdsByIdsQueryNanoSeconds = null;
+    Timer.Context timerEobQuery =
+        metricRegistry
+            .timer(
+                MetricRegistry.name(
+                    getClass().getSimpleName(),
+                    "query",
+                    "eob_ids_by_ids",
+                    claimType.name().toLowerCase()))
+            .time();
+    try {
+      existingClaimIds = entityManager.createQuery(criteria).getResultList();
+    } finally {
+      eobIdsByIdsQueryNanoSeconds = timerEobQuery.stop();
+      TransformerUtils.recordQueryInMdc(
+          String.format("eob_ids_by_ids.%s", claimType.name().toLowerCase()),
+          eobIdsByIdsQueryNanoSeconds,
+          existingClaimIds == null ? 0 : existingClaimIds.size());
+    }
+
+    return existingClaimIds;
+  }
+
+  /**
+   * @param claimType the {@link ClaimType} to count
+   * @param patientId the {@link Beneficiary#getBeneficiaryId()} to filter by
+   * @param serviceDate the {@link DateRangeParam} that the claims' service periods must overlap, or
+   *     <code>null</code> for all claims
+   * @param lastUpdated the {@link DateRangeParam} that the claims' last update times must fall in,
+   *     or <code>null</code> for all claims
+   * @param excludeSamhsa whether or not to leave out the claims flagged as SAMHSA-related
+   * @return the number of matching claim/event entities
+   */
+  @SuppressWarnings({"rawtypes", "unchecked"})
+  private int countClaimTypeByPatient(
+      ClaimType claimType,
+      String patientId,
+      DateRangeParam serviceDate,
+      DateRangeParam lastUpdated,
+      boolean excludeSamhsa) {
+    CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
+    CriteriaQuery criteria = criteriaBuilder.createQuery(Long.class);
+    Root root = criteria.from(claimType.getEntityClass());
+    criteria.select(criteriaBuilder.count(root));
+    criteria.where(
+        createByPatientPredicate(
+            criteriaBuilder, root, claimType, patientId, serviceDate, lastUpdated, excludeSamhsa));
+
+    Long claimCount = null;
+    Long eobCountByBeneIdQueryNanoSeconds = null;
+    Timer.Context timerEobQuery =
+        metricRegistry
+            .timer(
+                MetricRegistry.name(
+                    getClass().getSimpleName(),
+                    "query",
+                    "eob_count_by_bene_id",
+                    claimType.name().toLowerCase()))
+            .time();
+    try {
+      claimCount = (Long) entityManager.createQuery(criteria).getSingleResult();
+    } finally {
+      eobCountByBeneIdQueryNanoSeconds = timerEobQuery.stop();
+      TransformerUtils.recordQueryInMdc(
+          String.format("eob_count_by_bene_id.%s", claimType.name().toLowerCase()),
+          eobCountByBeneIdQueryNanoSeconds,
+          1);
+    }
+
+    return claimCount.intValue();
+  }
+
+  /**
+   * @param criteriaBuilder the {@link CriteriaBuilder} for the query
+   * @param root the claim/event entity {@link Root} of the query
+   * @param claimType the {@link ClaimType} being queried
+   * @param patientId the {@link Beneficiary#getBeneficiaryId()} to filter by
+   * @param serviceDate the {@link DateRangeParam} that the claims' service periods must overlap, or
+   *     <code>null</code> for all claims
+   * @param lastUpdated the {@link DateRangeParam} that the claims' last update times must fall in,
+   *     or <code>null</code> for all claims
+   * @param excludeSamhsa whether or not to leave out the claims flagged as SAMHSA-related: claims
+   *     that haven't been flagged yet are still included, and so must be checked with {@link
+   *     #filterSamhsa(ClaimType, List)}
+   * @return a {@link Predicate} that matches the specified beneficiary's claims/events, limited to
+   *     those in the specified service dates and last updated times (if any)
+   */
+  @SuppressWarnings({"rawtypes", "unchecked"})
+  private static Predicate createByPatientPredicate(
+      CriteriaBuilder criteriaBuilder,
+      Root root,
+      ClaimType claimType,
+      String patientId,
+      DateRangeParam serviceDate,
+      DateRangeParam lastUpdated,
+      boolean excludeSamhsa) {
+    List<Predicate> predicates = new ArrayList<>();
+    predicates.add(
+        criteriaBuilder.equal(root.get(claimType.getEntityBeneficiaryIdAttribute()), patientId));
+
+    /*
+     * A claim's service period overlaps the requested range if it ends on/after the range's start
+     * and starts on/before the range's end. The (far more common) former check is indexed.
+     */
+    if (serviceDate != null) {
+      DateParam lowerBound = serviceDate.getLowerBound();
+      if (lowerBound != null && lowerBound.getValue() != null) {
+        Path<LocalDate> dateThrough = root.get(claimType.getEntityServiceDateThroughAttribute());
+        LocalDate lowerDate = toLocalDate(lowerBound.getValue());
+        predicates.add(
+            lowerBound.getPrefix() == ParamPrefixEnum.GREATERTHAN
+                ? criteriaBuilder.greaterThan(dateThrough, lowerDate)
+                : criteriaBuilder.greaterThanOrEqualTo(dateThrough, lowerDate));
+      }
+
+      DateParam upperBound = serviceDate.getUpperBound();
+      if (upperBound != null && upperBound.getValue() != null) {
+        Path<LocalDate> dateFrom = root.get(claimType.getEntityServiceDateFromAttribute());
+        LocalDate upperDate = toLocalDate(upperBound.getValue());
+        predicates.add(
+            upperBound.getPrefix() == ParamPrefixEnum.LESSTHAN
+                ? criteriaBuilder.lessThan(dateFrom, upperDate)
+                : criteriaBuilder.lessThanOrEqualTo(dateFrom, upperDate));
+      }
+    }
+
+    if (lastUpdated != null)
+      predicates.add(
+          TransformerUtils.createLastUpdatedPredicate(
+              criteriaBuilder, root.get(claimType.getEntityLastUpdatedAttribute()), lastUpdated));
+
+    if (excludeSamhsa) predicates.add(createNotSamhsaPredicate(criteriaBuilder, root, claimType));
+
+    return criteriaBuilder.and(predicates.toArray(new Predicate[predicates.size()]));
+  }
+
+  /**
+   * @param criteriaBuilder the {@link CriteriaBuilder} for the query
+   * @param root the claim/event entity {@link Root} of the query
+   * @param claimType the {@link ClaimType} being queried
+   * @return a {@link Predicate} that leaves out the claims flagged as SAMHSA-related: claims that
+   *     haven't been flagged yet are still included, and so must be checked with {@link
+   *     #filterSamhsa(ClaimType, List)}
+   */
+  @SuppressWarnings({"rawtypes", "unchecked"})
+  private static Predicate createNotSamhsaPredicate(
+      CriteriaBuilder criteriaBuilder, Root root, ClaimType claimType) {
+    Path<Boolean> samhsa = root.get(claimType.getEntitySamhsaAttribute());
+    return criteriaBuilder.or(criteriaBuilder.isFalse(samhsa), criteriaBuilder.isNull(samhsa));
+  }
+
+  /**
+   * @param date a {@link Date} from a search parameter, which HAPI will have parsed in the server's
+   *     time zone
+   * @return the {@link LocalDate} for the specified {@link Date}
+   */
+  private static LocalDate toLocalDate(Date date) {
+    return date.toInstant().atZone(ZoneId.systemDefault()).toLocalDate();
+  }
+
+  /**
+   * @param claimType the {@link ClaimType} to find
+   * @param claimIds the IDs of the claim/event entities to find
+   * @return the matching claim/event entities
+   */
+  private List<?> findClaimTypeByIds(ClaimType claimType, List<String> claimIds) {
+    return findClaimTypeByIds(entityManager, claimType, claimIds);
+  }
+
+  /**
+   * @param entityManager the {@link EntityManager} to query with
+   * @param claimType the {@link ClaimType} to find
+   * @param claimIds the IDs of the claim/event entities to find
+   * @return the matching claim/event entities
+   */
+  @SuppressWarnings({"rawtypes", "unchecked"})
+  private List<?> findClaimTypeByIds(
+      EntityManager entityManager, ClaimType claimType, List<String> claimIds) {
+    CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
+    CriteriaQuery criteria = criteriaBuilder.createQuery((Class) claimType.getEntityClass());
+    Root root = criteria.from(claimType.getEntityClass());
+    claimType.getEntityLazyAttributes().stream().forEach(a -> root.fetch(a));
+    criteria.select(root).distinct(true);
+    criteria.where(root.get(claimType.getEntityIdAttribute()).in(claimIds));
+
+    List claimEntities = null;
+    Long eobsByIdsQueryNanoSeconds = null;
+    Timer.Context timerEobQuery =
+        metricRegistry
+            .timer(
+                MetricRegistry.name(
+                    getClass().getSimpleName(),
+                    "query",
+                    "eobs_by_ids",
+                    claimType.name().toLowerCase()))
+            .time();
+    try {
+      claimEntities = entityManager.createQuery(criteria).getResultList();
+    } finally {
+      eobsByIdsQueryNanoSeconds = timerEobQuery.stop();
+      TransformerUtils.recordQueryInMdc(
+          String.format("eobs_by_ids.%s", claimType.name().toLowerCase()),
+          eobsByIdsQueryNanoSeconds,
+          claimEntities == null ? 0 : claimEntities.size());
+    }
+
+    return claimEntities;
+  }
+
   /**
    * @param claimType the {@link ClaimType} being transformed
    * @param claims the claims/events to transform
@@ -294,23 +1218,87 @@ public final class ExplanationOfBenefitResourceProvider implements IResourceProv
    *     claim/event
    */
   private List<ExplanationOfBenefit> transformToEobs(ClaimType claimType, List<?> claims) {
-    return claims.stream()
-        .map(c -> claimType.getTransformer().apply(metricRegistry, c))
-        .collect(Collectors.toList());
+    return transformToEobs(
+        metricRegistry,
+        claimTransformPool,
+        TransformerUtils.PARALLEL_TRANSFORM_THRESHOLD,
+        claimType,
+        claims);
   }
 
   /**
-   * Removes all SAMHSA-related claims from the specified {@link List} of {@link
-   * ExplanationOfBenefit} resources.
-   *
-   * @param eobs the {@link List} of {@link ExplanationOfBenefit} resources (i.e. claims) to filter
+   * @param metricRegistry the {@link MetricRegistry} to use
+   * @param claimTransformPool the {@link ForkJoinPool} to transform large claim lists on
+   * @param parallelThreshold lists of claims at least this large will be transformed in parallel
+   * @param claimType the {@link ClaimType} being transformed
+   * @param claims the claims/events to transform
+   * @return the transformed {@link ExplanationOfBenefit} instances, one for each specified
+   *     claim/event, in the same order as the claims
    */
-  private void filterSamhsa(List<IBaseResource> eobs) {
-    ListIterator<IBaseResource> eobsIter = eobs.listIterator();
-    while (eobsIter.hasNext()) {
-      ExplanationOfBenefit eob = (ExplanationOfBenefit) eobsIter.next();
-      if (samhsaMatcher.test(eob)) eobsIter.remove();
+  static List<ExplanationOfBenefit> transformToEobs(
+      MetricRegistry metricRegistry,
+      ForkJoinPool claimTransformPool,
+      int parallelThreshold,
+      ClaimType claimType,
+      List<?> claims) {
+    boolean parallel = claims.size() >= parallelThreshold;
+    Timer.Context timerTransform =
+        metricRegistry
+            .timer(
+                MetricRegistry.name(
+                    ExplanationOfBenefitResourceProvider.class.getSimpleName(),
+                    "transform",
+                    parallel ? "parallel" : "sequential",
+                    claimType.name().toLowerCase()))
+            .time();
+    try {
+      return TransformerUtils.transformAll(
+          claimTransformPool,
+          parallelThreshold,
+          claims,
+          c -> claimType.getTransformer().apply(metricRegistry, c));
+    } finally {
+      timerTransform.stop();
+    }
+  }
+
+  /**
+   * @param claimKeys the {@link ClaimKey}s of the claims to check
+   * @return the specified {@link ClaimKey}s, in the same order, minus those of any SAMHSA-related
+   *     claims: all of the claims are loaded to check them, whether or not they've been flagged
+   */
+  private List<ClaimKey> findNonSamhsaClaimKeys(List<ClaimKey> claimKeys) {
+    PersistenceUnitUtil persistenceUnitUtil = entityManagerFactory.getPersistenceUnitUtil();
+    Set<ClaimKey> nonSamhsaClaimKeys = new HashSet<>();
+    for (ClaimType claimType : ClaimType.values()) {
+      List<String> claimIds =
+          claimKeys.stream()
+              .filter(k -> k.getClaimType() == claimType)
+              .map(ClaimKey::getClaimId)
+              .collect(Collectors.toList());
+      if (claimIds.isEmpty()) continue;
+      for (Object claim : filterSamhsa(claimType, findClaimTypeByIds(claimType, claimIds)))
+        nonSamhsaClaimKeys.add(
+            new ClaimKey(claimType, (String) persistenceUnitUtil.getIdentifier(claim)));
     }
+
+    return claimKeys.stream().filter(nonSamhsaClaimKeys::contains).collect(Collectors.toList());
+  }
+
+  /**
+   * Removes all SAMHSA-related claims from the specified claim/event entities, before they're
+   * transformed. The queries will already have left out the claims that the ETL pipeline flagged as
+   * SAMHSA-related, so this only catches those that it hasn't gotten around to flagging yet.
+   *
+   * @param claimType the {@link ClaimType} of the specified claims/events
+   * @param claims the claim/event entities to filter
+   * @return the specified claim/event entities, minus any SAMHSA-related ones
+   */
+  private List<?> filterSamhsa(ClaimType claimType, List<?> claims) {
+    // Part D events never contain SAMHSA-related codes.
+    if (claimType == ClaimType.PDE) return claims;
+
+    return claims.stream().filter(c -> !samhsaMatcher.test(c)).collect(Collectors.toList());
   }
 
   /**
@@ -369,4 +1357,58 @@ public final class ExplanationOfBenefitResourceProvider implements IResourceProv
 
     return claimTypes;
   }
+
+  /**
+   * Identifies a claim, for paging purposes. Ordered the same way as {@link
+   * ExplanationOfBenefitResourceProvider#compareByClaimIdThenClaimType(IBaseResource,
+   * IBaseResource)}: by claim ID, then by {@link ClaimType}.
+   */
+  static final class ClaimKey implements Comparable<ClaimKey> {
+    private final ClaimType claimType;
+    private final String claimId;
+
+    /**
+     * Constructs a new {@link ClaimKey}.
+     *
+     * @param claimType the value to use for {@link #getClaimType()}
+     * @param claimId the value to use for {@link #getClaimId()}
+     */
+    ClaimKey(ClaimType claimType, String claimId) {
+      this.claimType = claimType;
+      this.claimId = claimId;
+    }
+
+    /** @return the {@link ClaimType} of the claim */
+    ClaimType getClaimType() {
+      return claimType;
+    }
+
+    /** @return the ID of the claim */
+    String getClaimId() {
+      return claimId;
+    }
+
+    /** @see java.lang.Comparable#compareTo(java.lang.Object) */
+    @Override
+    public int compareTo(ClaimKey o) {
+      int claimIdComparison = claimId.compareTo(o.claimId);
+      if (claimIdComparison != 0) return claimIdComparison;
+      return claimType.compareTo(o.claimType);
+    }
+
+    /** @see java.lang.Object#equals(java.lang.Object) */
+    @Override
+    public boolean equals(Object obj) {
+      if (this == obj) return true;
+      if (!(obj instanceof ClaimKey)) return false;
+      ClaimKey other = (ClaimKey) obj;
+      return claimType == other.claimType && claimId.equals(other.claimId);
+    }
+
+    /** @see java.lang.Object#hashCode() */
+    @Override
+    public int hashCode() {
+      return Objects.hash(claimType, claimId);
+    }
+  }
 }
@@ -0,0 +1,257 @@
+package gov.cms.bfd.server.war.stu3.providers;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.model.api.IQueryParameterAnd;
+import ca.uhn.fhir.parser.IParser;
+import ca.uhn.fhir.rest.api.Constants;
+import ca.uhn.fhir.rest.api.EncodingEnum;
+import ca.uhn.fhir.rest.api.RequestTypeEnum;
+import ca.uhn.fhir.rest.api.RestOperationTypeEnum;
+import ca.uhn.fhir.rest.api.server.RequestDetails;
+import ca.uhn.fhir.rest.param.DateRangeParam;
+import ca.uhn.fhir.rest.param.QualifiedParamList;
+import ca.uhn.fhir.rest.param.ReferenceParam;
+import ca.uhn.fhir.rest.param.TokenAndListParam;
+import ca.uhn.fhir.rest.server.RestfulServerUtils;
+import ca.uhn.fhir.rest.server.exceptions.InvalidRequestException;
+import ca.uhn.fhir.rest.server.interceptor.InterceptorAdapter;
+import gov.cms.bfd.server.war.stu3.providers.ExplanationOfBenefitResourceProvider.ClaimKey;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.hl7.fhir.dstu3.model.Bundle;
+import org.hl7.fhir.dstu3.model.Bundle.BundleLinkComponent;
+import org.hl7.fhir.dstu3.model.Bundle.BundleType;
+import org.hl7.fhir.dstu3.model.ExplanationOfBenefit;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+
+/**
+ * Answers unpaged JSON {@link ExplanationOfBenefit} searches by patient by streaming the {@link
+ * Bundle} to the client, one entry at a time, as each claim is read from the database and
+ * transformed (see {@link ExplanationOfBenefitResourceProvider#streamByClaimKeys(List, boolean,
+ * Consumer)}). The regular HAPI path builds the entire {@link Bundle} in memory before serializing
+ * it, which can take hundreds of MB for beneficiaries with many claims.
+ *
+ * <p>All other requests, including paged searches and any that use search parameters not handled
+ * here, are left to {@link ExplanationOfBenefitResourceProvider#findByPatient(ReferenceParam,
+ * TokenAndListParam, String, String, DateRangeParam, DateRangeParam,
+ * ca.uhn.fhir.rest.api.SummaryEnum, RequestDetails)}.
+ *
+ * <p>Its {@link Order} places it after {@link LoadGenerationETagInterceptor}, which answers
+ * conditional requests for unchanged responses before they get here.
+ */
+@Order(Ordered.HIGHEST_PRECEDENCE + 1)
+public final class ExplanationOfBenefitStreamingInterceptor extends InterceptorAdapter {
+  /** The request parameters that can be handled by this interceptor. */
+  private static final Set<String> STREAMABLE_PARAMS =
+      Collections.unmodifiableSet(
+          new HashSet<>(
+              Arrays.asList(
+                  Constants.PARAM_FORMAT,
+                  ExplanationOfBenefit.SP_PATIENT,
+                  "type",
+                  "service-date",
+                  Constants.PARAM_LASTUPDATED,
+                  "excludeSAMHSA")));
+
+  private final ExplanationOfBenefitResourceProvider eobResourceProvider;
+
+  /**
+   * Constructs a new {@link ExplanationOfBenefitStreamingInterceptor}.
+   *
+   * @param eobResourceProvider the application's {@link ExplanationOfBenefitResourceProvider}, to
+   *     stream the search results from
+   */
+  public ExplanationOfBenefitStreamingInterceptor(
+      ExplanationOfBenefitResourceProvider eobResourceProvider) {
+    this.eobResourceProvider = eobResourceProvider;
+  }
+
+  /**
+   * @see
+   *     ca.uhn.fhir.rest.server.interceptor.InterceptorAdapter#incomingRequestPostProcessed(ca.uhn.fhir.rest.api.server.RequestDetails,
+   *     javax.servlet.http.HttpServletRequest, javax.servlet.http.HttpServletResponse)
+   */
+  @Override
+  public boolean incomingRequestPostProcessed(
+      RequestDetails requestDetails, HttpServletRequest request, HttpServletResponse response) {
+    if (!isStreamable(requestDetails)) return true;
+
+    Map<String, String[]> params = requestDetails.getParameters();
+    FhirContext fhirContext = requestDetails.getServer().getFhirContext();
+    String[] patientValues = params.get(ExplanationOfBenefit.SP_PATIENT);
+    if (patientValues.length != 1)
+      throw new InvalidRequestException("Exactly one patient must be specified.");
+    String beneficiaryId = new ReferenceParam(patientValues[0]).getIdPart();
+    if (beneficiaryId == null || beneficiaryId.trim().isEmpty())
+      throw new InvalidRequestException("A patient ID must be specified.");
+    TokenAndListParam type = parseAndParam(fhirContext, params, "type", new TokenAndListParam());
+    Set<ClaimType> types;
+    try {
+      types = ExplanationOfBenefitResourceProvider.parseTypeParam(type);
+    } catch (IllegalArgumentException e) {
+      throw new InvalidRequestException("Unsupported type parameter.");
+    }
+    DateRangeParam serviceDate =
+        parseAndParam(fhirContext, params, "service-date", new DateRangeParam());
+    DateRangeParam lastUpdated =
+        parseAndParam(fhirContext, params, Constants.PARAM_LASTUPDATED, new DateRangeParam());
+    String[] excludeSamhsaValues = params.get("excludeSAMHSA");
+    boolean excludeSamhsa =
+        excludeSamhsaValues != null && Boolean.parseBoolean(excludeSamhsaValues[0]);
+
+    /*
+     * Once the response has been started, errors can no longer be reported to the client properly,
+     * so everything that might fail (short of the database going away) has to happen before then.
+     */
+    List<ClaimKey> claimKeys =
+        eobResourceProvider.findClaimKeysByPatient(
+            beneficiaryId, types, serviceDate, lastUpdated, excludeSamhsa);
+
+    /*
+     * The Bundle's fields are encoded by HAPI as usual, but with its entries (and total, which
+     * isn't known until the end) written out after them, as they're produced.
+     */
+    Bundle bundle = new Bundle();
+    bundle.setId(UUID.randomUUID().toString());
+    bundle.getMeta().setLastUpdated(new Date());
+    bundle.setType(BundleType.SEARCHSET);
+    bundle.addLink(
+        new BundleLinkComponent()
+            .setRelation(Constants.LINK_SELF)
+            .setUrl(requestDetails.getCompleteUrl()));
+    IParser parser = fhirContext.newJsonParser();
+    String bundleJson = parser.encodeResourceToString(bundle);
+
+    response.setStatus(HttpServletResponse.SC_OK);
+    response.setContentType(Constants.CT_FHIR_JSON_NEW);
+    response.setCharacterEncoding(Constants.CHARSET_NAME_UTF8);
+    boolean gzip = acceptsGzip(request);
+    if (gzip) response.setHeader(Constants.HEADER_CONTENT_ENCODING, Constants.ENCODING_GZIP);
+    try {
+      OutputStream responseStream = response.getOutputStream();
+      if (gzip) responseStream = new GZIPOutputStream(responseStream);
+      try (Writer writer = new OutputStreamWriter(responseStream, StandardCharsets.UTF_8)) {
+        writer.write(bundleJson.substring(0, bundleJson.lastIndexOf('}')));
+        writer.write(",\"entry\":[");
+        int total =
+            eobResourceProvider.streamByClaimKeys(
+                claimKeys, excludeSamhsa, new EntryWriter(parser, writer));
+        writer.write("],\"total\":" + total + "}");
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+
+    // This interceptor has handled the response, so HAPI shouldn't.
+    return false;
+  }
+
+  /**
+   * @param requestDetails the {@link RequestDetails} of the request to check
+   * @return <code>true</code> if the specified request is a (<code>GET</code>) JSON {@link
+   *     ExplanationOfBenefit} search by patient that doesn't need anything but the parameters in
+   *     {@link #STREAMABLE_PARAMS}, <code>false</code> if not
+   */
+  static boolean isStreamable(RequestDetails requestDetails) {
+    if (requestDetails.getRestOperationType() != RestOperationTypeEnum.SEARCH_TYPE) return false;
+    if (requestDetails.getRequestType() != RequestTypeEnum.GET) return false;
+    if (!"ExplanationOfBenefit".equals(requestDetails.getResourceName())) return false;
+
+    Map<String, String[]> params = requestDetails.getParameters();
+    if (!params.containsKey(ExplanationOfBenefit.SP_PATIENT)) return false;
+    if (!STREAMABLE_PARAMS.containsAll(params.keySet())) return false;
+
+    /*
+     * Only clients that ask for JSON (with a _format parameter or an Accept header) get streamed
+     * responses, as the server's default response encoding is XML.
+     */
+    RestfulServerUtils.ResponseEncoding responseEncoding =
+        RestfulServerUtils.determineResponseEncodingNoDefault(requestDetails, null);
+    return responseEncoding != null && responseEncoding.getEncoding() == EncodingEnum.JSON;
+  }
+
+  /**
+   * @param fhirContext the {@link FhirContext} to use
+   * @param params the request's parameters
+   * @param paramName the name of the parameter to parse
+   * @param param the (empty) {@link IQueryParameterAnd} to parse the parameter's values into
+   * @return the specified {@link IQueryParameterAnd}, populated with the parameter's values, or
+   *     <code>null</code> if the parameter wasn't specified
+   */
+  private static <T extends IQueryParameterAnd<?>> T parseAndParam(
+      FhirContext fhirContext, Map<String, String[]> params, String paramName, T param) {
+    String[] values = params.get(paramName);
+    if (values == null) return null;
+
+    List<QualifiedParamList> paramLists =
+        Arrays.stream(values)
+            .map(v -> QualifiedParamList.splitQueryStringByCommasIgnoreEscape(null, v))
+            .collect(Collectors.toList());
+    param.setValuesAsQueryTokens(fhirContext, paramName, paramLists);
+    return param;
+  }
+
+  /**
+   * @param request the {@link HttpServletRequest} being responded to
+   * @return <code>true</code> if the client accepts gzip-encoded responses, <code>false</code> if
+   *     not
+   */
+  private static boolean acceptsGzip(HttpServletRequest request) {
+    String acceptEncoding = request.getHeader(Constants.HEADER_ACCEPT_ENCODING);
+    return acceptEncoding != null && acceptEncoding.contains(Constants.ENCODING_GZIP);
+  }
+
+  /**
+   * Writes each {@link ExplanationOfBenefit} that it's passed out as a JSON {@link Bundle} entry.
+   */
+  private static final class EntryWriter implements Consumer<ExplanationOfBenefit> {
+    private final IParser parser;
+    private final Writer writer;
+    private boolean firstEntry;
+
+    /**
+     * Constructs a new {@link EntryWriter}.
+     *
+     * @param parser the JSON {@link IParser} to encode the {@link ExplanationOfBenefit}s with
+     * @param writer the {@link Writer} to write the entries to
+     */
+    EntryWriter(IParser parser, Writer writer) {
+      this.parser = parser;
+      this.writer = writer;
+      this.firstEntry = true;
+    }
+
+    /** @see java.util.function.Consumer#accept(java.lang.Object) */
+    @Override
+    public void accept(ExplanationOfBenefit eob) {
+      try {
+        if (!firstEntry) writer.write(',');
+        firstEntry = false;
+
+        writer.write("{\"resource\":");
+        parser.encodeResourceToWriter(eob, writer);
+        writer.write('}');
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+  }
+}
@@ -43,6 +43,7 @@ final class HHAClaimTransformer {
    */
   private static ExplanationOfBenefit transformClaim(HHAClaim claimGroup) {
     ExplanationOfBenefit eob = new ExplanationOfBenefit();
+    TransformerUtils.setLastUpdated(eob, claimGroup.getLastUpdated());
 
     // Common group level fields between all claim types
     TransformerUtils.mapEobCommonClaimHeaderData(
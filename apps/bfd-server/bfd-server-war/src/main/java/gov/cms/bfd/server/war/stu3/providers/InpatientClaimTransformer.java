@@ -47,6 +47,7 @@ final class InpatientClaimTransformer {
    */
   private static ExplanationOfBenefit transformClaim(InpatientClaim claimGroup) {
     ExplanationOfBenefit eob = new ExplanationOfBenefit();
+    TransformerUtils.setLastUpdated(eob, claimGroup.getLastUpdated());
 
     // Common group level fields between all claim types
     TransformerUtils.mapEobCommonClaimHeaderData(
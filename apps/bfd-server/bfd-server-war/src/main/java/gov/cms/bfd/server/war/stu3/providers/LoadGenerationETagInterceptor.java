@@ -0,0 +1,111 @@
+package gov.cms.bfd.server.war.stu3.providers;
+
+import ca.uhn.fhir.rest.api.Constants;
+import ca.uhn.fhir.rest.api.RequestTypeEnum;
+import ca.uhn.fhir.rest.api.RestOperationTypeEnum;
+import ca.uhn.fhir.rest.api.server.RequestDetails;
+import ca.uhn.fhir.rest.server.interceptor.InterceptorAdapter;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+
+/**
+ * Adds weak <code>ETag</code>s to the responses for resource reads and searches, and answers
+ * conditional (<code>If-None-Match</code>) requests for them with a <code>304 Not Modified</code>,
+ * before any of the resources are queried for or transformed.
+ *
+ * <p>The application's resources don't have versions of their own, and all of them only change when
+ * the ETL pipeline loads a new data set, so the <code>ETag</code>s are derived from the latest load
+ * generation (see {@link ResponseCache#getLoadGeneration()}). That makes them coarser than they
+ * could be (every load changes them all), but checking them only takes a single-row index lookup,
+ * whereas a per-beneficiary version would have had to be updated for every claim that's loaded.
+ *
+ * <p>This must run ahead of any interceptors that write responses themselves (e.g. {@link
+ * ExplanationOfBenefitStreamingInterceptor}), so that its <code>ETag</code> is included in those,
+ * and so that it can skip them entirely for unchanged responses. Its {@link Order} makes sure of
+ * that.
+ */
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public final class LoadGenerationETagInterceptor extends InterceptorAdapter {
+  private final ResponseCache responseCache;
+
+  /**
+   * Constructs a new {@link LoadGenerationETagInterceptor}.
+   *
+   * @param responseCache the application's {@link ResponseCache}, to get the load generation from
+   */
+  public LoadGenerationETagInterceptor(ResponseCache responseCache) {
+    this.responseCache = responseCache;
+  }
+
+  /**
+   * @see
+   *     ca.uhn.fhir.rest.server.interceptor.InterceptorAdapter#incomingRequestPostProcessed(ca.uhn.fhir.rest.api.server.RequestDetails,
+   *     javax.servlet.http.HttpServletRequest, javax.servlet.http.HttpServletResponse)
+   */
+  @Override
+  public boolean incomingRequestPostProcessed(
+      RequestDetails requestDetails, HttpServletRequest request, HttpServletResponse response) {
+    if (requestDetails.getRequestType() != RequestTypeEnum.GET) return true;
+    if (requestDetails.getRestOperationType() != RestOperationTypeEnum.READ
+        && requestDetails.getRestOperationType() != RestOperationTypeEnum.SEARCH_TYPE)
+      return true;
+
+    Optional<Long> loadGeneration = responseCache.getLoadGeneration();
+    if (!loadGeneration.isPresent()) return true;
+
+    String eTag = createETag(loadGeneration.get(), requestDetails);
+    response.setHeader(Constants.HEADER_ETAG, eTag);
+
+    String ifNoneMatch = request.getHeader(Constants.HEADER_IF_NONE_MATCH);
+    if (ifNoneMatch == null || !matchesETag(ifNoneMatch, eTag)) return true;
+
+    // The client already has the current response, so HAPI shouldn't produce it again.
+    response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+    return false;
+  }
+
+  /**
+   * @param loadGeneration the current load generation
+   * @param requestDetails the {@link RequestDetails} of the request being handled
+   * @return the weak <code>ETag</code> for the response to the specified request
+   */
+  static String createETag(long loadGeneration, RequestDetails requestDetails) {
+    /*
+     * The IncludeIdentifiers header changes what's in the response, without changing the URL, so
+     * it has to be accounted for here.
+     */
+    List<String> includeIdentifiersValues =
+        PatientResourceProvider.returnIncludeIdentifiersValues(requestDetails);
+    StringBuilder eTag = new StringBuilder("W/\"").append(loadGeneration);
+    if (!includeIdentifiersValues.equals(Arrays.asList("")))
+      eTag.append('-').append(String.join("_", includeIdentifiersValues));
+    return eTag.append('"').toString();
+  }
+
+  /**
+   * @param ifNoneMatch the value of an <code>If-None-Match</code> request header
+   * @param eTag the current weak <code>ETag</code>
+   * @return <code>true</code> if the header lists the specified <code>ETag</code> (using the weak
+   *     comparison), <code>false</code> if not: a <code>*</code> wildcard isn't treated as a match,
+   *     as it doesn't tell us that the client actually has the current response
+   */
+  static boolean matchesETag(String ifNoneMatch, String eTag) {
+    String eTagValue = stripWeakPrefix(eTag);
+    return Arrays.stream(ifNoneMatch.split(","))
+        .map(String::trim)
+        .anyMatch(t -> stripWeakPrefix(t).equals(eTagValue));
+  }
+
+  /**
+   * @param eTag an <code>ETag</code>, which may or may not be weak
+   * @return the specified <code>ETag</code>, without any weak (<code>W/</code>) prefix
+   */
+  private static String stripWeakPrefix(String eTag) {
+    return eTag.startsWith("W/") ? eTag.substring(2) : eTag;
+  }
+}
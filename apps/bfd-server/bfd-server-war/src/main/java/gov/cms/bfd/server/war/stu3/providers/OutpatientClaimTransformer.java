@@ -45,6 +45,7 @@ final class OutpatientClaimTransformer {
    */
   private static ExplanationOfBenefit transformClaim(OutpatientClaim claimGroup) {
     ExplanationOfBenefit eob = new ExplanationOfBenefit();
+    TransformerUtils.setLastUpdated(eob, claimGroup.getLastUpdated());
 
     // Common group level fields between all claim types
     TransformerUtils.mapEobCommonClaimHeaderData(
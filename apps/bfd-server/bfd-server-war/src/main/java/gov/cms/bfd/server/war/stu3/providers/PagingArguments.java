@@ -4,7 +4,10 @@ import ca.uhn.fhir.rest.api.Constants;
 import ca.uhn.fhir.rest.api.server.RequestDetails;
 import ca.uhn.fhir.rest.server.exceptions.InvalidRequestException;
 import com.justdavis.karl.misc.exceptions.BadCodeMonkeyException;
+import java.util.Collections;
+import java.util.Map;
 import java.util.Optional;
+import java.util.TreeMap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -17,14 +20,24 @@ public final class PagingArguments {
   private static final Logger LOGGER =
       LoggerFactory.getLogger(ExplanationOfBenefitResourceProvider.class);
 
+  /** The name of the request parameter that specifies the index of the first result to return. */
+  static final String PARAM_START_INDEX = "startIndex";
+
   private final Optional<Integer> pageSize;
   private final Optional<Integer> startIndex;
   private final String serverBase;
+  private final Map<String, String[]> searchParameters;
 
   public PagingArguments(RequestDetails requestDetails) {
     pageSize = parseIntegerParameters(requestDetails, Constants.PARAM_COUNT);
-    startIndex = parseIntegerParameters(requestDetails, "startIndex");
+    startIndex = parseIntegerParameters(requestDetails, PARAM_START_INDEX);
     serverBase = requestDetails.getServerBaseForRequest();
+
+    // Sorted, so that the paging links don't depend on the servlet container's parameter order.
+    Map<String, String[]> searchParameters = new TreeMap<>(requestDetails.getParameters());
+    searchParameters.remove(Constants.PARAM_COUNT);
+    searchParameters.remove(PARAM_START_INDEX);
+    this.searchParameters = Collections.unmodifiableMap(searchParameters);
   }
 
   /**
@@ -98,4 +111,12 @@ public final class PagingArguments {
   public String getServerBase() {
     return serverBase;
   }
+
+  /**
+   * @return Returns all of the request's parameters other than the paging ones (e.g. the search
+   *     criteria and <code>_format</code>), which must be carried over into the paging links.
+   */
+  public Map<String, String[]> getSearchParameters() {
+    return searchParameters;
+  }
 }
@@ -6,7 +6,11 @@ import ca.uhn.fhir.rest.annotation.OptionalParam;
 import ca.uhn.fhir.rest.annotation.Read;
 import ca.uhn.fhir.rest.annotation.RequiredParam;
 import ca.uhn.fhir.rest.annotation.Search;
+import ca.uhn.fhir.rest.api.Constants;
+import ca.uhn.fhir.rest.api.SummaryEnum;
 import ca.uhn.fhir.rest.api.server.RequestDetails;
+import ca.uhn.fhir.rest.param.DateRangeParam;
+import ca.uhn.fhir.rest.param.TokenOrListParam;
 import ca.uhn.fhir.rest.param.TokenParam;
 import ca.uhn.fhir.rest.server.IResourceProvider;
 import ca.uhn.fhir.rest.server.exceptions.InvalidRequestException;
@@ -17,13 +21,18 @@ import gov.cms.bfd.model.rif.Beneficiary;
 import gov.cms.bfd.model.rif.BeneficiaryHistory;
 import gov.cms.bfd.model.rif.BeneficiaryHistory_;
 import gov.cms.bfd.model.rif.Beneficiary_;
+import gov.cms.bfd.server.war.SpringConfiguration;
 import java.math.BigDecimal;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
 import java.util.stream.Collectors;
 import javax.inject.Inject;
+import javax.inject.Named;
 import javax.persistence.EntityManager;
 import javax.persistence.NoResultException;
 import javax.persistence.NonUniqueResultException;
@@ -33,6 +42,7 @@ import javax.persistence.criteria.CriteriaQuery;
 import javax.persistence.criteria.JoinType;
 import javax.persistence.criteria.Predicate;
 import javax.persistence.criteria.Root;
+import javax.persistence.metamodel.PluralAttribute;
 import javax.persistence.metamodel.SingularAttribute;
 import org.hl7.fhir.dstu3.model.Bundle;
 import org.hl7.fhir.dstu3.model.IdType;
@@ -59,6 +69,8 @@ public final class PatientResourceProvider implements IResourceProvider {
 
   private EntityManager entityManager;
   private MetricRegistry metricRegistry;
+  private ForkJoinPool claimTransformPool;
+  private ResponseCache responseCache;
 
   /** @param entityManager a JPA {@link EntityManager} connected to the application's database */
   @PersistenceContext
@@ -72,6 +84,22 @@ public final class PatientResourceProvider implements IResourceProvider {
     this.metricRegistry = metricRegistry;
   }
 
+  /**
+   * @param claimTransformPool the {@link ForkJoinPool} to transform large lists of beneficiaries
+   *     on
+   */
+  @Inject
+  public void setClaimTransformPool(
+      @Named(SpringConfiguration.CLAIM_TRANSFORM_POOL) ForkJoinPool claimTransformPool) {
+    this.claimTransformPool = claimTransformPool;
+  }
+
+  /** @param responseCache the {@link ResponseCache} to cache beneficiaries' {@link Patient}s in */
+  @Inject
+  public void setResponseCache(ResponseCache responseCache) {
+    this.responseCache = responseCache;
+  }
+
   /** @see ca.uhn.fhir.rest.server.IResourceProvider#getResourceType() */
   @Override
   public Class<? extends IBaseResource> getResourceType() {
@@ -101,7 +129,22 @@ public final class PatientResourceProvider implements IResourceProvider {
     if (beneIdText == null || beneIdText.trim().isEmpty()) throw new IllegalArgumentException();
 
     List<String> includeIdentifiersValues = returnIncludeIdentifiersValues(requestDetails);
+    List<IBaseResource> patients =
+        responseCache.get(
+            ResponseCache.CacheKey.forPatient(beneIdText, includeIdentifiersValues),
+            () -> Collections.singletonList(findPatientById(patientId, includeIdentifiersValues)));
+    return (Patient) patients.get(0);
+  }
 
+  /**
+   * @param patientId the {@link IdType} of the {@link Patient} to find
+   * @param includeIdentifiersValues the {@link #HEADER_NAME_INCLUDE_IDENTIFIERS} values for the
+   *     request
+   * @return the {@link Patient} for the specified beneficiary
+   * @throws ResourceNotFoundException if there is no such beneficiary
+   */
+  private Patient findPatientById(IdType patientId, List<String> includeIdentifiersValues) {
+    String beneIdText = patientId.getIdPart();
     CriteriaBuilder builder = entityManager.getCriteriaBuilder();
     CriteriaQuery<Beneficiary> criteria = builder.createQuery(Beneficiary.class);
     Root<Beneficiary> root = criteria.from(Beneficiary.class);
@@ -151,16 +194,23 @@ public final class PatientResourceProvider implements IResourceProvider {
 
   /**
    * Adds support for the FHIR "search" operation for {@link Patient}s, allowing users to search by
-   * {@link Patient#getId()}.
+   * {@link Patient#getId()}. Several IDs (up to {@link TransformerUtils#MAX_SEARCH_IDS}) can be
+   * searched for at once (e.g. <code>_id=a,b,c</code>), in which case they're all checked by a
+   * single database query, and then just the {@link Patient}s on the requested page are loaded and
+   * transformed.
    *
    * <p>The {@link Search} annotation indicates that this method supports the search operation.
    * There may be many different methods annotated with this {@link Search} annotation, to support
    * many different search criteria.
    *
-   * @param logicalId a {@link TokenParam} (with no system, per the spec) for the {@link
-   *     Patient#getId()} to try and find a matching {@link Patient} for
+   * @param logicalIds a {@link TokenOrListParam} (with no systems, per the spec) for the {@link
+   *     Patient#getId()}s to try and find matching {@link Patient}s for
    * @param startIndex an {@link OptionalParam} for the startIndex (or offset) used to determine
    *     pagination
+   * @param lastUpdated an {@link OptionalParam} for the range of times that the matching {@link
+   *     Patient}s must have last been loaded in
+   * @param summary the <code>_summary</code> mode requested, if any: for {@link SummaryEnum#COUNT},
+   *     just the number of matching {@link Patient}s will be returned, as counted by the database
    * @param requestDetails a {@link RequestDetails} containing the details of the request URL, used
    *     to parse out pagination values
    * @return Returns a {@link List} of {@link Patient}s, which may contain multiple matching
@@ -168,30 +218,54 @@ public final class PatientResourceProvider implements IResourceProvider {
    */
   @Search
   public Bundle searchByLogicalId(
-      @RequiredParam(name = Patient.SP_RES_ID) TokenParam logicalId,
+      @RequiredParam(name = Patient.SP_RES_ID) TokenOrListParam logicalIds,
       @OptionalParam(name = "startIndex") String startIndex,
+      @OptionalParam(name = Constants.PARAM_LASTUPDATED) DateRangeParam lastUpdated,
+      SummaryEnum summary,
       RequestDetails requestDetails) {
-    if (logicalId.getQueryParameterQualifier() != null)
-      throw new InvalidRequestException(
-          "Unsupported query parameter qualifier: " + logicalId.getQueryParameterQualifier());
-    if (logicalId.getSystem() != null && !logicalId.getSystem().isEmpty())
-      throw new InvalidRequestException(
-          "Unsupported query parameter system: " + logicalId.getSystem());
-    if (logicalId.getValueNotNull().isEmpty())
-      throw new InvalidRequestException(
-          "Unsupported query parameter value: " + logicalId.getValue());
-
-    List<IBaseResource> patients;
-    try {
-      patients = Arrays.asList(read(new IdType(logicalId.getValue()), requestDetails));
-    } catch (ResourceNotFoundException e) {
-      patients = new LinkedList<>();
+    List<String> beneficiaryIds = new ArrayList<>();
+    for (TokenParam logicalId : logicalIds.getValuesAsQueryTokens()) {
+      if (logicalId.getQueryParameterQualifier() != null)
+        throw new InvalidRequestException(
+            "Unsupported query parameter qualifier: " + logicalId.getQueryParameterQualifier());
+      if (logicalId.getSystem() != null && !logicalId.getSystem().isEmpty())
+        throw new InvalidRequestException(
+            "Unsupported query parameter system: " + logicalId.getSystem());
+      if (logicalId.getValueNotNull().isEmpty())
+        throw new InvalidRequestException(
+            "Unsupported query parameter value: " + logicalId.getValue());
+      if (!beneficiaryIds.contains(logicalId.getValue())) beneficiaryIds.add(logicalId.getValue());
     }
-
+    TransformerUtils.validateSearchIds(Patient.SP_RES_ID, beneficiaryIds);
+
+    if (summary == SummaryEnum.COUNT)
+      return TransformerUtils.createCountBundle(
+          BeneficiaryQueries.countBeneficiariesByIds(
+              entityManager,
+              metricRegistry,
+              getClass().getSimpleName(),
+              beneficiaryIds,
+              lastUpdated));
+
+    List<String> matchingBeneficiaryIds =
+        BeneficiaryQueries.findBeneficiaryIdsByIds(
+            entityManager, metricRegistry, getClass().getSimpleName(), beneficiaryIds, lastUpdated);
     PagingArguments pagingArgs = new PagingArguments(requestDetails);
+    List<String> pageBeneficiaryIds =
+        TransformerUtils.selectPage(pagingArgs, matchingBeneficiaryIds);
+
+    List<String> includeIdentifiersValues = returnIncludeIdentifiersValues(requestDetails);
+    List<Beneficiary> beneficiaries =
+        findBeneficiariesByIds(pageBeneficiaryIds, includeIdentifiersValues);
+    List<IBaseResource> patients =
+        TransformerUtils.transformAll(
+            claimTransformPool,
+            beneficiaries,
+            b -> BeneficiaryTransformer.transform(metricRegistry, b, includeIdentifiersValues));
+
     Bundle bundle =
         TransformerUtils.createBundle(
-            pagingArgs, "/Patient?", Patient.SP_RES_ID, logicalId.getValue(), patients);
+            pagingArgs, "/Patient?", patients, matchingBeneficiaryIds.size());
     return bundle;
   }
 
@@ -214,6 +288,8 @@ public final class PatientResourceProvider implements IResourceProvider {
    *     Patient#getIdentifier()} to try and find a matching {@link Patient} for
    * @param startIndex an {@link OptionalParam} for the startIndex (or offset) used to determine
    *     pagination
+   * @param lastUpdated an {@link OptionalParam} for the range of times that the matching {@link
+   *     Patient} must have last been loaded in
    * @param requestDetails a {@link RequestDetails} containing the details of the request URL, used
    *     to parse out pagination values
    * @return Returns a {@link List} of {@link Patient}s, which may contain multiple matching
@@ -223,6 +299,7 @@ public final class PatientResourceProvider implements IResourceProvider {
   public Bundle searchByIdentifier(
       @RequiredParam(name = Patient.SP_IDENTIFIER) TokenParam identifier,
       @OptionalParam(name = "startIndex") String startIndex,
+      @OptionalParam(name = Constants.PARAM_LASTUPDATED) DateRangeParam lastUpdated,
       RequestDetails requestDetails) {
     if (identifier.getQueryParameterQualifier() != null)
       throw new InvalidRequestException(
@@ -249,14 +326,54 @@ public final class PatientResourceProvider implements IResourceProvider {
     } catch (NoResultException e) {
       patients = new LinkedList<>();
     }
+    patients =
+        patients.stream()
+            .filter(p -> TransformerUtils.isLastUpdatedInRange((Patient) p, lastUpdated))
+            .collect(Collectors.toList());
 
     PagingArguments pagingArgs = new PagingArguments(requestDetails);
-    Bundle bundle =
-        TransformerUtils.createBundle(
-            pagingArgs, "/Patient?", Patient.SP_IDENTIFIER, identifier.getValue(), patients);
+    Bundle bundle = TransformerUtils.createBundle(pagingArgs, "/Patient?", patients);
     return bundle;
   }
 
+  /**
+   * @param beneficiaryIds the {@link Beneficiary#getBeneficiaryId()}s of the {@link Beneficiary}s
+   *     to load
+   * @param includeIdentifiersValues the {@link #HEADER_NAME_INCLUDE_IDENTIFIERS} values for the
+   *     request, which determine the identifier histories to load along with the {@link
+   *     Beneficiary}s
+   * @return the specified {@link Beneficiary}s, in the same order as the specified IDs
+   */
+  private List<Beneficiary> findBeneficiariesByIds(
+      List<String> beneficiaryIds, List<String> includeIdentifiersValues) {
+    List<PluralAttribute<Beneficiary, ?, ?>> fetchAttributes = new ArrayList<>();
+    if (hasHICN(includeIdentifiersValues)) fetchAttributes.add(Beneficiary_.beneficiaryHistories);
+    if (hasMBI(includeIdentifiersValues))
+      fetchAttributes.add(Beneficiary_.medicareBeneficiaryIdHistories);
+
+    List<Beneficiary> beneficiaries =
+        BeneficiaryQueries.findBeneficiariesByIds(
+            entityManager,
+            metricRegistry,
+            getClass().getSimpleName(),
+            String.format("benes_by_ids.include_%s", String.join("_", includeIdentifiersValues)),
+            beneficiaryIds,
+            fetchAttributes);
+
+    for (Beneficiary beneficiary : beneficiaries) {
+      // Null out the unhashed HICNs if we're not supposed to be returning them
+      if (!hasHICN(includeIdentifiersValues)) {
+        beneficiary.setHicnUnhashed(Optional.empty());
+      }
+
+      // Null out the unhashed MBIs if we're not supposed to be returning
+      if (!hasMBI(includeIdentifiersValues)) {
+        beneficiary.setMedicareBeneficiaryId(Optional.empty());
+      }
+    }
+    return beneficiaries;
+  }
+
   /**
    * @param hicnHash the {@link Beneficiary#getHicn()} hash value to match
    * @return a FHIR {@link Patient} for the CCW {@link Beneficiary} that matches the specified
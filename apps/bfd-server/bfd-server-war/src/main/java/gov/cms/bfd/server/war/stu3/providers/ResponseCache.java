@@ -0,0 +1,340 @@
+package gov.cms.bfd.server.war.stu3.providers;
+
+import com.codahale.metrics.MetricRegistry;
+import gov.cms.bfd.server.war.SpringConfiguration;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import javax.inject.Inject;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * An in-memory cache of the resources returned for each beneficiary, which saves the (often many)
+ * claim queries and transformations needed to answer repeat requests for them.
+ *
+ * <p>The data only changes when the ETL pipeline loads a new data set, after which it records a new
+ * generation in the <code>LoadGenerations</code> table. Each lookup checks that table's latest
+ * generation first (a single-row index lookup), and the whole cache is cleared whenever it has
+ * changed.
+ *
+ * <p>The cache is bounded by the total number of resources that it holds, as a beneficiary's
+ * responses can range from one to thousands of resources. The least recently used entries are
+ * evicted first. See {@link #DEFAULT_MAX_RESOURCES} for how that bound translates to heap usage.
+ */
+@Component
+public final class ResponseCache {
+  private static final Logger LOGGER = LoggerFactory.getLogger(ResponseCache.class);
+
+  /**
+   * The default value for {@link #setMaxResources(int)}. A transformed {@link
+   * org.hl7.fhir.dstu3.model.ExplanationOfBenefit} is a graph of several hundred HAPI objects,
+   * which takes up roughly 20-50 KB of heap (more for claims with many lines), so this keeps the
+   * cache to around 100 MB: a modest slice of even the 1 GB heap used in development and testing.
+   * Deployments with larger heaps can raise it via {@link
+   * SpringConfiguration#PROP_RESPONSE_CACHE_MAX_RESOURCES}.
+   */
+  static final int DEFAULT_MAX_RESOURCES = 2000;
+
+  private final Map<CacheKey, List<IBaseResource>> entries;
+  private int cachedResourceCount;
+  private Long loadGeneration;
+
+  private EntityManager entityManager;
+  private MetricRegistry metricRegistry;
+  private int maxResources;
+
+  /** Constructs a new {@link ResponseCache}. */
+  public ResponseCache() {
+    // The access ordering makes this an LRU cache.
+    this.entries = new LinkedHashMap<>(16, 0.75f, true);
+    this.cachedResourceCount = 0;
+    this.loadGeneration = null;
+    this.maxResources = DEFAULT_MAX_RESOURCES;
+  }
+
+  /** @param entityManager a JPA {@link EntityManager} connected to the application's database */
+  @PersistenceContext
+  public void setEntityManager(EntityManager entityManager) {
+    this.entityManager = entityManager;
+  }
+
+  /** @param metricRegistry the {@link MetricRegistry} to use */
+  @Inject
+  public void setMetricRegistry(MetricRegistry metricRegistry) {
+    this.metricRegistry = metricRegistry;
+  }
+
+  /**
+   * @param maxResources the maximum total number of resources to cache, across all entries, or
+   *     <code>0</code> to disable caching
+   */
+  @Value(
+      "${"
+          + SpringConfiguration.PROP_RESPONSE_CACHE_MAX_RESOURCES
+          + ":"
+          + DEFAULT_MAX_RESOURCES
+          + "}")
+  public void setMaxResources(int maxResources) {
+    this.maxResources = maxResources;
+  }
+
+  /**
+   * @param key the {@link CacheKey} to look up
+   * @return the cached resources for the specified {@link CacheKey}, or {@link Optional#empty()} if
+   *     there aren't any
+   */
+  public Optional<List<IBaseResource>> getIfPresent(CacheKey key) {
+    if (maxResources <= 0) return Optional.empty();
+
+    Long latestGeneration = queryLoadGeneration();
+    Optional<List<IBaseResource>> resources;
+    synchronized (this) {
+      advanceLoadGeneration(latestGeneration);
+      resources = Optional.ofNullable(entries.get(key));
+    }
+
+    metricRegistry
+        .meter(
+            MetricRegistry.name(getClass().getSimpleName(), resources.isPresent() ? "hit" : "miss"))
+        .mark();
+    return resources;
+  }
+
+  /**
+   * Returns the cached resources for the specified {@link CacheKey}, loading and caching them if
+   * there aren't any yet.
+   *
+   * @param key the {@link CacheKey} to look up
+   * @param loader the {@link Supplier} to load the resources with, on a cache miss: it won't be
+   *     called while any locks are held, and any exceptions that it throws will be bubbled up
+   *     (without caching anything)
+   * @return the (unmodifiable) resources for the specified {@link CacheKey}
+   */
+  public List<IBaseResource> get(CacheKey key, Supplier<List<IBaseResource>> loader) {
+    if (maxResources <= 0) return loader.get();
+
+    Long generationAtLoad = queryLoadGeneration();
+    synchronized (this) {
+      advanceLoadGeneration(generationAtLoad);
+      List<IBaseResource> resources = entries.get(key);
+      if (resources != null) {
+        metricRegistry.meter(MetricRegistry.name(getClass().getSimpleName(), "hit")).mark();
+        return resources;
+      }
+    }
+    metricRegistry.meter(MetricRegistry.name(getClass().getSimpleName(), "miss")).mark();
+
+    return load(key, generationAtLoad, loader);
+  }
+
+  /**
+   * Loads and caches the resources for the specified {@link CacheKey}, without looking them up
+   * first, e.g. after a {@link #getIfPresent(CacheKey)} miss.
+   *
+   * @param key the {@link CacheKey} to cache the resources under
+   * @param loader the {@link Supplier} to load the resources with: any exceptions that it throws
+   *     will be bubbled up (without caching anything)
+   * @return the (unmodifiable) resources for the specified {@link CacheKey}
+   */
+  public List<IBaseResource> load(CacheKey key, Supplier<List<IBaseResource>> loader) {
+    if (maxResources <= 0) return loader.get();
+
+    Long generationAtLoad = queryLoadGeneration();
+    synchronized (this) {
+      advanceLoadGeneration(generationAtLoad);
+    }
+    return load(key, generationAtLoad, loader);
+  }
+
+  /**
+   * @param resourceCount the number of resources that might be cached under a single {@link
+   *     CacheKey}
+   * @return <code>true</code> if that many resources would be cached by {@link #get(CacheKey,
+   *     Supplier)} or {@link #load(CacheKey, Supplier)}, <code>false</code> if caching is disabled
+   *     or they wouldn't fit
+   */
+  public boolean canCache(int resourceCount) {
+    return resourceCount <= maxResources && maxResources > 0;
+  }
+
+  /**
+   * @return the latest load generation recorded in the database, or {@link Optional#empty()} if no
+   *     data sets have been recorded as loaded yet: all of the application's responses stay the
+   *     same until it changes
+   */
+  public Optional<Long> getLoadGeneration() {
+    Long latestGeneration = queryLoadGeneration();
+    synchronized (this) {
+      advanceLoadGeneration(latestGeneration);
+    }
+    return Optional.ofNullable(latestGeneration);
+  }
+
+  /**
+   * @param key the {@link CacheKey} to cache the resources under
+   * @param generationAtLoad the load generation that was current before the resources were loaded
+   * @param loader the {@link Supplier} to load the resources with
+   * @return the (unmodifiable) resources that were loaded
+   */
+  private List<IBaseResource> load(
+      CacheKey key, Long generationAtLoad, Supplier<List<IBaseResource>> loader) {
+    List<IBaseResource> resources = Collections.unmodifiableList(loader.get());
+    put(key, generationAtLoad, resources);
+    return resources;
+  }
+
+  /**
+   * Caches the specified resources, unless they were loaded before the current load generation (in
+   * which case they might be stale), or there are too many of them to cache at all.
+   *
+   * @param key the {@link CacheKey} to cache the resources under
+   * @param generationAtLoad the load generation that was current when the resources were loaded
+   * @param resources the resources to cache
+   */
+  private synchronized void put(
+      CacheKey key, Long generationAtLoad, List<IBaseResource> resources) {
+    if (!Objects.equals(generationAtLoad, loadGeneration)) return;
+    if (resources.size() > maxResources) return;
+
+    List<IBaseResource> replaced = entries.put(key, resources);
+    if (replaced != null) cachedResourceCount -= replaced.size();
+    cachedResourceCount += resources.size();
+
+    // Evict the least recently used entries until things fit again.
+    Iterator<List<IBaseResource>> entriesIter = entries.values().iterator();
+    while (cachedResourceCount > maxResources && entriesIter.hasNext()) {
+      cachedResourceCount -= entriesIter.next().size();
+      entriesIter.remove();
+      metricRegistry.meter(MetricRegistry.name(getClass().getSimpleName(), "eviction")).mark();
+    }
+  }
+
+  /**
+   * @return the latest load generation recorded in the database, or <code>null</code> if no data
+   *     sets have been recorded as loaded yet
+   */
+  private Long queryLoadGeneration() {
+    Number latestGeneration =
+        (Number)
+            entityManager
+                .createNativeQuery("SELECT MAX(\"generation\") FROM \"LoadGenerations\"")
+                .getSingleResult();
+    return latestGeneration != null ? latestGeneration.longValue() : null;
+  }
+
+  /**
+   * Clears the cache if the specified load generation is newer than the one its entries were loaded
+   * under. Must only be called while holding this object's lock.
+   *
+   * @param latestGeneration a value returned by {@link #queryLoadGeneration()}
+   */
+  private void advanceLoadGeneration(Long latestGeneration) {
+    // Concurrent requests might see the generations out of order, but they only ever go up.
+    if (latestGeneration == null) return;
+    if (loadGeneration != null && latestGeneration <= loadGeneration) return;
+
+    LOGGER.info(
+        "Load generation changed from '{}' to '{}': clearing {} cached responses.",
+        loadGeneration,
+        latestGeneration,
+        entries.size());
+    entries.clear();
+    cachedResourceCount = 0;
+    loadGeneration = latestGeneration;
+  }
+
+  /**
+   * Identifies a set of cached resources: those returned for a single beneficiary, by a single kind
+   * of request.
+   */
+  public static final class CacheKey {
+    private final String resourceType;
+    private final String beneficiaryId;
+    private final List<String> variant;
+
+    /**
+     * Constructs a new {@link CacheKey}.
+     *
+     * @param resourceType the FHIR resource type of the cached resources
+     * @param beneficiaryId the {@link gov.cms.bfd.model.rif.Beneficiary#getBeneficiaryId()} that
+     *     the resources were returned for
+     * @param variant any other request options that affect which resources are returned, or what
+     *     they contain
+     */
+    private CacheKey(String resourceType, String beneficiaryId, List<String> variant) {
+      this.resourceType = resourceType;
+      this.beneficiaryId = beneficiaryId;
+      this.variant = variant;
+    }
+
+    /**
+     * @param beneficiaryId the {@link gov.cms.bfd.model.rif.Beneficiary#getBeneficiaryId()} that
+     *     the {@link org.hl7.fhir.dstu3.model.ExplanationOfBenefit}s are for
+     * @param claimTypes the {@link ClaimType}s that were searched for
+     * @param excludeSamhsa whether or not SAMHSA-related claims were filtered out
+     * @return a {@link CacheKey} for a (complete) search for a beneficiary's {@link
+     *     org.hl7.fhir.dstu3.model.ExplanationOfBenefit}s
+     */
+    public static CacheKey forEobs(
+        String beneficiaryId, Collection<ClaimType> claimTypes, boolean excludeSamhsa) {
+      String claimTypesText =
+          claimTypes.stream().sorted().map(ClaimType::name).collect(Collectors.joining(","));
+      return new CacheKey(
+          "ExplanationOfBenefit",
+          beneficiaryId,
+          Arrays.asList(claimTypesText, Boolean.toString(excludeSamhsa)));
+    }
+
+    /**
+     * @param beneficiaryId the {@link gov.cms.bfd.model.rif.Beneficiary#getBeneficiaryId()} of the
+     *     {@link org.hl7.fhir.dstu3.model.Patient}
+     * @param includeIdentifiersValues the {@link
+     *     PatientResourceProvider#HEADER_NAME_INCLUDE_IDENTIFIERS} values that the {@link
+     *     org.hl7.fhir.dstu3.model.Patient} was transformed with
+     * @return a {@link CacheKey} for a beneficiary's {@link org.hl7.fhir.dstu3.model.Patient}
+     */
+    public static CacheKey forPatient(String beneficiaryId, List<String> includeIdentifiersValues) {
+      String includeIdentifiersText =
+          includeIdentifiersValues.stream().sorted().distinct().collect(Collectors.joining(","));
+      return new CacheKey(
+          "Patient", beneficiaryId, Collections.singletonList(includeIdentifiersText));
+    }
+
+    /** @see java.lang.Object#hashCode() */
+    @Override
+    public int hashCode() {
+      return Objects.hash(resourceType, beneficiaryId, variant);
+    }
+
+    /** @see java.lang.Object#equals(java.lang.Object) */
+    @Override
+    public boolean equals(Object obj) {
+      if (this == obj) return true;
+      if (!(obj instanceof CacheKey)) return false;
+      CacheKey other = (CacheKey) obj;
+      return resourceType.equals(other.resourceType)
+          && beneficiaryId.equals(other.beneficiaryId)
+          && variant.equals(other.variant);
+    }
+
+    /** @see java.lang.Object#toString() */
+    @Override
+    public String toString() {
+      return resourceType + "/" + beneficiaryId + variant;
+    }
+  }
+}
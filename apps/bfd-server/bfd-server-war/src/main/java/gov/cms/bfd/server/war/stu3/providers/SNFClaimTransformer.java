@@ -44,6 +44,7 @@ final class SNFClaimTransformer {
    */
   private static ExplanationOfBenefit transformClaim(SNFClaim claimGroup) {
     ExplanationOfBenefit eob = new ExplanationOfBenefit();
+    TransformerUtils.setLastUpdated(eob, claimGroup.getLastUpdated());
 
     // Common group level fields between all claim types
     TransformerUtils.mapEobCommonClaimHeaderData(
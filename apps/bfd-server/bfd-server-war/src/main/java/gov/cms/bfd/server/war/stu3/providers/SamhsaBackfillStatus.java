@@ -0,0 +1,57 @@
+package gov.cms.bfd.server.war.stu3.providers;
+
+import java.util.List;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import org.springframework.stereotype.Component;
+
+/**
+ * Tracks whether or not the ETL pipeline has finished backfilling the "samhsa" flags of the claims
+ * that were loaded before it started setting them (see <code>
+ * gov.cms.bfd.pipeline.rif.load.SamhsaBackfillIdleTask</code>).
+ *
+ * <p>Until then, the flags can't be relied on to exclude all of the SAMHSA-related claims in the
+ * database queries, so any searches whose paging or totals depend on that have to load and check
+ * all of the claims instead. Once the backfill has finished, it's finished for good, as the
+ * pipeline flags all newly-loaded claims as they're loaded.
+ */
+@Component
+public final class SamhsaBackfillStatus {
+  /**
+   * The <code>IdleTaskCursors</code> ID of the pipeline's backfill task, which must match <code>
+   * gov.cms.bfd.pipeline.rif.load.SamhsaBackfillIdleTask#ID</code>.
+   */
+  static final String BACKFILL_TASK_ID = "samhsaBackfill";
+
+  private EntityManager entityManager;
+  private volatile boolean complete;
+
+  /** Constructs a new {@link SamhsaBackfillStatus}. */
+  public SamhsaBackfillStatus() {
+    this.complete = false;
+  }
+
+  /** @param entityManager a JPA {@link EntityManager} connected to the application's database */
+  @PersistenceContext
+  public void setEntityManager(EntityManager entityManager) {
+    this.entityManager = entityManager;
+  }
+
+  /**
+   * @return <code>true</code> if all of the claims in the database have been flagged as SAMHSA
+   *     related or not, <code>false</code> if some of them might not have been yet: only the
+   *     former is remembered, so this will be re-checked (a single-row index lookup) until then
+   */
+  public boolean isComplete() {
+    if (complete) return true;
+
+    List<?> completedValues =
+        entityManager
+            .createNativeQuery(
+                "SELECT \"completed\" FROM \"IdleTaskCursors\" WHERE \"taskId\" = :taskId")
+            .setParameter("taskId", BACKFILL_TASK_ID)
+            .getResultList();
+    complete = !completedValues.isEmpty() && Boolean.TRUE.equals(completedValues.get(0));
+    return complete;
+  }
+}
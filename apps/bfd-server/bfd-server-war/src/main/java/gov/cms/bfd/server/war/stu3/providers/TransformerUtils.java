@@ -3,6 +3,7 @@ package gov.cms.bfd.server.war.stu3.providers;
 import ca.uhn.fhir.model.api.TemporalPrecisionEnum;
 import ca.uhn.fhir.model.primitive.IdDt;
 import ca.uhn.fhir.rest.api.Constants;
+import ca.uhn.fhir.rest.param.DateRangeParam;
 import ca.uhn.fhir.rest.server.exceptions.InvalidRequestException;
 import com.codahale.metrics.MetricRegistry;
 import com.justdavis.karl.misc.exceptions.BadCodeMonkeyException;
@@ -45,21 +46,27 @@ import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.time.Instant;
 import java.time.LocalDate;
 import java.time.ZoneId;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
 import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.Path;
+import javax.persistence.criteria.Predicate;
 import org.apache.commons.lang3.StringUtils;
 import org.hl7.fhir.dstu3.model.Bundle;
 import org.hl7.fhir.dstu3.model.Bundle.BundleEntryComponent;
@@ -81,6 +88,7 @@ import org.hl7.fhir.dstu3.model.ExplanationOfBenefit.ProcedureComponent;
 import org.hl7.fhir.dstu3.model.ExplanationOfBenefit.SupportingInformationComponent;
 import org.hl7.fhir.dstu3.model.Extension;
 import org.hl7.fhir.dstu3.model.Identifier;
+import org.hl7.fhir.dstu3.model.Meta;
 import org.hl7.fhir.dstu3.model.Money;
 import org.hl7.fhir.dstu3.model.Observation;
 import org.hl7.fhir.dstu3.model.Observation.ObservationStatus;
@@ -113,6 +121,18 @@ import org.slf4j.MDC;
 public final class TransformerUtils {
   private static final Logger LOGGER = LoggerFactory.getLogger(TransformerUtils.class);
 
+  /**
+   * Lists of records at least this large will be transformed in parallel by {@link
+   * #transformAll(ForkJoinPool, List, Function)}. Smaller ones aren't worth the overhead.
+   */
+  static final int PARALLEL_TRANSFORM_THRESHOLD = 100;
+
+  /**
+   * The maximum number of IDs that can be searched for at once (e.g. <code>_id=a,b,c</code>), as
+   * they all end up in a single <code>IN (...)</code> query.
+   */
+  static final int MAX_SEARCH_IDS = 1000;
+
   /**
    * Tracks the {@link CcwCodebookVariable}s that have already had code lookup failures due to
    * missing {@link Value} matches. Why track this? To ensure that we don't spam log events for
@@ -121,7 +141,8 @@ public final class TransformerUtils {
    *
    * @see #calculateCodingDisplay(IAnyResource, CcwCodebookVariable, String)
    */
-  private static final Set<CcwCodebookVariable> codebookLookupMissingFailures = new HashSet<>();
+  private static final Set<CcwCodebookVariable> codebookLookupMissingFailures =
+      ConcurrentHashMap.newKeySet();
 
   /**
    * Tracks the {@link CcwCodebookVariable}s that have already had code lookup failures due to
@@ -131,31 +152,32 @@ public final class TransformerUtils {
    *
    * @see #calculateCodingDisplay(IAnyResource, CcwCodebookVariable, String)
    */
-  private static final Set<CcwCodebookVariable> codebookLookupDuplicateFailures = new HashSet<>();
+  private static final Set<CcwCodebookVariable> codebookLookupDuplicateFailures =
+      ConcurrentHashMap.newKeySet();
 
   /** Stores the PRODUCTNDC and SUBSTANCENAME from the downloaded NDC file. */
-  private static Map<String, String> ndcProductMap = null;
+  private static volatile Map<String, String> ndcProductMap = null;
 
   /** Tracks the national drug codes that have already had code lookup failures. */
-  private static final Set<String> drugCodeLookupMissingFailures = new HashSet<>();
+  private static final Set<String> drugCodeLookupMissingFailures = ConcurrentHashMap.newKeySet();
 
   /** Stores the diagnosis ICD codes and their display values */
-  private static Map<String, String> icdMap = null;
+  private static volatile Map<String, String> icdMap = null;
 
   /** Tracks the diagnosis ICD codes that have already had code lookup failures. */
-  private static final Set<String> icdLookupMissingFailures = new HashSet<>();
+  private static final Set<String> icdLookupMissingFailures = ConcurrentHashMap.newKeySet();
 
   /** Stores the procedure codes and their display values */
-  private static Map<String, String> procedureMap = null;
+  private static volatile Map<String, String> procedureMap = null;
 
   /** Tracks the procedure codes that have already had code lookup failures. */
-  private static final Set<String> procedureLookupMissingFailures = new HashSet<>();
+  private static final Set<String> procedureLookupMissingFailures = ConcurrentHashMap.newKeySet();
 
   /** Stores the NPI codes and their display values */
-  private static Map<String, String> npiMap = null;
+  private static volatile Map<String, String> npiMap = null;
 
   /** Tracks the NPI codes that have already had code lookup failures. */
-  private static final Set<String> npiCodeLookupMissingFailures = new HashSet<>();
+  private static final Set<String> npiCodeLookupMissingFailures = ConcurrentHashMap.newKeySet();
 
   /**
    * @param eob the {@link ExplanationOfBenefit} that the adjudication total should be part of
@@ -2911,19 +2933,13 @@ public final class TransformerUtils {
    * @param pagingArgs a {@link PagingArguments} used to determine if paging is requested and the
    *     parameters for doing so
    * @param resourceType the {@link String} the resource being provided by the paging link
-   * @param identifier the {@link String} field the search is being performed on
-   * @param value the {@link String} value of the identifier being searched for
    * @param resources a list of {@link ExplanationOfBenefit}s, {@link Coverage}s, or {@link
    *     Patient}s, of which a portion or all will be added to the bundle based on the paging values
    * @return Returns a {@link Bundle} of either {@link ExplanationOfBenefit}s, {@link Coverage}s, or
    *     {@link Patient}s, which may contain multiple matching resources, or may also be empty.
    */
   public static Bundle createBundle(
-      PagingArguments pagingArgs,
-      String resourceType,
-      String identifier,
-      String value,
-      List<IBaseResource> resources) {
+      PagingArguments pagingArgs, String resourceType, List<IBaseResource> resources) {
     Bundle bundle = new Bundle();
     if (pagingArgs.isPagingRequested()) {
       /*
@@ -2936,8 +2952,7 @@ public final class TransformerUtils {
       List<IBaseResource> resourcesSubList =
           resources.subList(pagingArgs.getStartIndex(), endIndex);
       bundle = TransformerUtils.addResourcesToBundle(bundle, resourcesSubList);
-      TransformerUtils.addPagingLinks(
-          pagingArgs, bundle, resourceType, identifier, value, resources.size());
+      TransformerUtils.addPagingLinks(pagingArgs, bundle, resourceType, resources.size());
     } else {
       bundle = TransformerUtils.addResourcesToBundle(bundle, resources);
     }
@@ -2946,6 +2961,171 @@ public final class TransformerUtils {
     return bundle;
   }
 
+  /**
+   * Sets the {@link Meta#getLastUpdated()} of the specified resource, if the database record that
+   * it was transformed from has a "lastUpdated" value (older records won't).
+   *
+   * @param resource the FHIR {@link Resource} to set the {@link Meta#getLastUpdated()} of
+   * @param lastUpdated the "lastUpdated" value of the database record that the resource represents
+   */
+  static void setLastUpdated(Resource resource, Optional<Instant> lastUpdated) {
+    lastUpdated.ifPresent(value -> resource.getMeta().setLastUpdated(Date.from(value)));
+  }
+
+  /**
+   * @param resource a FHIR {@link Resource}, whose {@link Meta#getLastUpdated()} (if any) was set
+   *     via {@link #setLastUpdated(Resource, Optional)}
+   * @param lastUpdatedRange the <code>_lastUpdated</code> search parameter's {@link
+   *     DateRangeParam}, or <code>null</code> if it wasn't specified
+   * @return <code>true</code> if the resource's {@link Meta#getLastUpdated()} falls within the
+   *     specified range (resources without one only match when no range was specified), <code>
+   *     false</code> if not
+   */
+  static boolean isLastUpdatedInRange(Resource resource, DateRangeParam lastUpdatedRange) {
+    if (lastUpdatedRange == null) return true;
+    Date lastUpdated = resource.getMeta().getLastUpdated();
+    if (lastUpdated == null) return false;
+
+    Date lowerBound = lastUpdatedRange.getLowerBoundAsInstant();
+    if (lowerBound != null && lastUpdated.before(lowerBound)) return false;
+    Date upperBound = lastUpdatedRange.getUpperBoundAsInstant();
+    if (upperBound != null && lastUpdated.after(upperBound)) return false;
+    return true;
+  }
+
+  /**
+   * @param criteriaBuilder the {@link CriteriaBuilder} for the query
+   * @param lastUpdatedPath the {@link Path} of the queried entity's "lastUpdated" field
+   * @param lastUpdatedRange the <code>_lastUpdated</code> search parameter's {@link
+   *     DateRangeParam}, or <code>null</code> if it wasn't specified
+   * @return a {@link Predicate} that matches the entities whose "lastUpdated" value falls within
+   *     the specified range, as {@link #isLastUpdatedInRange(Resource, DateRangeParam)} does
+   */
+  static Predicate createLastUpdatedPredicate(
+      CriteriaBuilder criteriaBuilder,
+      Path<Instant> lastUpdatedPath,
+      DateRangeParam lastUpdatedRange) {
+    List<Predicate> predicates = new ArrayList<>();
+    if (lastUpdatedRange != null) {
+      Date lowerBound = lastUpdatedRange.getLowerBoundAsInstant();
+      if (lowerBound != null)
+        predicates.add(
+            criteriaBuilder.greaterThanOrEqualTo(lastUpdatedPath, lowerBound.toInstant()));
+      Date upperBound = lastUpdatedRange.getUpperBoundAsInstant();
+      if (upperBound != null)
+        predicates.add(criteriaBuilder.lessThanOrEqualTo(lastUpdatedPath, upperBound.toInstant()));
+    }
+
+    return criteriaBuilder.and(predicates.toArray(new Predicate[predicates.size()]));
+  }
+
+  /**
+   * @param totalResults the total number of resources matching the search
+   * @return a {@link Bundle} with no entries, just the specified {@link Bundle#getTotal()}, for
+   *     searches where the client only needs the count (i.e. <code>_summary=count</code>)
+   */
+  public static Bundle createCountBundle(int totalResults) {
+    Bundle bundle = new Bundle();
+    bundle.setTotal(totalResults);
+    return bundle;
+  }
+
+  /**
+   * Applies the specified transformation to each of the specified records, splitting the work
+   * across the specified {@link ForkJoinPool} when there are at least {@link
+   * #PARALLEL_TRANSFORM_THRESHOLD} records.
+   *
+   * <p>The records must already have everything that the transformation reads loaded: lazy loading
+   * from the pool's threads isn't safe.
+   *
+   * @param transformPool the {@link ForkJoinPool} to transform large lists of records on
+   * @param records the database records to transform
+   * @param transformer the transformation to apply to each record
+   * @return the transformed results, in the same order as the specified records
+   */
+  static <T, R> List<R> transformAll(
+      ForkJoinPool transformPool, List<T> records, Function<T, R> transformer) {
+    return transformAll(transformPool, PARALLEL_TRANSFORM_THRESHOLD, records, transformer);
+  }
+
+  /**
+   * Applies the specified transformation to each of the specified records, splitting the work
+   * across the specified {@link ForkJoinPool} when there are at least the specified number of
+   * records.
+   *
+   * @param transformPool the {@link ForkJoinPool} to transform large lists of records on
+   * @param parallelThreshold lists of records at least this large will be transformed in parallel
+   * @param records the database records to transform
+   * @param transformer the transformation to apply to each record
+   * @return the transformed results, in the same order as the specified records
+   */
+  static <T, R> List<R> transformAll(
+      ForkJoinPool transformPool,
+      int parallelThreshold,
+      List<? extends T> records,
+      Function<T, R> transformer) {
+    if (records.size() < parallelThreshold)
+      return records.stream().map(transformer).collect(Collectors.toList());
+
+    /*
+     * A parallel stream started from within a ForkJoinPool runs on that pool, rather than on the
+     * JVM-wide common pool. The stream is ordered, so the results stay in the records' order.
+     */
+    return transformPool
+        .submit(() -> records.parallelStream().map(transformer).collect(Collectors.toList()))
+        .join();
+  }
+
+  /**
+   * @param searchParam the name of the search parameter that the IDs were specified in
+   * @param searchIds the (distinct) IDs being searched for
+   * @throws InvalidRequestException An {@link InvalidRequestException} will be thrown if more than
+   *     {@link #MAX_SEARCH_IDS} IDs were specified.
+   */
+  static void validateSearchIds(String searchParam, List<String> searchIds) {
+    if (searchIds.size() > MAX_SEARCH_IDS)
+      throw new InvalidRequestException(
+          String.format(
+              "At most %d %s values can be searched for at once, but %d were specified.",
+              MAX_SEARCH_IDS, searchParam, searchIds.size()));
+  }
+
+  /**
+   * @param pagingArgs the {@link PagingArguments} for the requested page
+   * @param items the items matching a search, in order, e.g. their IDs
+   * @return the items that are on the requested page, or all of them if paging wasn't requested
+   */
+  static <T> List<T> selectPage(PagingArguments pagingArgs, List<T> items) {
+    if (!pagingArgs.isPagingRequested()) return items;
+
+    int startIndex = Math.min(pagingArgs.getStartIndex(), items.size());
+    int endIndex = (int) Math.min(items.size(), (long) startIndex + pagingArgs.getPageSize());
+    return items.subList(startIndex, endIndex);
+  }
+
+  /**
+   * Create a bundle from a page of resources that has already been selected, e.g. by the database.
+   *
+   * @param pagingArgs contains the {@link PagingArguments} for the requested page
+   * @param resourceType the type of resources in the bundle
+   * @param pageResources the resources on the requested page, in order
+   * @param totalResults the total number of resources matching the search, across all pages
+   * @return Returns a {@link Bundle} of the page's resources, with paging links based on
+   *     <code>totalResults</code>
+   */
+  public static Bundle createBundle(
+      PagingArguments pagingArgs,
+      String resourceType,
+      List<IBaseResource> pageResources,
+      int totalResults) {
+    Bundle bundle = TransformerUtils.addResourcesToBundle(new Bundle(), pageResources);
+    if (pagingArgs.isPagingRequested())
+      TransformerUtils.addPagingLinks(pagingArgs, bundle, resourceType, totalResults);
+
+    bundle.setTotal(totalResults);
+    return bundle;
+  }
+
   /**
    * @param bundle a {@link Bundle} to add the list of {@link ExplanationOfBenefit} resources to.
    * @param resources a list of either {@link ExplanationOfBenefit}s, {@link Coverage}s, or {@link
@@ -2967,40 +3147,24 @@ public final class TransformerUtils {
    *     parameters for doing so
    * @param bundle the {@link Bundle} to which links are being added
    * @param resource the {@link String} the resource being provided by the paging link
-   * @param searchByDesc the {@link String} field the search is being performed on
-   * @param identifier the {@link String} identifier being searched for
-   * @param numTotalResults the number of total resources matching the {@link
-   *     Beneficiary#getBeneficiaryId()}
+   * @param numTotalResults the number of total resources matching the search
    */
   public static void addPagingLinks(
-      PagingArguments pagingArgs,
-      Bundle bundle,
-      String resource,
-      String searchByDesc,
-      String identifier,
-      int numTotalResults) {
+      PagingArguments pagingArgs, Bundle bundle, String resource, int numTotalResults) {
 
     Integer pageSize = pagingArgs.getPageSize();
     Integer startIndex = pagingArgs.getStartIndex();
-    String serverBase = pagingArgs.getServerBase();
 
     bundle.addLink(
         new BundleLinkComponent()
             .setRelation(Constants.LINK_FIRST)
-            .setUrl(
-                createPagingLink(serverBase + resource, searchByDesc, identifier, 0, pageSize)));
+            .setUrl(createPagingLink(pagingArgs, resource, 0, pageSize)));
 
     if (startIndex + pageSize < numTotalResults) {
       bundle.addLink(
           new BundleLinkComponent()
               .setRelation(Constants.LINK_NEXT)
-              .setUrl(
-                  createPagingLink(
-                      serverBase + resource,
-                      searchByDesc,
-                      identifier,
-                      startIndex + pageSize,
-                      pageSize)));
+              .setUrl(createPagingLink(pagingArgs, resource, startIndex + pageSize, pageSize)));
     }
 
     if (startIndex > 0) {
@@ -3009,11 +3173,7 @@ public final class TransformerUtils {
               .setRelation(Constants.LINK_PREVIOUS)
               .setUrl(
                   createPagingLink(
-                      serverBase + resource,
-                      searchByDesc,
-                      identifier,
-                      Math.max(startIndex - pageSize, 0),
-                      pageSize)));
+                      pagingArgs, resource, Math.max(startIndex - pageSize, 0), pageSize)));
     }
 
     /*
@@ -3029,19 +3189,28 @@ public final class TransformerUtils {
     bundle.addLink(
         new BundleLinkComponent()
             .setRelation(Constants.LINK_LAST)
-            .setUrl(
-                createPagingLink(
-                    serverBase + resource, searchByDesc, identifier, lastIndex, pageSize)));
+            .setUrl(createPagingLink(pagingArgs, resource, lastIndex, pageSize)));
   }
 
-  /** @return Returns the URL string for a paging link. */
+  /**
+   * @param pagingArgs the {@link PagingArguments} of the request being paged through
+   * @param resource the {@link String} the resource being provided by the paging link
+   * @param startIndex the index of the first result on the linked page
+   * @param theCount the number of results per page
+   * @return Returns the URL string for a paging link, which repeats all of the request's search
+   *     parameters (e.g. <code>type</code>, <code>service-date</code>, and <code>_lastUpdated
+   *     </code>), so that every page is of the same search.
+   */
   private static String createPagingLink(
-      String baseURL, String descriptor, String id, int startIndex, int theCount) {
+      PagingArguments pagingArgs, String resource, int startIndex, int theCount) {
     StringBuilder b = new StringBuilder();
-    b.append(baseURL);
+    b.append(pagingArgs.getServerBase() + resource);
     b.append(Constants.PARAM_COUNT + "=" + theCount);
-    b.append("&startIndex=" + startIndex);
-    b.append("&" + descriptor + "=" + id);
+    b.append("&" + PagingArguments.PARAM_START_INDEX + "=" + startIndex);
+    for (Map.Entry<String, String[]> param : pagingArgs.getSearchParameters().entrySet()) {
+      for (String value : param.getValue())
+        b.append("&" + urlEncode(param.getKey()) + "=" + urlEncode(value));
+    }
 
     return b.toString();
   }
@@ -0,0 +1,188 @@
+package gov.cms.bfd.server.war;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.parser.IParser;
+import ca.uhn.fhir.rest.api.Constants;
+import ca.uhn.fhir.rest.client.api.IGenericClient;
+import gov.cms.bfd.model.rif.Beneficiary;
+import gov.cms.bfd.model.rif.samples.StaticRifResourceGroup;
+import gov.cms.bfd.server.war.stu3.providers.TransformerUtils;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpDelete;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.util.EntityUtils;
+import org.hibernate.internal.SessionFactoryRegistry;
+import org.hl7.fhir.dstu3.model.Bundle;
+import org.hl7.fhir.dstu3.model.ExplanationOfBenefit;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+/** Integration tests for {@link BulkExportServlet}. */
+public final class BulkExportServletIT {
+  /** Matches the file URLs in a completed export's manifest. */
+  private static final Pattern OUTPUT_URL_PATTERN = Pattern.compile("\"url\":\"([^\"]+)\"");
+
+  /**
+   * Verifies that a bulk export for a single beneficiary can be started, polled until it's
+   * complete, and then downloaded and deleted, and that it exports the same claims as a regular
+   * {@link ExplanationOfBenefit} search would return.
+   *
+   * @throws IOException (indicates test failure)
+   * @throws InterruptedException (indicates test failure)
+   */
+  @Test
+  public void exportForExistingPatient() throws IOException, InterruptedException {
+    List<Object> loadedRecords =
+        ServerTestUtils.loadData(Arrays.asList(StaticRifResourceGroup.SAMPLE_A.getResources()));
+    IGenericClient fhirClient = ServerTestUtils.createFhirClient();
+
+    Beneficiary beneficiary =
+        loadedRecords.stream()
+            .filter(r -> r instanceof Beneficiary)
+            .map(r -> (Beneficiary) r)
+            .findFirst()
+            .get();
+
+    List<String> exportedEobIds =
+        export(String.format("?patient=%s", beneficiary.getBeneficiaryId()));
+    Assert.assertEquals(searchForEobIds(fhirClient, beneficiary), new HashSet<>(exportedEobIds));
+  }
+
+  /**
+   * Verifies that a bulk export of all claims exports each of them exactly once, when there are
+   * more of them than fit in a single chunk (as the test server's exports use very small chunks).
+   *
+   * @throws IOException (indicates test failure)
+   * @throws InterruptedException (indicates test failure)
+   */
+  @Test
+  public void exportAllClaimsInSeveralChunks() throws IOException, InterruptedException {
+    List<Object> loadedRecords = new ArrayList<>();
+    loadedRecords.addAll(
+        ServerTestUtils.loadData(Arrays.asList(StaticRifResourceGroup.SAMPLE_A.getResources())));
+    loadedRecords.addAll(
+        ServerTestUtils.loadData(Arrays.asList(StaticRifResourceGroup.SAMPLE_MCT.getResources())));
+    IGenericClient fhirClient = ServerTestUtils.createFhirClient();
+
+    Set<String> expectedEobIds = new HashSet<>();
+    loadedRecords.stream()
+        .filter(r -> r instanceof Beneficiary)
+        .map(r -> (Beneficiary) r)
+        .forEach(b -> expectedEobIds.addAll(searchForEobIds(fhirClient, b)));
+    // SAMPLE_MCT has 40 PDE claims, which span several of the test server's (10 claim) chunks.
+    Assert.assertTrue(expectedEobIds.size() > 40);
+
+    List<String> exportedEobIds = export("");
+    Assert.assertEquals(expectedEobIds.size(), exportedEobIds.size());
+    Assert.assertEquals(expectedEobIds, new HashSet<>(exportedEobIds));
+  }
+
+  /**
+   * @param fhirClient the {@link IGenericClient} to search with
+   * @param beneficiary the {@link Beneficiary} to search for the {@link ExplanationOfBenefit}s of
+   * @return the IDs of the {@link ExplanationOfBenefit}s returned by a regular search for the
+   *     specified {@link Beneficiary}
+   */
+  private static Set<String> searchForEobIds(IGenericClient fhirClient, Beneficiary beneficiary) {
+    Bundle searchResults =
+        fhirClient
+            .search()
+            .forResource(ExplanationOfBenefit.class)
+            .where(ExplanationOfBenefit.PATIENT.hasId(TransformerUtils.buildPatientId(beneficiary)))
+            .returnBundle(Bundle.class)
+            .execute();
+    return searchResults.getEntry().stream()
+        .map(e -> e.getResource().getIdElement().getIdPart())
+        .collect(Collectors.toSet());
+  }
+
+  /**
+   * Starts a bulk export, polls it until it's complete, downloads all of its files, and then
+   * deletes it.
+   *
+   * @param kickOffQuery the query string (if any) to append to the export kick-off URL
+   * @return the IDs of all of the exported {@link ExplanationOfBenefit}s, in the order that they
+   *     were exported
+   * @throws IOException (indicates test failure)
+   * @throws InterruptedException (indicates test failure)
+   */
+  private static List<String> export(String kickOffQuery)
+      throws IOException, InterruptedException {
+    try (CloseableHttpClient httpClient =
+        HttpClients.custom()
+            .setSSLContext(ServerTestUtils.createSslContext(Optional.of(ClientSslIdentity.TRUSTED)))
+            .build(); ) {
+      HttpGet kickOffGet =
+          new HttpGet(
+              String.format(
+                  "%s%s/Patient/$export%s",
+                  ServerTestUtils.getServerBaseUrl(), BulkExportServlet.FHIR_PATH, kickOffQuery));
+      String pollUrl;
+      try (CloseableHttpResponse kickOffResponse = httpClient.execute(kickOffGet); ) {
+        Assert.assertEquals(202, kickOffResponse.getStatusLine().getStatusCode());
+        pollUrl = kickOffResponse.getFirstHeader(Constants.HEADER_CONTENT_LOCATION).getValue();
+      }
+
+      String manifest = null;
+      for (int attempt = 0; manifest == null && attempt < 60; attempt++) {
+        try (CloseableHttpResponse pollResponse = httpClient.execute(new HttpGet(pollUrl)); ) {
+          int statusCode = pollResponse.getStatusLine().getStatusCode();
+          if (statusCode == 200) manifest = EntityUtils.toString(pollResponse.getEntity());
+          else Assert.assertEquals(202, statusCode);
+        }
+        if (manifest == null) Thread.sleep(500);
+      }
+      Assert.assertNotNull(manifest);
+
+      List<String> outputUrls = new ArrayList<>();
+      Matcher outputUrlMatcher = OUTPUT_URL_PATTERN.matcher(manifest);
+      while (outputUrlMatcher.find()) outputUrls.add(outputUrlMatcher.group(1));
+      Assert.assertFalse(outputUrls.isEmpty());
+
+      IParser parser = FhirContext.forDstu3().newJsonParser();
+      List<String> exportedEobIds = new ArrayList<>();
+      for (String outputUrl : outputUrls) {
+        try (CloseableHttpResponse fileResponse = httpClient.execute(new HttpGet(outputUrl)); ) {
+          Assert.assertEquals(200, fileResponse.getStatusLine().getStatusCode());
+          String ndjson = EntityUtils.toString(fileResponse.getEntity(), StandardCharsets.UTF_8);
+          for (String line : ndjson.split("\n")) {
+            if (line.isEmpty()) continue;
+            ExplanationOfBenefit eob = parser.parseResource(ExplanationOfBenefit.class, line);
+            exportedEobIds.add(eob.getIdElement().getIdPart());
+          }
+        }
+      }
+
+      try (CloseableHttpResponse deleteResponse = httpClient.execute(new HttpDelete(pollUrl)); ) {
+        Assert.assertEquals(202, deleteResponse.getStatusLine().getStatusCode());
+      }
+      try (CloseableHttpResponse pollResponse = httpClient.execute(new HttpGet(pollUrl)); ) {
+        Assert.assertEquals(404, pollResponse.getStatusLine().getStatusCode());
+      }
+
+      return exportedEobIds;
+    }
+  }
+
+  /** Ensures that {@link ServerTestUtils#cleanDatabaseServer()} is called after each test case. */
+  @After
+  public void cleanDatabaseServerAfterEachTestCase() {
+    ServerTestUtils.cleanDatabaseServer();
+    // FIXME temporary workaround to free up ram
+    SessionFactoryRegistry.INSTANCE.clearRegistrations();
+  }
+}
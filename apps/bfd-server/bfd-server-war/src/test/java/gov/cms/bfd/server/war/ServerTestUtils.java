@@ -4,6 +4,8 @@ import ca.uhn.fhir.context.FhirContext;
 import ca.uhn.fhir.rest.client.api.IGenericClient;
 import ca.uhn.fhir.rest.client.interceptor.LoggingInterceptor;
 import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import gov.cms.bfd.model.rif.Beneficiary;
 import gov.cms.bfd.model.rif.RifFileEvent;
 import gov.cms.bfd.model.rif.RifFileRecords;
@@ -13,7 +15,6 @@ import gov.cms.bfd.model.rif.schema.DatabaseTestHelper;
 import gov.cms.bfd.pipeline.rif.extract.RifFilesProcessor;
 import gov.cms.bfd.pipeline.rif.load.LoadAppOptions;
 import gov.cms.bfd.pipeline.rif.load.RifLoader;
-import gov.cms.bfd.pipeline.rif.load.RifLoaderIdleTasks;
 import gov.cms.bfd.pipeline.rif.load.RifLoaderTestUtils;
 import java.io.FileReader;
 import java.io.IOException;
@@ -49,10 +50,13 @@ import javax.persistence.criteria.CriteriaDelete;
 import javax.sql.DataSource;
 import org.apache.http.client.HttpClient;
 import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
 import org.apache.http.config.RegistryBuilder;
 import org.apache.http.conn.socket.ConnectionSocketFactory;
 import org.apache.http.conn.socket.PlainConnectionSocketFactory;
 import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClients;
 import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.apache.http.ssl.SSLContextBuilder;
@@ -183,6 +187,27 @@ public final class ServerTestUtils {
     return serverBaseUrl;
   }
 
+  /**
+   * @param meterName the name of the server's {@link com.codahale.metrics.Meter} to check, e.g.
+   *     <code>"ResponseCache.hit"</code>
+   * @return the server's current count for that {@link com.codahale.metrics.Meter}, as reported by
+   *     its <code>/metrics/metrics</code> endpoint, or <code>0</code> if it hasn't been created yet
+   */
+  public static long getMeterCount(String meterName) {
+    try (CloseableHttpClient httpClient =
+        HttpClients.custom()
+            .setSSLContext(createSslContext(Optional.of(ClientSslIdentity.TRUSTED)))
+            .build(); ) {
+      HttpGet metricsGet = new HttpGet(String.format("%s/metrics/metrics", getServerBaseUrl()));
+      try (CloseableHttpResponse metricsResponse = httpClient.execute(metricsGet); ) {
+        JsonNode metrics = new ObjectMapper().readTree(metricsResponse.getEntity().getContent());
+        return metrics.path("meters").path(meterName).path("count").asLong();
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
   /** @return the local {@link Path} that development/test key and trust stores can be found in */
   static Path getSslStoresDirectory() {
     /*
@@ -251,6 +276,9 @@ public final class ServerTestUtils {
               recordsLoaded.add(result.getRifRecordEvent().getRecord());
             });
       }
+
+      // Like the real pipeline, let the server know that its cached responses are now stale.
+      loader.recordLoadGeneration(rifFilesEvent.getTimestamp());
       LOGGER.info("Loaded RIF records: '{}'.");
       return recordsLoaded;
     }
@@ -351,7 +379,7 @@ public final class ServerTestUtils {
         LoadAppOptions.DEFAULT_LOADER_THREADS,
         RifLoaderTestUtils.IDEMPOTENCY_REQUIRED,
         RifLoaderTestUtils.FIXUPS_ENABLED,
-        RifLoaderIdleTasks.DEFAULT_PARTITION_COUNT);
+        LoadAppOptions.DEFAULT_FIXUP_THREADS);
   }
 
   /**
@@ -0,0 +1,185 @@
+package gov.cms.bfd.server.war.stu3.providers;
+
+import com.codahale.metrics.MetricRegistry;
+import gov.cms.bfd.server.war.stu3.providers.BulkExportJob.Status;
+import java.io.IOException;
+import gov.cms.bfd.model.rif.schema.DatabaseSchemaManager;
+import gov.cms.bfd.pipeline.rif.load.RifLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import javax.persistence.EntityManagerFactory;
+import org.hsqldb.jdbc.JDBCDataSource;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link BulkExporter}. These run against an empty in-memory database, so all of the
+ * exports they start are empty, but that's enough to exercise their bookkeeping.
+ */
+public final class BulkExporterTest {
+  private static EntityManagerFactory entityManagerFactory;
+
+  /** Creates the in-memory database that the {@link BulkExporter}s track their exports in. */
+  @BeforeClass
+  public static void createDatabase() {
+    JDBCDataSource dataSource = new JDBCDataSource();
+    dataSource.setUrl("jdbc:hsqldb:mem:" + BulkExporterTest.class.getSimpleName());
+    DatabaseSchemaManager.createOrUpdateSchema(dataSource);
+    entityManagerFactory = RifLoader.createEntityManagerFactory(dataSource);
+  }
+
+  /** Closes the in-memory database's {@link EntityManagerFactory}. */
+  @AfterClass
+  public static void closeDatabase() {
+    if (entityManagerFactory != null) entityManagerFactory.close();
+  }
+
+  /**
+   * Verifies that {@link BulkExporter#startExport(String, Optional, boolean)} refuses to start
+   * more than the maximum number of exports at once, and starts accepting them again once some of
+   * them have finished.
+   *
+   * @throws IOException (indicates test failure)
+   * @throws InterruptedException (indicates test failure)
+   * @throws ExecutionException (indicates test failure)
+   */
+  @Test
+  public void startExportRefusesTooManyExports()
+      throws IOException, InterruptedException, ExecutionException {
+    ExecutorService bulkExportExecutor = Executors.newSingleThreadExecutor();
+    try {
+      BulkExporter bulkExporter = createBulkExporter(bulkExportExecutor, 24);
+
+      // Hold up the executor, so that the exports all stay queued.
+      CountDownLatch blocker = new CountDownLatch(1);
+      bulkExportExecutor.submit(
+          () -> {
+            blocker.await();
+            return null;
+          });
+      Assert.assertTrue(bulkExporter.startExport("a", Optional.empty(), false).isPresent());
+      Assert.assertTrue(bulkExporter.startExport("b", Optional.empty(), false).isPresent());
+      Assert.assertFalse(bulkExporter.startExport("c", Optional.empty(), false).isPresent());
+
+      // The executor only has the one thread, so once this has run, so have the exports.
+      blocker.countDown();
+      bulkExportExecutor.submit(() -> {}).get();
+      Assert.assertTrue(bulkExporter.startExport("d", Optional.empty(), false).isPresent());
+    } finally {
+      bulkExportExecutor.shutdownNow();
+    }
+  }
+
+  /**
+   * Verifies that {@link BulkExporter} deletes finished exports, and their files, once they've
+   * expired.
+   *
+   * @throws IOException (indicates test failure)
+   * @throws InterruptedException (indicates test failure)
+   * @throws ExecutionException (indicates test failure)
+   */
+  @Test
+  public void deleteExpiredJobs() throws IOException, InterruptedException, ExecutionException {
+    ExecutorService bulkExportExecutor = Executors.newSingleThreadExecutor();
+    try {
+      // With an expiry of 0 hours, each export expires as soon as it's finished.
+      BulkExporter bulkExporter = createBulkExporter(bulkExportExecutor, 0);
+
+      BulkExportJob job = bulkExporter.startExport("a", Optional.empty(), false).get();
+      bulkExportExecutor.submit(() -> {}).get();
+      Assert.assertEquals(Status.COMPLETE, job.getStatus());
+      Assert.assertTrue(job.getFinishTime().isPresent());
+      Assert.assertTrue(Files.exists(job.getDirectory()));
+
+      Assert.assertFalse(bulkExporter.getJob(job.getId()).isPresent());
+      Assert.assertFalse(Files.exists(job.getDirectory()));
+    } finally {
+      bulkExportExecutor.shutdownNow();
+    }
+  }
+
+  /**
+   * Verifies that {@link BulkExporter} tracks its exports in the database, such that another node's
+   * {@link BulkExporter} can report on and delete them.
+   *
+   * @throws IOException (indicates test failure)
+   * @throws InterruptedException (indicates test failure)
+   * @throws ExecutionException (indicates test failure)
+   */
+  @Test
+  public void getJobFromAnotherNode() throws IOException, InterruptedException, ExecutionException {
+    ExecutorService bulkExportExecutor = Executors.newSingleThreadExecutor();
+    try {
+      // The two nodes share the database and the export directory.
+      Path exportDirectory = Files.createTempDirectory(BulkExporterTest.class.getSimpleName());
+      BulkExporter bulkExporter = createBulkExporter(bulkExportExecutor, 24, exportDirectory);
+      BulkExporter otherBulkExporter = createBulkExporter(bulkExportExecutor, 24, exportDirectory);
+
+      BulkExportJob job =
+          bulkExporter
+              .startExport("a", Optional.of(new HashSet<>(Arrays.asList("1", "2"))), false)
+              .get();
+      bulkExportExecutor.submit(() -> {}).get();
+
+      BulkExportJob otherJob = otherBulkExporter.getJob(job.getId()).get();
+      Assert.assertEquals(Status.COMPLETE, otherJob.getStatus());
+      Assert.assertEquals("a", otherJob.getRequestUrl());
+      Assert.assertEquals(job.getBeneficiaryIds(), otherJob.getBeneficiaryIds());
+      Assert.assertEquals(job.getDirectory(), otherJob.getDirectory());
+      Assert.assertEquals(ClaimType.values().length, otherJob.getOutputs().size());
+      Assert.assertEquals(
+          ClaimType.CARRIER.name().toLowerCase() + BulkExporter.NDJSON_EXTENSION,
+          otherJob.getOutputs().get(0).getFileName());
+
+      Assert.assertTrue(otherBulkExporter.deleteJob(job.getId()));
+      Assert.assertFalse(bulkExporter.getJob(job.getId()).isPresent());
+      Assert.assertFalse(Files.exists(job.getDirectory()));
+    } finally {
+      bulkExportExecutor.shutdownNow();
+    }
+  }
+
+  /**
+   * @param bulkExportExecutor the {@link ExecutorService} to run exports on
+   * @param exportExpiryHours the value to use for {@link BulkExporter#setExportExpiryHours(long)}
+   * @return a new {@link BulkExporter}, which allows two exports at once, using the in-memory
+   *     database
+   * @throws IOException (indicates test failure)
+   */
+  private static BulkExporter createBulkExporter(
+      ExecutorService bulkExportExecutor, long exportExpiryHours) throws IOException {
+    return createBulkExporter(
+        bulkExportExecutor,
+        exportExpiryHours,
+        Files.createTempDirectory(BulkExporterTest.class.getSimpleName()));
+  }
+
+  /**
+   * @param bulkExportExecutor the {@link ExecutorService} to run exports on
+   * @param exportExpiryHours the value to use for {@link BulkExporter#setExportExpiryHours(long)}
+   * @param exportDirectory the directory to write the exports' files to
+   * @return a new {@link BulkExporter}, which allows two exports at once, using the in-memory
+   *     database
+   */
+  private static BulkExporter createBulkExporter(
+      ExecutorService bulkExportExecutor, long exportExpiryHours, Path exportDirectory) {
+    BulkExporter bulkExporter = new BulkExporter();
+    bulkExporter.setEntityManagerFactory(entityManagerFactory);
+    bulkExporter.setMetricRegistry(new MetricRegistry());
+    bulkExporter.setBulkExportExecutor(bulkExportExecutor);
+    bulkExporter.setExportDirectory(exportDirectory.toString());
+    bulkExporter.setExportChunkSize(1);
+    bulkExporter.setMaxActiveExports(2);
+    bulkExporter.setExportExpiryHours(exportExpiryHours);
+    return bulkExporter;
+  }
+}
@@ -1,12 +1,15 @@
 package gov.cms.bfd.server.war.stu3.providers;
 
 import ca.uhn.fhir.rest.api.Constants;
+import ca.uhn.fhir.rest.api.SummaryEnum;
 import ca.uhn.fhir.rest.client.api.IGenericClient;
+import ca.uhn.fhir.rest.param.DateRangeParam;
 import ca.uhn.fhir.rest.server.exceptions.ResourceNotFoundException;
 import gov.cms.bfd.model.rif.Beneficiary;
 import gov.cms.bfd.model.rif.samples.StaticRifResourceGroup;
 import gov.cms.bfd.server.war.ServerTestUtils;
 import java.util.Arrays;
+import java.util.Date;
 import java.util.List;
 import org.hl7.fhir.dstu3.model.Bundle;
 import org.hl7.fhir.dstu3.model.Coverage;
@@ -112,6 +115,100 @@ public final class CoverageResourceProviderIT {
     Assert.assertNotNull(exception);
   }
 
+  /**
+   * Verifies that {@link
+   * gov.cms.bfd.server.war.stu3.providers.CoverageResourceProvider#searchByBeneficiary(ca.uhn.fhir.rest.param.ReferenceOrListParam,
+   * String, ca.uhn.fhir.rest.param.DateRangeParam, ca.uhn.fhir.rest.api.SummaryEnum,
+   * ca.uhn.fhir.rest.api.server.RequestDetails)} works as expected when searching for several
+   * {@link Beneficiary}s at once, only some of which exist in the DB, with paging.
+   *
+   * @throws FHIRException (indicates test failure)
+   */
+  @Test
+  public void searchByBeneficiaries() throws FHIRException {
+    List<Object> loadedRecords =
+        ServerTestUtils.loadData(Arrays.asList(StaticRifResourceGroup.SAMPLE_A.getResources()));
+    IGenericClient fhirClient = ServerTestUtils.createFhirClient();
+
+    Beneficiary beneficiary =
+        loadedRecords.stream()
+            .filter(r -> r instanceof Beneficiary)
+            .map(r -> (Beneficiary) r)
+            .findFirst()
+            .get();
+    Bundle searchResults =
+        fhirClient
+            .search()
+            .forResource(Coverage.class)
+            .where(Coverage.BENEFICIARY.hasAnyOfIds(beneficiary.getBeneficiaryId(), "1234"))
+            .count(2)
+            .returnBundle(Bundle.class)
+            .execute();
+
+    Assert.assertNotNull(searchResults);
+    Assert.assertEquals(MedicareSegment.values().length, searchResults.getTotal());
+    Assert.assertEquals(2, searchResults.getEntry().size());
+    Assert.assertNotNull(searchResults.getLink(Constants.LINK_NEXT));
+  }
+
+  /**
+   * Verifies that {@link
+   * gov.cms.bfd.server.war.stu3.providers.CoverageResourceProvider#searchByBeneficiary(ca.uhn.fhir.rest.param.ReferenceOrListParam,
+   * String, ca.uhn.fhir.rest.param.DateRangeParam, ca.uhn.fhir.rest.api.SummaryEnum,
+   * ca.uhn.fhir.rest.api.server.RequestDetails)} works as expected with <code>_summary=count
+   * </code>, both with and without a <code>_lastUpdated</code> range.
+   *
+   * @throws FHIRException (indicates test failure)
+   */
+  @Test
+  public void searchByBeneficiariesWithSummaryCount() throws FHIRException {
+    Date beforeLoad = new Date();
+    List<Object> loadedRecords =
+        ServerTestUtils.loadData(Arrays.asList(StaticRifResourceGroup.SAMPLE_A.getResources()));
+    IGenericClient fhirClient = ServerTestUtils.createFhirClient();
+
+    Beneficiary beneficiary =
+        loadedRecords.stream()
+            .filter(r -> r instanceof Beneficiary)
+            .map(r -> (Beneficiary) r)
+            .findFirst()
+            .get();
+    Bundle searchResults =
+        fhirClient
+            .search()
+            .forResource(Coverage.class)
+            .where(Coverage.BENEFICIARY.hasAnyOfIds(beneficiary.getBeneficiaryId(), "1234"))
+            .summaryMode(SummaryEnum.COUNT)
+            .returnBundle(Bundle.class)
+            .execute();
+    Assert.assertEquals(MedicareSegment.values().length, searchResults.getTotal());
+    Assert.assertEquals(0, searchResults.getEntry().size());
+
+    Bundle searchResultsSince =
+        fhirClient
+            .search()
+            .forResource(Coverage.class)
+            .where(Coverage.BENEFICIARY.hasAnyOfIds(beneficiary.getBeneficiaryId(), "1234"))
+            .lastUpdated(new DateRangeParam(beforeLoad, null))
+            .summaryMode(SummaryEnum.COUNT)
+            .returnBundle(Bundle.class)
+            .execute();
+    Assert.assertEquals(MedicareSegment.values().length, searchResultsSince.getTotal());
+
+    // The beneficiary was just loaded, so shouldn't match a range that ends before that.
+    Bundle searchResultsBefore =
+        fhirClient
+            .search()
+            .forResource(Coverage.class)
+            .where(Coverage.BENEFICIARY.hasAnyOfIds(beneficiary.getBeneficiaryId(), "1234"))
+            .lastUpdated(new DateRangeParam(null, beforeLoad))
+            .summaryMode(SummaryEnum.COUNT)
+            .returnBundle(Bundle.class)
+            .execute();
+    Assert.assertEquals(0, searchResultsBefore.getTotal());
+    Assert.assertEquals(0, searchResultsBefore.getEntry().size());
+  }
+
   /**
    * Verifies that {@link
    * gov.cms.bfd.server.war.stu3.providers.CoverageResourceProvider#searchByBeneficiary(ca.uhn.fhir.rest.param.ReferenceParam)}
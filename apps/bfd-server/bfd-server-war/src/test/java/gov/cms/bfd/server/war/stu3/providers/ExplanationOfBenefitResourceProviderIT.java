@@ -1,10 +1,15 @@
 package gov.cms.bfd.server.war.stu3.providers;
 
+import ca.uhn.fhir.context.FhirContext;
 import ca.uhn.fhir.model.primitive.IdDt;
 import ca.uhn.fhir.rest.api.Constants;
+import ca.uhn.fhir.rest.api.SearchStyleEnum;
+import ca.uhn.fhir.rest.api.SummaryEnum;
 import ca.uhn.fhir.rest.client.api.IGenericClient;
+import ca.uhn.fhir.rest.gclient.DateClientParam;
 import ca.uhn.fhir.rest.gclient.StringClientParam;
 import ca.uhn.fhir.rest.gclient.TokenClientParam;
+import ca.uhn.fhir.rest.param.DateRangeParam;
 import ca.uhn.fhir.rest.server.exceptions.InvalidRequestException;
 import ca.uhn.fhir.rest.server.exceptions.ResourceNotFoundException;
 import gov.cms.bfd.model.rif.Beneficiary;
@@ -21,16 +26,26 @@ import gov.cms.bfd.model.rif.SNFClaim;
 import gov.cms.bfd.model.rif.samples.StaticRifResourceGroup;
 import gov.cms.bfd.pipeline.rif.load.LoadAppOptions;
 import gov.cms.bfd.pipeline.rif.load.RifLoaderTestUtils;
+import gov.cms.bfd.server.war.ClientSslIdentity;
 import gov.cms.bfd.server.war.ServerTestUtils;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Date;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
 import java.util.Set;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import javax.persistence.EntityManager;
 import javax.persistence.EntityManagerFactory;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.util.EntityUtils;
 import org.hibernate.internal.SessionFactoryRegistry;
 import org.hl7.fhir.dstu3.model.Bundle;
 import org.hl7.fhir.dstu3.model.Bundle.BundleEntryComponent;
@@ -78,6 +93,135 @@ public final class ExplanationOfBenefitResourceProviderIT {
     CarrierClaimTransformerTest.assertMatches(claim, eob);
   }
 
+  /**
+   * Verifies that {@link
+   * gov.cms.bfd.server.war.stu3.providers.ExplanationOfBenefitResourceProvider#findById(ca.uhn.fhir.rest.param.TokenOrListParam,
+   * String, String, ca.uhn.fhir.rest.api.server.RequestDetails)} works as expected when searching
+   * for several {@link ExplanationOfBenefit}s at once, of different {@link ClaimType}s, some of
+   * which don't exist in the DB.
+   */
+  @Test
+  public void searchForEobsByIds() {
+    List<Object> loadedRecords =
+        ServerTestUtils.loadData(Arrays.asList(StaticRifResourceGroup.SAMPLE_A.getResources()));
+    IGenericClient fhirClient = ServerTestUtils.createFhirClient();
+
+    CarrierClaim carrierClaim =
+        loadedRecords.stream()
+            .filter(r -> r instanceof CarrierClaim)
+            .map(r -> (CarrierClaim) r)
+            .findFirst()
+            .get();
+    PartDEvent partDEvent =
+        loadedRecords.stream()
+            .filter(r -> r instanceof PartDEvent)
+            .map(r -> (PartDEvent) r)
+            .findFirst()
+            .get();
+    String partDEventEobId = TransformerUtils.buildEobId(ClaimType.PDE, partDEvent.getEventId());
+    String carrierEobId = TransformerUtils.buildEobId(ClaimType.CARRIER, carrierClaim.getClaimId());
+    Bundle searchResults =
+        fhirClient
+            .search()
+            .forResource(ExplanationOfBenefit.class)
+            .where(
+                ExplanationOfBenefit.RES_ID
+                    .exactly()
+                    .codes(
+                        partDEventEobId,
+                        TransformerUtils.buildEobId(ClaimType.CARRIER, "1234"),
+                        "foo",
+                        carrierEobId))
+            .returnBundle(Bundle.class)
+            .execute();
+
+    Assert.assertEquals(2, searchResults.getTotal());
+    Assert.assertEquals(
+        Arrays.asList(partDEventEobId, carrierEobId),
+        searchResults.getEntry().stream()
+            .map(e -> e.getResource().getIdElement().getIdPart())
+            .collect(Collectors.toList()));
+  }
+
+  /**
+   * Verifies that {@link
+   * gov.cms.bfd.server.war.stu3.providers.ExplanationOfBenefitResourceProvider#findById(ca.uhn.fhir.rest.param.TokenOrListParam,
+   * String, String, ca.uhn.fhir.rest.api.server.RequestDetails)} pages the {@link
+   * ExplanationOfBenefit}s found when searching for several of them at once, in the order that
+   * they were requested in.
+   */
+  @Test
+  public void searchForEobsByIdsWithPaging() {
+    List<Object> loadedRecords =
+        ServerTestUtils.loadData(Arrays.asList(StaticRifResourceGroup.SAMPLE_A.getResources()));
+    IGenericClient fhirClient = ServerTestUtils.createFhirClient();
+
+    CarrierClaim carrierClaim =
+        loadedRecords.stream()
+            .filter(r -> r instanceof CarrierClaim)
+            .map(r -> (CarrierClaim) r)
+            .findFirst()
+            .get();
+    PartDEvent partDEvent =
+        loadedRecords.stream()
+            .filter(r -> r instanceof PartDEvent)
+            .map(r -> (PartDEvent) r)
+            .findFirst()
+            .get();
+    String partDEventEobId = TransformerUtils.buildEobId(ClaimType.PDE, partDEvent.getEventId());
+    String carrierEobId = TransformerUtils.buildEobId(ClaimType.CARRIER, carrierClaim.getClaimId());
+    Bundle searchResults =
+        fhirClient
+            .search()
+            .forResource(ExplanationOfBenefit.class)
+            .where(
+                ExplanationOfBenefit.RES_ID
+                    .exactly()
+                    .codes(
+                        carrierEobId,
+                        TransformerUtils.buildEobId(ClaimType.CARRIER, "1234"),
+                        partDEventEobId))
+            .count(1)
+            .returnBundle(Bundle.class)
+            .execute();
+
+    List<String> pagedEobIds = new ArrayList<>();
+    while (true) {
+      Assert.assertEquals(2, searchResults.getTotal());
+      Assert.assertEquals(1, searchResults.getEntry().size());
+      pagedEobIds.add(searchResults.getEntry().get(0).getResource().getIdElement().getIdPart());
+      if (searchResults.getLink(Constants.LINK_NEXT) == null) break;
+
+      searchResults = fhirClient.loadPage().next(searchResults).execute();
+    }
+
+    Assert.assertEquals(Arrays.asList(carrierEobId, partDEventEobId), pagedEobIds);
+  }
+
+  /**
+   * Verifies that {@link
+   * gov.cms.bfd.server.war.stu3.providers.ExplanationOfBenefitResourceProvider#findById(ca.uhn.fhir.rest.param.TokenOrListParam,
+   * String, String, ca.uhn.fhir.rest.api.server.RequestDetails)} rejects searches for more than
+   * {@link TransformerUtils#MAX_SEARCH_IDS} {@link ExplanationOfBenefit}s at once.
+   */
+  @Test(expected = InvalidRequestException.class)
+  public void searchForEobsByTooManyIds() {
+    IGenericClient fhirClient = ServerTestUtils.createFhirClient();
+
+    // POSTed, as that many IDs won't fit in a URL.
+    List<String> eobIds =
+        IntStream.rangeClosed(1, TransformerUtils.MAX_SEARCH_IDS + 1)
+            .mapToObj(i -> TransformerUtils.buildEobId(ClaimType.CARRIER, String.valueOf(i)))
+            .collect(Collectors.toList());
+    fhirClient
+        .search()
+        .forResource(ExplanationOfBenefit.class)
+        .where(ExplanationOfBenefit.RES_ID.exactly().codes(eobIds.toArray(new String[0])))
+        .usingStyle(SearchStyleEnum.POST)
+        .returnBundle(Bundle.class)
+        .execute();
+  }
+
   /**
    * Verifies that {@link
    * gov.cms.bfd.server.war.stu3.providers.ExplanationOfBenefitResourceProvider#read(org.hl7.fhir.dstu3.model.IdType)}
@@ -567,6 +711,468 @@ public final class ExplanationOfBenefitResourceProviderIT {
         snfClaim, filterToClaimType(searchResults, ClaimType.SNF).get(0));
   }
 
+  /**
+   * Verifies that {@link
+   * gov.cms.bfd.server.war.stu3.providers.ExplanationOfBenefitResourceProvider#findByPatient(ca.uhn.fhir.rest.param.ReferenceParam)}
+   * works as expected for a {@link Patient} that does exist in the DB, with a <code>service-date
+   * </code> range.
+   *
+   * @throws FHIRException (indicates test failure)
+   */
+  @Test
+  public void searchForEobsByExistingPatientWithServiceDate() throws FHIRException {
+    List<Object> loadedRecords =
+        ServerTestUtils.loadData(Arrays.asList(StaticRifResourceGroup.SAMPLE_A.getResources()));
+    IGenericClient fhirClient = ServerTestUtils.createFhirClient();
+
+    Beneficiary beneficiary =
+        loadedRecords.stream()
+            .filter(r -> r instanceof Beneficiary)
+            .map(r -> (Beneficiary) r)
+            .findFirst()
+            .get();
+    CarrierClaim carrierClaim =
+        loadedRecords.stream()
+            .filter(r -> r instanceof CarrierClaim)
+            .map(r -> (CarrierClaim) r)
+            .findFirst()
+            .get();
+
+    // The claim should match a range that starts on the last day of its service period...
+    Bundle searchResultsOverlapping =
+        fhirClient
+            .search()
+            .forResource(ExplanationOfBenefit.class)
+            .where(ExplanationOfBenefit.PATIENT.hasId(TransformerUtils.buildPatientId(beneficiary)))
+            .and(
+                new DateClientParam("service-date")
+                    .afterOrEquals()
+                    .day(carrierClaim.getDateThrough().toString()))
+            .returnBundle(Bundle.class)
+            .execute();
+    Assert.assertEquals(1, filterToClaimType(searchResultsOverlapping, ClaimType.CARRIER).size());
+
+    // ... but not one that starts after it.
+    Bundle searchResultsAfter =
+        fhirClient
+            .search()
+            .forResource(ExplanationOfBenefit.class)
+            .where(ExplanationOfBenefit.PATIENT.hasId(TransformerUtils.buildPatientId(beneficiary)))
+            .and(
+                new DateClientParam("service-date")
+                    .afterOrEquals()
+                    .day(carrierClaim.getDateThrough().plusDays(1).toString()))
+            .returnBundle(Bundle.class)
+            .execute();
+    Assert.assertEquals(0, filterToClaimType(searchResultsAfter, ClaimType.CARRIER).size());
+
+    // Nor one that ends before it started.
+    Bundle searchResultsBefore =
+        fhirClient
+            .search()
+            .forResource(ExplanationOfBenefit.class)
+            .where(ExplanationOfBenefit.PATIENT.hasId(TransformerUtils.buildPatientId(beneficiary)))
+            .and(
+                new DateClientParam("service-date")
+                    .before()
+                    .day(carrierClaim.getDateFrom().toString()))
+            .returnBundle(Bundle.class)
+            .execute();
+    Assert.assertEquals(0, filterToClaimType(searchResultsBefore, ClaimType.CARRIER).size());
+  }
+
+  /**
+   * Verifies that {@link
+   * gov.cms.bfd.server.war.stu3.providers.ExplanationOfBenefitResourceProvider#findByPatient(ca.uhn.fhir.rest.param.ReferenceParam)}
+   * carries the <code>service-date</code> range over into its paging links, such that following
+   * them walks through just the matching claims.
+   *
+   * @throws FHIRException (indicates test failure)
+   */
+  @Test
+  public void searchForEobsByExistingPatientWithServiceDateAndPaging() throws FHIRException {
+    List<Object> loadedRecords =
+        ServerTestUtils.loadData(Arrays.asList(StaticRifResourceGroup.SAMPLE_A.getResources()));
+    IGenericClient fhirClient = ServerTestUtils.createFhirClient();
+
+    Beneficiary beneficiary =
+        loadedRecords.stream()
+            .filter(r -> r instanceof Beneficiary)
+            .map(r -> (Beneficiary) r)
+            .findFirst()
+            .get();
+
+    /*
+     * Only the inpatient, HHA, hospice, DME, and Part D claims in SAMPLE_A are from 2014 or later:
+     * the carrier, outpatient, and SNF ones are all older.
+     */
+    Bundle searchResults =
+        fhirClient
+            .search()
+            .forResource(ExplanationOfBenefit.class)
+            .where(ExplanationOfBenefit.PATIENT.hasId(TransformerUtils.buildPatientId(beneficiary)))
+            .and(new DateClientParam("service-date").afterOrEquals().day("2014-01-01"))
+            .count(2)
+            .returnBundle(Bundle.class)
+            .execute();
+    Assert.assertEquals(5, searchResults.getTotal());
+
+    List<IBaseResource> pagedEobs = new ArrayList<>();
+    while (true) {
+      for (BundleEntryComponent entry : searchResults.getEntry()) {
+        pagedEobs.add(entry.getResource());
+      }
+      if (searchResults.getLink(Constants.LINK_NEXT) == null) break;
+
+      Assert.assertTrue(
+          searchResults.getLink(Constants.LINK_NEXT).getUrl().contains("service-date="));
+      searchResults = fhirClient.loadPage().next(searchResults).execute();
+      Assert.assertEquals(5, searchResults.getTotal());
+    }
+
+    Assert.assertEquals(5, pagedEobs.size());
+    Assert.assertEquals(
+        5, pagedEobs.stream().map(e -> e.getIdElement().getIdPart()).distinct().count());
+    for (ClaimType olderClaimType :
+        Arrays.asList(ClaimType.CARRIER, ClaimType.OUTPATIENT, ClaimType.SNF)) {
+      Assert.assertEquals(0, filterToClaimTypeFromList(pagedEobs, olderClaimType).size());
+    }
+  }
+
+  /**
+   * Verifies that {@link
+   * gov.cms.bfd.server.war.stu3.providers.ExplanationOfBenefitResourceProvider#findByPatient(ca.uhn.fhir.rest.param.ReferenceParam)}
+   * works as expected for a {@link Patient} that does exist in the DB, with a <code>_lastUpdated
+   * </code> range.
+   *
+   * @throws FHIRException (indicates test failure)
+   */
+  @Test
+  public void searchForEobsByExistingPatientWithLastUpdated() throws FHIRException {
+    Date beforeLoad = new Date();
+    List<Object> loadedRecords =
+        ServerTestUtils.loadData(Arrays.asList(StaticRifResourceGroup.SAMPLE_A.getResources()));
+    IGenericClient fhirClient = ServerTestUtils.createFhirClient();
+
+    Beneficiary beneficiary =
+        loadedRecords.stream()
+            .filter(r -> r instanceof Beneficiary)
+            .map(r -> (Beneficiary) r)
+            .findFirst()
+            .get();
+
+    Bundle searchResultsAll =
+        fhirClient
+            .search()
+            .forResource(ExplanationOfBenefit.class)
+            .where(ExplanationOfBenefit.PATIENT.hasId(TransformerUtils.buildPatientId(beneficiary)))
+            .returnBundle(Bundle.class)
+            .execute();
+    Assert.assertTrue(searchResultsAll.getTotal() > 0);
+    for (BundleEntryComponent entry : searchResultsAll.getEntry())
+      Assert.assertNotNull(entry.getResource().getMeta().getLastUpdated());
+
+    // All of the claims were just loaded, so should match a range that starts before that...
+    Bundle searchResultsSince =
+        fhirClient
+            .search()
+            .forResource(ExplanationOfBenefit.class)
+            .where(ExplanationOfBenefit.PATIENT.hasId(TransformerUtils.buildPatientId(beneficiary)))
+            .lastUpdated(new DateRangeParam(beforeLoad, null))
+            .returnBundle(Bundle.class)
+            .execute();
+    Assert.assertEquals(searchResultsAll.getTotal(), searchResultsSince.getTotal());
+
+    // ... and none should match a range that ends before that.
+    Bundle searchResultsBefore =
+        fhirClient
+            .search()
+            .forResource(ExplanationOfBenefit.class)
+            .where(ExplanationOfBenefit.PATIENT.hasId(TransformerUtils.buildPatientId(beneficiary)))
+            .lastUpdated(new DateRangeParam(null, beforeLoad))
+            .returnBundle(Bundle.class)
+            .execute();
+    Assert.assertEquals(0, searchResultsBefore.getTotal());
+  }
+
+  /**
+   * Verifies that {@link
+   * gov.cms.bfd.server.war.stu3.providers.ExplanationOfBenefitResourceProvider#findByPatient(ca.uhn.fhir.rest.param.ReferenceParam)}
+   * works as expected for a {@link Patient} that does exist in the DB, with <code>_summary=count
+   * </code>.
+   *
+   * @throws FHIRException (indicates test failure)
+   */
+  @Test
+  public void searchForEobsByExistingPatientWithSummaryCount() throws FHIRException {
+    List<Object> loadedRecords =
+        ServerTestUtils.loadData(Arrays.asList(StaticRifResourceGroup.SAMPLE_A.getResources()));
+    IGenericClient fhirClient = ServerTestUtils.createFhirClient();
+
+    Beneficiary beneficiary =
+        loadedRecords.stream()
+            .filter(r -> r instanceof Beneficiary)
+            .map(r -> (Beneficiary) r)
+            .findFirst()
+            .get();
+
+    Bundle searchResults =
+        fhirClient
+            .search()
+            .forResource(ExplanationOfBenefit.class)
+            .where(ExplanationOfBenefit.PATIENT.hasId(TransformerUtils.buildPatientId(beneficiary)))
+            .summaryMode(SummaryEnum.COUNT)
+            .returnBundle(Bundle.class)
+            .execute();
+    Assert.assertNotNull(searchResults);
+    Assert.assertEquals(
+        loadedRecords.stream()
+            .filter(r -> !(r instanceof Beneficiary))
+            .filter(r -> !(r instanceof BeneficiaryHistory))
+            .filter(r -> !(r instanceof MedicareBeneficiaryIdHistory))
+            .count(),
+        searchResults.getTotal());
+    Assert.assertEquals(0, searchResults.getEntry().size());
+  }
+
+  /**
+   * Verifies that {@link ExplanationOfBenefitStreamingInterceptor} returns the same results, in
+   * the same order, as {@link
+   * gov.cms.bfd.server.war.stu3.providers.ExplanationOfBenefitResourceProvider#findByPatient(ca.uhn.fhir.rest.param.ReferenceParam)}
+   * does, for each of several {@link Patient}s that do exist in the DB, with and without SAMHSA
+   * filtering.
+   *
+   * @throws FHIRException (indicates test failure)
+   */
+  @Test
+  public void searchForEobsByExistingPatientStreamed() throws FHIRException {
+    List<Object> loadedRecords = new ArrayList<>();
+    loadedRecords.addAll(
+        ServerTestUtils.loadData(Arrays.asList(StaticRifResourceGroup.SAMPLE_A.getResources())));
+    loadedRecords.addAll(
+        ServerTestUtils.loadData(Arrays.asList(StaticRifResourceGroup.SAMPLE_MCT.getResources())));
+    IGenericClient fhirClient = ServerTestUtils.createFhirClient();
+
+    List<Beneficiary> beneficiaries =
+        loadedRecords.stream()
+            .filter(r -> r instanceof Beneficiary)
+            .map(r -> (Beneficiary) r)
+            .collect(Collectors.toList());
+    Assert.assertTrue(beneficiaries.size() > 1);
+    for (Beneficiary beneficiary : beneficiaries) {
+      assertStreamedSearchMatches(fhirClient, beneficiary, "false");
+      assertStreamedSearchMatches(fhirClient, beneficiary, "true");
+    }
+  }
+
+  /**
+   * Verifies that {@link ExplanationOfBenefitStreamingInterceptor} also streams the results of
+   * searches that only ask for JSON in their <code>Accept</code> header (rather than with a <code>
+   * _format</code> parameter), and that those match a regular search's.
+   *
+   * @throws IOException (indicates test failure)
+   */
+  @Test
+  public void searchForEobsByExistingPatientStreamedForAcceptHeader() throws IOException {
+    List<Object> loadedRecords =
+        ServerTestUtils.loadData(Arrays.asList(StaticRifResourceGroup.SAMPLE_A.getResources()));
+    IGenericClient fhirClient = ServerTestUtils.createFhirClient();
+    Beneficiary beneficiary =
+        loadedRecords.stream()
+            .filter(r -> r instanceof Beneficiary)
+            .map(r -> (Beneficiary) r)
+            .findFirst()
+            .get();
+
+    Bundle searchResults =
+        fhirClient
+            .search()
+            .forResource(ExplanationOfBenefit.class)
+            .where(ExplanationOfBenefit.PATIENT.hasId(TransformerUtils.buildPatientId(beneficiary)))
+            .encodedXml()
+            .returnBundle(Bundle.class)
+            .execute();
+
+    try (CloseableHttpClient httpClient =
+        HttpClients.custom()
+            .setSSLContext(ServerTestUtils.createSslContext(Optional.of(ClientSslIdentity.TRUSTED)))
+            .build(); ) {
+      HttpGet searchGet =
+          new HttpGet(
+              String.format(
+                  "%s/v1/fhir/ExplanationOfBenefit?patient=%s",
+                  ServerTestUtils.getServerBaseUrl(), beneficiary.getBeneficiaryId()));
+      searchGet.setHeader(Constants.HEADER_ACCEPT, Constants.CT_FHIR_JSON_NEW);
+      try (CloseableHttpResponse response = httpClient.execute(searchGet); ) {
+        Assert.assertEquals(200, response.getStatusLine().getStatusCode());
+        String bundleJson = EntityUtils.toString(response.getEntity(), StandardCharsets.UTF_8);
+
+        // Streamed Bundles have their total written out after their entries.
+        Assert.assertTrue(bundleJson.indexOf("\"total\"") > bundleJson.indexOf("\"entry\""));
+
+        Bundle streamedSearchResults =
+            FhirContext.forDstu3().newJsonParser().parseResource(Bundle.class, bundleJson);
+        Assert.assertEquals(searchResults.getTotal(), streamedSearchResults.getTotal());
+        Assert.assertEquals(
+            searchResults.getEntry().stream()
+                .map(e -> e.getResource().getIdElement().getIdPart())
+                .collect(Collectors.toList()),
+            streamedSearchResults.getEntry().stream()
+                .map(e -> e.getResource().getIdElement().getIdPart())
+                .collect(Collectors.toList()));
+      }
+    }
+  }
+
+  /**
+   * Asserts that a streamed (i.e. JSON) search for the specified {@link Beneficiary}'s {@link
+   * ExplanationOfBenefit}s returns the same results, in the same order, as a regular (XML) one.
+   *
+   * @param fhirClient the {@link IGenericClient} to search with
+   * @param beneficiary the {@link Beneficiary} to search for
+   * @param excludeSamhsa the value to use for the <code>excludeSAMHSA</code> search parameter
+   */
+  private static void assertStreamedSearchMatches(
+      IGenericClient fhirClient, Beneficiary beneficiary, String excludeSamhsa) {
+    // Only JSON responses are streamed.
+    Bundle searchResults =
+        fhirClient
+            .search()
+            .forResource(ExplanationOfBenefit.class)
+            .where(ExplanationOfBenefit.PATIENT.hasId(TransformerUtils.buildPatientId(beneficiary)))
+            .and(new StringClientParam("excludeSAMHSA").matches().value(excludeSamhsa))
+            .encodedXml()
+            .returnBundle(Bundle.class)
+            .execute();
+    Bundle streamedSearchResults =
+        fhirClient
+            .search()
+            .forResource(ExplanationOfBenefit.class)
+            .where(ExplanationOfBenefit.PATIENT.hasId(TransformerUtils.buildPatientId(beneficiary)))
+            .and(new StringClientParam("excludeSAMHSA").matches().value(excludeSamhsa))
+            .encodedJson()
+            .returnBundle(Bundle.class)
+            .execute();
+
+    Assert.assertEquals(searchResults.getTotal(), streamedSearchResults.getTotal());
+    Assert.assertEquals(searchResults.getTotal(), streamedSearchResults.getEntry().size());
+    Assert.assertEquals(
+        searchResults.getEntry().stream()
+            .map(e -> e.getResource().getIdElement().getIdPart())
+            .collect(Collectors.toList()),
+        streamedSearchResults.getEntry().stream()
+            .map(e -> e.getResource().getIdElement().getIdPart())
+            .collect(Collectors.toList()));
+  }
+
+  /**
+   * Verifies that {@link
+   * gov.cms.bfd.server.war.stu3.providers.ExplanationOfBenefitResourceProvider#findByPatient(ca.uhn.fhir.rest.param.ReferenceParam)}
+   * answers repeat searches from its {@link ResponseCache}, but doesn't return stale results from
+   * it once a new data set has been loaded.
+   *
+   * @throws FHIRException (indicates test failure)
+   */
+  @Test
+  public void searchForEobsByExistingPatientAfterUpdate() throws FHIRException {
+    List<Object> loadedRecords =
+        ServerTestUtils.loadData(Arrays.asList(StaticRifResourceGroup.SAMPLE_A.getResources()));
+    IGenericClient fhirClient = ServerTestUtils.createFhirClient();
+
+    Beneficiary beneficiary =
+        loadedRecords.stream()
+            .filter(r -> r instanceof Beneficiary)
+            .map(r -> (Beneficiary) r)
+            .findFirst()
+            .get();
+    Bundle searchResults =
+        fhirClient
+            .search()
+            .forResource(ExplanationOfBenefit.class)
+            .where(ExplanationOfBenefit.PATIENT.hasId(TransformerUtils.buildPatientId(beneficiary)))
+            .returnBundle(Bundle.class)
+            .execute();
+    CarrierClaim carrierClaim =
+        loadedRecords.stream()
+            .filter(r -> r instanceof CarrierClaim)
+            .map(r -> (CarrierClaim) r)
+            .findFirst()
+            .get();
+    CarrierClaimTransformerTest.assertMatches(
+        carrierClaim, filterToClaimType(searchResults, ClaimType.CARRIER).get(0));
+
+    long cacheHits = ServerTestUtils.getMeterCount("ResponseCache.hit");
+    Bundle repeatedSearchResults =
+        fhirClient
+            .search()
+            .forResource(ExplanationOfBenefit.class)
+            .where(ExplanationOfBenefit.PATIENT.hasId(TransformerUtils.buildPatientId(beneficiary)))
+            .returnBundle(Bundle.class)
+            .execute();
+    Assert.assertEquals(cacheHits + 1, ServerTestUtils.getMeterCount("ResponseCache.hit"));
+    Assert.assertEquals(searchResults.getTotal(), repeatedSearchResults.getTotal());
+    CarrierClaimTransformerTest.assertMatches(
+        carrierClaim, filterToClaimType(repeatedSearchResults, ClaimType.CARRIER).get(0));
+
+    // Sample U updates sample A's beneficiary and carrier claim.
+    List<Object> updatedRecords =
+        ServerTestUtils.loadData(Arrays.asList(StaticRifResourceGroup.SAMPLE_U.getResources()));
+    Bundle updatedSearchResults =
+        fhirClient
+            .search()
+            .forResource(ExplanationOfBenefit.class)
+            .where(ExplanationOfBenefit.PATIENT.hasId(TransformerUtils.buildPatientId(beneficiary)))
+            .returnBundle(Bundle.class)
+            .execute();
+    CarrierClaim updatedCarrierClaim =
+        updatedRecords.stream()
+            .filter(r -> r instanceof CarrierClaim)
+            .map(r -> (CarrierClaim) r)
+            .findFirst()
+            .get();
+    Assert.assertEquals(cacheHits + 1, ServerTestUtils.getMeterCount("ResponseCache.hit"));
+    Assert.assertEquals(searchResults.getTotal(), updatedSearchResults.getTotal());
+    CarrierClaimTransformerTest.assertMatches(
+        updatedCarrierClaim, filterToClaimType(updatedSearchResults, ClaimType.CARRIER).get(0));
+  }
+
+  /**
+   * Verifies that {@link
+   * gov.cms.bfd.server.war.stu3.providers.ExplanationOfBenefitResourceProvider#findByPatient(ca.uhn.fhir.rest.param.ReferenceParam)}
+   * caches a beneficiary's results when the first page of them is requested, so that the other
+   * pages are answered from its {@link ResponseCache}.
+   *
+   * @throws FHIRException (indicates test failure)
+   */
+  @Test
+  public void searchForEobsByExistingPatientWithPagingIsCached() throws FHIRException {
+    List<Object> loadedRecords =
+        ServerTestUtils.loadData(Arrays.asList(StaticRifResourceGroup.SAMPLE_A.getResources()));
+    IGenericClient fhirClient = ServerTestUtils.createFhirClient();
+
+    Beneficiary beneficiary =
+        loadedRecords.stream()
+            .filter(r -> r instanceof Beneficiary)
+            .map(r -> (Beneficiary) r)
+            .findFirst()
+            .get();
+    Bundle searchResults =
+        fhirClient
+            .search()
+            .forResource(ExplanationOfBenefit.class)
+            .where(ExplanationOfBenefit.PATIENT.hasId(TransformerUtils.buildPatientId(beneficiary)))
+            .count(5)
+            .returnBundle(Bundle.class)
+            .execute();
+    Assert.assertNotNull(searchResults.getLink(Constants.LINK_NEXT));
+
+    long cacheHits = ServerTestUtils.getMeterCount("ResponseCache.hit");
+    Bundle nextSearchResults = fhirClient.loadPage().next(searchResults).execute();
+    Assert.assertEquals(cacheHits + 1, ServerTestUtils.getMeterCount("ResponseCache.hit"));
+    Assert.assertEquals(searchResults.getTotal(), nextSearchResults.getTotal());
+    Assert.assertFalse(nextSearchResults.getEntry().isEmpty());
+  }
+
   /**
    * Verifies that {@link
    * gov.cms.bfd.server.war.stu3.providers.ExplanationOfBenefitResourceProvider#findByPatient(ca.uhn.fhir.rest.param.ReferenceParam)}
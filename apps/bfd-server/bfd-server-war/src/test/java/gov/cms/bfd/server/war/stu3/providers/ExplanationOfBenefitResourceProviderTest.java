@@ -4,7 +4,22 @@ import ca.uhn.fhir.rest.param.TokenAndListParam;
 import ca.uhn.fhir.rest.param.TokenOrListParam;
 import ca.uhn.fhir.rest.param.TokenParam;
 import ca.uhn.fhir.rest.param.TokenParamModifier;
+import com.codahale.metrics.MetricRegistry;
+import gov.cms.bfd.model.rif.CarrierClaim;
+import gov.cms.bfd.model.rif.samples.StaticRifResourceGroup;
+import gov.cms.bfd.server.war.ServerTestUtils;
+import gov.cms.bfd.server.war.stu3.providers.ExplanationOfBenefitResourceProvider.ClaimKey;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import org.hl7.fhir.dstu3.model.ExplanationOfBenefit;
+import org.hl7.fhir.dstu3.model.ExplanationOfBenefit.ExplanationOfBenefitStatus;
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -91,4 +106,121 @@ public final class ExplanationOfBenefitResourceProviderTest {
                             .setModifier(TokenParamModifier.ABOVE)));
     ExplanationOfBenefitResourceProvider.parseTypeParam(typeParam);
   }
+
+  /**
+   * Verifies that {@link
+   * gov.cms.bfd.server.war.stu3.providers.ExplanationOfBenefitResourceProvider#mergeClaimKeys(Map,
+   * int)} merges the claim IDs in order, breaking ties by {@link ClaimType}, and stops at the limit.
+   */
+  @Test
+  public void mergeClaimKeys() {
+    Map<ClaimType, List<String>> claimIdsByType = new EnumMap<>(ClaimType.class);
+    claimIdsByType.put(ClaimType.OUTPATIENT, Arrays.asList("2", "4"));
+    claimIdsByType.put(ClaimType.CARRIER, Arrays.asList("1", "2", "5"));
+    claimIdsByType.put(ClaimType.DME, Collections.emptyList());
+
+    List<ClaimKey> claimKeys =
+        ExplanationOfBenefitResourceProvider.mergeClaimKeys(claimIdsByType, 4);
+    Assert.assertEquals(4, claimKeys.size());
+    Assert.assertEquals("1", claimKeys.get(0).getClaimId());
+    Assert.assertEquals("2", claimKeys.get(1).getClaimId());
+    Assert.assertEquals(ClaimType.CARRIER, claimKeys.get(1).getClaimType());
+    Assert.assertEquals("2", claimKeys.get(2).getClaimId());
+    Assert.assertEquals(ClaimType.OUTPATIENT, claimKeys.get(2).getClaimType());
+    Assert.assertEquals("4", claimKeys.get(3).getClaimId());
+
+    Assert.assertEquals(
+        5, ExplanationOfBenefitResourceProvider.mergeClaimKeys(claimIdsByType, 10).size());
+    Assert.assertEquals(
+        0, ExplanationOfBenefitResourceProvider.mergeClaimKeys(claimIdsByType, 0).size());
+  }
+
+  /**
+   * Verifies that {@link
+   * gov.cms.bfd.server.war.stu3.providers.ExplanationOfBenefitResourceProvider#partitionClaimTypes(Set,
+   * int)} deals the {@link ClaimType}s out into at most the requested number of batches.
+   */
+  @Test
+  public void partitionClaimTypes() {
+    Set<ClaimType> allTypes = EnumSet.allOf(ClaimType.class);
+    List<List<ClaimType>> batchesForAll =
+        ExplanationOfBenefitResourceProvider.partitionClaimTypes(allTypes, 3);
+    Assert.assertEquals(3, batchesForAll.size());
+    Assert.assertEquals(
+        ClaimType.values().length, batchesForAll.stream().mapToInt(List::size).sum());
+    Assert.assertEquals(ClaimType.values()[0], batchesForAll.get(0).get(0));
+    Assert.assertEquals(ClaimType.values()[1], batchesForAll.get(1).get(0));
+
+    Set<ClaimType> twoTypes = EnumSet.of(ClaimType.CARRIER, ClaimType.PDE);
+    Assert.assertEquals(
+        2, ExplanationOfBenefitResourceProvider.partitionClaimTypes(twoTypes, 8).size());
+    Assert.assertEquals(
+        1, ExplanationOfBenefitResourceProvider.partitionClaimTypes(twoTypes, 0).size());
+    Assert.assertEquals(
+        0,
+        ExplanationOfBenefitResourceProvider.partitionClaimTypes(
+                EnumSet.noneOf(ClaimType.class), 4)
+            .size());
+  }
+
+  /**
+   * Verifies that {@link ExplanationOfBenefitResourceProvider#transformToEobs(MetricRegistry,
+   * ForkJoinPool, int, ClaimType, List)} transforms lists at least as large as its threshold in
+   * parallel, with the same results (in the same order) as the sequential transformation.
+   */
+  @Test
+  public void transformToEobsInParallel() {
+    CarrierClaim activeClaim = parseCarrierClaim(StaticRifResourceGroup.SAMPLE_A);
+    CarrierClaim cancelledClaim = parseCarrierClaim(StaticRifResourceGroup.SAMPLE_U);
+    List<CarrierClaim> claims = new ArrayList<>();
+    List<ExplanationOfBenefitStatus> expectedStatuses = new ArrayList<>();
+    for (int i = 0; i < 50; i++) {
+      boolean cancelled = i % 3 == 0;
+      claims.add(cancelled ? cancelledClaim : activeClaim);
+      expectedStatuses.add(
+          cancelled ? ExplanationOfBenefitStatus.CANCELLED : ExplanationOfBenefitStatus.ACTIVE);
+    }
+
+    MetricRegistry metricRegistry = new MetricRegistry();
+    ForkJoinPool claimTransformPool = new ForkJoinPool(4);
+    try {
+      List<ExplanationOfBenefit> parallelEobs =
+          ExplanationOfBenefitResourceProvider.transformToEobs(
+              metricRegistry, claimTransformPool, 2, ClaimType.CARRIER, claims);
+      List<ExplanationOfBenefit> sequentialEobs =
+          ExplanationOfBenefitResourceProvider.transformToEobs(
+              metricRegistry, claimTransformPool, Integer.MAX_VALUE, ClaimType.CARRIER, claims);
+
+      Assert.assertEquals(1, metricRegistry.timer(transformTimerName("parallel")).getCount());
+      Assert.assertEquals(1, metricRegistry.timer(transformTimerName("sequential")).getCount());
+      Assert.assertEquals(claims.size(), parallelEobs.size());
+      for (int i = 0; i < claims.size(); i++) {
+        Assert.assertEquals(expectedStatuses.get(i), parallelEobs.get(i).getStatus());
+        Assert.assertTrue(parallelEobs.get(i).equalsDeep(sequentialEobs.get(i)));
+      }
+    } finally {
+      claimTransformPool.shutdownNow();
+    }
+  }
+
+  /**
+   * @param sampleGroup the {@link StaticRifResourceGroup} to parse
+   * @return the first {@link CarrierClaim} in the specified {@link StaticRifResourceGroup}
+   */
+  private static CarrierClaim parseCarrierClaim(StaticRifResourceGroup sampleGroup) {
+    return ServerTestUtils.parseData(Arrays.asList(sampleGroup.getResources())).stream()
+        .filter(r -> r instanceof CarrierClaim)
+        .map(r -> (CarrierClaim) r)
+        .findFirst()
+        .get();
+  }
+
+  /**
+   * @param path either <code>"parallel"</code> or <code>"sequential"</code>
+   * @return the name of the carrier claim transform timer for the specified path
+   */
+  private static String transformTimerName(String path) {
+    return MetricRegistry.name(
+        ExplanationOfBenefitResourceProvider.class.getSimpleName(), "transform", path, "carrier");
+  }
 }
@@ -0,0 +1,140 @@
+package gov.cms.bfd.server.war.stu3.providers;
+
+import ca.uhn.fhir.rest.api.Constants;
+import gov.cms.bfd.model.rif.Beneficiary;
+import gov.cms.bfd.model.rif.samples.StaticRifResourceGroup;
+import gov.cms.bfd.server.war.ClientSslIdentity;
+import gov.cms.bfd.server.war.ServerTestUtils;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.util.EntityUtils;
+import org.hibernate.internal.SessionFactoryRegistry;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+/** Integration tests for {@link LoadGenerationETagInterceptor}. */
+public final class LoadGenerationETagInterceptorIT {
+  /**
+   * Verifies that conditional requests are answered with a <code>304 Not Modified</code> until a
+   * new data set has been loaded, and with the full response after that.
+   *
+   * @throws IOException (indicates test failure)
+   */
+  @Test
+  public void conditionalReadForExistingPatient() throws IOException {
+    List<Object> loadedRecords =
+        ServerTestUtils.loadData(Arrays.asList(StaticRifResourceGroup.SAMPLE_A.getResources()));
+    Beneficiary beneficiary =
+        loadedRecords.stream()
+            .filter(r -> r instanceof Beneficiary)
+            .map(r -> (Beneficiary) r)
+            .findFirst()
+            .get();
+    String patientUrl =
+        String.format(
+            "%s/v1/fhir/Patient/%s",
+            ServerTestUtils.getServerBaseUrl(), beneficiary.getBeneficiaryId());
+
+    try (CloseableHttpClient httpClient =
+        HttpClients.custom()
+            .setSSLContext(ServerTestUtils.createSslContext(Optional.of(ClientSslIdentity.TRUSTED)))
+            .build(); ) {
+      String eTag;
+      try (CloseableHttpResponse response = httpClient.execute(new HttpGet(patientUrl)); ) {
+        Assert.assertEquals(200, response.getStatusLine().getStatusCode());
+        eTag = response.getFirstHeader(Constants.HEADER_ETAG).getValue();
+        Assert.assertTrue(eTag.startsWith("W/"));
+      }
+
+      HttpGet conditionalGet = new HttpGet(patientUrl);
+      conditionalGet.setHeader(Constants.HEADER_IF_NONE_MATCH, eTag);
+      try (CloseableHttpResponse response = httpClient.execute(conditionalGet); ) {
+        Assert.assertEquals(304, response.getStatusLine().getStatusCode());
+      }
+
+      // Requesting different identifiers changes the response, so it has a different ETag.
+      HttpGet conditionalGetWithIdentifiers = new HttpGet(patientUrl);
+      conditionalGetWithIdentifiers.setHeader(Constants.HEADER_IF_NONE_MATCH, eTag);
+      conditionalGetWithIdentifiers.setHeader(
+          PatientResourceProvider.HEADER_NAME_INCLUDE_IDENTIFIERS, "mbi");
+      try (CloseableHttpResponse response = httpClient.execute(conditionalGetWithIdentifiers); ) {
+        Assert.assertEquals(200, response.getStatusLine().getStatusCode());
+      }
+
+      ServerTestUtils.loadData(Arrays.asList(StaticRifResourceGroup.SAMPLE_U.getResources()));
+      try (CloseableHttpResponse response = httpClient.execute(conditionalGet); ) {
+        Assert.assertEquals(200, response.getStatusLine().getStatusCode());
+        Assert.assertNotEquals(eTag, response.getFirstHeader(Constants.HEADER_ETAG).getValue());
+      }
+    }
+  }
+
+  /**
+   * Verifies that conditional, unpaged JSON {@link org.hl7.fhir.dstu3.model.ExplanationOfBenefit}
+   * searches (which are otherwise streamed by {@link ExplanationOfBenefitStreamingInterceptor}) are
+   * answered with a <code>304 Not Modified</code> when unchanged, and that the streamed responses
+   * still have an <code>ETag</code>.
+   *
+   * @throws IOException (indicates test failure)
+   */
+  @Test
+  public void conditionalStreamedSearchForEobs() throws IOException {
+    List<Object> loadedRecords =
+        ServerTestUtils.loadData(Arrays.asList(StaticRifResourceGroup.SAMPLE_A.getResources()));
+    Beneficiary beneficiary =
+        loadedRecords.stream()
+            .filter(r -> r instanceof Beneficiary)
+            .map(r -> (Beneficiary) r)
+            .findFirst()
+            .get();
+    String searchUrl =
+        String.format(
+            "%s/v1/fhir/ExplanationOfBenefit?patient=%s&_format=json",
+            ServerTestUtils.getServerBaseUrl(), beneficiary.getBeneficiaryId());
+
+    try (CloseableHttpClient httpClient =
+        HttpClients.custom()
+            .setSSLContext(ServerTestUtils.createSslContext(Optional.of(ClientSslIdentity.TRUSTED)))
+            .build(); ) {
+      String eTag;
+      try (CloseableHttpResponse response = httpClient.execute(new HttpGet(searchUrl)); ) {
+        Assert.assertEquals(200, response.getStatusLine().getStatusCode());
+        eTag = response.getFirstHeader(Constants.HEADER_ETAG).getValue();
+        Assert.assertTrue(eTag.startsWith("W/"));
+        Assert.assertTrue(EntityUtils.toString(response.getEntity()).contains("\"entry\""));
+      }
+
+      HttpGet conditionalGet = new HttpGet(searchUrl);
+      conditionalGet.setHeader(Constants.HEADER_IF_NONE_MATCH, eTag);
+      try (CloseableHttpResponse response = httpClient.execute(conditionalGet); ) {
+        Assert.assertEquals(304, response.getStatusLine().getStatusCode());
+        Assert.assertTrue(
+            response.getEntity() == null || EntityUtils.toString(response.getEntity()).isEmpty());
+      }
+
+      // A wildcard doesn't say that the client has the current response, so it gets the full one.
+      HttpGet wildcardGet = new HttpGet(searchUrl);
+      wildcardGet.setHeader(Constants.HEADER_IF_NONE_MATCH, "*");
+      try (CloseableHttpResponse response = httpClient.execute(wildcardGet); ) {
+        Assert.assertEquals(200, response.getStatusLine().getStatusCode());
+        Assert.assertEquals(eTag, response.getFirstHeader(Constants.HEADER_ETAG).getValue());
+        Assert.assertTrue(EntityUtils.toString(response.getEntity()).contains("\"entry\""));
+      }
+    }
+  }
+
+  /** Ensures that {@link ServerTestUtils#cleanDatabaseServer()} is called after each test case. */
+  @After
+  public void cleanDatabaseServerAfterEachTestCase() {
+    ServerTestUtils.cleanDatabaseServer();
+    // FIXME temporary workaround to free up ram
+    SessionFactoryRegistry.INSTANCE.clearRegistrations();
+  }
+}
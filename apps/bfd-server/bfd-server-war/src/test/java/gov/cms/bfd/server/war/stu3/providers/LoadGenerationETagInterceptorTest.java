@@ -0,0 +1,23 @@
+package gov.cms.bfd.server.war.stu3.providers;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/** Unit tests for {@link LoadGenerationETagInterceptor}. */
+public final class LoadGenerationETagInterceptorTest {
+  /**
+   * Verifies that {@link LoadGenerationETagInterceptor#matchesETag(String, String)} works as
+   * expected.
+   */
+  @Test
+  public void matchesETag() {
+    Assert.assertTrue(LoadGenerationETagInterceptor.matchesETag("W/\"42\"", "W/\"42\""));
+    Assert.assertTrue(LoadGenerationETagInterceptor.matchesETag("\"42\"", "W/\"42\""));
+    Assert.assertTrue(LoadGenerationETagInterceptor.matchesETag("\"41\", W/\"42\"", "W/\"42\""));
+
+    Assert.assertFalse(LoadGenerationETagInterceptor.matchesETag("W/\"41\"", "W/\"42\""));
+    Assert.assertFalse(LoadGenerationETagInterceptor.matchesETag("W/\"42-mbi\"", "W/\"42\""));
+    Assert.assertFalse(LoadGenerationETagInterceptor.matchesETag("", "W/\"42\""));
+    Assert.assertFalse(LoadGenerationETagInterceptor.matchesETag("*", "W/\"42\""));
+  }
+}
@@ -1,7 +1,10 @@
 package gov.cms.bfd.server.war.stu3.providers;
 
 import ca.uhn.fhir.rest.api.Constants;
+import ca.uhn.fhir.rest.api.SearchStyleEnum;
+import ca.uhn.fhir.rest.api.SummaryEnum;
 import ca.uhn.fhir.rest.client.api.IGenericClient;
+import ca.uhn.fhir.rest.param.DateRangeParam;
 import ca.uhn.fhir.rest.server.exceptions.InvalidRequestException;
 import ca.uhn.fhir.rest.server.exceptions.ResourceNotFoundException;
 import gov.cms.bfd.model.rif.Beneficiary;
@@ -11,9 +14,11 @@ import gov.cms.bfd.model.rif.samples.StaticRifResource;
 import gov.cms.bfd.model.rif.samples.StaticRifResourceGroup;
 import gov.cms.bfd.server.war.ServerTestUtils;
 import java.util.Arrays;
+import java.util.Date;
 import java.util.Iterator;
 import java.util.List;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 import org.hl7.fhir.dstu3.model.Bundle;
 import org.hl7.fhir.dstu3.model.Identifier;
@@ -327,6 +332,120 @@ public final class PatientResourceProviderIT {
     BeneficiaryTransformerTest.assertMatches(beneficiary, patientFromSearchResult);
   }
 
+  /**
+   * Verifies that {@link
+   * gov.cms.bfd.server.war.stu3.providers.PatientResourceProvider#searchByLogicalId(ca.uhn.fhir.rest.param.TokenOrListParam,
+   * String, ca.uhn.fhir.rest.param.DateRangeParam, ca.uhn.fhir.rest.api.SummaryEnum,
+   * ca.uhn.fhir.rest.api.server.RequestDetails)} works as expected when searching for several
+   * {@link Patient}s at once, only some of which exist in the DB.
+   */
+  @Test
+  public void searchForPatientsByLogicalIds() {
+    List<Object> loadedRecords =
+        ServerTestUtils.loadData(Arrays.asList(StaticRifResourceGroup.SAMPLE_A.getResources()));
+    IGenericClient fhirClient = ServerTestUtils.createFhirClient();
+
+    Beneficiary beneficiary =
+        loadedRecords.stream()
+            .filter(r -> r instanceof Beneficiary)
+            .map(r -> (Beneficiary) r)
+            .findFirst()
+            .get();
+    Bundle searchResults =
+        fhirClient
+            .search()
+            .forResource(Patient.class)
+            .where(Patient.RES_ID.exactly().codes("1234", beneficiary.getBeneficiaryId(), "5678"))
+            .returnBundle(Bundle.class)
+            .execute();
+
+    Assert.assertNotNull(searchResults);
+    Assert.assertEquals(1, searchResults.getTotal());
+    Patient patientFromSearchResult = (Patient) searchResults.getEntry().get(0).getResource();
+    BeneficiaryTransformerTest.assertMatches(beneficiary, patientFromSearchResult);
+  }
+
+  /**
+   * Verifies that {@link
+   * gov.cms.bfd.server.war.stu3.providers.PatientResourceProvider#searchByLogicalId(ca.uhn.fhir.rest.param.TokenOrListParam,
+   * String, ca.uhn.fhir.rest.param.DateRangeParam, ca.uhn.fhir.rest.api.SummaryEnum,
+   * ca.uhn.fhir.rest.api.server.RequestDetails)} rejects searches for more than {@link
+   * TransformerUtils#MAX_SEARCH_IDS} {@link Patient}s at once.
+   */
+  @Test(expected = InvalidRequestException.class)
+  public void searchForPatientsByTooManyLogicalIds() {
+    IGenericClient fhirClient = ServerTestUtils.createFhirClient();
+
+    // POSTed, as that many IDs won't fit in a URL.
+    List<String> beneficiaryIds =
+        IntStream.rangeClosed(1, TransformerUtils.MAX_SEARCH_IDS + 1)
+            .mapToObj(String::valueOf)
+            .collect(Collectors.toList());
+    fhirClient
+        .search()
+        .forResource(Patient.class)
+        .where(Patient.RES_ID.exactly().codes(beneficiaryIds.toArray(new String[0])))
+        .usingStyle(SearchStyleEnum.POST)
+        .returnBundle(Bundle.class)
+        .execute();
+  }
+
+  /**
+   * Verifies that {@link
+   * gov.cms.bfd.server.war.stu3.providers.PatientResourceProvider#searchByLogicalId(ca.uhn.fhir.rest.param.TokenOrListParam,
+   * String, ca.uhn.fhir.rest.param.DateRangeParam, ca.uhn.fhir.rest.api.SummaryEnum,
+   * ca.uhn.fhir.rest.api.server.RequestDetails)} works as expected with <code>_summary=count
+   * </code>, both with and without a <code>_lastUpdated</code> range.
+   */
+  @Test
+  public void searchForPatientsByLogicalIdsWithSummaryCount() {
+    Date beforeLoad = new Date();
+    List<Object> loadedRecords =
+        ServerTestUtils.loadData(Arrays.asList(StaticRifResourceGroup.SAMPLE_A.getResources()));
+    IGenericClient fhirClient = ServerTestUtils.createFhirClient();
+
+    Beneficiary beneficiary =
+        loadedRecords.stream()
+            .filter(r -> r instanceof Beneficiary)
+            .map(r -> (Beneficiary) r)
+            .findFirst()
+            .get();
+    Bundle searchResults =
+        fhirClient
+            .search()
+            .forResource(Patient.class)
+            .where(Patient.RES_ID.exactly().codes("1234", beneficiary.getBeneficiaryId()))
+            .summaryMode(SummaryEnum.COUNT)
+            .returnBundle(Bundle.class)
+            .execute();
+    Assert.assertEquals(1, searchResults.getTotal());
+    Assert.assertEquals(0, searchResults.getEntry().size());
+
+    Bundle searchResultsSince =
+        fhirClient
+            .search()
+            .forResource(Patient.class)
+            .where(Patient.RES_ID.exactly().codes("1234", beneficiary.getBeneficiaryId()))
+            .lastUpdated(new DateRangeParam(beforeLoad, null))
+            .summaryMode(SummaryEnum.COUNT)
+            .returnBundle(Bundle.class)
+            .execute();
+    Assert.assertEquals(1, searchResultsSince.getTotal());
+
+    // The beneficiary was just loaded, so shouldn't match a range that ends before that.
+    Bundle searchResultsBefore =
+        fhirClient
+            .search()
+            .forResource(Patient.class)
+            .where(Patient.RES_ID.exactly().codes("1234", beneficiary.getBeneficiaryId()))
+            .lastUpdated(new DateRangeParam(null, beforeLoad))
+            .summaryMode(SummaryEnum.COUNT)
+            .returnBundle(Bundle.class)
+            .execute();
+    Assert.assertEquals(0, searchResultsBefore.getTotal());
+    Assert.assertEquals(0, searchResultsBefore.getEntry().size());
+  }
+
   /**
    * Verifies that {@link
    * gov.cms.bfd.server.war.stu3.providers.PatientResourceProvider#searchByLogicalId(ca.uhn.fhir.rest.param.TokenParam)}
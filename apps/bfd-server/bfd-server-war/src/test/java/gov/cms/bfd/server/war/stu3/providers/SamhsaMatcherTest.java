@@ -5,10 +5,13 @@ import gov.cms.bfd.model.codebook.data.CcwCodebookVariable;
 import gov.cms.bfd.model.rif.Beneficiary;
 import gov.cms.bfd.model.rif.BeneficiaryHistory;
 import gov.cms.bfd.model.rif.MedicareBeneficiaryIdHistory;
+import gov.cms.bfd.model.rif.PartDEvent;
+import gov.cms.bfd.model.rif.samhsa.SamhsaClaimMatcher;
 import gov.cms.bfd.model.rif.samples.StaticRifResourceGroup;
 import gov.cms.bfd.server.war.ServerTestUtils;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Optional;
 import java.util.stream.Collectors;
 import org.hl7.fhir.dstu3.model.Coding;
 import org.hl7.fhir.dstu3.model.ExplanationOfBenefit;
@@ -65,6 +68,81 @@ public final class SamhsaMatcherTest {
           "Unexpected SAMHSA filtering of EOB: " + sampleEob.getId(), matcher.test(sampleEob));
   }
 
+  /**
+   * Verifies that {@link SamhsaClaimMatcher#test(Object)}, which checks the claim entities (and is
+   * used to set their "samhsa" flags), agrees with {@link
+   * gov.cms.bfd.server.war.stu3.providers.SamhsaMatcher#test(ExplanationOfBenefit)}, which checks
+   * the {@link ExplanationOfBenefit}s that they're transformed into, for all of the local {@link
+   * StaticRifResourceGroup} sample claims, both as-is and with a SAMHSA-related diagnosis code
+   * added.
+   */
+  @Test
+  public void samhsaClaimMatcherMatchesSamhsaMatcher() {
+    SamhsaClaimMatcher claimMatcher = new SamhsaClaimMatcher();
+    SamhsaMatcher eobMatcher = new SamhsaMatcher();
+
+    List<StaticRifResourceGroup> sampleGroups =
+        Arrays.asList(
+            StaticRifResourceGroup.SAMPLE_A,
+            StaticRifResourceGroup.SAMPLE_U,
+            StaticRifResourceGroup.SAMPLE_MCT);
+    List<Object> sampleClaims =
+        sampleGroups.stream()
+            .flatMap(g -> ServerTestUtils.parseData(Arrays.asList(g.getResources())).stream())
+            .filter(r -> !(r instanceof Beneficiary))
+            .filter(r -> !(r instanceof BeneficiaryHistory))
+            .filter(r -> !(r instanceof MedicareBeneficiaryIdHistory))
+            .collect(Collectors.toList());
+    Assert.assertFalse(sampleClaims.isEmpty());
+
+    for (Object sampleClaim : sampleClaims) {
+      assertMatchersAgree(claimMatcher, eobMatcher, sampleClaim);
+
+      if (sampleClaim instanceof PartDEvent) continue;
+      setDiagnosis2Code(sampleClaim, SAMPLE_SAMHSA_ICD_9_DIAGNOSIS_CODE, '9');
+      Assert.assertTrue(claimMatcher.test(sampleClaim));
+      assertMatchersAgree(claimMatcher, eobMatcher, sampleClaim);
+    }
+  }
+
+  /**
+   * @param claimMatcher the {@link SamhsaClaimMatcher} to check the claim with
+   * @param eobMatcher the {@link SamhsaMatcher} to check the transformed claim with
+   * @param claim the claim entity to check
+   */
+  private static void assertMatchersAgree(
+      SamhsaClaimMatcher claimMatcher, SamhsaMatcher eobMatcher, Object claim) {
+    ExplanationOfBenefit eob =
+        TransformerUtils.transformRifRecordToEob(new MetricRegistry(), claim);
+    Assert.assertEquals(
+        "Mismatched SAMHSA filtering of EOB: " + eob.getId(),
+        claimMatcher.test(claim),
+        eobMatcher.test(eob));
+  }
+
+  /**
+   * Sets the second diagnosis code of the specified claim, which every claim type other than {@link
+   * PartDEvent} has, but not via a common interface.
+   *
+   * @param claim the claim entity to modify
+   * @param code the ICD code to set
+   * @param version the ICD version of the code
+   */
+  private static void setDiagnosis2Code(Object claim, String code, char version) {
+    try {
+      claim
+          .getClass()
+          .getMethod("setDiagnosis2Code", Optional.class)
+          .invoke(claim, Optional.of(code));
+      claim
+          .getClass()
+          .getMethod("setDiagnosis2CodeVersion", Optional.class)
+          .invoke(claim, Optional.of(version));
+    } catch (ReflectiveOperationException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
   /**
    * Verifies that {@link
    * gov.cms.bfd.server.war.stu3.providers.SamhsaMatcher#test(ExplanationOfBenefit)} returns <code>